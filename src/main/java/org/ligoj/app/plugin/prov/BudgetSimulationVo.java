@@ -0,0 +1,32 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A simulated point of a budget: the resulting costs of the related resources for a given initial cost capacity.
+ * Nothing is persisted.
+ */
+@Getter
+@AllArgsConstructor
+public class BudgetSimulationVo {
+
+	/**
+	 * The simulated maximal accepted initial cost.
+	 */
+	private double initialCost;
+
+	/**
+	 * The required initial cost to reach this point. Cannot be greater than {@link #initialCost}.
+	 */
+	private double requiredInitialCost;
+
+	/**
+	 * The resulting cost of the resources related to the budget.
+	 */
+	private Floating cost;
+
+}
@@ -20,7 +20,10 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import jakarta.transaction.Transactional;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 
@@ -101,6 +104,137 @@ public class ProvBudgetResource extends AbstractMultiScopedResource<ProvBudget,
 		return updateCost;
 	}
 
+	/**
+	 * Simulate the lean of a budget for each given initial cost capacity. The related resources are looked up and packed
+	 * as {@link #lean(ProvBudget, Map)} does, but the resolved prices are never committed to the resources and nothing
+	 * is persisted. The related resources and the lookup results are shared across the simulated points.
+	 *
+	 * @param subscription The subscription identifier, will be used to filter the resources from the associated
+	 *                     provider.
+	 * @param id           The budget identifier.
+	 * @param initialCosts The initial cost capacities to simulate.
+	 * @return The simulated points, in the same order as the given capacities.
+	 */
+	@POST
+	@Path("{id:\\d+}/simulate")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public List<BudgetSimulationVo> simulate(@PathParam("subscription") final int subscription,
+			@PathParam("id") final int id, final List<Double> initialCosts) {
+		final var budget = resource.findConfigured(repository, id, subscription);
+		final var quote = budget.getConfiguration();
+		Hibernate.initialize(quote.getUsages());
+		Hibernate.initialize(quote.getBudgets());
+		Hibernate.initialize(quote.getOptimizers());
+
+		// Get all related resources once for all points
+		final var instances = getRelated(getRepository()::findRelatedInstances, budget);
+		final var databases = getRelated(getRepository()::findRelatedDatabases, budget);
+		final var containers = getRelated(getRepository()::findRelatedContainers, budget);
+		final var functions = getRelated(getRepository()::findRelatedFunctions, budget);
+		final var nodes = new ArrayList<AbstractQuoteVm<?>>();
+		nodes.addAll(instances);
+		nodes.addAll(databases);
+		nodes.addAll(containers);
+		nodes.addAll(functions);
+
+		final var lookups = new ConcurrentHashMap<AbstractQuoteVm<?>, List<SimulatedLookup>>();
+		synchronized (quote.getLeanLock()) {
+			try {
+				return initialCosts.stream().map(capacity -> {
+					// Only the transient remaining budget is updated, the persisted capacity is untouched
+					budget.setRemainingBudget(capacity);
+					final var costs = new ArrayList<Floating>();
+					final var required = Floating.round(simulateRecursive(budget, nodes, lookups, costs));
+					return new BudgetSimulationVo(capacity, required,
+							costs.stream().reduce(new Floating(), Floating::add).round());
+				}).toList();
+			} finally {
+				budget.setRemainingBudget(null);
+			}
+		}
+	}
+
+	/**
+	 * A lookup result computed for a given remaining budget.
+	 *
+	 * @param capacity The remaining budget used for this lookup.
+	 * @param price    The resolved price.
+	 */
+	private record SimulatedLookup(double capacity, FloatingPrice<?> price) {
+
+		/**
+		 * Indicate this lookup result is still the best one for another remaining budget. Since a lower positive budget
+		 * only removes candidates, the previous best price remains the best one while its initial cost fits.
+		 *
+		 * @param other The other remaining budget.
+		 * @return <code>true</code> when this result can be reused for the other remaining budget.
+		 */
+		private boolean accept(final double other) {
+			return other == capacity || (other > 0 && other <= capacity
+					&& other >= Objects.requireNonNullElse(price.getPrice().getInitialCost(), 0d));
+		}
+	}
+
+	/**
+	 * Return the best price of a resource for the current remaining budget, reusing a previous compatible lookup when
+	 * available.
+	 */
+	private FloatingPrice<?> getSimulatedPrice(final ProvBudget budget, final AbstractQuoteVm<?> node,
+			final Map<AbstractQuoteVm<?>, List<SimulatedLookup>> lookups) {
+		final double capacity = budget.getRemainingBudget();
+		final var known = lookups.computeIfAbsent(node, k -> new ArrayList<>());
+		return known.stream().filter(l -> l.accept(capacity)).findFirst().map(SimulatedLookup::price).orElseGet(() -> {
+			final var price = getNewPrice(node);
+			known.add(new SimulatedLookup(capacity, price));
+			return price;
+		});
+	}
+
+	private FloatingPrice<?> getNewPrice(final AbstractQuoteVm<?> node) {
+		return switch (node.getResourceType()) {
+			case INSTANCE -> qiResource.getNewPrice((ProvQuoteInstance) node);
+			case DATABASE -> qbResource.getNewPrice((ProvQuoteDatabase) node);
+			case CONTAINER -> qcResource.getNewPrice((ProvQuoteContainer) node);
+			default -> qfResource.getNewPrice((ProvQuoteFunction) node);
+		};
+	}
+
+	/**
+	 * Same packing strategy as {@link #leanRecursive(ProvBudget, List, List, List, List, Map)}, without price commit.
+	 * The costs of the accepted resources are collected in the given list.
+	 */
+	private double simulateRecursive(final ProvBudget budget, final List<AbstractQuoteVm<?>> nodes,
+			final Map<AbstractQuoteVm<?>, List<SimulatedLookup>> lookups, final List<Floating> costs) {
+		final var initialCosts = new ConcurrentHashMap<AbstractQuoteVm<?>, Double>();
+		final var prices = new ConcurrentHashMap<AbstractQuoteVm<?>, FloatingPrice<?>>();
+		this.resource.newStream(nodes).forEach(i -> {
+			final var price = getSimulatedPrice(budget, i, lookups);
+			prices.put(i, price);
+			if (price.getCost().getInitial() > 0) {
+				// Add this price to the pack
+				initialCosts.put(i, price.getCost().getInitial());
+			}
+		});
+
+		// Resources without initial cost are accepted as is
+		nodes.stream().filter(i -> !initialCosts.containsKey(i)).map(i -> prices.get(i).getCost()).forEach(costs::add);
+		if (initialCosts.isEmpty()) {
+			return 0d;
+		}
+
+		// Pack the prices having an initial cost
+		final var pieces = initialCosts.keySet().stream().sorted(priceOrder(prices)).toList();
+		final var result = BinPacker.pack(pieces, initialCosts::get, budget.getRemainingBudget());
+		result.fitted().stream().map(i -> prices.get(i).getCost()).forEach(costs::add);
+		var init = result.total();
+		if (!result.overflow().isEmpty()) {
+			// Overflowed pieces need to make a new pass
+			budget.setRemainingBudget(Floating.round(budget.getRemainingBudget() - result.total()));
+			init += simulateRecursive(budget, result.overflow(), lookups, costs);
+		}
+		return init;
+	}
+
 	/**
 	 * Refresh the whole quote budgets.
 	 *
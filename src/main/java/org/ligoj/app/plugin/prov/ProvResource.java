@@ -39,6 +39,7 @@ import org.ligoj.app.model.Configurable;
 import org.ligoj.app.model.Node;
 import org.ligoj.app.model.Subscription;
 import org.ligoj.app.plugin.prov.dao.BaseProvQuoteRepository;
+import org.ligoj.app.plugin.prov.dao.NodeCacheKeyGenerator;
 import org.ligoj.app.plugin.prov.dao.ProvBudgetRepository;
 import org.ligoj.app.plugin.prov.dao.ProvContainerTypeRepository;
 import org.ligoj.app.plugin.prov.dao.ProvCurrencyRepository;
@@ -274,8 +275,8 @@ public class ProvResource extends AbstractConfiguredServicePlugin<ProvQuote> imp
 	 * @param node The node identifier, will be used to filter the processors from the associated provider.
 	 * @return The available processors for the given subscription.
 	 */
-	@CacheResult(cacheName = "prov-processor")
-	protected Map<String, List<String>> findProcessors(@CacheKey final String node) {
+	@CacheResult(cacheName = "prov-processor", cacheKeyGenerator = NodeCacheKeyGenerator.class)
+	public Map<String, List<String>> findProcessors(@CacheKey final String node) {
 		final var listC = new HashMap<String, List<String>>();
 		listC.put("instance", itRepository.findProcessors(node));
 		listC.put("database", btRepository.findProcessors(node));
@@ -290,8 +291,8 @@ public class ProvResource extends AbstractConfiguredServicePlugin<ProvQuote> imp
 	 * @param node The node identifier, will be used to filter the processor architectures from the associated provider.
 	 * @return The available processor architectures for the given subscription.
 	 */
-	@CacheResult(cacheName = "prov-architecture")
-	protected Map<String, List<String>> findArchitectures(@CacheKey final String node) {
+	@CacheResult(cacheName = "prov-architecture", cacheKeyGenerator = NodeCacheKeyGenerator.class)
+	public Map<String, List<String>> findArchitectures(@CacheKey final String node) {
 		final var listC = new HashMap<String, List<String>>();
 		listC.put("instance", itRepository.findArchitectures(node));
 		listC.put("database", btRepository.findArchitectures(node));
@@ -10,6 +10,7 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.Consumes;
@@ -21,12 +22,15 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 
+import org.apache.commons.lang3.StringUtils;
 import org.ligoj.app.plugin.prov.dao.ProvTagRepository;
+import org.ligoj.app.plugin.prov.model.AbstractProvTag;
 import org.ligoj.app.plugin.prov.model.AbstractQuote;
 import org.ligoj.app.plugin.prov.model.ProvQuote;
 import org.ligoj.app.plugin.prov.model.ProvTag;
 import org.ligoj.app.plugin.prov.model.ResourceType;
 import org.ligoj.bootstrap.core.NamedBean;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -41,6 +45,9 @@ import org.springframework.stereotype.Service;
 @Transactional
 public class ProvTagResource extends AbstractLazyResource {
 
+	private static final Pattern TAG_KEY = Pattern.compile(AbstractProvTag.PATTERN_KEY);
+	private static final Pattern TAG_VALUE = Pattern.compile(AbstractProvTag.PATTERN_VALUE);
+
 	@Autowired
 	private ProvTagRepository repository;
 
@@ -158,4 +165,54 @@ public class ProvTagResource extends AbstractLazyResource {
 		}
 	}
 
+	/**
+	 * Check the name and the value of a tag against the constraints of {@link AbstractProvTag}, so a bulk creation
+	 * does not fail at flush time.
+	 *
+	 * @param name  The tag name.
+	 * @param value The optional tag value.
+	 */
+	public void checkTag(final String name, final String value) {
+		if (StringUtils.isBlank(name) || !TAG_KEY.matcher(name).matches()) {
+			throw new ValidationJsonException("tags", "Pattern", name);
+		}
+		if (value != null && (value.length() > 1024 || !TAG_VALUE.matcher(value).matches())) {
+			throw new ValidationJsonException("tags", "Pattern", value);
+		}
+	}
+
+	/**
+	 * Return a new tag of a resource, not yet persisted. The related resource is not checked.
+	 *
+	 * @param quote    The quote of the resource.
+	 * @param type     The resource type.
+	 * @param resource The persisted resource identifier.
+	 * @param name     The tag name. See {@link #checkTag(String, String)}.
+	 * @param value    The optional tag value.
+	 * @return The new tag entity.
+	 */
+	public ProvTag newTag(final ProvQuote quote, final ResourceType type, final int resource, final String name,
+			final String value) {
+		final var entity = new ProvTag();
+		entity.setName(name);
+		entity.setValue(value);
+		entity.setResource(resource);
+		entity.setType(type);
+		entity.setConfiguration(quote);
+		return entity;
+	}
+
+	/**
+	 * Persist new tags at once, with a single flush. See
+	 * {@link #newTag(ProvQuote, ResourceType, int, String, String)}.
+	 *
+	 * @param tags The new tags.
+	 */
+	public void createAll(final Collection<ProvTag> tags) {
+		if (!tags.isEmpty()) {
+			repository.saveAll(tags);
+			repository.flush();
+		}
+	}
+
 }
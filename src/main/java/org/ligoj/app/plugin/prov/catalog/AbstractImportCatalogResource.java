@@ -16,6 +16,7 @@ import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
+import org.apache.commons.lang3.time.DateUtils;
 import org.ligoj.app.dao.NodeRepository;
 import org.ligoj.app.model.Node;
 import org.ligoj.app.plugin.prov.Floating;
@@ -36,7 +37,6 @@ import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.*;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -65,6 +65,52 @@ public abstract class AbstractImportCatalogResource {
 	 */
 	public static final String CONF_HOURS_MONTH = ProvResource.SERVICE_KEY + ":hours-month";
 
+	/**
+	 * Configuration key used to enable the staged import mode with the given batch size. When value is <code>0</code>
+	 * or <code>null</code>, the changed prices are persisted one by one. In both modes, the previous prices of the node
+	 * are held as entities during the import.
+	 */
+	public static final String CONF_IMPORT_BATCH = ProvResource.SERVICE_KEY + ":import-batch";
+
+	/**
+	 * Configuration key used for the minimal duration in seconds between two writes of the import progress. When value
+	 * is <code>null</code>, {@value #DEFAULT_IMPORT_PROGRESS} seconds.
+	 */
+	public static final String CONF_IMPORT_PROGRESS = ProvResource.SERVICE_KEY + ":import-progress";
+
+	/**
+	 * Default minimal duration in seconds between two writes of the import progress.
+	 */
+	public static final int DEFAULT_IMPORT_PROGRESS = 5;
+
+	/**
+	 * Maximal amount of retired price identifiers per purge statement.
+	 */
+	protected static final int PURGE_CHUNK = 1000;
+
+	/**
+	 * Configuration key used for the maximal amount of work units imported at the same time. A node specific value can
+	 * be set with the key <code>[node]:import-concurrency</code>. When value is <code>null</code>, the import is
+	 * sequential.
+	 */
+	public static final String CONF_IMPORT_CONCURRENCY = ProvResource.SERVICE_KEY + ":import-concurrency";
+
+	/**
+	 * Configuration key used for the maximal amount of parsed work units waiting to be persisted. When value is
+	 * <code>null</code>, the import concurrency is used.
+	 */
+	public static final String CONF_IMPORT_QUEUE = ProvResource.SERVICE_KEY + ":import-queue";
+
+	/**
+	 * Configuration key used for the amount of import runs whose price changes are kept, including the current one.
+	 */
+	public static final String CONF_IMPORT_CHANGES = ProvResource.SERVICE_KEY + ":import-changes";
+
+	/**
+	 * Default amount of import runs whose price changes are kept.
+	 */
+	public static final int DEFAULT_IMPORT_CHANGES = 5;
+
 	@PersistenceContext(type = PersistenceContextType.TRANSACTION, unitName = "pu")
 	protected EntityManager em;
 
@@ -147,13 +193,22 @@ public abstract class AbstractImportCatalogResource {
 	@Autowired
 	protected ImportCatalogResource importCatalogResource;
 
+	@Autowired
+	protected ImportCatalogCheckpointRepository checkpointRepository;
+
+	@Autowired
+	protected ImportCatalogChangeRepository changeRepository;
+
+	@Autowired
+	protected ImportStageWriter stageWriter;
+
 	@Autowired
 	protected CsvForJpa csvForBean;
 
 	/**
 	 * Mapping from instance type name to the rating performance.
 	 */
-	private final Map<String, Map<String, Rate>> mapRate = new HashMap<>();
+	private final Map<String, PrefixTrie<Rate>> mapRate = new HashMap<>();
 
 	/**
 	 * Initialize the given context.
@@ -168,6 +223,21 @@ public abstract class AbstractImportCatalogResource {
 		context.setNode(nodeRepository.findOneExpected(node));
 		context.setHoursMonth(configuration.get(CONF_HOURS_MONTH, ProvResource.DEFAULT_HOURS_MONTH));
 		context.setForce(force);
+		final var batch = configuration.get(CONF_IMPORT_BATCH, 0);
+		if (batch > 0) {
+			// Staged import mode
+			context.setStage(new ImportStage(batch));
+		}
+		context.setProgress(new ImportProgress(
+				configuration.get(CONF_IMPORT_PROGRESS, DEFAULT_IMPORT_PROGRESS) * DateUtils.MILLIS_PER_SECOND));
+		context.setChanges(newChangeSet(context.getNode()));
+		importCatalogResource.onEndImport(node, succeed -> endImport(context, succeed));
+		checkpointRepository.findAllByNode(node).forEach(
+				c -> context.getCheckpoints().add(AbstractUpdateContext.toCheckpoint(c.getPhase(), c.getLocation())));
+		if (!context.getCheckpoints().isEmpty()) {
+			log.info("Resuming catalog update of {}, {} completed units are skipped", node,
+					context.getCheckpoints().size());
+		}
 		return context;
 	}
 
@@ -180,29 +250,58 @@ public abstract class AbstractImportCatalogResource {
 	 *         the [class] association, of the explicit default association or {@link Rate#MEDIUM} value.
 	 */
 	protected Rate getRate(final String type, final String name) {
-		final var map = mapRate.get(type);
-		final var fragments = StringUtils.split(Objects.toString(name, "__"), ".-");
-		final var size = fragments[0];
-		final var model = StringUtils.rightPad(size, 2, '_').substring(0, 2);
-		return Arrays.stream(new String[] { name, size, model, model.substring(0, 1), "default" }).map(map::get)
-				.filter(Objects::nonNull).findFirst().orElse(Rate.MEDIUM);
+		final var trie = mapRate.get(type);
+		final var key = Objects.toString(name, "__");
+		final var separator = StringUtils.indexOfAny(key, ".-");
+		final var sizeEnd = separator < 0 ? key.length() : separator;
+		final Rate[] found;
+		if (sizeEnd < 2) {
+			// Leading separator or single character size: not a prefix of the name
+			final var size = StringUtils.split(key, ".-")[0];
+			final var model = StringUtils.rightPad(size, 2, '_').substring(0, 2);
+			found = new Rate[] { name == null ? null : trie.get(name), trie.get(size), trie.get(model),
+					trie.get(model.substring(0, 1)) };
+		} else {
+			// Name, size, model and first character are prefixes of the name: a single walk is enough
+			final var matches = new Rate[4];
+			trie.walk(key, (rate, length) -> {
+				if (length == key.length() && name != null) {
+					matches[0] = rate;
+				}
+				if (length == sizeEnd) {
+					matches[1] = rate;
+				}
+				if (length == 2) {
+					matches[2] = rate;
+				}
+				if (length == 1) {
+					matches[3] = rate;
+				}
+			});
+			found = matches;
+		}
+		for (final var rate : found) {
+			if (rate != null) {
+				return rate;
+			}
+		}
+		return ObjectUtils.getIfNull(trie.get("default"), Rate.MEDIUM);
 	}
 
 	/**
-	 * Read a rate mapping file.
+	 * Read a rate mapping file into a prefix tree, so each resolution walks the type name once.
 	 *
 	 * @param type The target mapping table name to fill.
 	 *
 	 * @throws IOException When the JSON mapping file cannot be read.
 	 */
 	protected void initRate(final String type) throws IOException {
-		final var mapping = new HashMap<String, Rate>();
-		mapRate.put(type, mapping);
-		mapping.putAll(objectMapper.readValue(IOUtils
-				.toString(new ClassPathResource("rate-" + type + ".json").getInputStream(), StandardCharsets.UTF_8),
-				new TypeReference<Map<String, Rate>>() {
+		final var mapping = new PrefixTrie<Rate>();
+		objectMapper.readValue(IOUtils.toString(new ClassPathResource("rate-" + type + ".json").getInputStream(),
+				StandardCharsets.UTF_8), new TypeReference<Map<String, Rate>>() {
 					// Nothing to extend
-				}));
+				}).forEach(mapping::put);
+		mapRate.put(type, mapping);
 	}
 
 	/**
@@ -413,25 +512,136 @@ public abstract class AbstractImportCatalogResource {
 	 */
 	protected void nextStep(final AbstractUpdateContext context, final String phase, final String location,
 			final int step) {
-		nextStep(context.getNode(), phase, location, step);
+		flushStage(context);
+		log.info("Next step node={}, phase={}, region={}, step={}", context.getNode().getId(), phase, location, step);
+		if (context.getProgress().step(phase, location, step, System.currentTimeMillis())) {
+			flushProgress(context);
+		}
 	}
 
 	/**
-	 * Update the statistics.
+	 * Return the maximal amount of work units imported at the same time for the given node.
 	 *
-	 * @param node     The node provider.
-	 * @param phase    The new import phase.
-	 * @param location The current region API name.
-	 * @param step     The step increment. May be <code>0</code>.
+	 * @param node The node provider identifier.
+	 * @return The node specific concurrency, or the global one. Minimum is 1.
+	 */
+	protected int getImportConcurrency(final String node) {
+		return Math.max(1,
+				configuration.get(node + ":import-concurrency", configuration.get(CONF_IMPORT_CONCURRENCY, 1)));
+	}
+
+	/**
+	 * Return a new import pipeline bounded by the configuration of the context's node.
+	 *
+	 * @param context The update context.
+	 * @return A new import pipeline.
+	 */
+	protected ImportPipeline newPipeline(final AbstractUpdateContext context) {
+		final var concurrency = getImportConcurrency(context.getNode().getId());
+		return new ImportPipeline(concurrency, configuration.get(CONF_IMPORT_QUEUE, concurrency));
+	}
+
+	/**
+	 * Import the given work units with a pipeline: the units are downloaded and parsed concurrently, and are persisted
+	 * from the calling thread. Each persisted unit is recorded as completed and accounted as one step of the given
+	 * phase. The units completed by a previous failed import of this node are skipped.
+	 *
+	 * @param <I>      The work unit type.
+	 * @param <T>      The parsed data type.
+	 * @param context  The update context.
+	 * @param phase    The import phase of these units.
+	 * @param units    The work units, such as regions or terms.
+	 * @param location The function returning the location name of a unit. The result may be <code>null</code>.
+	 * @param parser   The download/parse stage. Must not use the persistence context.
+	 * @param writer   The persist stage.
+	 * @throws Exception The first failure of any stage.
+	 */
+	protected <I, T> void importUnits(final AbstractUpdateContext context, final String phase,
+			final Collection<I> units, final Function<I, String> location, final ImportPipeline.Parser<I, T> parser,
+			final ImportPipeline.Writer<I, T> writer) throws Exception { // NOSONAR - Rethrown as is
+		final var remaining = units.stream().filter(u -> !skipCompleted(context, phase, location.apply(u))).toList();
+		newPipeline(context).run(remaining, parser, (unit, parsed) -> {
+			writer.write(unit, parsed);
+			complete(context, phase, location.apply(unit));
+			nextStep(context, phase, location.apply(unit), 1);
+		});
+	}
+
+	/**
+	 * Indicate the given unit has been completed by a previous failed import of the same node.
+	 *
+	 * @param context  The update context.
+	 * @param phase    The import phase.
+	 * @param location The location. May be <code>null</code>.
+	 * @return <code>true</code> when the given unit has been completed.
+	 */
+	protected boolean isCompleted(final AbstractUpdateContext context, final String phase, final String location) {
+		return context.getCheckpoints().contains(AbstractUpdateContext.toCheckpoint(phase, location));
+	}
+
+	/**
+	 * When the given unit has been completed by a previous failed import, account it as a step and record its location
+	 * to exclude the related retired prices from the purge.
+	 *
+	 * @param context  The update context.
+	 * @param phase    The import phase.
+	 * @param location The location. May be <code>null</code>.
+	 * @return <code>true</code> when the given unit has been completed and must be skipped.
 	 */
-	private void nextStep(final Node node, final String phase, final String location, final int step) {
-		log.info("Next step node={}, phase={}, region={}, step={}", node.getId(), phase, location, step);
-		importCatalogResource.nextStep(node.getId(), t -> {
-			importCatalogResource.updateStats(t);
+	protected boolean skipCompleted(final AbstractUpdateContext context, final String phase, final String location) {
+		if (!isCompleted(context, phase, location)) {
+			return false;
+		}
+		context.getSkippedLocations().add(Objects.toString(location, ""));
+		nextStep(context, phase, location, 1);
+		return true;
+	}
+
+	/**
+	 * Record the given unit as completed. The staged prices are written before. The checkpoint is written in its own
+	 * transaction, see {@link ImportCatalogResource#complete(String, String, String)}.
+	 *
+	 * @param context  The update context.
+	 * @param phase    The import phase.
+	 * @param location The location. May be <code>null</code>.
+	 */
+	protected void complete(final AbstractUpdateContext context, final String phase, final String location) {
+		flushStage(context);
+		importCatalogResource.complete(context.getNode().getId(), phase, location);
+		context.getCheckpoints().add(AbstractUpdateContext.toCheckpoint(phase, location));
+	}
+
+	/**
+	 * Called once the import of the context's node finishes, see
+	 * {@link ImportCatalogResource#onEndImport(String, Consumer)}. When succeeded, the remaining staged prices and
+	 * changes are written. The last progress, including the purge counters, is always written.
+	 *
+	 * @param context The update context.
+	 * @param succeed When <code>true</code>, the import succeeded.
+	 */
+	protected void endImport(final AbstractUpdateContext context, final boolean succeed) {
+		if (succeed) {
+			flushStage(context);
+			context.getChanges().flush();
+		}
+		flushProgress(context);
+	}
+
+	/**
+	 * Write the in-memory progress to the import status. The catalog statistics are fully counted only at the first
+	 * write of this import, and are then maintained incrementally. Called from the import thread only: the work units
+	 * are parsed concurrently but persisted and accounted by the calling thread, see {@link ImportPipeline}.
+	 *
+	 * @param context The update context.
+	 */
+	protected void flushProgress(final AbstractUpdateContext context) {
+		final var progress = context.getProgress();
+		importCatalogResource.nextStep(context.getNode().getId(), t -> {
+			if (!progress.isCounted()) {
+				importCatalogResource.updateStats(t);
+			}
+			progress.apply(t, System.currentTimeMillis());
 			t.setWorkload(getWorkload(t));
-			t.setDone(t.getDone() + step);
-			t.setPhase(phase);
-			t.setLocation(location);
 		});
 	}
 
@@ -483,7 +693,19 @@ public abstract class AbstractImportCatalogResource {
 			final Consumer<P> persister) {
 		final var newCostR = round3Decimals(newCost);
 		if (context.isForce() || (price.isNew() && !em.contains(price)) || oldCost != newCostR) {
+			final var oldCo2 = price.getCo2();
 			updateCost.accept(newCostR, newCost);
+			if (price.isNew()) {
+				if (context.getStage() == null) {
+					added(context, price, newCostR);
+				} else {
+					// Accounted once, when written
+					context.getStage().added(price, newCostR);
+				}
+			} else if (oldCost != newCostR) {
+				context.getChanges().add(CatalogChangeType.REPRICED, toResourceType(price), price.getCode(), oldCost,
+						newCostR, oldCo2, price.getCo2());
+			}
 			persister.accept(price);
 		}
 		return price;
@@ -508,7 +730,7 @@ public abstract class AbstractImportCatalogResource {
 			price.setCost(cR);
 			price.setCostPeriod(round3Decimals(c * Math.max(1, price.getTerm().getPeriod())));
 			setCo2(context, price);
-		}, repository::save);
+		}, p -> persist(context, repository, p));
 	}
 
 	private String newCarbonData(final DoubleUnaryOperator converter, final double... watt) {
@@ -588,38 +810,16 @@ public abstract class AbstractImportCatalogResource {
 	}
 
 	/**
-	 * Return the kW.h to equivalent CO2g/W.h depending on the location.
+	 * Return the kW.h to equivalent CO2g/W.h depending on the location. When several regions match the location, the
+	 * smallest region code is used, see {@link Co2RegionMatcher}.
 	 * 
 	 * @param context  The current context holding the CO2 data set
 	 * @param location Te target location.
 	 * @return the kW.h to equivalent CO2g/W.h depending on the location.
 	 */
 	protected double toConversion(final AbstractUpdateContext context, final String location) {
-		final var mapping = context.getCo2RegionDataSet();
-		final var data = mapping.computeIfAbsent(location, l -> {
-			final var fragments = StringUtils.split(l + "._", ".-");
-			final var rawMatch = new String[] { l, fragments[0] + "-" + fragments[1], fragments[0] + "." + fragments[1],
-					fragments[0] };
-			var match = Arrays.stream(rawMatch).filter(mapping::containsKey).findFirst().orElse(null);
-			if (match == null) {
-				match = Arrays.stream(rawMatch).map(this::toPattern)
-						.map(p -> mapping.keySet().stream().filter(p.asMatchPredicate()).findFirst().orElse(null))
-						.filter(Objects::nonNull).findFirst().orElse(null);
-				if (match == null) {
-					log.warn("No regional CO2 for region {}", location);
-					return new Co2RegionData();
-				}
-			}
-			log.info("No perfect regional CO2 for region {}, using {}", location, match);
-			return mapping.get(match);
-		});
-
+		final var data = context.getCo2RegionMatcher().resolve(location);
 		return data.getPue() * data.getGPerKWH() / 1000d; // kW.h to W.h
-
-	}
-
-	private Pattern toPattern(final String regular) {
-		return Pattern.compile(Strings.CS.replace(regular, ".", "\\.") + ".*");
 	}
 
 	/**
@@ -662,7 +862,7 @@ public abstract class AbstractImportCatalogResource {
 	protected <T extends AbstractCodedEntity, P extends AbstractPrice<T>> P saveAsNeeded(final AbstractUpdateContext context,
 			final P entity, final double newCost, final RestRepository<P, Integer> repository) {
 		return saveAsNeeded(context, entity, entity.getCost(), newCost, (cR, c) -> entity.setCost(cR),
-				repository::save);
+				p -> persist(context, repository, p));
 	}
 
 	/**
@@ -677,7 +877,93 @@ public abstract class AbstractImportCatalogResource {
 	protected ProvStoragePrice saveAsNeeded(final AbstractUpdateContext context, final ProvStoragePrice entity,
 			final double newCostGb, final RestRepository<ProvStoragePrice, Integer> repository) {
 		return saveAsNeededInternal(context, entity, entity.getCostGb(), newCostGb, (cR, c) -> entity.setCostGb(cR),
-				repository::save);
+				p -> persist(context, repository, p));
+	}
+
+	/**
+	 * Start the change set of a new import run, and delete the changes of the older runs beyond the retention.
+	 *
+	 * @param node The imported node.
+	 * @return The change set of the new import run.
+	 */
+	private ImportChangeSet newChangeSet(final Node node) {
+		final var keep = Math.max(1, configuration.get(CONF_IMPORT_CHANGES, DEFAULT_IMPORT_CHANGES));
+		final var runs = changeRepository.findAllRuns(node.getId());
+		if (runs.size() >= keep) {
+			// The new run is kept with the most recent previous ones
+			changeRepository.deleteOlder(node.getId(), keep > 1 ? runs.get(keep - 2) : Long.MAX_VALUE);
+		}
+		// Two runs of the same node never share the same identifier
+		final var run = Math.max(System.currentTimeMillis(), runs.isEmpty() ? 0 : runs.getFirst() + 1);
+		return new ImportChangeSet(node, run, changeRepository::saveAll);
+	}
+
+	/**
+	 * Return the resource type of a price.
+	 *
+	 * @param price The catalog price.
+	 * @return The resource type of the given price.
+	 */
+	protected ResourceType toResourceType(final AbstractPrice<?> price) {
+		return switch (price) {
+		case ProvInstancePrice p -> ResourceType.INSTANCE;
+		case ProvDatabasePrice p -> ResourceType.DATABASE;
+		case ProvContainerPrice p -> ResourceType.CONTAINER;
+		case ProvFunctionPrice p -> ResourceType.FUNCTION;
+		case ProvStoragePrice p -> ResourceType.STORAGE;
+		default -> ResourceType.SUPPORT;
+		};
+	}
+
+	/**
+	 * Persist a changed price. When the staged import mode is enabled, the price is staged and the stage is written
+	 * when its batch size is reached. Otherwise, the price is immediately saved.
+	 *
+	 * @param <P>        The price type.
+	 * @param context    The update context.
+	 * @param repository The repository used to persist the price.
+	 * @param price      The changed price to persist.
+	 */
+	protected <P> void persist(final AbstractUpdateContext context, final JpaRepository<P, Integer> repository,
+			final P price) {
+		final var stage = context.getStage();
+		if (stage == null) {
+			repository.save(price);
+		} else if (stage.add(repository, price)) {
+			flushStage(context);
+		}
+	}
+
+	/**
+	 * Account a new price: in the progress and in the price changes.
+	 *
+	 * @param context The update context.
+	 * @param price   The new price.
+	 * @param cost    The new rounded cost.
+	 */
+	private void added(final AbstractUpdateContext context, final AbstractPrice<?> price, final double cost) {
+		context.getProgress().addPrice(price.getCo2() > 0);
+		context.getChanges().add(CatalogChangeType.ADDED, toResourceType(price), price.getCode(), null, cost, null,
+				price.getCo2());
+	}
+
+	/**
+	 * Write the staged prices as a single batch, see {@link ImportStageWriter}. The new prices are accounted once
+	 * written. Nothing is done when the staged import mode is disabled.
+	 *
+	 * @param context The update context.
+	 */
+	protected void flushStage(final AbstractUpdateContext context) {
+		final var stage = context.getStage();
+		if (stage == null) {
+			return;
+		}
+		final var batch = stage.drain();
+		if (batch.isEmpty()) {
+			return;
+		}
+		stageWriter.write(batch.entities(), stage.getBatchSize());
+		batch.added().forEach((price, cost) -> added(context, price, cost));
 	}
 
 	/**
@@ -707,7 +993,12 @@ public abstract class AbstractImportCatalogResource {
 	 */
 	protected <T extends AbstractCodedEntity> T copyAsNeeded(final AbstractUpdateContext context,
 			final T entity, Consumer<T> updater, final BaseProvTypeRepository<T> repository) {
-		return syncAdd(context.getMergedTypes(), entity.getCode(), updater, entity, repository);
+		return syncAdd(context.getMergedTypes(), entity.getCode(), t -> {
+			if (t.isNew()) {
+				context.getProgress().addTypes(1);
+			}
+			updater.accept(t);
+		}, entity, repository);
 	}
 
 	/**
@@ -794,7 +1085,12 @@ public abstract class AbstractImportCatalogResource {
 	 */
 	protected ProvLocation copyAsNeeded(final AbstractUpdateContext context, final ProvLocation entity,
 			final Consumer<ProvLocation> updater) {
-		return syncAdd(context.getMergedLocations(), entity.getName(), updater, entity, locationRepository);
+		return syncAdd(context.getMergedLocations(), entity.getName(), l -> {
+			if (l.isNew()) {
+				context.getProgress().addLocations(1);
+			}
+			updater.accept(l);
+		}, entity, locationRepository);
 	}
 
 	/**
@@ -825,13 +1121,17 @@ public abstract class AbstractImportCatalogResource {
 	}
 
 	/**
-	 * Remove the prices that were present in the catalog and not seen in the new catalog with this update.
+	 * Remove the prices that were present in the catalog and not seen in the new catalog with this update. The retired
+	 * prices are deleted with set-based statements, one per chunk of {@value #PURGE_CHUNK} identifiers sorted by
+	 * identifier, and only when they are not used by a quote. The retained prices are then resolved with a single query
+	 * of the used price codes, only when some prices are retained. The deleted and retained counts are added to the
+	 * import progress.
 	 *
 	 * @param context      The update context.
 	 * @param storedPrices The whole price context in the database. Some of them have not been seen in the new catalog.
 	 *                     Key is the price code.
-	 * @param pRepository  The price repository used to clean the deprecated and unused prices.
-	 * @param qRepository  The quote repository to check for unused prices.
+	 * @param pRepository  The price repository. Not used since the purge is set-based, kept for the compatibility.
+	 * @param qRepository  The quote repository used to delete the unused prices.
 	 * @param <T>          The instance type.
 	 * @param <P>          The price type.
 	 * @param <Q>          The quote type.
@@ -839,15 +1139,52 @@ public abstract class AbstractImportCatalogResource {
 	protected <T extends AbstractCodedEntity, P extends AbstractPrice<T>, Q extends AbstractQuote<P>> void purgePrices(
 			final AbstractUpdateContext context, final Map<String, P> storedPrices,
 			final CrudRepository<P, Integer> pRepository, final BaseProvQuoteRepository<Q> qRepository) {
-		final var retiredCodes = new HashSet<>(storedPrices.keySet());
-		retiredCodes.removeAll(context.getPrices());
-		if (!retiredCodes.isEmpty()) {
-			final var nbRetiredCodes = retiredCodes.size();
-			retiredCodes.removeAll(qRepository.findUsedPrices(context.getNode().getId()));
-			log.info("Purging {} unused of {} retired catalog prices ...", retiredCodes.size(), nbRetiredCodes);
-			retiredCodes.stream().map(storedPrices::get).forEach(pRepository::delete);
-			log.info("Code purged");
-			storedPrices.keySet().removeAll(retiredCodes);
+		// Staged prices must be written before the retired ones are computed
+		flushStage(context);
+		context.getChanges().flush();
+		final var skipped = context.getSkippedLocations();
+		if (skipped.contains("")) {
+			log.info("Purge of retired catalog prices is skipped, some resumed units have no location");
+			return;
+		}
+		// The prices of the resumed units have not been read, they are not retired
+		final var retired = storedPrices.entrySet().stream().filter(e -> !context.getPrices().contains(e.getKey()))
+				.map(Map.Entry::getValue)
+				.filter(p -> skipped.isEmpty() || p.getLocation() == null
+						|| !skipped.contains(p.getLocation().getName()))
+				.toList();
+		final var retiredIds = retired.stream().map(AbstractPrice::getId).filter(Objects::nonNull).sorted().toList();
+		if (retiredIds.isEmpty()) {
+			return;
 		}
+		retired.stream().filter(p -> p.getId() != null)
+				.forEach(p -> context.getChanges().add(CatalogChangeType.REMOVED, toResourceType(p), p.getCode(),
+						p instanceof ProvStoragePrice sp ? sp.getCostGb() : p.getCost(), null, p.getCo2(), null));
+		context.getChanges().flush();
+		log.info("Purging unused of {} retired catalog prices ...", retiredIds.size());
+		var purged = 0;
+		for (var i = 0; i < retiredIds.size(); i += PURGE_CHUNK) {
+			final var chunk = retiredIds.subList(i, Math.min(i + PURGE_CHUNK, retiredIds.size()));
+			purged += qRepository.deleteUnusedPrices(chunk.getFirst(), chunk.getLast(), chunk);
+		}
+		final var nbPurged = purged;
+		final var nbRetained = retiredIds.size() - purged;
+		log.info("Code purged: {} deleted, {} retained", nbPurged, nbRetained);
+
+		// The deleted prices are no more managed nor available for the next phases
+		final var used = nbRetained == 0 ? Set.<String>of()
+				: new HashSet<>(qRepository.findUsedPrices(context.getNode().getId()));
+		final var purgedIds = retired.stream().filter(p -> p.getId() != null && !used.contains(p.getCode()))
+				.map(AbstractPrice::getId).collect(Collectors.toSet());
+		storedPrices.values().removeIf(p -> {
+			if (purgedIds.contains(p.getId())) {
+				if (em.contains(p)) {
+					em.detach(p);
+				}
+				return true;
+			}
+			return false;
+		});
+		context.getProgress().addPurged(nbPurged, nbRetained);
 	}
 }
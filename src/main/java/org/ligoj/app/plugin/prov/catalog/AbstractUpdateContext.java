@@ -3,6 +3,7 @@
  */
 package org.ligoj.app.plugin.prov.catalog;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -83,7 +84,7 @@ public abstract class AbstractUpdateContext {
 	/**
 	 * The read catalog price codes: codes having been read from the catalog and persisted.
 	 */
-	private final Set<String> prices = new HashSet<>();
+	private final Set<String> prices = ConcurrentHashMap.newKeySet();
 
 	/**
 	 * The previous installed Database prices. Key is the code.
@@ -193,10 +194,49 @@ public abstract class AbstractUpdateContext {
 	private Map<String, Co2Data> co2DataSet = new ConcurrentHashMap<>();
 
 	/**
-	 * Regional CO2 data set.
+	 * Regional CO2 data set. The regions added or removed in place are detected by the matcher, a full reload should
+	 * use {@link #setCo2RegionDataSet(Map)}.
 	 */
 	private Map<String, Co2RegionData> co2RegionDataSet = new ConcurrentHashMap<>();
 
+	/**
+	 * Regional CO2 matcher built from {@link #co2RegionDataSet}.
+	 */
+	@Getter(AccessLevel.NONE)
+	private volatile Co2RegionMatcher co2RegionMatcher;
+
+	/**
+	 * The staging area of the changed prices. When <code>null</code>, the staged import mode is disabled and the
+	 * changed prices are persisted one by one.
+	 */
+	@Setter
+	private ImportStage stage;
+
+	/**
+	 * The in-memory progress of this import. By default, each step is written.
+	 */
+	@Setter
+	private ImportProgress progress = new ImportProgress(0);
+
+	/**
+	 * The units completed by a previous failed import of this node, as built by {@link #toCheckpoint(String, String)}.
+	 */
+	private Set<String> checkpoints = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The locations of the units skipped during this import because they were already completed. An empty string
+	 * stands for a skipped unit without location.
+	 */
+	private Set<String> skippedLocations = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The price changes of this import run. By default, the changes are not written.
+	 */
+	@Setter
+	private ImportChangeSet changes = new ImportChangeSet(null, 0, c -> {
+		// Not recorded
+	});
+
 	protected AbstractUpdateContext(AbstractUpdateContext parent) {
 		this();
 		setForce(parent.isForce());
@@ -218,6 +258,55 @@ public abstract class AbstractUpdateContext {
 		this.mapRegionById = parent.getMapRegionById();
 		this.co2DataSet = parent.getCo2DataSet();
 		this.co2RegionDataSet = parent.getCo2RegionDataSet();
+		this.co2RegionMatcher = parent.co2RegionMatcher;
+		this.stage = parent.getStage();
+		this.progress = parent.getProgress();
+		this.checkpoints = parent.getCheckpoints();
+		this.skippedLocations = parent.getSkippedLocations();
+		this.changes = parent.getChanges();
+	}
+
+	/**
+	 * Return the regional CO2 matcher, built once from the regional CO2 data set, and built again only when this data
+	 * set has been updated.
+	 *
+	 * @return The regional CO2 matcher.
+	 */
+	public Co2RegionMatcher getCo2RegionMatcher() {
+		var matcher = co2RegionMatcher;
+		if (matcher == null || matcher.isStale()) {
+			synchronized (this) {
+				matcher = co2RegionMatcher;
+				if (matcher == null || matcher.isStale()) {
+					matcher = new Co2RegionMatcher(co2RegionDataSet);
+					co2RegionMatcher = matcher;
+				}
+			}
+		}
+		return matcher;
+	}
+
+	/**
+	 * Replace the regional CO2 data set. The regional CO2 matcher is built again at the next resolution.
+	 *
+	 * @param co2RegionDataSet The new regional CO2 data set. Key is the region code.
+	 */
+	public void setCo2RegionDataSet(final Map<String, Co2RegionData> co2RegionDataSet) {
+		synchronized (this) {
+			this.co2RegionDataSet = co2RegionDataSet;
+			this.co2RegionMatcher = null;
+		}
+	}
+
+	/**
+	 * Return the key of a completed unit.
+	 *
+	 * @param phase    The import phase.
+	 * @param location The location. May be <code>null</code>.
+	 * @return The key of a completed unit.
+	 */
+	public static String toCheckpoint(final String phase, final String location) {
+		return phase + "|" + Objects.toString(location, "");
 	}
 
 	/**
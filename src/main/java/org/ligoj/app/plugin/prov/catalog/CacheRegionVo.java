@@ -0,0 +1,40 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The statistics of a cache region.
+ */
+@Getter
+@Setter
+public class CacheRegionVo {
+
+	/**
+	 * The region name: the entity name, or "query" for the query results.
+	 */
+	private String name;
+
+	/**
+	 * The amount of hits.
+	 */
+	private long hits;
+
+	/**
+	 * The amount of misses.
+	 */
+	private long misses;
+
+	/**
+	 * The amount of puts.
+	 */
+	private long puts;
+
+	/**
+	 * The hit ratio, from <code>0</code> to <code>1</code>. <code>0</code> when the region has never been read.
+	 */
+	private double hitRatio;
+}
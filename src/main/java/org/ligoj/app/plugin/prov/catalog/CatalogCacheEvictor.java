@@ -0,0 +1,77 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.ligoj.app.plugin.prov.dao.NodeCacheKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Node scoped eviction of the catalog caches. Only the entries of the updated node and its sub nodes are evicted, the
+ * lookups of the other providers stay warm. The second-level cache of the catalog entities is evicted by region, see
+ * {@link CatalogEntityCache}.
+ */
+@Slf4j
+@Component
+public class CatalogCacheEvictor {
+
+	/**
+	 * The catalog caches. Their keys are {@link NodeCacheKey}.
+	 */
+	public static final List<String> CACHES = List.of("prov-instance-license", "prov-container-license",
+			"prov-instance-software", "prov-instance-os", "prov-container-os", "prov-processor", "prov-instance-type",
+			"prov-instance-type-dyn", "prov-instance-type-has-dyn", "prov-container-type", "prov-container-type-dyn",
+			"prov-container-type-has-dyn", "prov-location", "prov-database-type", "prov-database-type-dyn",
+			"prov-database-type-has-dyn", "prov-database-engine", "prov-database-edition", "prov-database-license",
+			"prov-instance-term", "prov-function-type", "prov-function-type-dyn", "prov-function-type-has-dyn",
+			"prov-instance-has-co2", "prov-function-has-co2", "prov-container-has-co2", "prov-database-has-co2",
+			"prov-architecture");
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private CatalogEntityCache entityCache;
+
+	/**
+	 * Evict the catalog cache entries of the given node, and its cached entities.
+	 *
+	 * @param node The updated catalog node.
+	 * @return The amount of evicted cache entries, not including the cached entities.
+	 */
+	public int evict(final String node) {
+		final var evicted = CACHES.stream().mapToInt(c -> evict(c, node)).sum();
+		log.info("Evicted {} catalog cache entries of {}", evicted, node);
+		entityCache.evict(node);
+		return evicted;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int evict(final String name, final String node) {
+		final var cache = cacheManager.getCache(name);
+		if (cache == null) {
+			return 0;
+		}
+		if (cache.getNativeCache() instanceof javax.cache.Cache<?, ?> nativeCache) {
+			final var keys = new HashSet<Object>();
+			nativeCache.forEach(e -> {
+				if (e.getKey() instanceof NodeCacheKey key && key.isNode(node)) {
+					keys.add(key);
+				}
+			});
+			((javax.cache.Cache<Object, ?>) nativeCache).removeAll(keys);
+			return keys.size();
+		}
+
+		// Not iterable cache, fallback to the full eviction
+		cache.clear();
+		return 0;
+	}
+}
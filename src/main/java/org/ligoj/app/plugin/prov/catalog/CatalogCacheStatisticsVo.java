@@ -0,0 +1,32 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The second-level cache statistics of the catalog entities.
+ */
+@Getter
+@Setter
+public class CatalogCacheStatisticsVo {
+
+	/**
+	 * When <code>true</code>, the second-level cache is enabled by the persistence unit.
+	 */
+	private boolean enabled;
+
+	/**
+	 * When <code>true</code>, the statistics are collected. Otherwise, all counters are <code>0</code>.
+	 */
+	private boolean statistics;
+
+	/**
+	 * The catalog entity regions, then the query results region.
+	 */
+	private List<CacheRegionVo> regions;
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.EnumUtils;
+import org.ligoj.app.plugin.prov.AbstractProvQuoteVmResource;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.dao.BaseProvInstanceTypeRepository;
+import org.ligoj.app.plugin.prov.dao.ProvContainerPriceRepository;
+import org.ligoj.app.plugin.prov.dao.ProvContainerTypeRepository;
+import org.ligoj.app.plugin.prov.dao.ProvDatabasePriceRepository;
+import org.ligoj.app.plugin.prov.dao.ProvDatabaseTypeRepository;
+import org.ligoj.app.plugin.prov.dao.ProvFunctionTypeRepository;
+import org.ligoj.app.plugin.prov.dao.ProvInstancePriceRepository;
+import org.ligoj.app.plugin.prov.dao.ProvInstancePriceTermRepository;
+import org.ligoj.app.plugin.prov.dao.ProvInstanceTypeRepository;
+import org.ligoj.app.plugin.prov.dao.ProvLocationRepository;
+import org.ligoj.app.plugin.prov.dao.ProvUsageRepository;
+import org.ligoj.app.plugin.prov.model.ProvUsage;
+import org.ligoj.app.plugin.prov.model.VmOs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pre-populate the catalog caches of a node after its import, so the first lookups do not pay the cold cache costs.
+ * The node independent lookups are warmed, then the location resolutions, then the valid terms of the default usage
+ * and of all the usages of the quotes related to this node.
+ */
+@Slf4j
+@Component
+public class CatalogCacheWarmer {
+
+	/**
+	 * Maximal period used by the wider lookup.
+	 */
+	private static final int WIDE_PERIOD = 10000;
+
+	/**
+	 * The term filters of a lookup.
+	 */
+	private record TermProfile(boolean convOs, boolean convEngine, boolean convType, boolean convFamily,
+			boolean convLocation, boolean reservation, int maxPeriod) {
+	}
+
+	@Autowired
+	private ProvResource resource;
+
+	@Autowired
+	private ProvLocationRepository locationRepository;
+
+	@Autowired
+	private ProvUsageRepository usageRepository;
+
+	@Autowired
+	private ProvInstancePriceTermRepository iptRepository;
+
+	@Autowired
+	private ProvInstancePriceRepository ipRepository;
+
+	@Autowired
+	private ProvContainerPriceRepository cpRepository;
+
+	@Autowired
+	private ProvDatabasePriceRepository bpRepository;
+
+	@Autowired
+	private ProvInstanceTypeRepository itRepository;
+
+	@Autowired
+	private ProvContainerTypeRepository ctRepository;
+
+	@Autowired
+	private ProvDatabaseTypeRepository btRepository;
+
+	@Autowired
+	private ProvFunctionTypeRepository ftRepository;
+
+	/**
+	 * Warm up the catalog caches of the given node.
+	 *
+	 * @param node The imported node.
+	 * @return The amount of warmed lookups.
+	 */
+	public int warmUp(final String node) {
+		final var start = System.currentTimeMillis();
+		var lookups = warmUpNode(node);
+		lookups += warmUpLocations(node);
+		lookups += warmUpTerms(node);
+		log.info("Warmed {} catalog lookups of {} in {}ms", lookups, node, System.currentTimeMillis() - start);
+		return lookups;
+	}
+
+	/**
+	 * Warm up the lookups depending only on the node.
+	 */
+	private int warmUpNode(final String node) {
+		resource.findProcessors(node);
+		resource.findArchitectures(node);
+		var lookups = 5; // Including the OS and engine lookups
+		for (final BaseProvInstanceTypeRepository<?> repository : List.of(itRepository, ctRepository, btRepository,
+				ftRepository)) {
+			repository.hasDynamicalTypes(node);
+			repository.hasCo2Data(node);
+			lookups += 2;
+		}
+		for (final var os : toOs(ipRepository.findAllOs(node))) {
+			ipRepository.findAllLicenses(node, os);
+			ipRepository.findAllSoftwareNames(node, os);
+			lookups += 2;
+		}
+		for (final var os : toOs(cpRepository.findAllOs(node))) {
+			cpRepository.findAllLicenses(node, os);
+			lookups++;
+		}
+		for (final var engine : bpRepository.findAllEngines(node)) {
+			bpRepository.findAllLicenses(node, engine);
+			bpRepository.findAllEditions(node, engine);
+			lookups += 2;
+		}
+		return lookups;
+	}
+
+	private List<VmOs> toOs(final List<String> names) {
+		return names.stream().map(o -> EnumUtils.getEnumIgnoreCase(VmOs.class, o)).filter(Objects::nonNull).toList();
+	}
+
+	/**
+	 * Warm up the location resolutions and the location entities.
+	 */
+	private int warmUpLocations(final String node) {
+		final var locations = locationRepository.findAll(node);
+		locations.forEach(l -> locationRepository.toId(node, l.getName()));
+		return locations.size();
+	}
+
+	/**
+	 * Warm up the valid terms of the default usage and the usages related to this node, for the first and the wider
+	 * lookups, without ephemeral nor initial cost.
+	 */
+	private int warmUpTerms(final String node) {
+		final var usages = new ArrayList<ProvUsage>();
+		usages.add(AbstractProvQuoteVmResource.USAGE_DEFAULT);
+		usages.addAll(usageRepository.findAllByNode(node));
+		final Set<TermProfile> profiles = new HashSet<>();
+		for (final var usage : usages) {
+			final var convOs = BooleanUtils.toBoolean(usage.getConvertibleOs());
+			final var convEngine = BooleanUtils.toBoolean(usage.getConvertibleEngine());
+			final var convType = BooleanUtils.toBoolean(usage.getConvertibleType());
+			final var convFamily = BooleanUtils.toBoolean(usage.getConvertibleFamily());
+			final var convLocation = BooleanUtils.toBoolean(usage.getConvertibleLocation());
+			final var reservation = BooleanUtils.toBoolean(usage.getReservation());
+			final var maxPeriod = (int) Math.ceil(usage.getDuration() * usage.getRate() / 100d) + 12;
+			for (final var period : new int[] { maxPeriod, WIDE_PERIOD }) {
+				// Instance, container and function profile, then database profile
+				profiles.add(new TermProfile(convOs, false, convType, convFamily, convLocation, reservation, period));
+				profiles.add(
+						new TermProfile(false, convEngine, convType, convFamily, convLocation, reservation, period));
+			}
+		}
+		profiles.forEach(p -> iptRepository.findValidTerms(node, p.convOs(), p.convEngine(), p.convType(),
+				p.convFamily(), p.convLocation(), p.reservation(), p.maxPeriod(), false, false));
+		return profiles.size();
+	}
+}
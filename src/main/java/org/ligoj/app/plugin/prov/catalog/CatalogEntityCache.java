@@ -0,0 +1,115 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceContextType;
+
+import org.hibernate.SessionFactory;
+import org.ligoj.app.plugin.prov.model.ProvContainerPrice;
+import org.ligoj.app.plugin.prov.model.ProvContainerType;
+import org.ligoj.app.plugin.prov.model.ProvDatabasePrice;
+import org.ligoj.app.plugin.prov.model.ProvDatabaseType;
+import org.ligoj.app.plugin.prov.model.ProvFunctionPrice;
+import org.ligoj.app.plugin.prov.model.ProvFunctionType;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
+import org.ligoj.app.plugin.prov.model.ProvInstanceType;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.ProvStoragePrice;
+import org.ligoj.app.plugin.prov.model.ProvStorageType;
+import org.ligoj.app.plugin.prov.model.ProvSupportPrice;
+import org.ligoj.app.plugin.prov.model.ProvSupportType;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Second-level cache of the catalog entities. The catalog entities only change during an import, their cached state
+ * is shared by all sessions, and so by all lookups and quote fetches. The query results of the hot catalog finders are
+ * cached as well. The cache is available only when the persistence unit enables it, otherwise nothing is done.
+ */
+@Slf4j
+@Component
+public class CatalogEntityCache {
+
+	/**
+	 * The cached catalog entities.
+	 */
+	private static final List<Class<?>> ENTITIES = List.of(ProvLocation.class, ProvInstancePriceTerm.class,
+			ProvInstanceType.class, ProvDatabaseType.class, ProvContainerType.class, ProvFunctionType.class,
+			ProvStorageType.class, ProvSupportType.class, ProvInstancePrice.class, ProvDatabasePrice.class,
+			ProvContainerPrice.class, ProvFunctionPrice.class, ProvStoragePrice.class, ProvSupportPrice.class);
+
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION, unitName = "pu")
+	private EntityManager em;
+
+	private SessionFactory getSessionFactory() {
+		return em.getEntityManagerFactory().unwrap(SessionFactory.class);
+	}
+
+	/**
+	 * Indicate the second-level cache is enabled by the persistence unit.
+	 *
+	 * @return <code>true</code> when the second-level cache is enabled.
+	 */
+	public boolean isEnabled() {
+		return getSessionFactory().getSessionFactoryOptions().isSecondLevelCacheEnabled();
+	}
+
+	/**
+	 * Evict the cached catalog entities, and the cached query results. The whole region of each catalog entity is
+	 * evicted: the identifiers of the node are not resolved, since there are millions of them for the largest
+	 * providers, and the bulk statements of the import already invalidate these regions.
+	 *
+	 * @param node The updated catalog node.
+	 * @return The amount of evicted entity regions.
+	 */
+	public int evict(final String node) {
+		if (!isEnabled()) {
+			return 0;
+		}
+		final var cache = em.getEntityManagerFactory().getCache();
+		ENTITIES.forEach(cache::evict);
+		getSessionFactory().getCache().evictDefaultQueryRegion();
+		log.info("Evicted {} cached catalog entity regions after the update of {}", ENTITIES.size(), node);
+		return ENTITIES.size();
+	}
+
+	/**
+	 * Return the cache statistics of the catalog entities and of the query results.
+	 *
+	 * @return The cache statistics.
+	 */
+	public CatalogCacheStatisticsVo getStatistics() {
+		final var statistics = getSessionFactory().getStatistics();
+		final var regions = new ArrayList<CacheRegionVo>();
+		for (final var cached : ENTITIES) {
+			final var entity = statistics.getEntityStatistics(cached.getName());
+			regions.add(newRegion(cached.getSimpleName(), entity.getCacheHitCount(), entity.getCacheMissCount(),
+					entity.getCachePutCount()));
+		}
+		regions.add(newRegion("query", statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(),
+				statistics.getQueryCachePutCount()));
+		final var vo = new CatalogCacheStatisticsVo();
+		vo.setEnabled(isEnabled());
+		vo.setStatistics(statistics.isStatisticsEnabled());
+		vo.setRegions(regions);
+		return vo;
+	}
+
+	private CacheRegionVo newRegion(final String name, final long hits, final long misses, final long puts) {
+		final var region = new CacheRegionVo();
+		region.setName(name);
+		region.setHits(hits);
+		region.setMisses(misses);
+		region.setPuts(puts);
+		region.setHitRatio(hits + misses == 0 ? 0d : (double) hits / (hits + misses));
+		return region;
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.transaction.Transactional;
+
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogChangeRepository;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogStatusRepository;
+import org.ligoj.app.plugin.prov.model.CatalogChangeType;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Re-price the quotes impacted by the price changes of an import run, see {@link ImportChangeSet}. The quotes using a
+ * removed price are refreshed, so a new price is looked up. The quotes using a repriced price get their cost updated
+ * with the same resources. The added prices do not impact the existing quotes.
+ * <p>
+ * The quotes are re-priced in background, by throttled batches, and all nodes share the same bounded pool. The
+ * progress is written in the {@link org.ligoj.app.plugin.prov.model.ImportCatalogStatus} of the node.
+ */
+@Slf4j
+@Component
+public class CatalogQuoteRepricer {
+
+	/**
+	 * Configuration key used for the maximal amount of nodes whose quotes are re-priced at the same time.
+	 */
+	public static final String CONF_REPRICE_CONCURRENCY = ProvResource.SERVICE_KEY + ":reprice-concurrency";
+
+	/**
+	 * Configuration key used for the amount of quotes re-priced between two pauses.
+	 */
+	public static final String CONF_REPRICE_BATCH = ProvResource.SERVICE_KEY + ":reprice-batch";
+
+	/**
+	 * Configuration key used for the pause duration between two batches, in milliseconds.
+	 */
+	public static final String CONF_REPRICE_DELAY = ProvResource.SERVICE_KEY + ":reprice-delay";
+
+	/**
+	 * Default amount of quotes re-priced between two pauses.
+	 */
+	public static final int DEFAULT_REPRICE_BATCH = 20;
+
+	/**
+	 * Default pause duration between two batches, in milliseconds.
+	 */
+	public static final int DEFAULT_REPRICE_DELAY = 200;
+
+	private static final String BY_NODE = "locked.id";
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private ProvResource resource;
+
+	@Autowired
+	private ImportCatalogChangeRepository changeRepository;
+
+	@Autowired
+	private ImportCatalogStatusRepository taskRepository;
+
+	@Autowired
+	private SecurityHelper securityHelper;
+
+	@Autowired
+	private CatalogQuoteRepricer self;
+
+	/**
+	 * The shared re-pricing pool, created at the first use.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * The last scheduled re-pricing of each node.
+	 */
+	private final Map<String, Future<?>> running = new ConcurrentHashMap<>();
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.max(1, configuration.get(CONF_REPRICE_CONCURRENCY, 1)));
+		}
+		return executor;
+	}
+
+	/**
+	 * Release the re-pricing pool. The running re-pricing are interrupted.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Schedule the re-pricing of the quotes impacted by the last import run of the given node. The previous re-pricing
+	 * of this node, if still running, is cancelled. Asynchronous operation.
+	 *
+	 * @param node  The imported node.
+	 * @param start The start time of the import. When the last recorded run is older, the import has changed nothing.
+	 * @return The amount of impacted quotes.
+	 */
+	public int schedule(final String node, final Date start) {
+		final var runs = changeRepository.findAllRuns(node);
+		if (runs.isEmpty() || runs.getFirst() < start.getTime()) {
+			// No change
+			return 0;
+		}
+		final var subscriptions = self.start(node, runs.getFirst());
+		if (subscriptions.isEmpty()) {
+			return 0;
+		}
+		final var user = securityHelper.getLogin();
+		running.compute(node, (n, previous) -> {
+			if (previous != null) {
+				previous.cancel(true);
+			}
+			return getExecutor().submit(() -> {
+				securityHelper.setUserName(user);
+				reprice(node, subscriptions);
+			});
+		});
+		return subscriptions.size();
+	}
+
+	/**
+	 * Return the quotes impacted by an import run, and initialize the re-pricing progress of the node.
+	 *
+	 * @param node The imported node.
+	 * @param run  The import run.
+	 * @return The impacted subscriptions. The value is <code>true</code> when the quote must be refreshed, and
+	 *         <code>false</code> when its cost must be updated.
+	 */
+	@Transactional
+	public Map<Integer, Boolean> start(final String node, final long run) {
+		final var subscriptions = new LinkedHashMap<Integer, Boolean>();
+		final var removed = EnumSet.of(CatalogChangeType.REMOVED);
+		final var repriced = EnumSet.of(CatalogChangeType.REPRICED);
+		for (final var type : ResourceType.values()) {
+			final var repository = resource.getResource(type).getQiRepository();
+			repository.findImpactedSubscriptions(node, run, type, removed).forEach(s -> subscriptions.put(s, true));
+			repository.findImpactedSubscriptions(node, run, type, repriced)
+					.forEach(s -> subscriptions.putIfAbsent(s, false));
+		}
+		final var status = taskRepository.findBy(BY_NODE, node);
+		if (status != null) {
+			status.setNbImpactedQuotes(subscriptions.size());
+			status.setNbRepricedQuotes(0);
+			status.setNbRepricingFailures(0);
+			status.setRepricingEnd(subscriptions.isEmpty() ? new Date() : null);
+		}
+		log.info("Catalog update of {} impacts {} quotes", node, subscriptions.size());
+		return subscriptions;
+	}
+
+	/**
+	 * Re-price the given subscriptions by throttled batches. Synchronous operation. Each quote is re-priced in its
+	 * own transaction, a failure does not stop the next quotes.
+	 *
+	 * @param node          The imported node.
+	 * @param subscriptions The impacted subscriptions, as returned by {@link #start(String, long)}.
+	 */
+	public void reprice(final String node, final Map<Integer, Boolean> subscriptions) {
+		final var batch = Math.max(1, configuration.get(CONF_REPRICE_BATCH, DEFAULT_REPRICE_BATCH));
+		final var delay = configuration.get(CONF_REPRICE_DELAY, DEFAULT_REPRICE_DELAY);
+		final var entries = new ArrayList<>(subscriptions.entrySet());
+		var done = 0;
+		var failures = 0;
+		try {
+			for (var i = 0; i < entries.size(); i++) {
+				final var entry = entries.get(i);
+				if (reprice(entry.getKey(), entry.getValue())) {
+					done++;
+				} else {
+					failures++;
+				}
+				if ((i + 1) % batch == 0 && i + 1 < entries.size()) {
+					self.progress(node, done, failures, false);
+					Thread.sleep(delay);
+				}
+			}
+		} catch (final InterruptedException e) {
+			log.info("Re-pricing of the quotes of {} is interrupted", node);
+			Thread.currentThread().interrupt();
+		} finally {
+			self.progress(node, done, failures, true);
+		}
+		log.info("Re-pricing of the quotes of {} is done: {} re-priced, {} failed", node, done, failures);
+	}
+
+	private boolean reprice(final int subscription, final boolean refresh) {
+		try {
+			if (refresh) {
+				resource.refresh(subscription);
+			} else {
+				resource.updateCost(subscription);
+			}
+			return true;
+		} catch (final RuntimeException e) {
+			log.warn("Re-pricing of the quote of subscription {} failed", subscription, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Write the re-pricing progress of a node.
+	 *
+	 * @param node     The imported node.
+	 * @param done     The re-priced quotes.
+	 * @param failures The quotes whose re-pricing failed.
+	 * @param end      When <code>true</code>, the re-pricing is ended.
+	 */
+	@Transactional
+	public void progress(final String node, final int done, final int failures, final boolean end) {
+		final var status = taskRepository.findBy(BY_NODE, node);
+		if (status != null) {
+			status.setNbRepricedQuotes(done);
+			status.setNbRepricingFailures(failures);
+			if (end) {
+				status.setRepricingEnd(new Date());
+			}
+		}
+	}
+}
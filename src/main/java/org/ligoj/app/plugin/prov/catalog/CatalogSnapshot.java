@@ -0,0 +1,469 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+import org.ligoj.app.plugin.prov.model.AbstractCodedEntity;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+
+import lombok.Getter;
+
+/**
+ * Binary catalog snapshot format. A snapshot is a GZIP stream made of:
+ * <ul>
+ * <li>A header: magic number, format version, source node and catalog generation.</li>
+ * <li>Sections, one per entity class: the entity name, the columns (attribute name and kind), then the rows. A column
+ * value is a presence flag followed by the value. References to other entities are written with their business key:
+ * the name for the locations, the code for the other entities.</li>
+ * <li>An empty section name, then the CRC32 checksum of all the previous bytes.</li>
+ * </ul>
+ * The identifiers and the owner node are not written, so a snapshot can be loaded in any node.
+ */
+public final class CatalogSnapshot {
+
+	/**
+	 * Snapshot magic number.
+	 */
+	public static final int MAGIC = 0x4C475343;
+
+	/**
+	 * Current format version.
+	 */
+	public static final int VERSION = 1;
+
+	private static final int BUFFER = 1 << 16;
+
+	/**
+	 * Maximal length of a string, in bytes. A longer read length means a corrupted snapshot.
+	 */
+	private static final int MAX_STRING = 1 << 20;
+
+	/**
+	 * Maximal amount of columns of a section. A greater read amount means a corrupted snapshot.
+	 */
+	private static final int MAX_COLUMNS = 1 << 10;
+
+	private static final byte ROW = 1;
+
+	private static final byte END = 0;
+
+	/**
+	 * Column value kind.
+	 */
+	public enum Kind {
+		STRING, DOUBLE, INTEGER, LONG, BOOLEAN, ENUM, DATE, REFERENCE
+	}
+
+	/**
+	 * A column of a section.
+	 *
+	 * @param name The attribute name.
+	 * @param kind The value kind.
+	 */
+	public record Column(String name, Kind kind) {
+	}
+
+	/**
+	 * A snapshot attribute of an entity.
+	 *
+	 * @param name  The attribute name.
+	 * @param kind  The value kind.
+	 * @param type  The attribute type.
+	 * @param field The attribute field.
+	 */
+	public record Attribute(String name, Kind kind, Class<?> type, Field field) {
+
+		/**
+		 * Return the value of this attribute.
+		 *
+		 * @param entity The entity to read.
+		 * @return The attribute value.
+		 */
+		public Object get(final Object entity) {
+			try {
+				return field.get(entity);
+			} catch (final IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Set the value of this attribute. A <code>null</code> value is ignored for a primitive attribute.
+		 *
+		 * @param entity The entity to update.
+		 * @param value  The new value.
+		 */
+		public void set(final Object entity, final Object value) {
+			if (value == null && field.getType().isPrimitive()) {
+				return;
+			}
+			try {
+				field.set(entity, value);
+			} catch (final IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private CatalogSnapshot() {
+		// Utility class
+	}
+
+	/**
+	 * Return the snapshot attributes of an entity, sorted by name: all single valued attributes but the identifier and
+	 * the owner node.
+	 *
+	 * @param entity The entity model.
+	 * @return The snapshot attributes.
+	 */
+	public static List<Attribute> toAttributes(final EntityType<?> entity) {
+		final var attributes = new ArrayList<Attribute>();
+		for (final SingularAttribute<?, ?> attribute : entity.getSingularAttributes()) {
+			final var kind = toKind(attribute);
+			if (attribute.isId() || attribute.isVersion() || "node".equals(attribute.getName()) || kind == null
+					|| !(attribute.getJavaMember() instanceof Field field)) {
+				continue;
+			}
+			field.setAccessible(true);
+			attributes.add(new Attribute(attribute.getName(), kind, attribute.getJavaType(), field));
+		}
+		attributes.sort(Comparator.comparing(Attribute::name));
+		return attributes;
+	}
+
+	private static Kind toKind(final SingularAttribute<?, ?> attribute) {
+		final var type = attribute.getJavaType();
+		if (attribute.isAssociation()) {
+			return Kind.REFERENCE;
+		}
+		if (type == String.class) {
+			return Kind.STRING;
+		}
+		if (type == double.class || type == Double.class) {
+			return Kind.DOUBLE;
+		}
+		if (type == int.class || type == Integer.class) {
+			return Kind.INTEGER;
+		}
+		if (type == long.class || type == Long.class) {
+			return Kind.LONG;
+		}
+		if (type == boolean.class || type == Boolean.class) {
+			return Kind.BOOLEAN;
+		}
+		if (type.isEnum()) {
+			return Kind.ENUM;
+		}
+		if (Date.class.isAssignableFrom(type)) {
+			return Kind.DATE;
+		}
+		// Not supported type
+		return null;
+	}
+
+	/**
+	 * Return the business key of a snapshot entity.
+	 *
+	 * @param entity The entity.
+	 * @return The location name or the entity code. <code>null</code> when not supported.
+	 */
+	public static String toKey(final Object entity) {
+		if (entity instanceof ProvLocation location) {
+			return location.getName();
+		}
+		if (entity instanceof AbstractCodedEntity coded) {
+			return coded.getCode();
+		}
+		return null;
+	}
+
+	/**
+	 * Indicate the given type can be instantiated.
+	 *
+	 * @param type The type to check.
+	 * @return <code>true</code> when the given type is concrete.
+	 */
+	static boolean isConcrete(final Class<?> type) {
+		return !type.isInterface() && !Modifier.isAbstract(type.getModifiers());
+	}
+
+	/**
+	 * Streaming snapshot writer.
+	 */
+	public static class Writer {
+
+		private final CRC32 crc = new CRC32();
+
+		private final OutputStream raw;
+
+		private final DataOutputStream out;
+
+		/**
+		 * Start a snapshot and write its header.
+		 *
+		 * @param output     The target output. Closed by {@link #finish()}.
+		 * @param node       The source node.
+		 * @param generation The catalog generation.
+		 * @throws IOException When the output cannot be written.
+		 */
+		public Writer(final OutputStream output, final String node, final long generation) throws IOException {
+			raw = new BufferedOutputStream(new GZIPOutputStream(output, BUFFER), BUFFER);
+			out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(node);
+			out.writeLong(generation);
+		}
+
+		private void writeString(final String value) throws IOException {
+			final var bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Start a section.
+		 *
+		 * @param name       The entity name.
+		 * @param attributes The written attributes.
+		 * @throws IOException When the output cannot be written.
+		 */
+		public void startSection(final String name, final List<Attribute> attributes) throws IOException {
+			writeString(name);
+			out.writeInt(attributes.size());
+			for (final var attribute : attributes) {
+				writeString(attribute.name());
+				out.writeByte(attribute.kind().ordinal());
+			}
+		}
+
+		/**
+		 * Write a row of the current section.
+		 *
+		 * @param entity     The entity to write.
+		 * @param attributes The written attributes, as declared in the section.
+		 * @throws IOException When the output cannot be written.
+		 */
+		public void writeRow(final Object entity, final List<Attribute> attributes) throws IOException {
+			out.writeByte(ROW);
+			for (final var attribute : attributes) {
+				writeValue(attribute.kind(), attribute.get(entity));
+			}
+		}
+
+		private void writeValue(final Kind kind, final Object value) throws IOException {
+			out.writeBoolean(value != null);
+			if (value == null) {
+				return;
+			}
+			switch (kind) {
+			case STRING -> writeString((String) value);
+			case DOUBLE -> out.writeDouble((Double) value);
+			case INTEGER -> out.writeInt((Integer) value);
+			case LONG -> out.writeLong((Long) value);
+			case BOOLEAN -> out.writeBoolean((Boolean) value);
+			case ENUM -> writeString(((Enum<?>) value).name());
+			case DATE -> out.writeLong(((Date) value).getTime());
+			case REFERENCE -> writeString(toKey(value));
+			}
+		}
+
+		/**
+		 * End the current section.
+		 *
+		 * @throws IOException When the output cannot be written.
+		 */
+		public void endSection() throws IOException {
+			out.writeByte(END);
+		}
+
+		/**
+		 * Write the end of the snapshot and its checksum, then close the output.
+		 *
+		 * @return The checksum.
+		 * @throws IOException When the output cannot be written.
+		 */
+		public long finish() throws IOException {
+			writeString("");
+			out.flush();
+			final var checksum = crc.getValue();
+			new DataOutputStream(raw).writeLong(checksum);
+			raw.close();
+			return checksum;
+		}
+	}
+
+	/**
+	 * Streaming snapshot reader.
+	 */
+	public static class Reader {
+
+		private final CRC32 crc = new CRC32();
+
+		private final InputStream raw;
+
+		private final DataInputStream in;
+
+		/**
+		 * The source node.
+		 */
+		@Getter
+		private final String node;
+
+		/**
+		 * The catalog generation.
+		 */
+		@Getter
+		private final long generation;
+
+		/**
+		 * Open a snapshot and read its header.
+		 *
+		 * @param input The snapshot input.
+		 * @throws IOException When the input cannot be read.
+		 */
+		public Reader(final InputStream input) throws IOException {
+			raw = new BufferedInputStream(new GZIPInputStream(input, BUFFER), BUFFER);
+			in = new DataInputStream(new CheckedInputStream(raw, crc));
+			if (in.readInt() != MAGIC) {
+				throw new BusinessException("snapshot-format");
+			}
+			final var version = in.readInt();
+			if (version != VERSION) {
+				throw new BusinessException("snapshot-version", version);
+			}
+			node = readString();
+			generation = in.readLong();
+		}
+
+		private String readString() throws IOException {
+			final var bytes = new byte[readLength(MAX_STRING)];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Read a length, and check it against the given bound before any allocation.
+		 */
+		private int readLength(final int max) throws IOException {
+			final var length = in.readInt();
+			if (length < 0 || length > max) {
+				throw new BusinessException("snapshot-format");
+			}
+			return length;
+		}
+
+		private Kind readKind() throws IOException {
+			final var ordinal = in.readByte();
+			final var kinds = Kind.values();
+			if (ordinal < 0 || ordinal >= kinds.length) {
+				throw new BusinessException("snapshot-format");
+			}
+			return kinds[ordinal];
+		}
+
+		/**
+		 * Read the next section header.
+		 *
+		 * @return The entity name of the next section, or <code>null</code> at the end of the snapshot.
+		 * @throws IOException When the input cannot be read.
+		 */
+		public String nextSection() throws IOException {
+			final var name = readString();
+			return name.isEmpty() ? null : name;
+		}
+
+		/**
+		 * Read the columns of the current section.
+		 *
+		 * @return The columns of the current section.
+		 * @throws IOException When the input cannot be read.
+		 */
+		public List<Column> readColumns() throws IOException {
+			final var size = readLength(MAX_COLUMNS);
+			final var columns = new ArrayList<Column>(size);
+			for (var i = 0; i < size; i++) {
+				columns.add(new Column(readString(), readKind()));
+			}
+			return columns;
+		}
+
+		/**
+		 * Move to the next row of the current section.
+		 *
+		 * @return <code>true</code> when a row is available.
+		 * @throws IOException When the input cannot be read.
+		 */
+		public boolean nextRow() throws IOException {
+			return in.readByte() == ROW;
+		}
+
+		/**
+		 * Read the values of the current row.
+		 *
+		 * @param columns The columns of the current section.
+		 * @return The raw values: enumerations and references are returned as strings.
+		 * @throws IOException When the input cannot be read.
+		 */
+		public Object[] readRow(final List<Column> columns) throws IOException {
+			final var values = new Object[columns.size()];
+			for (var i = 0; i < values.length; i++) {
+				values[i] = readValue(columns.get(i).kind());
+			}
+			return values;
+		}
+
+		private Object readValue(final Kind kind) throws IOException {
+			if (!in.readBoolean()) {
+				return null;
+			}
+			return switch (kind) {
+			case STRING, ENUM, REFERENCE -> readString();
+			case DOUBLE -> in.readDouble();
+			case INTEGER -> in.readInt();
+			case LONG -> in.readLong();
+			case BOOLEAN -> in.readBoolean();
+			case DATE -> new Date(in.readLong());
+			};
+		}
+
+		/**
+		 * Read the checksum and check it against the read content. Must be called once the end of the snapshot is
+		 * reached.
+		 *
+		 * @return The checksum.
+		 * @throws IOException When the input cannot be read.
+		 */
+		public long verify() throws IOException {
+			final var checksum = crc.getValue();
+			if (new DataInputStream(raw).readLong() != checksum) {
+				throw new BusinessException("snapshot-checksum");
+			}
+			return checksum;
+		}
+	}
+}
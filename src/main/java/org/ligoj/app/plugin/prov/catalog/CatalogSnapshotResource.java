@@ -0,0 +1,404 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.dao.BaseProvQuoteRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteSupportRepository;
+import org.ligoj.app.plugin.prov.model.AbstractCodedEntity;
+import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
+import org.ligoj.app.plugin.prov.model.ProvContainerPrice;
+import org.ligoj.app.plugin.prov.model.ProvContainerType;
+import org.ligoj.app.plugin.prov.model.ProvDatabasePrice;
+import org.ligoj.app.plugin.prov.model.ProvDatabaseType;
+import org.ligoj.app.plugin.prov.model.ProvFunctionPrice;
+import org.ligoj.app.plugin.prov.model.ProvFunctionType;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
+import org.ligoj.app.plugin.prov.model.ProvInstanceType;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.ProvStoragePrice;
+import org.ligoj.app.plugin.prov.model.ProvStorageType;
+import org.ligoj.app.plugin.prov.model.ProvSupportPrice;
+import org.ligoj.app.plugin.prov.model.ProvSupportType;
+import org.ligoj.app.resource.node.NodeResource;
+import org.ligoj.app.resource.plugin.AbstractToolPluginResource;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Persistable;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Binary catalog snapshot export and load, see {@link CatalogSnapshot}. A node imported from the provider can be
+ * exported, and the snapshot loaded in the same node of another instance without downloading nor parsing the provider
+ * price feeds. Locations, terms and types are created or updated by business key, prices by code, and the prices not
+ * in the snapshot are purged as for a regular import.
+ */
+@Slf4j
+@Service
+@Path(ProvResource.SERVICE_URL + "/catalog/snapshot")
+@Produces(MediaType.APPLICATION_JSON)
+@Transactional
+public class CatalogSnapshotResource extends AbstractImportCatalogResource {
+
+	/**
+	 * The import phase of a snapshot load.
+	 */
+	public static final String PHASE_SNAPSHOT = "snapshot";
+
+	/**
+	 * Maximal amount of created entities per flush while loading a snapshot.
+	 */
+	private static final int LOAD_BATCH = 1000;
+
+	/**
+	 * The referenced entities, in dependency order.
+	 */
+	private static final List<Class<?>> REFERENCES = List.of(ProvLocation.class, ProvInstancePriceTerm.class,
+			ProvInstanceType.class, ProvDatabaseType.class, ProvContainerType.class, ProvFunctionType.class,
+			ProvStorageType.class, ProvSupportType.class);
+
+	/**
+	 * A price section.
+	 *
+	 * @param entity      The price entity.
+	 * @param type        The type entity of this price.
+	 * @param repository  The price repository.
+	 * @param qRepository The quote repository of this price.
+	 */
+	private record PriceSection(Class<?> entity, Class<?> type, CrudRepository<?, Integer> repository,
+			BaseProvQuoteRepository<?> qRepository) {
+	}
+
+	@Autowired
+	private NodeResource nodeResource;
+
+	@Autowired
+	private ProvQuoteSupportRepository qs2Repository;
+
+	@Autowired
+	private CatalogCacheEvictor cacheEvictor;
+
+	@Autowired
+	private CatalogSnapshotResource self;
+
+	private List<PriceSection> getPriceSections() {
+		return List.of(new PriceSection(ProvInstancePrice.class, ProvInstanceType.class, ipRepository, qiRepository),
+				new PriceSection(ProvDatabasePrice.class, ProvDatabaseType.class, dpRepository, qdRepository),
+				new PriceSection(ProvContainerPrice.class, ProvContainerType.class, cpRepository, qcRepository),
+				new PriceSection(ProvFunctionPrice.class, ProvFunctionType.class, fpRepository, qfRepository),
+				new PriceSection(ProvStoragePrice.class, ProvStorageType.class, spRepository, qsRepository),
+				new PriceSection(ProvSupportPrice.class, ProvSupportType.class, sp2Repository, qs2Repository));
+	}
+
+	private Optional<ImportCatalogStatus> getStatus(final String node) {
+		return Optional.ofNullable(importCatalogResource.getTaskRepository().findBy("locked.id", node));
+	}
+
+	/**
+	 * Return the catalog generation of a node.
+	 *
+	 * @param node The node identifier.
+	 * @return The catalog generation, or <code>0</code> when the catalog has never been imported.
+	 */
+	protected long getGeneration(final String node) {
+		return getStatus(node).map(s -> Optional.ofNullable(s.getGeneration())
+				.orElseGet(() -> Optional.ofNullable(s.getLastSuccess()).map(Date::getTime).orElse(0L)))
+				.orElse(0L);
+	}
+
+	/**
+	 * Export the catalog of a node as a binary snapshot.
+	 *
+	 * @param node The node (provider) to export.
+	 * @return The streaming snapshot.
+	 */
+	@GET
+	@Path("{node:service:prov:.+}")
+	@Produces(MediaType.APPLICATION_OCTET_STREAM)
+	public Response export(@PathParam("node") final String node) {
+		final var tool = nodeResource.checkWritableNode(node).getTool().getId();
+		return AbstractToolPluginResource.download(o -> self.write(tool, o), tool.replace(':', '-') + ".snapshot")
+				.build();
+	}
+
+	/**
+	 * Write the catalog of a node as a binary snapshot.
+	 *
+	 * @param node   The node (provider) to export.
+	 * @param output The target output. Closed once written.
+	 * @return The checksum of the written snapshot.
+	 * @throws IOException When the output cannot be written.
+	 */
+	public long write(final String node, final OutputStream output) throws IOException {
+		final var writer = new CatalogSnapshot.Writer(output, node, getGeneration(node));
+		for (final var entity : REFERENCES) {
+			writeSection(writer, entity, "node.id", node, false);
+		}
+		for (final var section : getPriceSections()) {
+			writeSection(writer, section.entity(), "type.node.id", node, true);
+		}
+		final var checksum = writer.finish();
+		log.info("Catalog snapshot of {} is written, checksum {}", node, checksum);
+		return checksum;
+	}
+
+	private void writeSection(final CatalogSnapshot.Writer writer, final Class<?> entity, final String property,
+			final String node, final boolean detach) throws IOException {
+		final var attributes = CatalogSnapshot.toAttributes(em.getMetamodel().entity(entity));
+		writer.startSection(entity.getSimpleName(), attributes);
+		try (var rows = em.createQuery("FROM " + entity.getSimpleName() + " WHERE " + property + " = :node", entity)
+				.setParameter("node", node).setHint("org.hibernate.fetchSize", LOAD_BATCH).getResultStream()) {
+			final var iterator = rows.iterator();
+			while (iterator.hasNext()) {
+				final var row = iterator.next();
+				writer.writeRow(row, attributes);
+				if (detach) {
+					// The prices are not referenced by the next sections
+					em.detach(row);
+				}
+			}
+		}
+		writer.endSection();
+	}
+
+	/**
+	 * Load a binary snapshot in the catalog of a node. The import task of this node is held during the load, as for a
+	 * regular import, and is written in its own transactions. The whole load is rolled back when the snapshot is
+	 * corrupted or truncated. A snapshot exported from another node is rejected.
+	 *
+	 * @param node  The node (provider) to update.
+	 * @param force When <code>true</code>, the snapshot is loaded even when the catalog is already at the same
+	 *              generation.
+	 * @param input The snapshot content.
+	 * @return The load result.
+	 * @throws IOException When the snapshot cannot be read.
+	 */
+	@POST
+	@Path("{node:service:prov:.+}")
+	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
+	@Transactional(rollbackOn = Exception.class)
+	public CatalogSnapshotVo load(@PathParam("node") final String node,
+			@QueryParam("force") @DefaultValue("false") final boolean force, final InputStream input)
+			throws IOException {
+		final var tool = nodeResource.checkWritableNode(node).getTool().getId();
+		final var reader = new CatalogSnapshot.Reader(input);
+		if (!tool.equals(reader.getNode())) {
+			// The prices of this node not in the snapshot would be purged
+			throw new BusinessException("snapshot-node", reader.getNode(), tool);
+		}
+		final var vo = new CatalogSnapshotVo();
+		vo.setSource(reader.getNode());
+		vo.setGeneration(reader.getGeneration());
+		if (!force && reader.getGeneration() == getGeneration(tool)) {
+			log.info("Catalog snapshot of {} is already loaded in {}, generation {}", reader.getNode(), tool,
+					reader.getGeneration());
+			vo.setUpToDate(true);
+			return vo;
+		}
+
+		log.info("Loading catalog snapshot of {} in {}, generation {}", reader.getNode(), tool,
+				reader.getGeneration());
+		importCatalogResource.startImport(tool, PHASE_SNAPSHOT);
+		var failed = true;
+		try {
+			load(tool, force, reader, vo);
+			importCatalogResource.endImport(tool, true);
+			failed = false;
+		} finally {
+			if (failed) {
+				importCatalogResource.endImport(tool, false);
+			}
+			importCatalogResource.endImportTask(tool, failed, t -> {
+				if (!t.isFailed()) {
+					// The loaded snapshot is the new catalog generation
+					t.setLastSuccess(t.getEnd());
+					t.setGeneration(reader.getGeneration());
+				}
+			});
+			cacheEvictor.evict(tool);
+		}
+		log.info("Catalog snapshot loaded in {}: {} references, {} prices, {} created, {} purged", tool,
+				vo.getNbReferences(), vo.getNbPrices(), vo.getNbCreated(), vo.getNbPurgedPrices());
+		return vo;
+	}
+
+	/**
+	 * Load all sections of the snapshot in the given node.
+	 */
+	private void load(final String tool, final boolean force, final CatalogSnapshot.Reader reader,
+			final CatalogSnapshotVo vo) throws IOException {
+		final var context = initContext(new SnapshotContext(), tool, force);
+		final var references = new HashMap<Class<?>, Map<String, Object>>();
+		final var prices = getPriceSections();
+		for (var section = reader.nextSection(); section != null; section = reader.nextSection()) {
+			final var name = section;
+			final var columns = reader.readColumns();
+			final var reference = REFERENCES.stream().filter(c -> c.getSimpleName().equals(name)).findFirst();
+			final var price = prices.stream().filter(p -> p.entity().getSimpleName().equals(name)).findFirst();
+			if (reference.isPresent()) {
+				references.put(reference.get(),
+						loadSection(context, reader, columns, reference.get(), null, references, vo));
+			} else if (price.isPresent()) {
+				loadSection(context, reader, columns, price.get().entity(), price.get(), references, vo);
+			} else {
+				// Not supported section, skipped
+				log.warn("Unknown catalog snapshot section {}", name);
+				while (reader.nextRow()) {
+					reader.readRow(columns);
+				}
+			}
+		}
+		vo.setChecksum(reader.verify());
+		em.flush();
+	}
+
+	/**
+	 * Load a section in the given node, and return the loaded entities by business key.
+	 */
+	private Map<String, Object> loadSection(final AbstractUpdateContext context, final CatalogSnapshot.Reader reader,
+			final List<CatalogSnapshot.Column> columns, final Class<?> entity, final PriceSection price,
+			final Map<Class<?>, Map<String, Object>> references, final CatalogSnapshotVo vo) throws IOException {
+		final var attributes = new HashMap<String, CatalogSnapshot.Attribute>();
+		CatalogSnapshot.toAttributes(em.getMetamodel().entity(entity)).forEach(a -> attributes.put(a.name(), a));
+		final var keyName = entity == ProvLocation.class ? "name" : "code";
+		final var keyIndex = columns.stream().map(CatalogSnapshot.Column::name).toList().indexOf(keyName);
+		if (keyIndex < 0) {
+			throw new BusinessException("snapshot-format");
+		}
+
+		// Existing entities of this node
+		final var property = price == null ? "node.id" : "type.node.id";
+		final var stored = new HashMap<String, Object>();
+		em.createQuery("FROM " + entity.getSimpleName() + " WHERE " + property + " = :node", entity)
+				.setParameter("node", context.getNode().getId()).getResultList()
+				.forEach(e -> stored.put(CatalogSnapshot.toKey(e), e));
+		context.getPrices().clear();
+
+		final var touched = new ArrayList<Object>();
+		var created = 0;
+		while (reader.nextRow()) {
+			final var values = reader.readRow(columns);
+			final var key = (String) values[keyIndex];
+			final var target = stored.computeIfAbsent(key, k -> newEntity(context, entity));
+			final var isNew = ((Persistable<?>) target).isNew();
+			for (var i = 0; i < values.length; i++) {
+				final var attribute = attributes.get(columns.get(i).name());
+				if (attribute != null) {
+					attribute.set(target, toValue(attribute, values[i], price, references));
+				}
+			}
+			if (isNew) {
+				em.persist(target);
+				created++;
+			}
+			if (price != null) {
+				context.getPrices().add(key);
+				touched.add(target);
+				if (touched.size() >= LOAD_BATCH) {
+					flushPrices(touched);
+				}
+			}
+		}
+		em.flush();
+		vo.setNbCreated(vo.getNbCreated() + created);
+		if (price == null) {
+			vo.setNbReferences(vo.getNbReferences() + stored.size());
+			return stored;
+		}
+		vo.setNbPrices(vo.getNbPrices() + context.getPrices().size());
+		flushPrices(touched);
+		final var before = stored.size();
+		purge(context, stored, price);
+		vo.setNbPurgedPrices(vo.getNbPurgedPrices() + before - stored.size());
+		return stored;
+	}
+
+	/**
+	 * Write the loaded prices and release them from the persistence context.
+	 */
+	private void flushPrices(final List<Object> touched) {
+		em.flush();
+		touched.forEach(em::detach);
+		touched.clear();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void purge(final AbstractUpdateContext context, final Map<String, Object> stored,
+			final PriceSection price) {
+		purgePrices(context, (Map) stored, (CrudRepository) price.repository(),
+				(BaseProvQuoteRepository) price.qRepository());
+	}
+
+	private Object newEntity(final AbstractUpdateContext context, final Class<?> entity) {
+		try {
+			final var instance = entity.getConstructor().newInstance();
+			if (instance instanceof AbstractCodedEntity coded) {
+				coded.setNode(context.getNode());
+			} else if (instance instanceof ProvLocation location) {
+				location.setNode(context.getNode());
+			}
+			return instance;
+		} catch (final ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Convert a raw snapshot value to the attribute value.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object toValue(final CatalogSnapshot.Attribute attribute, final Object value, final PriceSection price,
+			final Map<Class<?>, Map<String, Object>> references) {
+		if (value == null) {
+			return null;
+		}
+		if (attribute.kind() == CatalogSnapshot.Kind.ENUM) {
+			return Enum.valueOf((Class<Enum>) attribute.type(), (String) value);
+		}
+		if (attribute.kind() != CatalogSnapshot.Kind.REFERENCE) {
+			return value;
+		}
+		// Generic price attributes are resolved to the type of this price
+		final var type = CatalogSnapshot.isConcrete(attribute.type()) || price == null ? attribute.type()
+				: price.type();
+		final var reference = references.getOrDefault(type, Map.of()).get(value);
+		if (reference == null) {
+			throw new BusinessException("snapshot-reference", attribute.name(), value);
+		}
+		return reference;
+	}
+
+	/**
+	 * The snapshot load context.
+	 */
+	private static class SnapshotContext extends AbstractUpdateContext {
+		// Nothing to add
+	}
+}
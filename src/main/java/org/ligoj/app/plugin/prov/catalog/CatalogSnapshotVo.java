@@ -0,0 +1,55 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The result of a catalog snapshot load.
+ */
+@Getter
+@Setter
+public class CatalogSnapshotVo {
+
+	/**
+	 * The node the snapshot has been exported from.
+	 */
+	private String source;
+
+	/**
+	 * The catalog generation of the snapshot.
+	 */
+	private long generation;
+
+	/**
+	 * The snapshot checksum.
+	 */
+	private long checksum;
+
+	/**
+	 * When <code>true</code>, the catalog was already at this generation and nothing has been loaded.
+	 */
+	private boolean upToDate;
+
+	/**
+	 * Number of read locations, terms and types.
+	 */
+	private int nbReferences;
+
+	/**
+	 * Number of read prices.
+	 */
+	private int nbPrices;
+
+	/**
+	 * Number of created entities.
+	 */
+	private int nbCreated;
+
+	/**
+	 * Number of deleted retired prices.
+	 */
+	private int nbPurgedPrices;
+}
@@ -42,4 +42,15 @@ public class CatalogVo {
 	 */
 	private ProvLocation preferredLocation;
 
+	/**
+	 * The import priority. The queued imports with the lowest value run first.
+	 */
+	private int priority;
+
+	/**
+	 * The position of the queued import of this catalog, starting from <code>1</code>. <code>null</code> when not
+	 * queued.
+	 */
+	private Integer queuePosition;
+
 }
@@ -0,0 +1,98 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Regional CO2 data matcher built once from a regional CO2 data set. A location is resolved, in this order, by the
+ * exact name, then the <code>[area]-[zone]</code> and <code>[area].[zone]</code> names, then the <code>[area]</code>
+ * name, first by exact key and then by the smallest key starting with these names. When several keys start with the
+ * same name, the smallest one is used: before, the first one in the iteration order of the data set was used, so the
+ * result depended on the hash of the keys. Each location is resolved once to a region code, and the data of this code
+ * is read from the data set at each resolution, so the data replaced in the data set is used.
+ */
+@Slf4j
+public class Co2RegionMatcher {
+
+	/**
+	 * The region codes of the data set.
+	 */
+	private final PrefixTrie<String> regions = new PrefixTrie<>();
+
+	/**
+	 * The regional CO2 data set.
+	 */
+	private final Map<String, Co2RegionData> dataSet;
+
+	/**
+	 * Resolved locations. Value is the matching region code, or an empty string when there is none.
+	 */
+	private final Map<String, String> resolved = new ConcurrentHashMap<>();
+
+	/**
+	 * Build the matcher from the current state of the given data set.
+	 *
+	 * @param dataSet The regional CO2 data set. Key is the region code.
+	 */
+	public Co2RegionMatcher(final Map<String, Co2RegionData> dataSet) {
+		this.dataSet = dataSet;
+		dataSet.keySet().forEach(r -> regions.put(r, r));
+	}
+
+	/**
+	 * Indicate the data set has been updated since this matcher has been built.
+	 *
+	 * @return <code>true</code> when this matcher has to be built again.
+	 */
+	public boolean isStale() {
+		return regions.getSize() != dataSet.size();
+	}
+
+	/**
+	 * Return the regional CO2 data of the given location.
+	 *
+	 * @param location The location name.
+	 * @return The best matching regional CO2 data. When not found, an empty data is returned.
+	 */
+	public Co2RegionData resolve(final String location) {
+		final var match = resolved.computeIfAbsent(location, this::match);
+		if (match.isEmpty()) {
+			return new Co2RegionData();
+		}
+		final var data = dataSet.get(match);
+		if (data == null) {
+			// The matching region has been removed from the data set
+			resolved.remove(location);
+			return new Co2RegionData();
+		}
+		return data;
+	}
+
+	private String match(final String location) {
+		final var fragments = StringUtils.split(location + "._", ".-");
+		final var candidates = new String[] { location, fragments[0] + "-" + fragments[1],
+				fragments[0] + "." + fragments[1], fragments[0] };
+		String match = null;
+		for (var i = 0; match == null && i < candidates.length; i++) {
+			match = regions.get(candidates[i]);
+		}
+		for (var i = 0; match == null && i < candidates.length; i++) {
+			match = regions.getFirst(candidates[i]);
+		}
+		if (match == null) {
+			log.warn("No regional CO2 for region {}", location);
+			return "";
+		}
+		if (!match.equals(location)) {
+			log.info("No perfect regional CO2 for region {}, using {}", location, match);
+		}
+		return match;
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogStatusRepository;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Catalog import orchestrator. All imports share a global pool, and wait in a queue for a free slot. The queue is
+ * ordered by node priority, then by submission order. In addition, an import can be scheduled per node with a cron
+ * expression.
+ */
+@Slf4j
+@Component
+public class ImportCatalogOrchestrator {
+
+	/**
+	 * Configuration key used for the maximal amount of imports running at the same time, all nodes included.
+	 */
+	public static final String CONF_IMPORT_POOL = ProvResource.SERVICE_KEY + ":import-pool";
+
+	/**
+	 * Default maximal amount of imports running at the same time.
+	 */
+	public static final int DEFAULT_IMPORT_POOL = 2;
+
+	/**
+	 * Configuration key suffix of the node import schedule: <code>[node]:import-cron</code>. The value is a Spring cron
+	 * expression, such as <code>0 0 2 * * SUN</code>.
+	 */
+	public static final String CONF_IMPORT_CRON = ":import-cron";
+
+	/**
+	 * Configuration key suffix of the node import priority: <code>[node]:import-priority</code>. The queued imports
+	 * with the lowest value run first. Default is <code>0</code>.
+	 */
+	public static final String CONF_IMPORT_PRIORITY = ":import-priority";
+
+	/**
+	 * A queued import.
+	 *
+	 * @param node     The node to import.
+	 * @param priority The node priority.
+	 * @param sequence The submission order.
+	 * @param queued   The submission date.
+	 * @param job      The import job.
+	 * @param abort    The job called instead of the import job when this import is dropped from the queue at shutdown.
+	 */
+	public record QueuedImport(String node, int priority, long sequence, Date queued, Runnable job, Runnable abort) {
+	}
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private ImportCatalogStatusRepository taskRepository;
+
+	@Autowired
+	private SecurityHelper securityHelper;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	private final PriorityBlockingQueue<QueuedImport> queue = new PriorityBlockingQueue<>(11,
+			Comparator.comparingInt(QueuedImport::priority).thenComparingLong(QueuedImport::sequence));
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * The nodes being imported.
+	 */
+	private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The global import pool, created at the first use.
+	 */
+	private ExecutorService pool;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * The last schedule check time.
+	 */
+	private LocalDateTime lastCheck;
+
+	private synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(Math.max(1, configuration.get(CONF_IMPORT_POOL, DEFAULT_IMPORT_POOL)));
+		}
+		return pool;
+	}
+
+	/**
+	 * Start the schedule checks, once per minute.
+	 */
+	@PostConstruct
+	public void start() {
+		lastCheck = LocalDateTime.now();
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				checkSchedules(LocalDateTime.now());
+			} catch (final RuntimeException e) {
+				log.error("Catalog import schedule check failed", e);
+			}
+		}, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stop the schedule checks and the running imports. The queued imports are dropped, and their abort job is called.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		if (pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+		final var dropped = new ArrayList<QueuedImport>();
+		queue.drainTo(dropped);
+		dropped.forEach(q -> {
+			log.info("Queued catalog import of {} is dropped", q.node());
+			try {
+				q.abort().run();
+			} catch (final RuntimeException e) {
+				log.error("Queued catalog import of {} cannot be aborted", q.node(), e);
+			}
+		});
+	}
+
+	/**
+	 * Return the priority of a node.
+	 *
+	 * @param node The node identifier.
+	 * @return The priority of the node. The lowest value runs first.
+	 */
+	public int getPriority(final String node) {
+		return configuration.get(node + CONF_IMPORT_PRIORITY, 0);
+	}
+
+	/**
+	 * Queue an import. The import runs as soon as a slot of the global pool is free, and no queued import has a
+	 * lower priority or was queued before with the same priority.
+	 *
+	 * @param node The node to import.
+	 * @param job  The import job.
+	 */
+	public void submit(final String node, final Runnable job) {
+		submit(node, job, () -> {
+			// Nothing to abort
+		});
+	}
+
+	/**
+	 * Queue an import. The import runs as soon as a slot of the global pool is free, and no queued import has a
+	 * lower priority or was queued before with the same priority.
+	 *
+	 * @param node  The node to import.
+	 * @param job   The import job.
+	 * @param abort The job called instead of the import job when this import is dropped from the queue at shutdown.
+	 */
+	public void submit(final String node, final Runnable job, final Runnable abort) {
+		queue.add(new QueuedImport(node, getPriority(node), sequence.incrementAndGet(), new Date(), job, abort));
+		log.info("Catalog import of {} is queued, {} queued imports", node, queue.size());
+
+		// Each pool task runs the first queued import at the time a slot is free
+		getPool().execute(this::runNext);
+	}
+
+	private void runNext() {
+		final var next = queue.poll();
+		if (next == null) {
+			// Removed from the queue
+			return;
+		}
+		running.add(next.node());
+		try {
+			next.job().run();
+		} catch (final RuntimeException e) {
+			log.error("Catalog import of {} failed", next.node(), e);
+		} finally {
+			running.remove(next.node());
+		}
+	}
+
+	/**
+	 * Remove the queued imports of a node.
+	 *
+	 * @param node The node identifier.
+	 * @return <code>true</code> when a queued import has been removed.
+	 */
+	public boolean remove(final String node) {
+		return queue.removeIf(q -> q.node().equals(node));
+	}
+
+	/**
+	 * Return the queued imports, in run order.
+	 *
+	 * @return The queued imports, in run order.
+	 */
+	public List<QueuedImport> getQueue() {
+		return queue.stream().sorted(queue.comparator()).toList();
+	}
+
+	/**
+	 * Return the position of a node in the queue.
+	 *
+	 * @param node The node identifier.
+	 * @return The position of the node in the queue, starting from <code>1</code>. <code>null</code> when not queued.
+	 */
+	public Integer getPosition(final String node) {
+		final var ordered = getQueue();
+		for (var i = 0; i < ordered.size(); i++) {
+			if (ordered.get(i).node().equals(node)) {
+				return i + 1;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Indicate the given node is being imported by this orchestrator.
+	 *
+	 * @param node The node identifier.
+	 * @return <code>true</code> when the node is being imported.
+	 */
+	public boolean isRunning(final String node) {
+		return running.contains(node);
+	}
+
+	/**
+	 * Queue the imports of the nodes whose schedule is due since the last check. A scheduled import runs as the author
+	 * of the last import of this node, so only the nodes imported at least once can be scheduled.
+	 *
+	 * @param now The check time.
+	 * @return The amount of queued imports.
+	 */
+	public synchronized int checkSchedules(final LocalDateTime now) {
+		final var from = lastCheck == null ? now.minusMinutes(1) : lastCheck;
+		lastCheck = now;
+		var queued = 0;
+		for (final var status : taskRepository.findAll()) {
+			final var node = status.getLocked().getId();
+			final var cron = StringUtils.trimToNull(configuration.get(node + CONF_IMPORT_CRON));
+			if (cron == null || !CronExpression.isValidExpression(cron)) {
+				continue;
+			}
+			final var next = CronExpression.parse(cron).next(from);
+			if (next != null && !next.isAfter(now) && status.getEnd() != null) {
+				log.info("Scheduled catalog import of {} with {}", node, cron);
+				try {
+					securityHelper.setUserName(status.getAuthor());
+					applicationContext.getBean(ImportCatalogResource.class).updateCatalogScheduled(node);
+					queued++;
+				} catch (final RuntimeException e) {
+					log.error("Scheduled catalog import of {} failed to start", node, e);
+				}
+			}
+		}
+		return queued;
+	}
+}
@@ -4,33 +4,47 @@
 package org.ligoj.app.plugin.prov.catalog;
 
 import jakarta.transaction.Transactional;
+import jakarta.transaction.Transactional.TxType;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.UriInfo;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.ligoj.app.dao.NodeRepository;
 import org.ligoj.app.plugin.prov.AbstractProvQuoteResource;
 import org.ligoj.app.plugin.prov.ProvResource;
 import org.ligoj.app.plugin.prov.dao.Co2Price;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogChangeRepository;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogCheckpointRepository;
 import org.ligoj.app.plugin.prov.dao.ImportCatalogStatusRepository;
 import org.ligoj.app.plugin.prov.dao.ProvLocationRepository;
 import org.ligoj.app.plugin.prov.dao.ProvQuoteRepository;
+import org.ligoj.app.plugin.prov.model.ImportCatalogChange;
+import org.ligoj.app.plugin.prov.model.ImportCatalogCheckpoint;
 import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
 import org.ligoj.app.plugin.prov.model.ResourceType;
 import org.ligoj.app.resource.ServicePluginLocator;
 import org.ligoj.app.resource.node.LongTaskRunnerNode;
 import org.ligoj.app.resource.node.NodeHelper;
 import org.ligoj.app.resource.node.NodeResource;
+import org.ligoj.bootstrap.core.json.PaginationJson;
+import org.ligoj.bootstrap.core.json.TableItem;
 import org.ligoj.bootstrap.core.resource.OnNullReturn404;
 import org.ligoj.bootstrap.core.security.SecurityHelper;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -48,6 +62,29 @@ public class ImportCatalogResource implements LongTaskRunnerNode<ImportCatalogSt
 
 	private static final String BY_NODE = "node.id";
 
+	/**
+	 * The last phase of a succeed import, warming up the catalog caches of the imported node.
+	 */
+	public static final String PHASE_WARM_UP = "warm-up";
+
+	/**
+	 * The first phase of an import, waiting for a free slot in the shared import pool.
+	 */
+	public static final String PHASE_QUEUED = "queued";
+
+	/**
+	 * Ordered columns of the catalog changes.
+	 */
+	private static final Map<String, String> ORM_COLUMNS_CHANGES = new HashMap<>();
+
+	static {
+		ORM_COLUMNS_CHANGES.put("code", "code");
+		ORM_COLUMNS_CHANGES.put("type", "type");
+		ORM_COLUMNS_CHANGES.put("resource", "resource");
+		ORM_COLUMNS_CHANGES.put("oldCost", "oldCost");
+		ORM_COLUMNS_CHANGES.put("newCost", "newCost");
+	}
+
 	@Autowired
 	@Getter
 	private NodeResource nodeResource;
@@ -75,45 +112,131 @@ public class ImportCatalogResource implements LongTaskRunnerNode<ImportCatalogSt
 	@Autowired
 	private ProvQuoteRepository repository;
 
+	@Autowired
+	private ImportCatalogCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private ImportCatalogChangeRepository changeRepository;
+
+	@Autowired
+	private PaginationJson paginationJson;
+
+	@Autowired
+	private CatalogCacheEvictor cacheEvictor;
+
+	@Autowired
+	private CatalogCacheWarmer cacheWarmer;
+
+	@Autowired
+	private CatalogQuoteRepricer repricer;
+
+	@Autowired
+	private CatalogEntityCache entityCache;
+
+	@Autowired
+	private ImportCatalogOrchestrator orchestrator;
+
 	/**
-	 * Update the catalog prices of the related provider. Asynchronous operation.
+	 * The end handlers of the running imports. Key is the node identifier, value is called once the import finishes,
+	 * before the task ends, with <code>true</code> when the import succeeded.
+	 */
+	private final Map<String, Consumer<Boolean>> endHandlers = new ConcurrentHashMap<>();
+
+	/**
+	 * Update the catalog prices of the related provider from scratch. Asynchronous operation.
 	 *
 	 * @param node  The node (provider) to update.
 	 * @param force When <code>true</code>, all cost attributes are update.
 	 * @return The catalog status.
 	 */
+	public ImportCatalogStatus updateCatalog(final String node, final boolean force) {
+		return updateCatalog(node, force, false);
+	}
+
+	/**
+	 * Update the catalog prices of the related provider. Asynchronous operation.
+	 *
+	 * @param node   The node (provider) to update.
+	 * @param force  When <code>true</code>, all cost attributes are update.
+	 * @param resume When <code>true</code>, the units completed by the previous failed import are skipped. Otherwise,
+	 *               the import starts from scratch.
+	 * @return The catalog status.
+	 */
 	@POST
 	@Path("{node:service:prov:.+}")
 	public ImportCatalogStatus updateCatalog(@PathParam("node") final String node,
-			@QueryParam("force") @DefaultValue("false") final boolean force) {
-		final var entity = nodeResource.checkWritableNode(node).getTool();
-		final var catalogService = locator.getResource(entity.getId(), ImportCatalogService.class);
-		final var task = startTask(entity.getId(), t -> {
+			@QueryParam("force") @DefaultValue("false") final boolean force,
+			@QueryParam("resume") @DefaultValue("false") final boolean resume) {
+		return queueCatalog(nodeResource.checkWritableNode(node).getTool().getId(), force, resume);
+	}
+
+	/**
+	 * Update the catalog prices of the related provider from scratch, as scheduled with the
+	 * <code>[node]:import-cron</code> configuration. The node is not checked against the current user. Asynchronous
+	 * operation.
+	 *
+	 * @param node The node (provider) to update.
+	 * @return The catalog status.
+	 * @see ImportCatalogOrchestrator#checkSchedules(java.time.LocalDateTime)
+	 */
+	public ImportCatalogStatus updateCatalogScheduled(final String node) {
+		return queueCatalog(nodeRepository.findOneExpected(node).getTool().getId(), false, false);
+	}
+
+	/**
+	 * Start the import task, and queue the import in the shared import pool.
+	 *
+	 * @param node   The tool node to update.
+	 * @param force  When <code>true</code>, all cost attributes are update.
+	 * @param resume When <code>true</code>, the units completed by the previous failed import are skipped.
+	 * @return The catalog status.
+	 */
+	private ImportCatalogStatus queueCatalog(final String node, final boolean force, final boolean resume) {
+		final var catalogService = locator.getResource(node, ImportCatalogService.class);
+		final var task = startImport(node, PHASE_QUEUED);
+		final var user = securityHelper.getLogin();
+		// The import execution will be done into another thread, once a slot of the shared import pool is free
+		orchestrator.submit(node, () -> {
+			try {
+				Thread.sleep(50);
+			} catch (final InterruptedException e) {
+				log.info("Queued catalog update of {} is interrupted", node);
+				try {
+					// The task ends before the interruption is restored, so the connection can still be acquired
+					endTask(node, true);
+				} finally {
+					Thread.currentThread().interrupt();
+				}
+				return;
+			}
+			securityHelper.setUserName(user);
+			nextStep(node, t -> t.setPhase(null));
+			updateCatalog(catalogService, node, force, resume);
+		}, () -> endTask(node, true));
+		return task;
+	}
+
+	/**
+	 * Start the import task of the given node. The counters of the previous import are reset. The task is written in
+	 * a new transaction, so the lock and the phase are visible to the other sessions while the import runs.
+	 *
+	 * @param node  The node to update.
+	 * @param phase The initial phase.
+	 * @return The catalog status.
+	 */
+	@Transactional(value = TxType.REQUIRES_NEW)
+	public ImportCatalogStatus startImport(final String node, final String phase) {
+		return startTask(node, t -> {
 			t.setLocation(null);
 			t.setNbPrices(0);
 			t.setNbCo2Prices(0);
 			t.setNbTypes(0);
+			t.setNbPurgedPrices(0);
+			t.setNbRetainedPrices(0);
 			t.setWorkload(0);
 			t.setDone(0);
-			t.setPhase(null);
+			t.setPhase(phase);
 		});
-		final var user = securityHelper.getLogin();
-		// The import execution will be done into another thread.
-		// NOT try-with-resources: ExecutorService#close() (Java 19+) awaits task termination, which would hold this
-		// request open for the whole import duration (504 upstream) instead of answering with the just-started task.
-		final var executor = Executors.newSingleThreadExecutor();
-		try {
-			executor.submit(() -> {
-				Thread.sleep(50);
-				securityHelper.setUserName(user);
-				updateCatalog(catalogService, entity.getId(), force);
-				return null;
-			});
-		} finally {
-			// Orderly shutdown: the submitted import still runs to completion, no new task is accepted.
-			executor.shutdown();
-		}
-		return task;
 	}
 
 	/**
@@ -134,34 +257,181 @@ public class ImportCatalogResource implements LongTaskRunnerNode<ImportCatalogSt
 	 * @param node           The node to update.
 	 */
 	protected void updateCatalog(final ImportCatalogService catalogService, final String node, final boolean force) {
+		updateCatalog(catalogService, node, force, false);
+	}
+
+	/**
+	 * Update the catalog of the given node. Synchronous operation.
+	 *
+	 * @param catalogService The catalog service related to the provider.
+	 * @param node           The node to update.
+	 * @param force          When <code>true</code>, all cost attributes are update.
+	 * @param resume         When <code>true</code>, the units completed by the previous failed import are skipped.
+	 */
+	protected void updateCatalog(final ImportCatalogService catalogService, final String node, final boolean force,
+			final boolean resume) {
 		// Restore the context
-		log.info("Catalog update for {}, force={}", node,force);
+		log.info("Catalog update for {}, force={}, resume={}", node, force, resume);
 		var failed = true;
+		endHandlers.remove(node);
 		try {
+			if (!resume) {
+				// Start from scratch
+				deleteCheckpoints(node);
+			}
 			catalogService.updateCatalog(node, force);
+			endImport(node, true);
 			log.info("Catalog update succeed for {}", node);
 			failed = false;
 		} catch (final Exception e) {
 			// Catalog update failed
 			log.error("Catalog update failed for {}", node, e);
 		} finally {
-			endTask(node, failed, t -> {
+			if (failed) {
+				endImport(node, false);
+			}
+			// Even a failed import may have updated a part of the catalog
+			cacheEvictor.evict(node);
+			if (!failed) {
+				warmUp(node);
+			}
+			final var status = endTask(node, failed, t -> {
 				if (!t.isFailed()) {
 					t.setLastSuccess(t.getEnd());
+					t.setGeneration(t.getEnd().getTime());
+
+					// Next import starts from scratch
+					deleteCheckpoints(node);
 
 					// Updated statistics
 					updateStats(t);
 				}
 			});
+			if (!failed) {
+				scheduleRepricing(node, status.getStart());
+			}
+		}
+	}
+
+	/**
+	 * End the import task of the given node. The task is written in a new transaction, so the status of a failed
+	 * import is kept when the import transaction is rolled back.
+	 *
+	 * @param node      The imported node.
+	 * @param failed    When <code>true</code>, the import failed.
+	 * @param finalizer The task finalizer.
+	 * @return The catalog status.
+	 */
+	@Transactional(value = TxType.REQUIRES_NEW)
+	public ImportCatalogStatus endImportTask(final String node, final boolean failed,
+			final Consumer<ImportCatalogStatus> finalizer) {
+		return endTask(node, failed, finalizer);
+	}
+
+	/**
+	 * Register the end handler of the running import of the given node, replacing the previous one. This handler is
+	 * called once the import finishes, before the task ends.
+	 *
+	 * @param node    The imported node.
+	 * @param handler The end handler, called with <code>true</code> when the import succeeded.
+	 */
+	public void onEndImport(final String node, final Consumer<Boolean> handler) {
+		endHandlers.put(node, handler);
+	}
+
+	/**
+	 * Call and release the end handler of the import of the given node, if any. For a failed import, a failure there
+	 * does not hide the import failure.
+	 *
+	 * @param node    The imported node.
+	 * @param succeed When <code>true</code>, the import succeeded.
+	 */
+	public void endImport(final String node, final boolean succeed) {
+		final var handler = endHandlers.remove(node);
+		if (handler == null) {
+			return;
+		}
+		if (succeed) {
+			handler.accept(true);
+			return;
+		}
+		try {
+			handler.accept(false);
+		} catch (final RuntimeException e) {
+			log.warn("Catalog update end failed for {}", node, e);
+		}
+	}
+
+	/**
+	 * Schedule the re-pricing of the quotes impacted by the import. A failure there does not fail the import.
+	 *
+	 * @param node  The imported node.
+	 * @param start The import start time.
+	 */
+	private void scheduleRepricing(final String node, final Date start) {
+		try {
+			repricer.schedule(node, start);
+		} catch (final RuntimeException e) {
+			log.warn("Quotes re-pricing scheduling failed for {}", node, e);
+		}
+	}
+
+	/**
+	 * Warm up the catalog caches of the given node before the task ends. A failure there does not fail the import.
+	 *
+	 * @param node The imported node.
+	 */
+	private void warmUp(final String node) {
+		try {
+			nextStep(node, t -> {
+				t.setPhase(PHASE_WARM_UP);
+				t.setLocation(null);
+			});
+			cacheWarmer.warmUp(node);
+		} catch (final RuntimeException e) {
+			log.warn("Catalog cache warm-up failed for {}", node, e);
 		}
 	}
 
+	/**
+	 * Record a unit of the import of the given node as completed. The checkpoint is written in a new transaction, so it
+	 * is kept when the import fails later.
+	 *
+	 * @param node     The imported node.
+	 * @param phase    The import phase.
+	 * @param location The location. May be <code>null</code>.
+	 */
+	@Transactional(value = TxType.REQUIRES_NEW)
+	public void complete(final String node, final String phase, final String location) {
+		final var checkpoint = new ImportCatalogCheckpoint();
+		checkpoint.setNode(nodeRepository.findOneExpected(node));
+		checkpoint.setPhase(phase);
+		checkpoint.setLocation(location);
+		checkpoint.setDone(new Date());
+		checkpointRepository.saveAndFlush(checkpoint);
+	}
+
+	/**
+	 * Delete the completed units of the given node.
+	 *
+	 * @param node The node identifier.
+	 */
+	private void deleteCheckpoints(final String node) {
+		checkpointRepository.deleteAll(checkpointRepository.findAllByNode(node));
+	}
+
 	@Override
 	@DELETE
 	@Path("{node:service:prov:.+}")
 	@OnNullReturn404
 	public ImportCatalogStatus cancel(@PathParam("node") final String node) {
-		return LongTaskRunnerNode.super.cancel(nodeResource.checkWritableNode(node).getTool().getId());
+		final var tool = nodeResource.checkWritableNode(node).getTool().getId();
+		if (orchestrator.remove(tool)) {
+			// Not yet started, the task ends there
+			log.info("Queued catalog update of {} is cancelled", tool);
+			return endTask(tool, true);
+		}
+		return LongTaskRunnerNode.super.cancel(tool);
 	}
 
 	@Override
@@ -172,6 +442,38 @@ public class ImportCatalogResource implements LongTaskRunnerNode<ImportCatalogSt
 		return LongTaskRunnerNode.super.getTask(nodeResource.checkWritableNode(node).getTool().getId());
 	}
 
+	/**
+	 * Return the price changes of an import run of the given node.
+	 *
+	 * @param node    The node (provider).
+	 * @param run     The optional import run. When <code>null</code>, the last import run is used.
+	 * @param uriInfo The pagination and ordering parameters.
+	 * @return The price changes of the import run. Empty when there is no recorded run.
+	 */
+	@GET
+	@Path("{node:service:prov:[^/]+}/change")
+	public TableItem<ImportCatalogChange> findChanges(@PathParam("node") final String node,
+			@QueryParam("run") final Long run, @Context final UriInfo uriInfo) {
+		final var tool = nodeResource.checkWritableNode(node).getTool().getId();
+		final var pageRequest = paginationJson.getPageRequest(uriInfo, ORM_COLUMNS_CHANGES);
+		final var target = Optional.ofNullable(run)
+				.or(() -> changeRepository.findAllRuns(tool).stream().findFirst());
+		final Page<ImportCatalogChange> changes = target.map(r -> changeRepository.findAll(tool, r, pageRequest))
+				.orElseGet(Page::empty);
+		return paginationJson.applyPagination(uriInfo, changes, Function.identity());
+	}
+
+	/**
+	 * Return the second-level cache statistics of the catalog entities.
+	 *
+	 * @return The cache statistics, with the hit ratio of each region.
+	 */
+	@GET
+	@Path("cache")
+	public CatalogCacheStatisticsVo getCacheStatistics() {
+		return entityCache.getStatistics();
+	}
+
 	/**
 	 * Update the statistics of a catalog update task.
 	 *
@@ -235,6 +537,8 @@ public class ImportCatalogResource implements LongTaskRunnerNode<ImportCatalogSt
 			vo.setCanImport(locator.getResource(n.getId(), ImportCatalogService.class) != null);
 			vo.setNbQuotes((int) repository.countByNode(n.getId()));
 			vo.setPreferredLocation(locationRepository.findBy("node", n, new String[]{"preferred"}, true));
+			vo.setPriority(orchestrator.getPriority(n.getId()));
+			vo.setQueuePosition(orchestrator.getPosition(n.getId()));
 			return vo;
 		}).toList();
 	}
@@ -3,27 +3,17 @@
  */
 package org.ligoj.app.plugin.prov.catalog;
 
-import org.springframework.cache.annotation.CacheEvict;
-
 /**
  * Provisioning contract with updated catalog.
  */
 public interface ImportCatalogService {
 
 	/**
-	 * Update the catalog.
+	 * Update the catalog. The catalog caches of this node are evicted by the caller, see {@link CatalogCacheEvictor}.
 	 *
 	 * @param node  The node to update.
 	 * @param force When <code>true</code>, all cost attributes are update.
 	 * @throws Exception When the catalog update fails. The error is caught at upper level.
 	 */
-	@CacheEvict(allEntries = true, cacheNames = { "prov-instance-license", "prov-container-license",
-			"prov-instance-software", "prov-instance-os", "prov-container-os", "prov-processor", "prov-instance-type",
-			"prov-instance-type-dyn", "prov-instance-type-has-dyn", "prov-container-type", "prov-container-type-dyn",
-			"prov-container-type-has-dyn", "prov-location", "prov-database-type", "prov-database-type-dyn",
-			"prov-database-type-has-dyn", "prov-database-engine", "prov-database-edition", "prov-database-license",
-			"prov-instance-term", "prov-function-type", "prov-function-type-dyn", "prov-function-type-has-dyn",
-			"prov-instance-has-co2", "prov-function-has-co2", "prov-container-has-co2", "prov-database-has-co2",
-			"prov-architecture"})
 	void updateCatalog(String node, boolean force) throws Exception;
 }
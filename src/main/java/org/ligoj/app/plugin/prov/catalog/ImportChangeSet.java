@@ -0,0 +1,107 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.ligoj.app.model.Node;
+import org.ligoj.app.plugin.prov.model.CatalogChangeType;
+import org.ligoj.app.plugin.prov.model.ImportCatalogChange;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+
+import lombok.Getter;
+
+/**
+ * The price changes of an import run. The changes are recorded while the prices are compared, and are written by
+ * batches with the given writer.
+ */
+public class ImportChangeSet {
+
+	/**
+	 * The maximal amount of buffered changes before a write.
+	 */
+	private static final int BATCH = 1000;
+
+	/**
+	 * The import run: the start time of this import.
+	 */
+	@Getter
+	private final long run;
+
+	private final Node node;
+
+	private final Consumer<List<ImportCatalogChange>> writer;
+
+	private List<ImportCatalogChange> pending = new ArrayList<>();
+
+	/**
+	 * The total amount of recorded changes.
+	 */
+	@Getter
+	private long size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param node   The imported node.
+	 * @param run    The import run.
+	 * @param writer The writer of the buffered changes.
+	 */
+	public ImportChangeSet(final Node node, final long run, final Consumer<List<ImportCatalogChange>> writer) {
+		this.node = node;
+		this.run = run;
+		this.writer = writer;
+	}
+
+	/**
+	 * Record a change. The buffered changes are written when the batch size is reached.
+	 *
+	 * @param type     The change type.
+	 * @param resource The resource type of the price.
+	 * @param code     The price code.
+	 * @param oldCost  The previous cost. May be <code>null</code>.
+	 * @param newCost  The new cost. May be <code>null</code>.
+	 * @param oldCo2   The previous CO2. May be <code>null</code>.
+	 * @param newCo2   The new CO2. May be <code>null</code>.
+	 */
+	public void add(final CatalogChangeType type, final ResourceType resource, final String code,
+			final Double oldCost, final Double newCost, final Double oldCo2, final Double newCo2) {
+		final var change = new ImportCatalogChange();
+		change.setNode(node);
+		change.setRun(run);
+		change.setType(type);
+		change.setResource(resource);
+		change.setCode(code);
+		change.setOldCost(oldCost);
+		change.setNewCost(newCost);
+		change.setOldCo2(oldCo2);
+		change.setNewCo2(newCo2);
+		final boolean full;
+		synchronized (this) {
+			pending.add(change);
+			size++;
+			full = pending.size() >= BATCH;
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write the buffered changes.
+	 */
+	public void flush() {
+		final List<ImportCatalogChange> changes;
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			changes = pending;
+			pending = new ArrayList<>();
+		}
+		writer.accept(changes);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Two stages import pipeline of work units such as regions or terms:
+ * <ul>
+ * <li>The download/parse stage runs on a bounded executor of {@link #concurrency} threads. This stage must not use the
+ * persistence context.</li>
+ * <li>The persist stage runs on the calling thread, so within its transaction, in the completion order of the first
+ * stage.</li>
+ * </ul>
+ * Both stages are linked by a bounded queue of {@link #capacity} parsed units: when the persist stage is slower, the
+ * parsing threads are blocked until a slot is released.
+ */
+@Slf4j
+public class ImportPipeline {
+
+	/**
+	 * Download/parse stage of a work unit.
+	 *
+	 * @param <I> The work unit type.
+	 * @param <T> The parsed data type.
+	 */
+	@FunctionalInterface
+	public interface Parser<I, T> {
+
+		/**
+		 * Download and parse a work unit.
+		 *
+		 * @param unit The work unit.
+		 * @return The parsed data to persist.
+		 * @throws Exception When download or parse failed. The whole pipeline is stopped.
+		 */
+		T parse(I unit) throws Exception; // NOSONAR - Rethrown as is
+	}
+
+	/**
+	 * Persist stage of a work unit.
+	 *
+	 * @param <I> The work unit type.
+	 * @param <T> The parsed data type.
+	 */
+	@FunctionalInterface
+	public interface Writer<I, T> {
+
+		/**
+		 * Persist the parsed data of a work unit.
+		 *
+		 * @param unit   The work unit.
+		 * @param parsed The parsed data.
+		 * @throws Exception When persist failed. The whole pipeline is stopped.
+		 */
+		void write(I unit, T parsed) throws Exception; // NOSONAR - Rethrown as is
+	}
+
+	/**
+	 * A parsed unit, or the failure of its parsing.
+	 */
+	private record Parsed<I, T>(I unit, T data, Exception error) {
+	}
+
+	/**
+	 * The maximal amount of work units parsed at the same time. When <code>1</code>, the pipeline is sequential and
+	 * runs entirely on the calling thread.
+	 */
+	@Getter
+	private final int concurrency;
+
+	/**
+	 * The maximal amount of parsed work units waiting for the persist stage.
+	 */
+	@Getter
+	private final int capacity;
+
+	/**
+	 * Constructor with the bounds.
+	 *
+	 * @param concurrency The maximal amount of work units parsed at the same time. Minimum is 1.
+	 * @param capacity    The maximal amount of parsed work units waiting for the persist stage. Minimum is 1.
+	 */
+	public ImportPipeline(final int concurrency, final int capacity) {
+		this.concurrency = Math.max(1, concurrency);
+		this.capacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * Run the pipeline on the given work units and wait for its completion. On the first failure, the pending units
+	 * are cancelled and the failure is rethrown.
+	 *
+	 * @param <I>    The work unit type.
+	 * @param <T>    The parsed data type.
+	 * @param units  The work units.
+	 * @param parser The download/parse stage.
+	 * @param writer The persist stage, always called from the calling thread.
+	 * @throws Exception The first failure of any stage.
+	 */
+	public <I, T> void run(final Collection<I> units, final Parser<I, T> parser, final Writer<I, T> writer)
+			throws Exception { // NOSONAR - Rethrown as is
+		if (concurrency == 1 || units.size() <= 1) {
+			for (final var unit : units) {
+				writer.write(unit, parser.parse(unit));
+			}
+			return;
+		}
+
+		final BlockingQueue<Parsed<I, T>> queue = new ArrayBlockingQueue<>(capacity);
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, units.size()));
+		try {
+			units.forEach(unit -> executor.execute(() -> parse(queue, unit, parser)));
+			for (var i = 0; i < units.size(); i++) {
+				final var parsed = queue.take();
+				if (parsed.error() != null) {
+					log.error("Import pipeline failed while parsing {}", parsed.unit());
+					throw parsed.error();
+				}
+				writer.write(parsed.unit(), parsed.data());
+			}
+		} finally {
+			// Cancel the pending units and release the threads blocked by a full queue
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Parse a unit and wait for a free slot in the queue.
+	 */
+	private <I, T> void parse(final BlockingQueue<Parsed<I, T>> queue, final I unit, final Parser<I, T> parser) {
+		Parsed<I, T> parsed;
+		try {
+			parsed = new Parsed<>(unit, parser.parse(unit), null);
+		} catch (final Throwable e) { // NOSONAR - The persist stage waits for this unit whatever the failure
+			parsed = new Parsed<>(unit, null, e instanceof Exception ex ? ex : new IllegalStateException(e));
+		}
+		try {
+			queue.put(parsed);
+		} catch (final InterruptedException ie) {
+			// Pipeline is cancelled
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
+
+import lombok.Getter;
+
+/**
+ * In-memory progress of an import. The steps and the created or purged entities are counted there, and are written to
+ * the {@link ImportCatalogStatus} at most once per {@link #interval}. The catalog statistics are fully counted only
+ * once, at the first write, and are then maintained incrementally.
+ */
+public class ImportProgress {
+
+	/**
+	 * The minimal duration between two writes, in milliseconds. When <code>0</code>, each step is written.
+	 */
+	@Getter
+	private final long interval;
+
+	/**
+	 * The last write time, in milliseconds.
+	 */
+	private long lastFlush;
+
+	/**
+	 * The steps not yet written.
+	 */
+	private int pendingSteps;
+
+	/**
+	 * The current phase.
+	 */
+	@Getter
+	private String phase;
+
+	/**
+	 * The current location.
+	 */
+	@Getter
+	private String location;
+
+	/**
+	 * When <code>true</code>, the statistics have been fully counted and the base values are set.
+	 */
+	@Getter
+	private boolean counted;
+
+	private int baseLocations;
+	private int baseTypes;
+	private int basePrices;
+	private int baseCo2Prices;
+
+	private int locations;
+	private int types;
+	private int prices;
+	private int co2Prices;
+	private int purgedPrices;
+	private int retainedPrices;
+
+	/**
+	 * Constructor with the write interval.
+	 *
+	 * @param interval The minimal duration between two writes, in milliseconds.
+	 */
+	public ImportProgress(final long interval) {
+		this.interval = Math.max(0, interval);
+	}
+
+	/**
+	 * Record a step.
+	 *
+	 * @param phase    The new import phase.
+	 * @param location The current location. May be <code>null</code>.
+	 * @param step     The step increment. May be <code>0</code>.
+	 * @param now      The current time, in milliseconds.
+	 * @return <code>true</code> when the progress should be written.
+	 */
+	public synchronized boolean step(final String phase, final String location, final int step, final long now) {
+		this.phase = phase;
+		this.location = location;
+		this.pendingSteps += step;
+		return now - lastFlush >= interval;
+	}
+
+	/**
+	 * Count the created locations.
+	 *
+	 * @param count The created locations.
+	 */
+	public synchronized void addLocations(final int count) {
+		locations += count;
+	}
+
+	/**
+	 * Count the created types.
+	 *
+	 * @param count The created types.
+	 */
+	public synchronized void addTypes(final int count) {
+		types += count;
+	}
+
+	/**
+	 * Count a created price.
+	 *
+	 * @param co2 When <code>true</code>, the price has CO2 data.
+	 */
+	public synchronized void addPrice(final boolean co2) {
+		prices++;
+		if (co2) {
+			co2Prices++;
+		}
+	}
+
+	/**
+	 * Count the purged prices.
+	 *
+	 * @param purged   The deleted retired prices.
+	 * @param retained The retained retired prices.
+	 */
+	public synchronized void addPurged(final int purged, final int retained) {
+		purgedPrices += purged;
+		retainedPrices += retained;
+	}
+
+	/**
+	 * Write the progress to the given status. When the statistics have not yet been counted, the given status must hold
+	 * the full statistics, they are used as base values.
+	 *
+	 * @param status The status to update.
+	 * @param now    The current time, in milliseconds.
+	 */
+	public synchronized void apply(final ImportCatalogStatus status, final long now) {
+		if (!counted) {
+			baseLocations = status.getNbLocations() - locations;
+			baseTypes = status.getNbTypes() - types;
+			basePrices = status.getNbPrices() - prices + purgedPrices;
+			baseCo2Prices = status.getNbCo2Prices() - co2Prices;
+			counted = true;
+		}
+		status.setNbLocations(baseLocations + locations);
+		status.setNbTypes(baseTypes + types);
+		status.setNbPrices(basePrices + prices - purgedPrices);
+		status.setNbCo2Prices(baseCo2Prices + co2Prices);
+		status.setNbPurgedPrices(purgedPrices);
+		status.setNbRetainedPrices(retainedPrices);
+		status.setDone(status.getDone() + pendingSteps);
+		status.setPhase(phase);
+		status.setLocation(location);
+		pendingSteps = 0;
+		lastFlush = now;
+	}
+}
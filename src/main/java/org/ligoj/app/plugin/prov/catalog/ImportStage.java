@@ -0,0 +1,145 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ligoj.app.plugin.prov.model.AbstractPrice;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import lombok.Getter;
+
+/**
+ * Staging area of the staged import mode. The prices detected as changed by the "saveAsNeeded" operations are buffered
+ * there instead of being persisted one by one, and are written by batches, see {@link ImportStageWriter}. An entity
+ * staged several times before its batch is written is written once.
+ * <p>
+ * This mode only reduces the write round trips. The previous prices of the node are still held as entities by the
+ * import context, see {@link AbstractUpdateContext#getPrevious()}, since the provider importers resolve and update them
+ * in place: their heap cost is unchanged, and is out of the scope of this mode.
+ */
+public class ImportStage {
+
+	/**
+	 * A batch of staged entities.
+	 *
+	 * @param entities The staged entities, grouped by repository, in the staging order.
+	 * @param added    The new cost of the staged prices to be accounted as added once written.
+	 */
+	public record Batch(List<Object> entities, Map<AbstractPrice<?>, Double> added) {
+
+		/**
+		 * Indicate this batch is empty.
+		 *
+		 * @return <code>true</code> when there is nothing to write.
+		 */
+		public boolean isEmpty() {
+			return entities.isEmpty();
+		}
+	}
+
+	/**
+	 * The maximal amount of staged entities before a write is requested.
+	 */
+	@Getter
+	private final int batchSize;
+
+	/**
+	 * The staged entities, grouped by repository, in the staging order.
+	 */
+	private final Map<JpaRepository<?, ?>, List<Object>> pending = new LinkedHashMap<>();
+
+	/**
+	 * The currently staged entities, compared by identity since the new entities have no identifier yet.
+	 */
+	private final Set<Object> members = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * The new cost of the currently staged new prices.
+	 */
+	private final Map<AbstractPrice<?>, Double> added = new IdentityHashMap<>();
+
+	/**
+	 * The total amount of staged entities since the beginning of this import.
+	 */
+	@Getter
+	private long staged;
+
+	/**
+	 * The total amount of written batches since the beginning of this import.
+	 */
+	@Getter
+	private long batches;
+
+	/**
+	 * Constructor with the batch size.
+	 *
+	 * @param batchSize The maximal amount of staged entities before a write is requested. Minimum is 1.
+	 */
+	public ImportStage(final int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Stage an entity to be written later with the given repository. Nothing is done when this entity is already
+	 * staged.
+	 *
+	 * @param <P>        The entity type.
+	 * @param repository The repository used to write the entity.
+	 * @param entity     The entity to stage.
+	 * @return <code>true</code> when the batch size is reached and the stage should be written.
+	 */
+	public synchronized <P> boolean add(final JpaRepository<P, ?> repository, final P entity) {
+		if (!members.add(entity)) {
+			return false;
+		}
+		pending.computeIfAbsent(repository, r -> new ArrayList<>()).add(entity);
+		staged++;
+		return members.size() >= batchSize;
+	}
+
+	/**
+	 * Record the new cost of a new price. This price will be accounted as added once written. The last recorded cost
+	 * wins.
+	 *
+	 * @param price The new price.
+	 * @param cost  The new rounded cost.
+	 */
+	public synchronized void added(final AbstractPrice<?> price, final double cost) {
+		added.put(price, cost);
+	}
+
+	/**
+	 * Return and clear the staged entities.
+	 *
+	 * @return The staged entities. May be empty.
+	 */
+	public synchronized Batch drain() {
+		final var entities = new ArrayList<>(members.size());
+		pending.values().forEach(entities::addAll);
+		final var result = new Batch(entities, new IdentityHashMap<>(added));
+		if (!entities.isEmpty()) {
+			batches++;
+		}
+		pending.clear();
+		members.clear();
+		added.clear();
+		return result;
+	}
+
+	/**
+	 * Return the amount of currently staged entities.
+	 *
+	 * @return The amount of currently staged entities.
+	 */
+	public synchronized int size() {
+		return members.size();
+	}
+}
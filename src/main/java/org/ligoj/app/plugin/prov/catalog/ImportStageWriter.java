@@ -0,0 +1,58 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceContextType;
+import jakarta.transaction.Transactional;
+
+import org.hibernate.Session;
+import org.springframework.data.domain.Persistable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writer of the staged catalog prices, see {@link ImportStage}. A batch is written within a single transaction, the
+ * import's one when there is one, and with JDBC batching: the new entities are inserted first, then the updated ones,
+ * both in the staging order so the entities of a same type are grouped. The written entities are then detached, so
+ * the persistence context and the related dirty checking do not grow with the catalog size.
+ */
+@Component
+@Transactional
+public class ImportStageWriter {
+
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION, unitName = "pu")
+	private EntityManager em;
+
+	/**
+	 * Write a batch of staged entities. The new entities are persisted as is. The detached ones are merged, and their
+	 * managed copies are detached once written, so the given instances stay the only references held by the import.
+	 *
+	 * @param entities  The entities to write, grouped by entity type.
+	 * @param batchSize The JDBC batch size.
+	 */
+	public void write(final List<Object> entities, final int batchSize) {
+		final var session = em.unwrap(Session.class);
+		final var previousBatchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(batchSize);
+		try {
+			final var byNew = entities.stream()
+					.collect(Collectors.partitioningBy(e -> ((Persistable<?>) e).isNew()));
+			final var written = new ArrayList<>(entities.size());
+			byNew.get(true).forEach(e -> {
+				em.persist(e);
+				written.add(e);
+			});
+			byNew.get(false).forEach(e -> written.add(em.contains(e) ? e : em.merge(e)));
+			em.flush();
+			written.forEach(em::detach);
+		} finally {
+			session.setJdbcBatchSize(previousBatchSize);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+import lombok.Getter;
+
+/**
+ * Prefix tree of string keys. Each lookup costs one node per character of the looked-up string, whatever the amount
+ * of keys. Not thread safe while being filled, read-only usages are thread safe.
+ *
+ * @param <V> The value type.
+ */
+public class PrefixTrie<V> {
+
+	/**
+	 * A node of the tree: the string leading to this node is the path from the root.
+	 */
+	private static class TrieNode<V> {
+
+		private final Map<Character, TrieNode<V>> children = new HashMap<>();
+
+		/**
+		 * The value of the key ending at this node, or <code>null</code>.
+		 */
+		private V value;
+
+		/**
+		 * The smallest key of this sub-tree, and its value.
+		 */
+		private String firstKey;
+		private V firstValue;
+	}
+
+	private final TrieNode<V> root = new TrieNode<>();
+
+	/**
+	 * The amount of keys.
+	 */
+	@Getter
+	private int size;
+
+	/**
+	 * Associate a value to the given key.
+	 *
+	 * @param key   The key.
+	 * @param value The non <code>null</code> value.
+	 */
+	public void put(final String key, final V value) {
+		var node = root;
+		updateFirst(node, key, value);
+		for (var i = 0; i < key.length(); i++) {
+			node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieNode<>());
+			updateFirst(node, key, value);
+		}
+		if (node.value == null) {
+			size++;
+		}
+		node.value = value;
+	}
+
+	private void updateFirst(final TrieNode<V> node, final String key, final V value) {
+		if (node.firstKey == null || key.compareTo(node.firstKey) <= 0) {
+			node.firstKey = key;
+			node.firstValue = value;
+		}
+	}
+
+	/**
+	 * Return the node of the given path.
+	 */
+	private TrieNode<V> find(final String path) {
+		var node = root;
+		for (var i = 0; node != null && i < path.length(); i++) {
+			node = node.children.get(path.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * Return the value of the given key.
+	 *
+	 * @param key The exact key.
+	 * @return The value of the given key, or <code>null</code>.
+	 */
+	public V get(final String key) {
+		final var node = find(key);
+		return node == null ? null : node.value;
+	}
+
+	/**
+	 * Return the value of the smallest key starting with the given prefix. The key itself is included.
+	 *
+	 * @param prefix The required key prefix.
+	 * @return The value of the smallest key starting with the given prefix, or <code>null</code>.
+	 */
+	public V getFirst(final String prefix) {
+		final var node = find(prefix);
+		return node == null ? null : node.firstValue;
+	}
+
+	/**
+	 * Visit the values of the keys being a prefix of the given string, from the shortest to the longest one. The
+	 * string itself is included.
+	 *
+	 * @param string  The string to walk.
+	 * @param visitor The visitor receiving the value and the length of the corresponding key.
+	 */
+	public void walk(final String string, final ObjIntConsumer<V> visitor) {
+		var node = root;
+		for (var i = 0; i < string.length(); i++) {
+			node = node.children.get(string.charAt(i));
+			if (node == null) {
+				return;
+			}
+			if (node.value != null) {
+				visitor.accept(node.value, i + 1);
+			}
+		}
+	}
+}
@@ -6,11 +6,18 @@ package org.ligoj.app.plugin.prov.dao;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 import org.ligoj.app.plugin.prov.model.AbstractQuote;
+import org.ligoj.app.plugin.prov.model.CatalogChangeType;
 import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.app.plugin.prov.model.ResourceType;
 import org.ligoj.bootstrap.core.dao.RestRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.NoRepositoryBean;
 
 /**
@@ -22,6 +29,11 @@ import org.springframework.data.repository.NoRepositoryBean;
 @NoRepositoryBean
 public interface BaseProvQuoteRepository<C extends AbstractQuote<?>> extends RestRepository<C, Integer> {
 
+	/**
+	 * JDBC fetch size of the scrolled queries, so the driver does not load all the rows at once.
+	 */
+	String FETCH_SIZE = "500";
+
 	/**
 	 * Return identifiers of all resources linked to the given quote.
 	 *
@@ -48,6 +60,27 @@ public interface BaseProvQuoteRepository<C extends AbstractQuote<?>> extends Res
 			""")
 	List<C> findAll(ProvQuote quote);
 
+	/**
+	 * Scroll the resources of the related quote with their tags, ordered by resource name, then by resource
+	 * identifier. A resource having several tags spans several consecutive rows, and a resource without tag has a
+	 * single row with a <code>null</code> tag.
+	 *
+	 * @param quote The filtered quote.
+	 * @param type  The resource type of this repository, used to match the tags.
+	 * @return The rows: resource, tag name and tag value. The stream must be consumed and closed within a transaction.
+	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+	@Query("""
+			SELECT qi, t.name, t.value FROM #{#entityName} AS qi
+			INNER JOIN FETCH qi.price qsp
+			INNER JOIN FETCH qsp.type
+			LEFT JOIN FETCH qsp.location
+			LEFT JOIN ProvTag t ON t.configuration = qi.configuration AND t.type = :type AND t.resource = qi.id
+			WHERE qi.configuration = :quote
+			ORDER BY qi.name, qi.id, t.id
+			""")
+	Stream<Object[]> findAllTagged(ProvQuote quote, ResourceType type);
+
 	/**
 	 * Return the resource identifier from the related quote, and only if this resource can be associated to network.
 	 *
@@ -76,4 +109,31 @@ public interface BaseProvQuoteRepository<C extends AbstractQuote<?>> extends Res
 	@Query("SELECT DISTINCT p.code FROM #{#entityName} c INNER JOIN c.price p WHERE p.type.node.id = :node")
 	Collection<String> findUsedPrices(String node);
 
+	/**
+	 * Return the subscriptions of the quotes having a resource using a price changed by the given import run.
+	 *
+	 * @param node     The related node identifier.
+	 * @param run      The import run.
+	 * @param resource The resource type of this repository.
+	 * @param types    The change types to consider.
+	 * @return The subscription identifiers of the impacted quotes.
+	 */
+	@Query("SELECT DISTINCT c.configuration.subscription.id FROM #{#entityName} c INNER JOIN c.price p"
+			+ " WHERE p.type.node.id = :node AND EXISTS (SELECT 1 FROM ImportCatalogChange x WHERE x.node.id = :node"
+			+ " AND x.run = :run AND x.resource = :resource AND x.code = p.code AND x.type IN :types)")
+	List<Integer> findImpactedSubscriptions(String node, long run, ResourceType resource,
+			Collection<CatalogChangeType> types);
+
+	/**
+	 * Delete the given prices not used by any quote of this resource type. The identifiers are expected to belong to
+	 * the <code>[lower, upper]</code> range, so the deletion is a set-based operation restricted to this range.
+	 * Implementations must provide the query since the price entity is not known at this level.
+	 *
+	 * @param lower The lowest price identifier of the range, inclusive.
+	 * @param upper The highest price identifier of the range, inclusive.
+	 * @param ids   The price identifiers to delete when unused.
+	 * @return The amount of deleted prices.
+	 */
+	int deleteUnusedPrices(int lower, int upper, Collection<Integer> ids);
+
 }
@@ -0,0 +1,51 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.dao;
+
+import java.util.List;
+
+import org.ligoj.app.plugin.prov.model.ImportCatalogChange;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+/**
+ * {@link ImportCatalogChange} repository.
+ */
+public interface ImportCatalogChangeRepository extends RestRepository<ImportCatalogChange, Integer> {
+
+	/**
+	 * Return the changes of an import run.
+	 *
+	 * @param node     The node identifier.
+	 * @param run      The import run.
+	 * @param pageable The page request.
+	 * @return The changes of an import run.
+	 */
+	@Query("FROM ImportCatalogChange WHERE node.id = :node AND run = :run")
+	Page<ImportCatalogChange> findAll(String node, Long run, Pageable pageable);
+
+	/**
+	 * Return the import runs of the given node having changes, most recent first.
+	 *
+	 * @param node The node identifier.
+	 * @return The import runs of the given node.
+	 */
+	@Query("SELECT DISTINCT run FROM ImportCatalogChange WHERE node.id = :node ORDER BY run DESC")
+	List<Long> findAllRuns(String node);
+
+	/**
+	 * Delete the changes of the import runs older than the given one.
+	 *
+	 * @param node The node identifier.
+	 * @param run  The oldest kept import run.
+	 * @return The amount of deleted changes.
+	 */
+	@Modifying
+	@Query("DELETE FROM ImportCatalogChange WHERE node.id = :node AND run < :run")
+	int deleteOlder(String node, Long run);
+
+}
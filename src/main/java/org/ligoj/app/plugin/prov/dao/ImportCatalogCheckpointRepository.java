@@ -0,0 +1,26 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.dao;
+
+import java.util.List;
+
+import org.ligoj.app.plugin.prov.model.ImportCatalogCheckpoint;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.jpa.repository.Query;
+
+/**
+ * {@link ImportCatalogCheckpoint} repository.
+ */
+public interface ImportCatalogCheckpointRepository extends RestRepository<ImportCatalogCheckpoint, Integer> {
+
+	/**
+	 * Return the completed units of the given node.
+	 *
+	 * @param node The node identifier.
+	 * @return The completed units of the given node.
+	 */
+	@Query("FROM ImportCatalogCheckpoint WHERE node.id = :node")
+	List<ImportCatalogCheckpoint> findAllByNode(String node);
+
+}
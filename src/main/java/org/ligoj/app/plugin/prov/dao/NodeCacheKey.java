@@ -0,0 +1,69 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.dao;
+
+import java.util.Arrays;
+
+import javax.cache.annotation.GeneratedCacheKey;
+
+import lombok.Getter;
+
+/**
+ * Cache key of the catalog lookups. The node the lookup is related to is kept apart, so the entries of a single node
+ * can be evicted without cooling down the other nodes.
+ */
+public class NodeCacheKey implements GeneratedCacheKey {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The node identifier of the lookup. May be a sub node of the catalog node. May be <code>null</code>.
+	 */
+	@Getter
+	private final String node;
+
+	/**
+	 * All key parameters, including the node.
+	 */
+	private final Object[] parameters;
+
+	/**
+	 * All arguments constructor.
+	 *
+	 * @param node       The node identifier of the lookup.
+	 * @param parameters All key parameters, including the node.
+	 */
+	public NodeCacheKey(final String node, final Object... parameters) {
+		this.node = node;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Indicate this key is related to the given catalog node.
+	 *
+	 * @param catalog The catalog node identifier.
+	 * @return <code>true</code> when the node of this key is the given node or one of its sub nodes.
+	 */
+	public boolean isNode(final String catalog) {
+		return node != null && (node.equals(catalog) || node.startsWith(catalog + ":"));
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof NodeCacheKey key && Arrays.deepEquals(parameters, key.parameters);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.deepHashCode(parameters);
+	}
+
+	@Override
+	public String toString() {
+		return "NodeCacheKey " + Arrays.deepToString(parameters);
+	}
+}
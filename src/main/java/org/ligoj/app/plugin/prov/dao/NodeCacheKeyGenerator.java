@@ -0,0 +1,27 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.dao;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.cache.annotation.CacheInvocationParameter;
+import javax.cache.annotation.CacheKeyGenerator;
+import javax.cache.annotation.CacheKeyInvocationContext;
+import javax.cache.annotation.GeneratedCacheKey;
+
+/**
+ * Generate a {@link NodeCacheKey} from the key parameters of a catalog lookup. The first key parameter is the node
+ * identifier.
+ */
+public class NodeCacheKeyGenerator implements CacheKeyGenerator {
+
+	@Override
+	public GeneratedCacheKey generateCacheKey(final CacheKeyInvocationContext<? extends Annotation> context) {
+		final var parameters = Arrays.stream(context.getKeyParameters()).map(CacheInvocationParameter::getValue)
+				.toArray();
+		return new NodeCacheKey(parameters.length == 0 ? null : Objects.toString(parameters[0], null), parameters);
+	}
+}
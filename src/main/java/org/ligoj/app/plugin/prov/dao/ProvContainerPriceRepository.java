@@ -21,11 +21,11 @@ public interface ProvContainerPriceRepository
 		extends BaseProvTermPriceOsRepository<ProvContainerType, ProvContainerPrice> {
 
 	@Override
-	@CacheResult(cacheName = "prov-container-license")
+	@CacheResult(cacheName = "prov-container-license", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	List<String> findAllLicenses(@CacheKey String node, @CacheKey VmOs os);
 
 	@Override
-	@CacheResult(cacheName = "prov-container-os")
+	@CacheResult(cacheName = "prov-container-os", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	List<String> findAllOs(@CacheKey String node);
 
 	/**
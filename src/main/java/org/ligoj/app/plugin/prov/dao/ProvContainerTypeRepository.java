@@ -16,7 +16,7 @@ import org.ligoj.app.plugin.prov.model.Rate;
  */
 public interface ProvContainerTypeRepository extends BaseProvInstanceTypeRepository<ProvContainerType> {
 
-	@CacheResult(cacheName = "prov-container-type")
+	@CacheResult(cacheName = "prov-container-type", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	List<Integer> findValidTypes(@CacheKey String node, @CacheKey double cpu, @CacheKey double gpu,
 			@CacheKey double ram, @CacheKey double limitCpu, @CacheKey double limitGpu, @CacheKey double limitRam,
@@ -25,7 +25,7 @@ public interface ProvContainerTypeRepository extends BaseProvInstanceTypeReposit
 			@CacheKey boolean autoScale, @CacheKey Rate cpuRate, @CacheKey Rate gpuRate, @CacheKey Rate ramRate,
 			@CacheKey Rate networkRate, @CacheKey Rate storageRate, @CacheKey boolean edge, @CacheKey boolean co2Mode);
 
-	@CacheResult(cacheName = "prov-container-type-dyn")
+	@CacheResult(cacheName = "prov-container-type-dyn", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	List<Integer> findDynamicTypes(@CacheKey String node, @CacheKey double baseline, @CacheKey boolean physical,
 			@CacheKey int type, @CacheKey String processor,  @CacheKey String architecture,
@@ -33,11 +33,11 @@ public interface ProvContainerTypeRepository extends BaseProvInstanceTypeReposit
 			@CacheKey Rate gpuRate, @CacheKey Rate ramRate, @CacheKey Rate networkRate, @CacheKey Rate storageRate,
 			@CacheKey boolean edge, @CacheKey boolean co2Mode);
 
-	@CacheResult(cacheName = "prov-container-type-has-dyn")
+	@CacheResult(cacheName = "prov-container-type-has-dyn", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	boolean hasDynamicalTypes(String node);
 
-	@CacheResult(cacheName = "prov-container-has-co2")
+	@CacheResult(cacheName = "prov-container-has-co2", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	boolean hasCo2Data(String node);
 
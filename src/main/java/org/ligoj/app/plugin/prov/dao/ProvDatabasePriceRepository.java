@@ -36,7 +36,7 @@ public interface ProvDatabasePriceRepository
 	 * @param engine The filtered engine.
 	 * @return The filtered licenses.
 	 */
-	@CacheResult(cacheName = "prov-database-license")
+	@CacheResult(cacheName = "prov-database-license", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Query("SELECT DISTINCT(ip.license) FROM ProvDatabasePrice ip INNER JOIN ip.type AS i "
 			+ "  WHERE :node = i.node.id AND ip.engine=:engine ORDER BY ip.license")
 	List<String> findAllLicenses(@CacheKey String node, @CacheKey String engine);
@@ -48,7 +48,7 @@ public interface ProvDatabasePriceRepository
 	 * @param engine The database engine.
 	 * @return The filtered database editions.
 	 */
-	@CacheResult(cacheName = "prov-database-edition")
+	@CacheResult(cacheName = "prov-database-edition", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Query("SELECT DISTINCT(ip.edition) FROM ProvDatabasePrice ip INNER JOIN ip.type AS i " + "  WHERE :node = i.node.id"
 			+ "   AND ip.engine=:engine AND ip.edition IS NOT NULL ORDER BY ip.edition")
 	List<String> findAllEditions(@CacheKey String node, @CacheKey String engine);
@@ -59,7 +59,7 @@ public interface ProvDatabasePriceRepository
 	 * @param node The node linked to the subscription. Is a node identifier within a provider.
 	 * @return The filtered database engines.
 	 */
-	@CacheResult(cacheName = "prov-database-engine")
+	@CacheResult(cacheName = "prov-database-engine", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Query("SELECT DISTINCT(ip.engine) FROM ProvDatabasePrice ip INNER JOIN ip.type AS i "
 			+ "  WHERE :node = i.node.id ORDER BY ip.engine")
 	List<String> findAllEngines(@CacheKey String node);
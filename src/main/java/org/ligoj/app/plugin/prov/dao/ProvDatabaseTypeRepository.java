@@ -16,7 +16,7 @@ import org.ligoj.app.plugin.prov.model.Rate;
  */
 public interface ProvDatabaseTypeRepository extends BaseProvInstanceTypeRepository<ProvDatabaseType> {
 
-	@CacheResult(cacheName = "prov-database-type")
+	@CacheResult(cacheName = "prov-database-type", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	List<Integer> findValidTypes(@CacheKey String node, @CacheKey double cpu, @CacheKey double gpu,
 			@CacheKey double ram, @CacheKey double limitCpu, @CacheKey double limitGpu, @CacheKey double limitRam,
@@ -25,7 +25,7 @@ public interface ProvDatabaseTypeRepository extends BaseProvInstanceTypeReposito
 			@CacheKey boolean autoScale, @CacheKey Rate cpuRate, @CacheKey Rate gpuRate, @CacheKey Rate ramRate,
 			@CacheKey Rate networkRate, @CacheKey Rate storageRate, @CacheKey boolean edge, @CacheKey boolean co2Mode);
 
-	@CacheResult(cacheName = "prov-database-type-dyn")
+	@CacheResult(cacheName = "prov-database-type-dyn", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	List<Integer> findDynamicTypes(@CacheKey String node, @CacheKey double baseline, @CacheKey boolean physical,
 			@CacheKey int type, @CacheKey String processor,
@@ -34,11 +34,11 @@ public interface ProvDatabaseTypeRepository extends BaseProvInstanceTypeReposito
 			@CacheKey Rate gpuRate, @CacheKey Rate ramRate, @CacheKey Rate networkRate, @CacheKey Rate storageRate,
 			@CacheKey boolean edge, @CacheKey boolean co2Mode);
 
-	@CacheResult(cacheName = "prov-database-type-has-dyn")
+	@CacheResult(cacheName = "prov-database-type-has-dyn", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	boolean hasDynamicalTypes(String node);
 
-	@CacheResult(cacheName = "prov-database-has-co2")
+	@CacheResult(cacheName = "prov-database-has-co2", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	boolean hasCo2Data(String node);
 }
@@ -16,7 +16,7 @@ import org.ligoj.app.plugin.prov.model.Rate;
  */
 public interface ProvFunctionTypeRepository extends BaseProvInstanceTypeRepository<ProvFunctionType> {
 
-	@CacheResult(cacheName = "prov-function-type")
+	@CacheResult(cacheName = "prov-function-type", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	List<Integer> findValidTypes(@CacheKey String node, @CacheKey double cpu, @CacheKey double gpu,
 			@CacheKey double ram, @CacheKey double limitCpu, @CacheKey double limitGpu, @CacheKey double limitRam,
@@ -25,7 +25,7 @@ public interface ProvFunctionTypeRepository extends BaseProvInstanceTypeReposito
 			@CacheKey boolean autoScale, @CacheKey Rate cpuRate, @CacheKey Rate gpuRate, @CacheKey Rate ramRate,
 			@CacheKey Rate networkRate, @CacheKey Rate storageRate, @CacheKey boolean edge, @CacheKey boolean co2Mode);
 
-	@CacheResult(cacheName = "prov-function-type-dyn")
+	@CacheResult(cacheName = "prov-function-type-dyn", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	List<Integer> findDynamicTypes(@CacheKey String node, @CacheKey double baseline, @CacheKey boolean physical,
 			@CacheKey int type, @CacheKey String processor, @CacheKey String architecture,
@@ -33,11 +33,11 @@ public interface ProvFunctionTypeRepository extends BaseProvInstanceTypeReposito
 			@CacheKey Rate gpuRate, @CacheKey Rate ramRate, @CacheKey Rate networkRate, @CacheKey Rate storageRate,
 			@CacheKey boolean edge, @CacheKey boolean co2Mode);
 
-	@CacheResult(cacheName = "prov-function-type-has-dyn")
+	@CacheResult(cacheName = "prov-function-type-has-dyn", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	boolean hasDynamicalTypes(String node);
 
-	@CacheResult(cacheName = "prov-function-has-co2")
+	@CacheResult(cacheName = "prov-function-has-co2", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	boolean hasCo2Data(String node);
 
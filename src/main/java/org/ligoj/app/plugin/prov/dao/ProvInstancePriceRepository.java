@@ -32,7 +32,7 @@ public interface ProvInstancePriceRepository
 			""";
 
 	@Override
-	@CacheResult(cacheName = "prov-instance-license")
+	@CacheResult(cacheName = "prov-instance-license", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	List<String> findAllLicenses(@CacheKey String node, @CacheKey VmOs os);
 
 	/**
@@ -42,7 +42,7 @@ public interface ProvInstancePriceRepository
 	 * @param os   The filtered OS.
 	 * @return The filtered software.
 	 */
-	@CacheResult(cacheName = "prov-instance-software")
+	@CacheResult(cacheName = "prov-instance-software", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Query("""
 			SELECT DISTINCT(ip.software) FROM ProvInstancePrice ip INNER JOIN ip.type AS i
 			WHERE :node = i.node.id
@@ -163,7 +163,7 @@ public interface ProvInstancePriceRepository
 			double duration, String license, String software, double initialCost, ProvTenancy tenancy, boolean p1TypeOnly,
 			Pageable pageable);
 
-	@CacheResult(cacheName = "prov-instance-os")
+	@CacheResult(cacheName = "prov-instance-os", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Override
 	List<String> findAllOs(@CacheKey String node);
 }
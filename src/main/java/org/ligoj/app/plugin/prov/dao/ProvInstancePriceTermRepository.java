@@ -8,11 +8,15 @@ import java.util.List;
 import javax.cache.annotation.CacheKey;
 import javax.cache.annotation.CacheResult;
 
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
 import org.ligoj.bootstrap.core.dao.RestRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 /**
  * {@link ProvInstancePriceTerm} repository.
@@ -48,7 +52,7 @@ public interface ProvInstancePriceTermRepository extends RestRepository<ProvInst
 	 * @param initialCost  When <code>true</code>, the terms having an initial cost are accepted.
 	 * @return The matching instance terms.
 	 */
-	@CacheResult(cacheName = "prov-instance-term")
+	@CacheResult(cacheName = "prov-instance-term", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Query("""
 			SELECT id FROM ProvInstancePriceTerm WHERE
 			      :node = node.id
@@ -75,6 +79,7 @@ public interface ProvInstancePriceTermRepository extends RestRepository<ProvInst
 	 * @param term2 The expected term name prefix alternative 2.
 	 * @return The filtered {@link ProvInstancePriceTerm}.
 	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("""
 			FROM ProvInstancePriceTerm e WHERE e.node.id = :node
 			 AND (e.name LIKE CONCAT(:term1, '%') OR e.name LIKE CONCAT(:term2, '%'))
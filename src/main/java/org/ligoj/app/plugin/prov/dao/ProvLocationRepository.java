@@ -8,10 +8,14 @@ import java.util.List;
 import javax.cache.annotation.CacheKey;
 import javax.cache.annotation.CacheResult;
 
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 import org.ligoj.bootstrap.core.dao.RestRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 /**
  * {@link ProvLocation} repository.
@@ -24,6 +28,7 @@ public interface ProvLocationRepository extends RestRepository<ProvLocation, Int
 	 * @param node The node identifier to match.
 	 * @return All locations linked to this node.
 	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("SELECT pl FROM ProvLocation pl INNER JOIN pl.node n WHERE"
 			+ " (:node = n.id OR :node LIKE CONCAT(n.id, ':%'))"
 			+ " AND EXISTS (SELECT 1 FROM ProvInstancePrice ip WHERE ip.location = pl)")
@@ -37,6 +42,7 @@ public interface ProvLocationRepository extends RestRepository<ProvLocation, Int
 	 *
 	 * @return The entity or <code>null</code>.
 	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("SELECT pl FROM ProvLocation pl INNER JOIN pl.node n WHERE"
 			+ " (:node = n.id OR :node LIKE CONCAT(n.id, ':%')) AND UPPER(pl.name) = UPPER(:name)")
 	ProvLocation findByName(String node, String name);
@@ -49,7 +55,7 @@ public interface ProvLocationRepository extends RestRepository<ProvLocation, Int
 	 *
 	 * @return The entity identifier or <code>null</code>.
 	 */
-	@CacheResult(cacheName = "prov-location")
+	@CacheResult(cacheName = "prov-location", cacheKeyGenerator = NodeCacheKeyGenerator.class)
 	@Query("SELECT pl.id FROM ProvLocation pl INNER JOIN pl.node n WHERE"
 			+ " (:node = n.id OR :node LIKE CONCAT(n.id, ':%')) AND UPPER(pl.name) = UPPER(:name)")
 	Integer toId(@CacheKey String node, @CacheKey String name);
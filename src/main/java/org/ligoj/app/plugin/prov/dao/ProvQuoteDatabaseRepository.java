@@ -3,6 +3,7 @@
  */
 package org.ligoj.app.plugin.prov.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.ligoj.app.plugin.prov.model.ProvQuote;
@@ -23,4 +24,13 @@ public interface ProvQuoteDatabaseRepository extends ProvQuoteTermRepository<Pro
 	@Override
 	@Query("SELECT id FROM ProvQuoteStorage WHERE quoteDatabase IS NOT NULL AND configuration = :quote")
 	List<Integer> findAllStorageIdentifiers(ProvQuote quote);
+
+	@Override
+	@Modifying
+	@Query("""
+			DELETE FROM ProvDatabasePrice p WHERE p.id BETWEEN :lower AND :upper AND p.id IN :ids
+			 AND NOT EXISTS (SELECT 1 FROM ProvQuoteDatabase q WHERE q.price.id = p.id)
+			""")
+	int deleteUnusedPrices(int lower, int upper, Collection<Integer> ids);
+
 }
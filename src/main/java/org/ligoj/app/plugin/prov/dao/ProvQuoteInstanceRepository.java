@@ -3,6 +3,7 @@
  */
 package org.ligoj.app.plugin.prov.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.ligoj.app.plugin.prov.model.ProvQuote;
@@ -24,4 +25,12 @@ public interface ProvQuoteInstanceRepository extends ProvQuoteTermRepository<Pro
 	@Query("SELECT id FROM ProvQuoteStorage WHERE quoteInstance IS NOT NULL AND configuration = :quote")
 	List<Integer> findAllStorageIdentifiers(ProvQuote quote);
 
+	@Override
+	@Modifying
+	@Query("""
+			DELETE FROM ProvInstancePrice p WHERE p.id BETWEEN :lower AND :upper AND p.id IN :ids
+			 AND NOT EXISTS (SELECT 1 FROM ProvQuoteInstance q WHERE q.price.id = p.id)
+			""")
+	int deleteUnusedPrices(int lower, int upper, Collection<Integer> ids);
+
 }
@@ -3,18 +3,131 @@
  */
 package org.ligoj.app.plugin.prov.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
+
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 
 import org.ligoj.app.plugin.prov.model.ProvQuote;
 import org.ligoj.app.plugin.prov.model.ProvQuoteStorage;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 /**
  * {@link ProvQuoteStorage} repository.
  */
 public interface ProvQuoteStorageRepository extends BaseProvQuoteRepository<ProvQuoteStorage> {
 
+	/**
+	 * Scrolled storages with their tags, attached to a resource.
+	 */
+	String ATTACHED_QUERY = """
+			SELECT qs, t.name, t.value FROM ProvQuoteStorage AS qs
+			INNER JOIN FETCH qs.price qsp
+			INNER JOIN FETCH qsp.type
+			LEFT JOIN ProvTag t ON t.configuration = qs.configuration
+			 AND t.type = org.ligoj.app.plugin.prov.model.ResourceType.STORAGE AND t.resource = qs.id
+			WHERE qs.configuration = :quote
+			""";
+
+	/**
+	 * Scroll the storages of the related quote with their tags and their optional resource, ordered by storage.
+	 *
+	 * @param quote The filtered quote.
+	 * @param type  The resource type of the tags, {@link ResourceType#STORAGE}.
+	 * @return The rows: storage, tag name and tag value. The stream must be consumed and closed within a transaction.
+	 */
+	@Override
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+	@Query("""
+			SELECT qs, t.name, t.value FROM ProvQuoteStorage AS qs
+			INNER JOIN FETCH qs.price qsp
+			INNER JOIN FETCH qsp.type
+			LEFT JOIN FETCH qsp.location
+			LEFT JOIN FETCH qs.quoteInstance
+			LEFT JOIN FETCH qs.quoteDatabase
+			LEFT JOIN FETCH qs.quoteContainer
+			LEFT JOIN FETCH qs.quoteFunction
+			LEFT JOIN ProvTag t ON t.configuration = qs.configuration AND t.type = :type AND t.resource = qs.id
+			WHERE qs.configuration = :quote
+			ORDER BY qs.id, t.id
+			""")
+	Stream<Object[]> findAllTagged(ProvQuote quote, ResourceType type);
+
+	/**
+	 * Scroll the storages attached to an instance with their tags, ordered by instance name and
+	 * identifier, then by storage.
+	 *
+	 * @param quote The filtered quote.
+	 * @return The rows: storage, tag name and tag value. The stream must be consumed and closed within a transaction.
+	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+	@Query(ATTACHED_QUERY + " AND qs.quoteInstance IS NOT NULL ORDER BY qs.quoteInstance.name,"
+			+ " qs.quoteInstance.id, qs.id, t.id")
+	Stream<Object[]> findAllTaggedByInstance(ProvQuote quote);
+
+	/**
+	 * Scroll the storages attached to a database with their tags, ordered by database name and
+	 * identifier, then by storage.
+	 *
+	 * @param quote The filtered quote.
+	 * @return The rows: storage, tag name and tag value. The stream must be consumed and closed within a transaction.
+	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+	@Query(ATTACHED_QUERY + " AND qs.quoteDatabase IS NOT NULL ORDER BY qs.quoteDatabase.name,"
+			+ " qs.quoteDatabase.id, qs.id, t.id")
+	Stream<Object[]> findAllTaggedByDatabase(ProvQuote quote);
+
+	/**
+	 * Scroll the storages attached to a container with their tags, ordered by container name and
+	 * identifier, then by storage.
+	 *
+	 * @param quote The filtered quote.
+	 * @return The rows: storage, tag name and tag value. The stream must be consumed and closed within a transaction.
+	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+	@Query(ATTACHED_QUERY + " AND qs.quoteContainer IS NOT NULL ORDER BY qs.quoteContainer.name,"
+			+ " qs.quoteContainer.id, qs.id, t.id")
+	Stream<Object[]> findAllTaggedByContainer(ProvQuote quote);
+
+	/**
+	 * Scroll the storages attached to a function with their tags, ordered by function name and
+	 * identifier, then by storage.
+	 *
+	 * @param quote The filtered quote.
+	 * @return The rows: storage, tag name and tag value. The stream must be consumed and closed within a transaction.
+	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+	@Query(ATTACHED_QUERY + " AND qs.quoteFunction IS NOT NULL ORDER BY qs.quoteFunction.name,"
+			+ " qs.quoteFunction.id, qs.id, t.id")
+	Stream<Object[]> findAllTaggedByFunction(ProvQuote quote);
+
+	/**
+	 * Return the amount of storages attached to each resource of the related quote, the highest first.
+	 *
+	 * @param quote    The filtered quote.
+	 * @param pageable The page, usually the first one with a single result to get the highest amount.
+	 * @return The amounts of attached storages.
+	 */
+	@Query("""
+			SELECT COUNT(qs.id) FROM ProvQuoteStorage AS qs
+			LEFT JOIN qs.quoteInstance qi
+			LEFT JOIN qs.quoteDatabase qb
+			LEFT JOIN qs.quoteContainer qc
+			LEFT JOIN qs.quoteFunction qf
+			WHERE qs.configuration = :quote AND COALESCE(qi.id, qb.id, qc.id, qf.id) IS NOT NULL
+			GROUP BY qi.id, qb.id, qc.id, qf.id
+			ORDER BY COUNT(qs.id) DESC
+			""")
+	List<Long> countAttached(ProvQuote quote, Pageable pageable);
+
 	@Override
 	@Query("SELECT id FROM ProvQuoteStorage WHERE configuration = :quote AND price.type.network IS NOT NULL")
 	Set<Integer> findAllNetworkId(ProvQuote quote);
@@ -23,4 +136,12 @@ public interface ProvQuoteStorageRepository extends BaseProvQuoteRepository<Prov
 	@Query("SELECT id, name FROM ProvQuoteStorage WHERE configuration = :quote AND price.type.network IS NOT NULL")
 	List<Object[]> findAllNetworkIdName(ProvQuote quote);
 
+	@Override
+	@Modifying
+	@Query("""
+			DELETE FROM ProvStoragePrice p WHERE p.id BETWEEN :lower AND :upper AND p.id IN :ids
+			 AND NOT EXISTS (SELECT 1 FROM ProvQuoteStorage q WHERE q.price.id = p.id)
+			""")
+	int deleteUnusedPrices(int lower, int upper, Collection<Integer> ids);
+
 }
@@ -3,13 +3,23 @@
  */
 package org.ligoj.app.plugin.prov.dao;
 
+import java.util.Collection;
+
 import org.ligoj.app.plugin.prov.model.ProvQuoteSupport;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
 /**
  * {@link ProvQuoteSupport} repository.
  */
 public interface ProvQuoteSupportRepository extends BaseProvQuoteRepository<ProvQuoteSupport> {
 
-	// All delegated
+	@Override
+	@Modifying
+	@Query("""
+			DELETE FROM ProvSupportPrice p WHERE p.id BETWEEN :lower AND :upper AND p.id IN :ids
+			 AND NOT EXISTS (SELECT 1 FROM ProvQuoteSupport q WHERE q.price.id = p.id)
+			""")
+	int deleteUnusedPrices(int lower, int upper, Collection<Integer> ids);
 
 }
@@ -3,13 +3,19 @@
  */
 package org.ligoj.app.plugin.prov.dao;
 
+import org.hibernate.jpa.HibernateHints;
 import org.ligoj.app.plugin.prov.model.AbstractQuote;
 import org.ligoj.app.plugin.prov.model.AbstractTermPriceVm;
 import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.app.plugin.prov.model.ResourceType;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.NoRepositoryBean;
 
+import jakarta.persistence.QueryHint;
+
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * {@link AbstractQuote} having a term repository.
@@ -40,4 +46,18 @@ public interface ProvQuoteTermRepository<C extends AbstractQuote<? extends Abstr
 			""")
 	List<C> findAll(ProvQuote quote);
 
+	@Override
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+	@Query("""
+			SELECT qi, t.name, t.value FROM #{#entityName} AS qi
+			INNER JOIN FETCH qi.price qsp
+			INNER JOIN FETCH qsp.type
+			LEFT JOIN FETCH qsp.location
+			INNER JOIN FETCH qsp.term
+			LEFT JOIN ProvTag t ON t.configuration = qi.configuration AND t.type = :type AND t.resource = qi.id
+			WHERE qi.configuration = :quote
+			ORDER BY qi.name, qi.id, t.id
+			""")
+	Stream<Object[]> findAllTagged(ProvQuote quote, ResourceType type);
+
 }
@@ -0,0 +1,36 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.dao;
+
+import java.util.List;
+
+import org.ligoj.app.plugin.prov.model.ProvQuoteUploadError;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+/**
+ * {@link ProvQuoteUploadError} repository.
+ */
+public interface ProvQuoteUploadErrorRepository extends RestRepository<ProvQuoteUploadError, Integer> {
+
+	/**
+	 * Return the failed entries of the last upload of a subscription.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return The failed entries ordered by line.
+	 */
+	@Query("FROM ProvQuoteUploadError WHERE subscription = :subscription ORDER BY line")
+	List<ProvQuoteUploadError> findAll(int subscription);
+
+	/**
+	 * Delete the failed entries of the last upload of a subscription.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return The amount of deleted entries.
+	 */
+	@Modifying
+	@Query("DELETE FROM ProvQuoteUploadError WHERE subscription = :subscription")
+	int deleteAll(int subscription);
+}
@@ -0,0 +1,15 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.dao;
+
+import org.ligoj.app.dao.task.LongTaskSubscriptionRepository;
+import org.ligoj.app.plugin.prov.model.ProvQuoteUploadStatus;
+
+/**
+ * {@link ProvQuoteUploadStatus} repository.
+ */
+public interface ProvQuoteUploadStatusRepository extends LongTaskSubscriptionRepository<ProvQuoteUploadStatus> {
+
+	// All delegated
+}
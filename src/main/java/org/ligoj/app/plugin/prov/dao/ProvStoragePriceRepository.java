@@ -5,12 +5,16 @@ package org.ligoj.app.plugin.prov.dao;
 
 import java.util.List;
 
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 import org.ligoj.app.plugin.prov.model.ProvStorageOptimized;
 import org.ligoj.app.plugin.prov.model.ProvStoragePrice;
 import org.ligoj.app.plugin.prov.model.Rate;
 import org.ligoj.bootstrap.core.dao.RestRepository;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 /**
  * {@link ProvStoragePrice} repository.
@@ -25,6 +29,7 @@ public interface ProvStoragePriceRepository extends RestRepository<ProvStoragePr
 	 * @param location The expected location name. Case-sensitive.
 	 * @return The filtered {@link ProvStoragePrice}.
 	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("FROM ProvStoragePrice WHERE location.name = :location AND type.node.id = :node")
 	List<ProvStoragePrice> findAll(String node, String location);
 
@@ -105,6 +110,7 @@ public interface ProvStoragePriceRepository extends RestRepository<ProvStoragePr
 	 * @param location The expected location name. Case-sensitive.
 	 * @return The filtered {@link ProvStoragePrice}.
 	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("SELECT e FROM ProvStoragePrice e INNER JOIN FETCH e.type t INNER JOIN e.location l WHERE                      "
 			+ " (:location = '' OR l.name = :location) AND t.node.id = :node             ")
 	List<ProvStoragePrice> findByLocation(String node, String location);
@@ -116,6 +122,7 @@ public interface ProvStoragePriceRepository extends RestRepository<ProvStoragePr
 	 * @param type The expected type code. Case-sensitive.
 	 * @return The filtered {@link ProvStoragePrice}.
 	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("SELECT e FROM ProvStoragePrice e INNER JOIN FETCH e.type t INNER JOIN FETCH e.location l WHERE                      "
 			+ " t.code = :type AND t.node.id = :node             ")
 	List<ProvStoragePrice> findByTypeName(String node, String type);
@@ -5,9 +5,13 @@ package org.ligoj.app.plugin.prov.dao;
 
 import java.util.List;
 
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 import org.ligoj.app.plugin.prov.model.ProvSupportPrice;
 import org.ligoj.bootstrap.core.dao.RestRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 /**
  * {@link ProvSupportPrice} repository.
@@ -20,6 +24,7 @@ public interface ProvSupportPriceRepository extends RestRepository<ProvSupportPr
 	 * @param node The node linked to the subscription. Is a node identifier within a provider.
 	 * @return The cheapest support or <code>null</code>.
 	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("SELECT sp FROM ProvSupportPrice AS sp INNER JOIN sp.type st "
 			+ " WHERE (:node = st.node.id OR :node LIKE CONCAT(st.node.id,'%')) ")
 	List<ProvSupportPrice> findAll(String node);
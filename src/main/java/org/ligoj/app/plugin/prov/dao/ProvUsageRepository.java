@@ -3,6 +3,7 @@
  */
 package org.ligoj.app.plugin.prov.dao;
 
+import java.util.List;
 import java.util.stream.Stream;
 
 import org.ligoj.app.plugin.prov.model.ProvQuoteContainer;
@@ -36,4 +37,14 @@ public interface ProvUsageRepository extends BaseMultiScopedRepository<ProvUsage
 	@Query("SELECT pu FROM ProvQuoteFunction pu WHERE pu.usage = :scoped"
 			+ " OR (pu.usage IS NULL AND  pu.configuration.usage = :scoped)")
 	Stream<ProvQuoteFunction> findRelatedFunctions(ProvUsage scoped);
+
+	/**
+	 * Return all usages of the quotes related to the given node or one of its sub nodes.
+	 *
+	 * @param node The node identifier to match.
+	 * @return All usages related to the given node.
+	 */
+	@Query("SELECT pu FROM ProvUsage pu INNER JOIN pu.configuration.subscription.node n"
+			+ " WHERE n.id = :node OR n.id LIKE CONCAT(:node, ':%')")
+	List<ProvUsage> findAllByNode(String node);
 }
@@ -0,0 +1,25 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.model;
+
+/**
+ * Catalog price change type.
+ */
+public enum CatalogChangeType {
+
+	/**
+	 * New price code.
+	 */
+	ADDED,
+
+	/**
+	 * Retired price code, deleted or retained when still used.
+	 */
+	REMOVED,
+
+	/**
+	 * Price code with a new cost.
+	 */
+	REPRICED
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Index;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+import org.ligoj.app.model.Node;
+import org.ligoj.bootstrap.core.model.AbstractPersistable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A price change of a catalog import run. The costs are the compared costs: the monthly cost, or the GiB cost for the
+ * storage prices.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_PROV_IMPORT_CATALOG_CHANGE", indexes = @Index(columnList = "node,run"))
+public class ImportCatalogChange extends AbstractPersistable<Integer> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The imported node (provider).
+	 */
+	@NotNull
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JsonIgnore
+	private Node node;
+
+	/**
+	 * The import run: the start time of this import.
+	 */
+	@NotNull
+	private Long run;
+
+	/**
+	 * The change type.
+	 */
+	@NotNull
+	@Enumerated(EnumType.STRING)
+	private CatalogChangeType type;
+
+	/**
+	 * The resource type of the changed price.
+	 */
+	@NotNull
+	@Enumerated(EnumType.STRING)
+	private ResourceType resource;
+
+	/**
+	 * The changed price code.
+	 */
+	@NotNull
+	private String code;
+
+	/**
+	 * The previous cost. <code>null</code> for an added price.
+	 */
+	private Double oldCost;
+
+	/**
+	 * The new cost. <code>null</code> for a removed price.
+	 */
+	private Double newCost;
+
+	/**
+	 * The previous CO2. <code>null</code> for an added price.
+	 */
+	private Double oldCo2;
+
+	/**
+	 * The new CO2. <code>null</code> for a removed price.
+	 */
+	private Double newCo2;
+
+}
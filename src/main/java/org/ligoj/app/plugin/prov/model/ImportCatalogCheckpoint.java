@@ -0,0 +1,63 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.model;
+
+import java.util.Date;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.validation.constraints.NotNull;
+
+import org.ligoj.app.model.Node;
+import org.ligoj.bootstrap.core.model.AbstractPersistable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A completed unit of a catalog import: a phase, and an optional location. The checkpoints of a node are kept until
+ * its import succeeds, so a failed import can be resumed without importing again the completed units.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_PROV_IMPORT_CATALOG_CHECKPOINT", uniqueConstraints = @UniqueConstraint(columnNames = { "node",
+		"phase", "location" }))
+public class ImportCatalogCheckpoint extends AbstractPersistable<Integer> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The imported node (provider).
+	 */
+	@NotNull
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JsonIgnore
+	private Node node;
+
+	/**
+	 * The completed phase : instance, storage,...
+	 */
+	@NotNull
+	private String phase;
+
+	/**
+	 * The completed location within the phase. May be <code>null</code> for the global units.
+	 */
+	private String location;
+
+	/**
+	 * The completion date.
+	 */
+	private Date done;
+
+}
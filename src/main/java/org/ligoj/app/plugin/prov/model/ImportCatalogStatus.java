@@ -28,6 +28,12 @@ public class ImportCatalogStatus extends AbstractLongTaskNode {
 	 */
 	private Date lastSuccess;
 
+	/**
+	 * The generation of the catalog content: the end time of the last successful import, or the generation of the last
+	 * loaded snapshot. Can be <code>null</code>.
+	 */
+	private Long generation;
+
 	/**
 	 * Number of imported locations from the last successful import.
 	 */
@@ -48,6 +54,37 @@ public class ImportCatalogStatus extends AbstractLongTaskNode {
 	 */
 	private Integer nbCo2Prices = 0;
 
+	/**
+	 * Number of retired prices deleted by the current or last import.
+	 */
+	private Integer nbPurgedPrices = 0;
+
+	/**
+	 * Number of retired prices retained by the current or last import because they are still used by a quote.
+	 */
+	private Integer nbRetainedPrices = 0;
+
+	/**
+	 * Number of quotes impacted by the price changes of the last import, and being re-priced. <code>null</code> when
+	 * there is no re-pricing.
+	 */
+	private Integer nbImpactedQuotes;
+
+	/**
+	 * Number of impacted quotes already re-priced.
+	 */
+	private Integer nbRepricedQuotes = 0;
+
+	/**
+	 * Number of impacted quotes whose re-pricing failed.
+	 */
+	private Integer nbRepricingFailures = 0;
+
+	/**
+	 * The re-pricing end date. <code>null</code> while the impacted quotes are being re-priced.
+	 */
+	private Date repricingEnd;
+
 	/**
 	 * The current region being imported.
 	 */
@@ -3,11 +3,15 @@
  */
 package org.ligoj.app.plugin.prov.model;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -20,6 +24,8 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @Table(name = "LIGOJ_PROV_CONTAINER_PRICE", uniqueConstraints = { @UniqueConstraint(columnNames = "code") }, indexes = {
 		@Index(name = "lookup_c_index", columnList = "location,type,term,os") })
 public class ProvContainerPrice extends AbstractTermPriceVmOs<ProvContainerType> {
@@ -3,12 +3,16 @@
  */
 package org.ligoj.app.plugin.prov.model;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.Positive;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -39,6 +43,8 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @Table(name = "LIGOJ_PROV_FUNCTION_PRICE", uniqueConstraints = { @UniqueConstraint(columnNames = "code") }, indexes = {
 		@Index(name = "lookup_f_index", columnList = "location,type,term,license") })
 public class ProvFunctionPrice extends AbstractTermPriceVm<ProvFunctionType> {
@@ -3,10 +3,14 @@
  */
 package org.ligoj.app.plugin.prov.model;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -16,6 +20,8 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @Table(name = "LIGOJ_PROV_INSTANCE_PRICE_TERM", uniqueConstraints = {
 		@UniqueConstraint(columnNames = { "name", "node" }), @UniqueConstraint(columnNames = { "code", "node" }) })
 public class ProvInstancePriceTerm extends AbstractCodedEntity {
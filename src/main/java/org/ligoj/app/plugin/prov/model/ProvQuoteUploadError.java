@@ -0,0 +1,54 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import org.ligoj.bootstrap.core.model.AbstractPersistable;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A failed entry of the last upload of a subscription.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_PROV_UPLOAD_ERROR", indexes = @Index(columnList = "subscription"))
+public class ProvQuoteUploadError extends AbstractPersistable<Integer> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The subscription identifier of the upload.
+	 */
+	private int subscription;
+
+	/**
+	 * The line of the entry in the file, starting from <code>1</code>, header excluded.
+	 */
+	private int line;
+
+	/**
+	 * The entry name.
+	 */
+	private String name;
+
+	/**
+	 * The validation errors, JSON serialized, with the same structure as the validation errors of the synchronous
+	 * upload.
+	 */
+	@JsonRawValue
+	@Column(length = 4000)
+	private String errors;
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import org.ligoj.app.model.AbstractLongTaskSubscription;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Quote upload status. Only one upload per subscription at the same moment.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_PROV_UPLOAD_STATUS", uniqueConstraints = @UniqueConstraint(columnNames = "locked"))
+public class ProvQuoteUploadStatus extends AbstractLongTaskSubscription {
+
+	/**
+	 * The amount of parsed entries.
+	 */
+	private int parsed;
+
+	/**
+	 * The amount of entries whose price has been found.
+	 */
+	private int priced;
+
+	/**
+	 * The amount of persisted entries.
+	 */
+	private int persisted;
+
+	/**
+	 * The amount of failed entries. The details are available in {@link ProvQuoteUploadError}.
+	 */
+	private int failed;
+
+	/**
+	 * The amount of distinct pricing shapes. The entries sharing the same shape share a single price lookup.
+	 */
+	private int distinct;
+
+	/**
+	 * The amount of committed rows, including the skipped ones. A failed upload of the same file can be resumed from
+	 * this cursor.
+	 */
+	private int cursor;
+}
@@ -5,11 +5,15 @@ package org.ligoj.app.plugin.prov.model;
 
 import java.io.Serializable;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.PositiveOrZero;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -20,6 +24,8 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @Table(name = "LIGOJ_PROV_SUPPORT_PRICE", uniqueConstraints = { @UniqueConstraint(columnNames = { "location", "type" }),
 		@UniqueConstraint(columnNames = "code") })
 public class ProvSupportPrice extends AbstractPrice<ProvSupportType> implements Serializable {
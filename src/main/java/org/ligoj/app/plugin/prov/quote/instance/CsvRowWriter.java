@@ -0,0 +1,246 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.instance;
+
+import java.io.PrintWriter;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.ligoj.bootstrap.core.INamableBean;
+
+/**
+ * CSV row writer of the quote exports. The current row is built in a reused buffer, and written at once when the next
+ * row starts or when this writer is flushed. The primitive values are written without boxing, and the decimal values
+ * are rounded to 3 decimals, without the trailing zeros. A <code>null</code> value is an empty cell.
+ */
+class CsvRowWriter {
+
+	/**
+	 * The cell separator.
+	 */
+	static final char SEPARATOR = ';';
+
+	/**
+	 * Precomputed separators of the empty cells.
+	 */
+	private static final char[] SEPARATORS = new char[64];
+
+	static {
+		Arrays.fill(SEPARATORS, SEPARATOR);
+	}
+
+	/**
+	 * Decimal values above this limit are written with their Java notation, since their 3 decimals do not fit in a
+	 * <code>long</code>.
+	 */
+	private static final double MAX_DECIMAL = 1e15;
+
+	private final PrintWriter writer;
+
+	private final char decimal;
+
+	/**
+	 * The current row.
+	 */
+	private final StringBuilder row = new StringBuilder(512);
+
+	/**
+	 * The reused copy of the current row written to the target writer.
+	 */
+	private char[] chars = new char[512];
+
+	/**
+	 * When <code>true</code>, the next cell is the first one of the row, without leading separator.
+	 */
+	private boolean first = true;
+
+	/**
+	 * Create a row writer.
+	 *
+	 * @param writer The target writer.
+	 * @param locale The locale of the decimal separator.
+	 */
+	CsvRowWriter(final PrintWriter writer, final Locale locale) {
+		this.writer = writer;
+		this.decimal = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+	}
+
+	/**
+	 * Append a raw text to the current row, such as a precomputed header.
+	 *
+	 * @param text The raw text.
+	 * @return This writer.
+	 */
+	CsvRowWriter text(final String text) {
+		row.append(text);
+		first = false;
+		return this;
+	}
+
+	/**
+	 * Start a new row. The previous one is written.
+	 *
+	 * @return This writer.
+	 */
+	CsvRowWriter newRow() {
+		write();
+		row.append('\n');
+		first = true;
+		return this;
+	}
+
+	private StringBuilder next() {
+		if (first) {
+			first = false;
+		} else {
+			row.append(SEPARATOR);
+		}
+		return row;
+	}
+
+	/**
+	 * Append empty cells.
+	 *
+	 * @param count The amount of empty cells.
+	 * @return This writer.
+	 */
+	CsvRowWriter empty(final int count) {
+		var separators = first ? count - 1 : count;
+		first = first && count == 0;
+		while (separators > 0) {
+			final var chunk = Math.min(separators, SEPARATORS.length);
+			row.append(SEPARATORS, 0, chunk);
+			separators -= chunk;
+		}
+		return this;
+	}
+
+	/**
+	 * Append a text cell.
+	 *
+	 * @param value The nullable text.
+	 * @return This writer.
+	 */
+	CsvRowWriter cell(final CharSequence value) {
+		next();
+		if (value != null) {
+			row.append(value);
+		}
+		return this;
+	}
+
+	/**
+	 * Append a cell with the name of a named bean, or the <code>toString</code> of any other object.
+	 *
+	 * @param value The nullable value.
+	 * @return This writer.
+	 */
+	CsvRowWriter cell(final Object value) {
+		if (value instanceof INamableBean<?> named) {
+			return cell(named.getName());
+		}
+		return cell(value == null ? null : value.toString());
+	}
+
+	/**
+	 * Append an integer cell.
+	 *
+	 * @param value The value.
+	 * @return This writer.
+	 */
+	CsvRowWriter cell(final int value) {
+		next().append(value);
+		return this;
+	}
+
+	/**
+	 * Append an integer cell.
+	 *
+	 * @param value The nullable value.
+	 * @return This writer.
+	 */
+	CsvRowWriter cell(final Integer value) {
+		return value == null ? cell((CharSequence) null) : cell(value.intValue());
+	}
+
+	/**
+	 * Append a boolean cell.
+	 *
+	 * @param value The value.
+	 * @return This writer.
+	 */
+	CsvRowWriter cell(final boolean value) {
+		next().append(value);
+		return this;
+	}
+
+	/**
+	 * Append a decimal cell.
+	 *
+	 * @param value The nullable value.
+	 * @return This writer.
+	 */
+	CsvRowWriter cell(final Double value) {
+		return value == null ? cell((CharSequence) null) : cell(value.doubleValue());
+	}
+
+	/**
+	 * Append a decimal cell, rounded to 3 decimals, without the trailing zeros. Below {@value #MAX_DECIMAL}, the value
+	 * is written with plain digits, including from <code>1e7</code> where {@link String#valueOf(double)} uses the
+	 * scientific notation.
+	 *
+	 * @param value The value.
+	 * @return This writer.
+	 */
+	CsvRowWriter cell(final double value) {
+		next();
+		if (!Double.isFinite(value) || Math.abs(value) >= MAX_DECIMAL) {
+			row.append(String.valueOf(value).replace('.', decimal));
+			return this;
+		}
+		// The integer part is kept apart, so the decimals are exact even when the value has more than 13 digits
+		final var integer = (long) value;
+		final var rounded = integer * 1000 + Math.round((value - integer) * 1000d);
+		if (rounded < 0) {
+			row.append('-');
+		}
+		final var abs = Math.abs(rounded);
+		row.append(abs / 1000);
+		var fraction = (int) (abs % 1000);
+		if (fraction != 0) {
+			row.append(decimal);
+			var digits = 3;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				digits--;
+			}
+			for (var divider = digits == 3 ? 100 : digits == 2 ? 10 : 1; divider > 0; divider /= 10) {
+				row.append((char) ('0' + fraction / divider % 10));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Write the current row to the target writer.
+	 */
+	private void write() {
+		final var length = row.length();
+		if (length > chars.length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		row.getChars(0, length, chars, 0);
+		writer.write(chars, 0, length);
+		row.setLength(0);
+	}
+
+	/**
+	 * Write the current row and flush the target writer.
+	 */
+	void flush() {
+		write();
+		writer.flush();
+	}
+}
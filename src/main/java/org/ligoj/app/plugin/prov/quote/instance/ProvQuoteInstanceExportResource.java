@@ -7,16 +7,16 @@ package org.ligoj.app.plugin.prov.quote.instance;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceContextType;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
@@ -25,17 +25,26 @@ import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
-import org.apache.commons.collections4.CollectionUtils;
-import org.ligoj.app.plugin.prov.Floating;
 import org.ligoj.app.plugin.prov.ProvResource;
-import org.ligoj.app.plugin.prov.TagVo;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteContainerRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteDatabaseRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteFunctionRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteInstanceRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteStorageRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteSupportRepository;
 import org.ligoj.app.plugin.prov.model.AbstractQuote;
+import org.ligoj.app.plugin.prov.model.AbstractQuoteVm;
+import org.ligoj.app.plugin.prov.model.ProvQuoteContainer;
+import org.ligoj.app.plugin.prov.model.ProvQuoteDatabase;
+import org.ligoj.app.plugin.prov.model.ProvQuoteFunction;
+import org.ligoj.app.plugin.prov.model.ProvQuoteInstance;
 import org.ligoj.app.plugin.prov.model.ProvQuoteStorage;
+import org.ligoj.app.plugin.prov.model.ProvQuoteSupport;
 import org.ligoj.app.plugin.prov.model.ResourceType;
 import org.ligoj.app.resource.plugin.AbstractToolPluginResource;
 import org.ligoj.app.resource.subscription.SubscriptionResource;
-import org.ligoj.bootstrap.core.INamableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 /**
@@ -53,6 +62,53 @@ public class ProvQuoteInstanceExportResource {
 	@Autowired
 	private SubscriptionResource subscriptionResource;
 
+	@Autowired
+	private ProvQuoteInstanceRepository qiRepository;
+
+	@Autowired
+	private ProvQuoteDatabaseRepository qbRepository;
+
+	@Autowired
+	private ProvQuoteContainerRepository qcRepository;
+
+	@Autowired
+	private ProvQuoteFunctionRepository qfRepository;
+
+	@Autowired
+	private ProvQuoteStorageRepository qsRepository;
+
+	@Autowired
+	private ProvQuoteSupportRepository qs2Repository;
+
+	@Autowired
+	private ProvQuoteInstanceExportResource self;
+
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION, unitName = "pu")
+	private EntityManager em;
+
+	/**
+	 * Minimal headers of the inline export.
+	 */
+	private static final String INLINE_HEADER = String.join(String.valueOf(CsvRowWriter.SEPARATOR), "resource-type",
+			"name", "cpu", "cpuMax", "gpu", "gpuMax", "ram", "ramMax", "os", "usage", "budget", "optimizer", "term",
+			"location", "min", "max", "maxVariableCost", "workload", "processor", "architecture", "physical",
+			"ephemeral", "type", "engine", "edition", "internet", "license", "cost", "tags", "disk", "diskMax",
+			"diskType", "diskLatency", "diskOptimized", "diskCost", "diskTags");
+
+	/**
+	 * Headers of the split export.
+	 */
+	private static final String SPLIT_HEADER = String.join(String.valueOf(CsvRowWriter.SEPARATOR), "name", "cpu",
+			"cpuMax", "gpu", "gpuMax", "ram", "ramMax", "os", "usage", "budget", "optimizer", "term", "location", "min",
+			"max", "maxVariableCost", "workload", "processor", "architecture", "physical", "ephemeral", "type",
+			"internet", "license", "cost", "tags", "disk", "diskMax", "instance", "database", "latency", "optimized",
+			"engine", "edition", "seats");
+
+	/**
+	 * The locale of the exported decimals.
+	 */
+	private static final Locale EXPORT_LOCALE = Locale.FRANCE;
+
 	/**
 	 * Return the instance quotes with attached storages in CSV format. Sole storages are not included.
 	 *
@@ -65,110 +121,195 @@ public class ProvQuoteInstanceExportResource {
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
 	public Response exportInline(@PathParam("subscription") final int subscription,
 			@PathParam("file") final String file) {
-		final var vo = resource.getConfiguration(subscriptionResource.checkVisible(subscription));
+		subscriptionResource.checkVisible(subscription);
 		return AbstractToolPluginResource.download(output -> {
 			try (var writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
-				final var qsByQi = new HashMap<Integer, List<ProvQuoteStorage>>();
-				final var qsByQb = new HashMap<Integer, List<ProvQuoteStorage>>();
-				final var qsByQc = new HashMap<Integer, List<ProvQuoteStorage>>();
-				final var qsByQf = new HashMap<Integer, List<ProvQuoteStorage>>();
-				final var itags = vo.getTags().get(ResourceType.INSTANCE);
-				final var dtags = vo.getTags().get(ResourceType.DATABASE);
-				final var ctags = vo.getTags().get(ResourceType.CONTAINER);
-				final var ftags = vo.getTags().get(ResourceType.FUNCTION);
-				final var stags = vo.getTags().get(ResourceType.STORAGE);
-				vo.getStorages().stream().filter(qs -> qs.getInstance() != null)
-						.forEach(qs -> qsByQi.computeIfAbsent(qs.getInstance(), ArrayList::new).add(qs));
-				vo.getStorages().stream().filter(qs -> qs.getDatabase() != null)
-						.forEach(qs -> qsByQb.computeIfAbsent(qs.getDatabase(), ArrayList::new).add(qs));
-				vo.getStorages().stream().filter(qs -> qs.getContainer() != null)
-						.forEach(qs -> qsByQc.computeIfAbsent(qs.getContainer(), ArrayList::new).add(qs));
-				vo.getStorages().stream().filter(qs -> qs.getFunction() != null)
-						.forEach(qs -> qsByQf.computeIfAbsent(qs.getFunction(), ArrayList::new).add(qs));
-				final var max = Stream.of(qsByQi, qsByQb, qsByQc)
-						.mapToInt(qsBy -> qsBy.values().stream().mapToInt(List::size).max().orElse(0)).max().orElse(0);
-
-				// Minimal headers
-				writer.format("%s" + ";%s".repeat(35), "resource-type", "name", "cpu", "cpuMax", "gpu", "gpuMax", "ram",
-						"ramMax", "os", "usage", "budget", "optimizer", "term", "location", "min", "max",
-						"maxVariableCost", "workload", "processor", "architecture", "physical", "ephemeral", "type", "engine",
-						"edition", "internet", "license", "cost", "tags", "disk", "diskMax", "diskType", "diskLatency",
-						"diskOptimized", "diskCost", "diskTags");
-
-				// Additional headers for storages above the first one
-				IntStream.range(1, max)
-						.forEach(i -> writer.format(
-								";disk%d;disk%dMax;disk%dType;disk%dLatency;disk%dOptimized;disk%dCost;disk%dTags", i,
-								i, i, i, i, i, i));
-				vo.getInstances().forEach(qi -> {
-					// Write quote instance
-					writer.format("\n%s" + ";%s".repeat(28), ResourceType.INSTANCE, toString(qi), toString(qi.getCpu()),
-							toString(qi.getCpuMax()), toString(qi.getGpu()), toString(qi.getGpuMax()),
-							toString(qi.getRam()), toString(qi.getRamMax()), qi.getOs(), toString(qi.getUsage()),
-							toString(qi.getBudget()), toString(qi.getOptimizer()), toString(qi.getPrice().getTerm()),
-							toString(qi.getLocation()), qi.getMinQuantity(), toString(qi.getMaxQuantity()),
-							toString(qi.getMaxVariableCost()), toString(qi.getWorkload()), toString(qi.getProcessor()),
-							toString(qi.getArchitecture()),
-							toString(qi.getPhysical()), qi.isEphemeral(), toType(qi), "", "", qi.getInternet(),
-							toString(qi.getLicense()), toString(qi.getCost()), toString(qi, itags));
-					writeStorage(writer, qsByQi, stags, qi.getId());
-				});
-
-				vo.getDatabases().forEach(qi -> {
-					// Write quote database
-					writer.format("\n%s" + ";%s".repeat(28), ResourceType.DATABASE, toString(qi), toString(qi.getCpu()),
-							toString(qi.getCpuMax()), toString(qi.getGpu()), toString(qi.getGpuMax()),
-							toString(qi.getRam()), toString(qi.getRamMax()), "", toString(qi.getUsage()),
-							toString(qi.getBudget()), toString(qi.getOptimizer()), toString(qi.getPrice().getTerm()),
-							toString(qi.getLocation()), qi.getMinQuantity(), toString(qi.getMaxQuantity()), "",
-							toString(qi.getWorkload()), toString(qi.getProcessor()), toString(qi.getArchitecture()),
-							toString(qi.getPhysical()), "",
-							toType(qi), qi.getEngine(), toString(qi.getEdition()), qi.getInternet(),
-							toString(qi.getLicense()), toString(qi.getCost()), toString(qi, dtags));
-					writeStorage(writer, qsByQb, stags, qi.getId());
-				});
-
-				vo.getContainers().forEach(qc -> {
-					// Write quote container
-					writer.format("\n%s" + ";%s".repeat(28), ResourceType.CONTAINER, toString(qc),
-							toString(qc.getCpu()), toString(qc.getCpuMax()), toString(qc.getGpu()),
-							toString(qc.getGpuMax()), toString(qc.getRam()), toString(qc.getRamMax()), qc.getOs(),
-							toString(qc.getUsage()), toString(qc.getBudget()), toString(qc.getOptimizer()),
-							toString(qc.getPrice().getTerm()), toString(qc.getLocation()), qc.getMinQuantity(),
-							toString(qc.getMaxQuantity()), toString(qc.getMaxVariableCost()),
-							toString(qc.getWorkload()), toString(qc.getProcessor()), toString(qc.getArchitecture()),
-							toString(qc.getPhysical()),
-							qc.isEphemeral(), toType(qc), "", "", qc.getInternet(), toString(qc.getLicense()),
-							toString(qc.getCost()), toString(qc, ctags));
-					writeStorage(writer, qsByQc, stags, qc.getId());
-				});
-
-				vo.getFunctions().forEach(qf -> {
-					// Write quote function
-					writer.format("\n%s" + ";%s".repeat(28), ResourceType.FUNCTION, toString(qf), toString(qf.getCpu()),
-							toString(qf.getCpuMax()), toString(qf.getGpu()), toString(qf.getGpuMax()),
-							toString(qf.getRam()), toString(qf.getRamMax()), qf.getRuntime(), toString(qf.getUsage()),
-							toString(qf.getBudget()), toString(qf.getOptimizer()), toString(qf.getPrice().getTerm()),
-							toString(qf.getLocation()), qf.getNbRequests(), "", "", toString(qf.getWorkload()),
-							toString(qf.getProcessor()), toString(qf.getArchitecture()), toString(qf.getPhysical()),
-							qf.isEphemeral(), toType(qf), "",
-							"", qf.getInternet(), "", toString(qf.getCost()), toString(qf, ftags));
-					writeStorage(writer, qsByQf, stags, qf.getId());
-				});
-				writer.flush();
+				final var csv = new CsvRowWriter(writer, EXPORT_LOCALE);
+				self.writeInline(subscription, csv);
+				csv.flush();
 			}
 		}, file).build();
 	}
 
 	/**
-	 * Write related storages
+	 * Write the resources with attached storages, one line per resource. The resources, the storages and the tags are
+	 * scrolled from the database and detached once written. Within a transaction.
+	 *
+	 * @param subscription The visible subscription identifier.
+	 * @param writer       The target CSV writer.
+	 */
+	public void writeInline(final int subscription, final CsvRowWriter writer) {
+		final var quote = resource.getRepository().findBy("subscription.id", subscription);
+		final var max = qsRepository.countAttached(quote, PageRequest.of(0, 1)).stream().findFirst().orElse(0L)
+				.intValue();
+
+		// Minimal headers, then additional headers for storages above the first one
+		writer.text(INLINE_HEADER);
+		IntStream.range(1, max).forEach(i -> writer.cell("disk" + i).cell("disk" + i + "Max")
+				.cell("disk" + i + "Type").cell("disk" + i + "Latency").cell("disk" + i + "Optimized")
+				.cell("disk" + i + "Cost").cell("disk" + i + "Tags"));
+
+		// Write quote instances with attached storages
+		writeInline(writer, qiRepository.findAllTagged(quote, ResourceType.INSTANCE),
+				qsRepository.findAllTaggedByInstance(quote), ProvQuoteStorage::getInstance,
+				(ProvQuoteInstance qi, CharSequence tags) -> writeVm(writer.newRow().cell(ResourceType.INSTANCE), qi)
+						.cell(qi.getOs()).cell(qi.getUsage()).cell(qi.getBudget()).cell(qi.getOptimizer())
+						.cell(qi.getPrice().getTerm()).cell(qi.getLocation()).cell(qi.getMinQuantity())
+						.cell(qi.getMaxQuantity()).cell(qi.getMaxVariableCost()).cell(qi.getWorkload())
+						.cell(qi.getProcessor()).cell(qi.getArchitecture()).cell(qi.getPhysical())
+						.cell(qi.isEphemeral()).cell(toType(qi)).empty(2).cell(qi.getInternet())
+						.cell(qi.getLicense()).cell(qi.getCost()).cell(tags));
+
+		// Write quote databases with attached storages
+		writeInline(writer, qbRepository.findAllTagged(quote, ResourceType.DATABASE),
+				qsRepository.findAllTaggedByDatabase(quote), ProvQuoteStorage::getDatabase,
+				(ProvQuoteDatabase qb, CharSequence tags) -> writeVm(writer.newRow().cell(ResourceType.DATABASE), qb)
+						.empty(1).cell(qb.getUsage()).cell(qb.getBudget()).cell(qb.getOptimizer())
+						.cell(qb.getPrice().getTerm()).cell(qb.getLocation()).cell(qb.getMinQuantity())
+						.cell(qb.getMaxQuantity()).empty(1).cell(qb.getWorkload()).cell(qb.getProcessor())
+						.cell(qb.getArchitecture()).cell(qb.getPhysical()).empty(1).cell(toType(qb))
+						.cell(qb.getEngine()).cell(qb.getEdition()).cell(qb.getInternet()).cell(qb.getLicense())
+						.cell(qb.getCost()).cell(tags));
+
+		// Write quote containers with attached storages
+		writeInline(writer, qcRepository.findAllTagged(quote, ResourceType.CONTAINER),
+				qsRepository.findAllTaggedByContainer(quote), ProvQuoteStorage::getContainer,
+				(ProvQuoteContainer qc, CharSequence tags) -> writeVm(writer.newRow().cell(ResourceType.CONTAINER),
+						qc).cell(qc.getOs()).cell(qc.getUsage()).cell(qc.getBudget()).cell(qc.getOptimizer())
+						.cell(qc.getPrice().getTerm()).cell(qc.getLocation()).cell(qc.getMinQuantity())
+						.cell(qc.getMaxQuantity()).cell(qc.getMaxVariableCost()).cell(qc.getWorkload())
+						.cell(qc.getProcessor()).cell(qc.getArchitecture()).cell(qc.getPhysical())
+						.cell(qc.isEphemeral()).cell(toType(qc)).empty(2).cell(qc.getInternet())
+						.cell(qc.getLicense()).cell(qc.getCost()).cell(tags));
+
+		// Write quote functions with attached storages
+		writeInline(writer, qfRepository.findAllTagged(quote, ResourceType.FUNCTION),
+				qsRepository.findAllTaggedByFunction(quote), ProvQuoteStorage::getFunction,
+				(ProvQuoteFunction qf, CharSequence tags) -> writeVm(writer.newRow().cell(ResourceType.FUNCTION), qf)
+						.cell(qf.getRuntime()).cell(qf.getUsage()).cell(qf.getBudget()).cell(qf.getOptimizer())
+						.cell(qf.getPrice().getTerm()).cell(qf.getLocation()).cell(toRequests(qf)).empty(2)
+						.cell(qf.getWorkload()).cell(qf.getProcessor()).cell(qf.getArchitecture())
+						.cell(qf.getPhysical()).cell(qf.isEphemeral()).cell(toType(qf)).empty(2)
+						.cell(qf.getInternet()).empty(1).cell(qf.getCost()).cell(tags));
+	}
+
+	/**
+	 * Write the resources of a type, each one followed by its attached storages. Both streams are ordered by
+	 * resource name, then by resource identifier, so they are merged without keeping more than the current resource.
+	 */
+	private <T extends AbstractQuote<?>> void writeInline(final CsvRowWriter writer, final Stream<Object[]> resources,
+			final Stream<Object[]> storages, final Function<ProvQuoteStorage, Integer> storageResource,
+			final BiConsumer<T, CharSequence> resourceWriter) {
+		try (var qsRows = new TaggedRows<ProvQuoteStorage>(storages)) {
+			forEach(resources, (T qr, CharSequence tags) -> {
+				resourceWriter.accept(qr, tags);
+				while (qsRows.peek() != null && qr.getId().equals(storageResource.apply(qsRows.peek()))) {
+					qsRows.next();
+					writeStorage(writer, qsRows.entity, qsRows.tags);
+					em.detach(qsRows.entity);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write the name and the sizing of a resource.
+	 */
+	private CsvRowWriter writeVm(final CsvRowWriter writer, final AbstractQuoteVm<?> vm) {
+		return writer.cell(vm).cell(vm.getCpu()).cell(vm.getCpuMax()).cell(vm.getGpu()).cell(vm.getGpuMax())
+				.cell(vm.getRam()).cell(vm.getRamMax());
+	}
+
+	/**
+	 * Write related storage
+	 */
+	private void writeStorage(final CsvRowWriter writer, final ProvQuoteStorage qs, final CharSequence tags) {
+		writer.cell(qs.getSize()).cell(qs.getSizeMax()).cell(toType(qs)).cell(qs.getLatency())
+				.cell(qs.getOptimized()).cell(qs.getCost()).cell(tags);
+	}
+
+	/**
+	 * Consume the scrolled rows of resources joined with their tags. Each resource is detached once consumed, so the
+	 * heap use does not depend on the amount of resources.
 	 */
-	private void writeStorage(final PrintWriter writer, final Map<Integer, List<ProvQuoteStorage>> qsByQi,
-			final Map<Integer, List<TagVo>> stags, Integer qi) {
-		qsByQi.getOrDefault(qi, Collections.emptyList())
-				.forEach(qs -> writer.format(";%s".repeat(7), qs.getSize(), toString(qs.getSizeMax()), toType(qs),
-						toString(qs.getLatency()), toString(qs.getOptimized()), toString(qs.getCost()),
-						toString(qs, stags)));
+	private <T extends AbstractQuote<?>> void forEach(final Stream<Object[]> rows,
+			final BiConsumer<T, CharSequence> consumer) {
+		try (var tagged = new TaggedRows<T>(rows)) {
+			while (tagged.next()) {
+				consumer.accept(tagged.entity, tagged.tags);
+				em.detach(tagged.entity);
+			}
+		}
+	}
+
+	/**
+	 * Forward only reader of the scrolled rows <code>[entity, tag name, tag value]</code>, where the rows of the same
+	 * entity are consecutive.
+	 *
+	 * @param <T> The entity type.
+	 */
+	private static class TaggedRows<T> implements AutoCloseable {
+
+		private final Stream<Object[]> stream;
+
+		private final Iterator<Object[]> iterator;
+
+		/**
+		 * The next row, not yet consumed.
+		 */
+		private Object[] row;
+
+		/**
+		 * The current entity.
+		 */
+		private T entity;
+
+		/**
+		 * The tags of the current entity, reused for each entity.
+		 */
+		private final StringBuilder tags = new StringBuilder();
+
+		private TaggedRows(final Stream<Object[]> stream) {
+			this.stream = stream;
+			this.iterator = stream.iterator();
+			this.row = iterator.hasNext() ? iterator.next() : null;
+		}
+
+		/**
+		 * Return the entity of the next row, without consuming it.
+		 */
+		@SuppressWarnings("unchecked")
+		private T peek() {
+			return row == null ? null : (T) row[0];
+		}
+
+		/**
+		 * Move to the next entity and gather its tags.
+		 *
+		 * @return <code>false</code> when there is no more entity.
+		 */
+		private boolean next() {
+			entity = peek();
+			tags.setLength(0);
+			while (row != null && row[0] == entity) {
+				if (row[1] != null) {
+					if (!tags.isEmpty()) {
+						tags.append(',');
+					}
+					tags.append((String) row[1]);
+					if (row[2] != null) {
+						tags.append(':').append((String) row[2]);
+					}
+				}
+				row = iterator.hasNext() ? iterator.next() : null;
+			}
+			return entity != null;
+		}
+
+		@Override
+		public void close() {
+			stream.close();
+		}
 	}
 
 	/**
@@ -184,119 +325,99 @@ public class ProvQuoteInstanceExportResource {
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
 	public Response exportSplit(@PathParam("subscription") final int subscription,
 			@PathParam("file") final String file) {
-		final var vo = resource.getConfiguration(subscriptionResource.checkVisible(subscription));
+		subscriptionResource.checkVisible(subscription);
 		return AbstractToolPluginResource.download(output -> {
 			try (var writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
-				writer.format("%s" + ";%s".repeat(34), "name", "cpu", "cpuMax", "gpu", "gpuMax", "ram", "ramMax", "os",
-						"usage", "budget", "optimizer", "term", "location", "min", "max", "maxVariableCost", "workload",
-						"processor", "architecture", "physical", "ephemeral", "type", "internet", "license", "cost",
-						"tags", "disk", "diskMax", "instance", "database", "latency", "optimized", "engine", "edition", "seats");
-
-				// Write quote instances
-				final var iTags = vo.getTags().get(ResourceType.INSTANCE);
-				vo.getInstances().forEach(qi -> writer.format("\n%s" + ";%s".repeat(25), toString(qi),
-						toString(qi.getCpu()), toString(qi.getCpuMax()), toString(qi.getGpu()),
-						toString(qi.getGpuMax()), toString(qi.getRam()), toString(qi.getRamMax()), qi.getOs(),
-						toString(qi.getUsage()), toString(qi.getBudget()), toString(qi.getOptimizer()),
-						toString(qi.getPrice().getTerm()), toString(qi.getLocation()), qi.getMinQuantity(),
-						toString(qi.getMaxQuantity()), toString(qi.getMaxVariableCost()), toString(qi.getWorkload()),
-						toString(qi.getProcessor()), toString(qi.getArchitecture()), toString(qi.getPhysical()),
-						qi.isEphemeral(), toType(qi),
-						qi.getInternet(), toString(qi.getLicense()), toString(qi.getCost()), toString(qi, iTags)));
-
-				// Write quote containers
-				final var cTags = vo.getTags().get(ResourceType.CONTAINER);
-				vo.getContainers().forEach(qc -> writer.format("\n%s" + ";%s".repeat(25), toString(qc),
-						toString(qc.getCpu()), toString(qc.getCpuMax()), toString(qc.getGpu()),
-						toString(qc.getGpuMax()), toString(qc.getRam()), toString(qc.getRamMax()), qc.getOs(),
-						toString(qc.getUsage()), toString(qc.getBudget()), toString(qc.getOptimizer()),
-						toString(qc.getPrice().getTerm()), toString(qc.getLocation()), qc.getMinQuantity(),
-						toString(qc.getMaxQuantity()), toString(qc.getMaxVariableCost()), toString(qc.getWorkload()),
-						toString(qc.getProcessor()), toString(qc.getArchitecture()), toString(qc.getPhysical()),
-						qc.isEphemeral(), toType(qc),
-						qc.getInternet(), toString(qc.getLicense()), toString(qc.getCost()), toString(qc, cTags)));
-				// Write quote functions
-				final var fTags = vo.getTags().get(ResourceType.FUNCTION);
-				vo.getFunctions()
-						.forEach(qf -> writer.format("\n%s" + ";%s".repeat(25), toString(qf), toString(qf.getCpu()),
-								toString(qf.getCpuMax()), toString(qf.getGpu()), toString(qf.getGpuMax()),
-								toString(qf.getRam()), toString(qf.getRamMax()), qf.getRuntime(),
-								toString(qf.getUsage()), toString(qf.getBudget()), toString(qf.getOptimizer()),
-								toString(qf.getPrice().getTerm()), toString(qf.getLocation()), qf.getNbRequests(), "",
-								"", toString(qf.getWorkload()), toString(qf.getProcessor()),
-								toString(qf.getArchitecture()), toString(qf.getPhysical()),
-								qf.isEphemeral(), toType(qf), qf.getInternet(), "", toString(qf.getCost()),
-								toString(qf, fTags)));
-
-				// Write quote databases
-				final var dTags = vo.getTags().get(ResourceType.DATABASE);
-				vo.getDatabases().forEach(qi -> writer.format("\n%s" + ";%s".repeat(25) + ";;;;;;;%s;%s", toString(qi),
-						toString(qi.getCpu()), toString(qi.getCpuMax()), toString(qi.getGpu()),
-						toString(qi.getGpuMax()), toString(qi.getRam()), toString(qi.getRamMax()), "",
-						toString(qi.getUsage()), toString(qi.getBudget()), toString(qi.getOptimizer()),
-						toString(qi.getPrice().getTerm()), toString(qi.getLocation()), qi.getMinQuantity(),
-						toString(qi.getMaxQuantity()), "", toString(qi.getWorkload()), toString(qi.getProcessor()),
-						toString(qi.getArchitecture()),
-						toString(qi.getPhysical()), "", toType(qi), "", toString(qi.getLicense()),
-						toString(qi.getCost()), toString(qi, dTags), qi.getEngine(), toString(qi.getEdition())));
-
-				// Write quote storages
-				final var sTags = vo.getTags().get(ResourceType.STORAGE);
-				vo.getStorages().forEach(qs -> writer.format("\n%s;;;;;;;;;;;;%s;%s;%s;;;;;;;%s;;" + ";%s".repeat(8),
-						toString(qs), toString(qs.getLocation()),
-						toString(qs.getQuoteResource() == null ? "" : qs.getQuoteResource().getMinQuantity()),
-						toString(qs.getQuoteResource() == null ? "" : qs.getQuoteResource().getMaxQuantity()),
-						toType(qs), toString(qs.getCost()),
-						toString(qs, sTags), qs.getSize(), toString(qs.getSizeMax()), toString(qs.getQuoteInstance()),
-						toString(qs.getQuoteDatabase()), toString(qs.getLatency()), toString(qs.getOptimized())));
-
-				// Write quote support
-				final var s2Tags = vo.getTags().get(ResourceType.SUPPORT);
-				vo.getSupports()
-						.forEach(qs -> writer.format("\n%s;;;;;;;;;;;;;;;;;;;;;%s;;;%s;%s;;;;;;;;%s", toString(qs),
-								toType(qs), toString(qs.getCost()), toString(qs, s2Tags), toString(qs.getSeats())));
-				writer.flush();
+				final var csv = new CsvRowWriter(writer, EXPORT_LOCALE);
+				self.writeSplit(subscription, csv);
+				csv.flush();
 			}
 		}, file).build();
 	}
 
 	/**
-	 * Return the name of a quote resource.
+	 * Write the resources, one line per resource and storage. The resources and the tags are scrolled from the
+	 * database and detached once written. Within a transaction.
+	 *
+	 * @param subscription The visible subscription identifier.
+	 * @param writer       The target CSV writer.
 	 */
-	private String toType(final AbstractQuote<?> resource) {
-		return resource.getPrice().getType().getCode();
-	}
+	public void writeSplit(final int subscription, final CsvRowWriter writer) {
+		final var quote = resource.getRepository().findBy("subscription.id", subscription);
+		writer.text(SPLIT_HEADER);
 
-	/**
-	 * Return the name of a nullable object.
-	 */
-	private String toString(final INamableBean<?> optional) {
-		return optional == null ? "" : optional.getName();
-	}
+		// Write quote instances
+		forEach(qiRepository.findAllTagged(quote, ResourceType.INSTANCE),
+				(ProvQuoteInstance qi, CharSequence tags) -> writeVm(writer.newRow(), qi).cell(qi.getOs())
+						.cell(qi.getUsage()).cell(qi.getBudget()).cell(qi.getOptimizer())
+						.cell(qi.getPrice().getTerm()).cell(qi.getLocation()).cell(qi.getMinQuantity())
+						.cell(qi.getMaxQuantity()).cell(qi.getMaxVariableCost()).cell(qi.getWorkload())
+						.cell(qi.getProcessor()).cell(qi.getArchitecture()).cell(qi.getPhysical())
+						.cell(qi.isEphemeral()).cell(toType(qi)).cell(qi.getInternet()).cell(qi.getLicense())
+						.cell(qi.getCost()).cell(tags));
 
-	/**
-	 * Return the 'toString' of a nullable object.
-	 */
-	private String toString(final Object optional) {
-		return optional == null ? "" : optional.toString();
-	}
+		// Write quote containers
+		forEach(qcRepository.findAllTagged(quote, ResourceType.CONTAINER),
+				(ProvQuoteContainer qc, CharSequence tags) -> writeVm(writer.newRow(), qc).cell(qc.getOs())
+						.cell(qc.getUsage()).cell(qc.getBudget()).cell(qc.getOptimizer())
+						.cell(qc.getPrice().getTerm()).cell(qc.getLocation()).cell(qc.getMinQuantity())
+						.cell(qc.getMaxQuantity()).cell(qc.getMaxVariableCost()).cell(qc.getWorkload())
+						.cell(qc.getProcessor()).cell(qc.getArchitecture()).cell(qc.getPhysical())
+						.cell(qc.isEphemeral()).cell(toType(qc)).cell(qc.getInternet()).cell(qc.getLicense())
+						.cell(qc.getCost()).cell(tags));
+
+		// Write quote functions
+		forEach(qfRepository.findAllTagged(quote, ResourceType.FUNCTION),
+				(ProvQuoteFunction qf, CharSequence tags) -> writeVm(writer.newRow(), qf).cell(qf.getRuntime())
+						.cell(qf.getUsage()).cell(qf.getBudget()).cell(qf.getOptimizer())
+						.cell(qf.getPrice().getTerm()).cell(qf.getLocation()).cell(toRequests(qf)).empty(2)
+						.cell(qf.getWorkload()).cell(qf.getProcessor()).cell(qf.getArchitecture())
+						.cell(qf.getPhysical()).cell(qf.isEphemeral()).cell(toType(qf)).cell(qf.getInternet())
+						.empty(1).cell(qf.getCost()).cell(tags));
+
+		// Write quote databases
+		forEach(qbRepository.findAllTagged(quote, ResourceType.DATABASE),
+				(ProvQuoteDatabase qb, CharSequence tags) -> writeVm(writer.newRow(), qb).empty(1)
+						.cell(qb.getUsage()).cell(qb.getBudget()).cell(qb.getOptimizer())
+						.cell(qb.getPrice().getTerm()).cell(qb.getLocation()).cell(qb.getMinQuantity())
+						.cell(qb.getMaxQuantity()).empty(1).cell(qb.getWorkload()).cell(qb.getProcessor())
+						.cell(qb.getArchitecture()).cell(qb.getPhysical()).empty(1).cell(toType(qb)).empty(1)
+						.cell(qb.getLicense()).cell(qb.getCost()).cell(tags).empty(6).cell(qb.getEngine())
+						.cell(qb.getEdition()));
 
-	private String toString(final INamableBean<Integer> qi, final Map<Integer, List<TagVo>> tags) {
-		return tags == null ? "" : toString(tags.get(qi.getId()));
+		// Write quote storages
+		forEach(qsRepository.findAllTagged(quote, ResourceType.STORAGE), (ProvQuoteStorage qs, CharSequence tags) -> {
+			writer.newRow().cell(qs).empty(11).cell(qs.getLocation());
+			final var qr = qs.getQuoteResource();
+			if (qr == null) {
+				writer.empty(2);
+			} else {
+				writer.cell(qr.getMinQuantity()).cell(qr.getMaxQuantity());
+				// Fetched with this storage
+				em.detach(qr);
+			}
+			writer.empty(6).cell(toType(qs)).empty(2).cell(qs.getCost()).cell(tags).cell(qs.getSize())
+					.cell(qs.getSizeMax()).cell(qs.getQuoteInstance()).cell(qs.getQuoteDatabase())
+					.cell(qs.getLatency()).cell(qs.getOptimized());
+		});
+
+		// Write quote support
+		forEach(qs2Repository.findAllTagged(quote, ResourceType.SUPPORT),
+				(ProvQuoteSupport qs, CharSequence tags) -> writer.newRow().cell(qs).empty(20).cell(toType(qs))
+						.empty(2).cell(qs.getCost()).cell(tags).empty(7).cell(qs.getSeats()));
 	}
 
 	/**
-	 * Return the 'toString' of a nullable collection.
+	 * Return the code of the price type of a quote resource.
 	 */
-	private String toString(final Collection<?> optional) {
-		return CollectionUtils.emptyIfNull(optional).stream().map(Object::toString).collect(Collectors.joining(","));
+	private String toType(final AbstractQuote<?> resource) {
+		return resource.getPrice().getType().getCode();
 	}
 
 	/**
-	 * Return the 'toDecimal' of a nullable object.
+	 * Return the requests of a function with the Java notation, as the quantity columns.
 	 */
-	private String toString(final Double optional) {
-		return optional == null ? ""
-				: String.valueOf(Floating.round(optional)).replace('.', ',').replaceFirst(",0$", "");
+	private String toRequests(final ProvQuoteFunction qf) {
+		return Double.toString(qf.getNbRequests());
 	}
 }
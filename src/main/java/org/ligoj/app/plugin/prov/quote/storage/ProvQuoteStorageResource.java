@@ -5,6 +5,7 @@
 package org.ligoj.app.plugin.prov.quote.storage;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -139,12 +140,65 @@ public class ProvQuoteStorageResource
 	 * @return The formal entity.
 	 */
 	private UpdatedCost saveOrUpdate(final ProvQuoteStorage entity, final QuoteStorageEditionVo vo) {
+		final var quote = getQuoteFromSubscription(vo.getSubscription());
+		copy(quote, entity, vo);
+
+		// Save and update the costs
+		final var cost = refreshCost(entity);
+		Optional.ofNullable(entity.getQuoteResource()).ifPresent(qi -> cost.getRelated().put(qi.getResourceType(),
+				Collections.singletonMap(qi.getId(), qi.toFloating())));
+
+		// Add tags
+		super.saveOrUpdate(entity, vo);
+
+		return resource.refreshSupportCost(cost, quote);
+	}
+
+	/**
+	 * Return a new validated storage, not yet persisted. The visibility of the quote is not checked. See
+	 * {@link #createAll(ProvQuote, List)}.
+	 *
+	 * @param quote The visible quote related to the subscription of the storage.
+	 * @param vo    The new quote storage data.
+	 * @return The validated storage entity.
+	 */
+	public ProvQuoteStorage newStorage(final ProvQuote quote, final QuoteStorageEditionVo vo) {
+		return copy(quote, new ProvQuoteStorage(), vo);
+	}
+
+	/**
+	 * Persist validated storages at once. The entities are flushed once, and the support cost is refreshed once. The
+	 * tags of the storages are not handled.
+	 *
+	 * @param quote    The quote of the storages.
+	 * @param entities The validated storages, see {@link #newStorage(ProvQuote, QuoteStorageEditionVo)}.
+	 * @return The updated cost. The costs of the created storages are in the related costs.
+	 */
+	public UpdatedCost createAll(final ProvQuote quote, final List<ProvQuoteStorage> entities) {
+		final var cost = new UpdatedCost(null);
+		if (entities.isEmpty()) {
+			return cost;
+		}
+		entities.forEach(entity -> {
+			addCost(entity, this::updateCost);
+			qsRepository.save(entity);
+		});
+		qsRepository.flush();
+		final var related = cost.getRelated().computeIfAbsent(ResourceType.STORAGE, k -> new HashMap<>());
+		entities.forEach(entity -> related.put(entity.getId(), entity.toFloating()));
+		return resource.refreshSupportCost(cost, quote);
+	}
+
+	/**
+	 * Check and copy the storage data to the entity.
+	 */
+	private ProvQuoteStorage copy(final ProvQuote quote, final ProvQuoteStorage entity,
+			final QuoteStorageEditionVo vo) {
 		checkInstance(vo);
 		DescribedBean.copy(vo, entity);
 
 		// Check the associations
 		final int subscription = vo.getSubscription();
-		final var quote = getQuoteFromSubscription(subscription);
 		final var node = quote.getSubscription().getNode().getRefined().getId();
 		entity.setConfiguration(quote);
 		entity.setLocation(resource.findLocation(node, vo.getLocation()));
@@ -167,16 +221,7 @@ public class ProvQuoteStorageResource
 			// The related storage type does not match these requirements
 			throw new ValidationJsonException("type", "type-incompatible-requirements", type.getCode());
 		}
-
-		// Save and update the costs
-		final var cost = refreshCost(entity);
-		Optional.ofNullable(entity.getQuoteResource()).ifPresent(qi -> cost.getRelated().put(qi.getResourceType(),
-				Collections.singletonMap(qi.getId(), qi.toFloating())));
-
-		// Add tags
-		super.saveOrUpdate(entity, vo);
-
-		return resource.refreshSupportCost(cost, quote);
+		return entity;
 	}
 
 	/**
@@ -0,0 +1,42 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import org.ligoj.app.plugin.prov.quote.container.QuoteContainerEditionVo;
+import org.ligoj.app.plugin.prov.quote.database.QuoteDatabaseEditionVo;
+import org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceEditionVo;
+import org.ligoj.app.plugin.prov.quote.storage.QuoteStorageEditionVo;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A line of a bulk upload. Exactly one resource is defined, for sample:
+ * <code>{"instance":{"name":"server1","cpu":2,"ram":2048,"os":"LINUX"}}</code>. The identifier, the subscription and
+ * the price of the resource are ignored: the price is always resolved from the requirements.
+ */
+@Getter
+@Setter
+public class BulkEntry {
+
+	/**
+	 * The instance to import.
+	 */
+	private QuoteInstanceEditionVo instance;
+
+	/**
+	 * The database to import.
+	 */
+	private QuoteDatabaseEditionVo database;
+
+	/**
+	 * The container to import.
+	 */
+	private QuoteContainerEditionVo container;
+
+	/**
+	 * The storage to import. Only an existing resource of the quote can be attached to this storage.
+	 */
+	private QuoteStorageEditionVo storage;
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import org.ligoj.app.plugin.prov.model.ResourceType;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The result of a line of a bulk upload.
+ */
+@Getter
+@Setter
+public class BulkResult {
+
+	/**
+	 * The line in the stream, starting from <code>1</code>.
+	 */
+	private int line;
+
+	/**
+	 * The resource type. <code>null</code> for an unreadable line.
+	 */
+	private ResourceType type;
+
+	/**
+	 * The resource name, possibly suffixed to be unique. <code>null</code> for an unreadable line.
+	 */
+	private String name;
+
+	/**
+	 * The created or updated resource identifier. <code>null</code> for a failed line.
+	 */
+	private Integer id;
+
+	/**
+	 * The code of the price. <code>null</code> for a failed line.
+	 */
+	private String price;
+
+	/**
+	 * The validation errors of a failed line.
+	 */
+	private Map<String, List<Map<String, Serializable>>> errors;
+}
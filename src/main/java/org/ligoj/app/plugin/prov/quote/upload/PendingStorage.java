@@ -0,0 +1,17 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.util.List;
+
+import org.ligoj.app.plugin.prov.model.ProvQuoteStorage;
+
+/**
+ * A validated storage not yet persisted, and its tags as name and optional value.
+ *
+ * @param storage The validated storage.
+ * @param tags    The tags of this storage.
+ */
+record PendingStorage(ProvQuoteStorage storage, List<String[]> tags) {
+}
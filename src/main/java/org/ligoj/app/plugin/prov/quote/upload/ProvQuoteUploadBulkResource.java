@@ -0,0 +1,403 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import jakarta.transaction.Transactional;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.plugin.prov.AbstractQuoteVmEditionVo;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.ProvTagResource;
+import org.ligoj.app.plugin.prov.TagVo;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteStorageRepository;
+import org.ligoj.app.plugin.prov.model.ProvQuoteStorage;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.ligoj.app.plugin.prov.quote.storage.ProvQuoteStorageResource;
+import org.ligoj.app.plugin.prov.quote.storage.QuoteStorageEditionVo;
+import org.ligoj.app.resource.subscription.SubscriptionResource;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The bulk part of the provisioning upload: a strictly typed stream of resources, one JSON object per line.
+ */
+@Service
+@Path(ProvResource.SERVICE_URL)
+@Produces(MediaType.APPLICATION_JSON)
+@Transactional
+@Slf4j
+public class ProvQuoteUploadBulkResource {
+
+	/**
+	 * The media type of the bulk upload and of its results: one JSON object per line.
+	 */
+	public static final String NDJSON = "application/x-ndjson";
+
+	@Autowired
+	protected ProvResource resource;
+
+	@Autowired
+	private ProvQuoteUploadResource uploadResource;
+
+	@Autowired
+	private UploadLookupStage lookupStage;
+
+	@Autowired
+	private UploadMerger merger;
+
+	@Autowired
+	private ProvTagResource tagResource;
+
+	@Autowired
+	private ProvQuoteStorageResource storageResource;
+
+	@Autowired
+	private ProvQuoteStorageRepository qsRepository;
+
+	@Autowired
+	private SubscriptionResource subscriptionResource;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	protected ProvQuoteUploadBulkResource self;
+
+	/**
+	 * The strict reader of the bulk lines, created at the first use.
+	 */
+	private ObjectReader bulkReader;
+
+	/**
+	 * Import a stream of resources, one JSON object per line, see {@link BulkEntry}. Unlike the CSV upload, the lines
+	 * are strictly typed: an unknown property is an error. The stream is spooled to a temporary file, then the lines
+	 * are priced and committed by chunks, see {@link ProvQuoteUploadResource#CONF_UPLOAD_CHUNK}. The prices of the
+	 * chunk are looked up at once, and the entries sharing the same requirements share the same lookup. The returned
+	 * output writes one {@link BulkResult} per line as soon as its chunk is committed. When a line fails and the errors
+	 * do not continue, its chunk is rolled back, the failed line is the last result, and the import can be resumed
+	 * from the line following the last committed chunk.
+	 *
+	 * @param subscription  The subscription identifier.
+	 * @param mode          The merge option indicates how the entries are inserted. A storage is merged by name
+	 *                      within the storages of the quote.
+	 * @param errorContinue When <code>true</code> errors do not block the upload.
+	 * @param cursor        The optional amount of lines to skip, as committed by a previous failed import of the same
+	 *                      stream.
+	 * @param input         The stream of the resources.
+	 * @return The streamed results.
+	 * @throws IOException When the stream cannot be spooled.
+	 */
+	@POST
+	@Consumes(NDJSON)
+	@Produces(NDJSON)
+	@Path("{subscription:\\d+}/bulk")
+	@Transactional(Transactional.TxType.SUPPORTS)
+	public StreamingOutput bulk(@PathParam("subscription") final int subscription,
+			@QueryParam("mode") final MergeMode mode, @QueryParam("errorContinue") final boolean errorContinue,
+			@QueryParam("cursor") final int cursor, final InputStream input) throws IOException {
+		log.info("Bulk upload requested...");
+		subscriptionResource.checkVisible(subscription);
+		final var file = ProvQuoteUploadResource.spool(input);
+		try {
+			final var quote = resource.getRepository().findBy("subscription.id", subscription);
+			final var context = uploadResource.newContext(quote, mode, errorContinue);
+			return output -> {
+				try (var reader = ProvQuoteUploadResource.newReader(file, StandardCharsets.UTF_8.name())) {
+					bulk(context, reader, cursor, output);
+				} finally {
+					FileUtils.deleteQuietly(file);
+				}
+			};
+		} catch (final RuntimeException e) {
+			FileUtils.deleteQuietly(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the lines and commit them chunk by chunk, then write their results.
+	 */
+	private void bulk(final UploadContext context, final BufferedReader reader, final int skip,
+			final OutputStream output) throws IOException {
+		final var chunkSize = Math.max(1, configuration.get(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK,
+				ProvQuoteUploadResource.DEFAULT_UPLOAD_CHUNK));
+		final var chunk = new ArrayList<String>(chunkSize);
+		for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+			context.rows++;
+			if (context.rows <= skip) {
+				// Already committed by a previous import
+				context.committed = context.rows;
+				continue;
+			}
+			chunk.add(line);
+			if (chunk.size() == chunkSize) {
+				if (!commitBulk(context, chunk, output)) {
+					return;
+				}
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			commitBulk(context, chunk, output);
+		}
+		log.info("Bulk upload : {} lines imported, {} failed", context.persisted, context.failed);
+	}
+
+	/**
+	 * Commit a chunk of lines, then write the results.
+	 *
+	 * @return <code>false</code> when the chunk has been rolled back.
+	 */
+	private boolean commitBulk(final UploadContext context, final List<String> lines, final OutputStream output)
+			throws IOException {
+		final var results = new ArrayList<BulkResult>(lines.size());
+		try {
+			self.bulkChunk(context, lines, results);
+		} catch (final RuntimeException e) {
+			// Only the failure is written, the other lines of this chunk are rolled back
+			log.info("Bulk upload failed, resume cursor is {}", context.committed);
+			if (results.isEmpty() || results.getLast().getErrors() == null) {
+				final var failure = new BulkResult();
+				failure.setLine(context.committed + 1);
+				failure.setErrors(toBulkErrors(e));
+				results.add(failure);
+			}
+			write(output, results.getLast());
+			return false;
+		}
+		for (final var result : results) {
+			write(output, result);
+		}
+		output.flush();
+		return true;
+	}
+
+	private void write(final OutputStream output, final BulkResult result) throws IOException {
+		output.write(objectMapper.writeValueAsBytes(result));
+		output.write('\n');
+	}
+
+	/**
+	 * Persist a chunk of bulk lines. Within a transaction.
+	 *
+	 * @param context The upload context.
+	 * @param lines   The raw JSON lines of this chunk.
+	 * @param results The results of this chunk, completed in the line order. When a line fails and the errors do not
+	 *                continue, its result is the last one.
+	 */
+	public void bulkChunk(final UploadContext context, final List<String> lines, final List<BulkResult> results) {
+		context.quote = resource.getRepository().findBy("subscription.id", context.subscription);
+		lookupStage.initialize(context.quote);
+		context.storages.clear();
+		context.tags.clear();
+
+		// Read the lines, then lookup the prices, possibly in parallel
+		final var start = context.rows - lines.size();
+		final var entries = IntStream.range(0, lines.size()).filter(i -> StringUtils.isNotBlank(lines.get(i)))
+				.mapToObj(i -> readBulk(context, lines.get(i), start + i + 1)).toList();
+		final var lookups = lookupStage.lookup(context, entries);
+
+		// Persist the entries in order, the storages are created with the whole chunk
+		final var created = new IdentityHashMap<BulkResult, ProvQuoteStorage>();
+		for (var index = 0; index < entries.size(); index++) {
+			final var entry = entries.get(index);
+			final var result = new BulkResult();
+			result.setLine(entry.line);
+			result.setType(entry.type);
+			result.setName(entry.name);
+			results.add(result);
+			try {
+				lookupStage.await(lookups.get(index));
+				final var storage = persistBulk(context, entry, result);
+				if (storage != null) {
+					created.put(result, storage);
+				}
+				context.persisted++;
+			} catch (final ConstraintViolationException e) {
+				final var ve = new ValidationJsonException(e);
+				result.setErrors(ve.getErrors());
+				uploadResource.handleUploadError(context, entry, ve);
+			} catch (final RuntimeException e) {
+				result.setErrors(toBulkErrors(e));
+				uploadResource.handleUploadError(context, entry, e);
+			}
+		}
+		uploadResource.flush(context);
+		created.forEach((r, s) -> r.setId(s.getId()));
+		context.committed = context.rows;
+	}
+
+	/**
+	 * Parse and check a bulk line.
+	 */
+	private UploadEntry readBulk(final UploadContext context, final String json, final int line) {
+		final BulkEntry bulk;
+		try {
+			bulk = getBulkReader().readValue(json);
+		} catch (final JsonProcessingException e) {
+			final var entry = new UploadEntry((String) null, line);
+			entry.error = new ValidationJsonException("line", "bulk-invalid-json", "message", e.getOriginalMessage());
+			return entry;
+		}
+		final var vms = Stream
+				.<AbstractQuoteVmEditionVo>of(bulk.getInstance(), bulk.getDatabase(), bulk.getContainer())
+				.filter(Objects::nonNull).toList();
+		final var count = vms.size() + (bulk.getStorage() == null ? 0 : 1);
+		final var entry = new UploadEntry(count == 1 ? (vms.isEmpty() ? bulk.getStorage().getName()
+				: vms.getFirst().getName()) : null, line);
+		try {
+			if (count != 1) {
+				throw new ValidationJsonException("line", "bulk-one-resource");
+			}
+			if (StringUtils.isBlank(entry.name)) {
+				throw new ValidationJsonException("name", "NotBlank");
+			}
+			if (bulk.getStorage() == null) {
+				entry.type = bulk.getInstance() != null ? ResourceType.INSTANCE
+						: bulk.getDatabase() != null ? ResourceType.DATABASE : ResourceType.CONTAINER;
+				entry.vo = vms.getFirst();
+				entry.vo.setId(null);
+				entry.vo.setPrice(null);
+				entry.vo.setSubscription(context.subscription);
+				checkTags(entry.vo.getTags());
+			} else {
+				entry.type = ResourceType.STORAGE;
+				entry.storage = bulk.getStorage();
+				entry.storage.setId(null);
+				entry.storage.setSubscription(context.subscription);
+				checkTags(entry.storage.getTags());
+			}
+			context.parsed++;
+		} catch (final RuntimeException e) {
+			entry.error = e;
+		}
+		return entry;
+	}
+
+	/**
+	 * Check the tags before any change, so the tags are not rejected at flush time.
+	 */
+	private List<String[]> checkTags(final List<TagVo> tags) {
+		return ProvQuoteUploadResource.checkUnique(CollectionUtils.emptyIfNull(tags).stream().map(t -> {
+			tagResource.checkTag(t.getName(), t.getValue());
+			return new String[] { t.getName(), t.getValue() };
+		}).toList());
+	}
+
+	private ObjectReader getBulkReader() {
+		if (bulkReader == null) {
+			bulkReader = objectMapper.readerFor(BulkEntry.class)
+					.with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		}
+		return bulkReader;
+	}
+
+	/**
+	 * Persist a looked up bulk line with the merge mode.
+	 *
+	 * @return The storage to be created with the chunk, or <code>null</code>.
+	 */
+	private ProvQuoteStorage persistBulk(final UploadContext context, final UploadEntry entry,
+			final BulkResult result) {
+		if (entry.error != null) {
+			// Failure of a previous stage
+			throw entry.error;
+		}
+		if (entry.type == ResourceType.STORAGE) {
+			return persistBulk(context, entry.storage, result);
+		}
+		final var vo = entry.vo;
+		merger.merge(context, entry.type, vo);
+		context.priced++;
+		result.setName(vo.getName());
+		result.setId(vo.getId());
+		result.setPrice(entry.lookup.getPrice().getCode());
+		return null;
+	}
+
+	/**
+	 * Persist a bulk storage with the merge mode. A new storage is only validated there, and created with the chunk.
+	 * Since the identifier of this new storage is not yet known, the same storage name cannot be updated in the same
+	 * chunk.
+	 */
+	private ProvQuoteStorage persistBulk(final UploadContext context, final QuoteStorageEditionVo vo,
+			final BulkResult result) {
+		final var previous = context.previousQs.get(vo.getName());
+		if (context.previousQs.containsKey(vo.getName())) {
+			if (context.mode == MergeMode.KEEP) {
+				ProvQuoteUploadResource.nextStorageName(context, vo);
+			} else if (context.mode == MergeMode.INSERT || previous == null) {
+				throw new DataIntegrityViolationException("name");
+			}
+		}
+		if (vo.getType() == null) {
+			// Find the nicest storage
+			vo.setType(lookupStage.lookupStorage(context, vo).getPrice().getType().getCode());
+		}
+		context.priced++;
+		result.setName(vo.getName());
+		if (previous != null && context.mode == MergeMode.UPDATE) {
+			// Update the previous storage
+			vo.setId(previous);
+			storageResource.update(vo);
+			result.setId(previous);
+			result.setPrice(qsRepository.findOneExpected(previous).getPrice().getCode());
+			return null;
+		}
+		final var storage = storageResource.newStorage(context.quote, vo);
+		context.previousQs.put(vo.getName(), null);
+		context.storages.add(new PendingStorage(storage, checkTags(vo.getTags())));
+		result.setPrice(storage.getPrice().getCode());
+		return storage;
+	}
+
+	/**
+	 * Return the validation errors of a failed bulk line.
+	 */
+	private Map<String, List<Map<String, Serializable>>> toBulkErrors(final RuntimeException e) {
+		if (e instanceof ValidationJsonException ve) {
+			return ve.getErrors();
+		}
+		return Map.of("line", List.of(Map.of("rule", "bulk-invalid-entry", "parameters",
+				(Serializable) Map.of("message", Objects.toString(e.getMessage())))));
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import jakarta.transaction.Transactional;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.cxf.jaxrs.ext.multipart.Multipart;
+import org.ligoj.app.plugin.prov.AbstractLookup;
+import org.ligoj.app.plugin.prov.AbstractQuoteVmEditionVo;
+import org.ligoj.app.plugin.prov.Floating;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The dry-run part of the provisioning from upload CSV file: the entries are priced, and nothing is persisted.
+ */
+@Service
+@Path(ProvResource.SERVICE_URL)
+@Produces(MediaType.APPLICATION_JSON)
+@Transactional
+@Slf4j
+public class ProvQuoteUploadDryRunResource {
+
+	@Autowired
+	protected ProvResource resource;
+
+	@Autowired
+	private ProvQuoteUploadResource uploadResource;
+
+	@Autowired
+	private UploadLookupStage lookupStage;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	protected ProvQuoteUploadDryRunResource self;
+
+	/**
+	 * Price a file of quote without persisting anything, see
+	 * {@link #dryRun(int, InputStream, String[], boolean, String, String, String, Integer, String, boolean, boolean,
+	 * boolean, String)}.
+	 *
+	 * @param subscription     The subscription identifier will be used to filter the locations from the associated
+	 *                         provider.
+	 * @param uploadedFile     Instance entries files to price. Currently, support only CSV format.
+	 * @param headers          the CSV header names. When <code>null</code> or empty, the default headers are used.
+	 * @param headersIncluded  When <code>true</code>, the first line is the headers and the given <code>headers</code>
+	 *                         parameter is ignored. Otherwise, the <code>headers</code> parameter is used.
+	 * @param defaultUsage     The optional usage name.
+	 * @param defaultBudget    The optional budget name.
+	 * @param defaultOptimizer The optional optimizer name.
+	 * @param ramMultiplier    The multiplier for imported RAM values. Default is 1.
+	 * @param encoding         CSV encoding. Default is UTF-8.
+	 * @param createUsage      When <code>true</code>, missing usage are considered as created.
+	 * @param createBudget     When <code>true</code>, missing budget are considered as created.
+	 * @param createOptimizer  When <code>true</code>, missing optimizer are considered as created.
+	 * @param separator        CSV separator. Default is ";".
+	 * @return The streamed prices.
+	 * @throws IOException When the CSV stream cannot be spooled.
+	 */
+	@POST
+	@Consumes(MediaType.MULTIPART_FORM_DATA)
+	@Path("{subscription:\\d+}/upload/dry-run")
+	@Transactional(Transactional.TxType.SUPPORTS)
+	public StreamingOutput dryRun(@PathParam("subscription") final int subscription,
+			@Multipart(value = ProvQuoteUploadResource.CSV_FILE) final InputStream uploadedFile,
+			@Multipart(value = "headers", required = false) final String headers,
+			@Multipart(value = "headers-included", required = false) final String headersIncluded,
+			@Multipart(value = "usage", required = false) final String defaultUsage,
+			@Multipart(value = "budget", required = false) final String defaultBudget,
+			@Multipart(value = "optimizer", required = false) final String defaultOptimizer,
+			@Multipart(value = "memoryUnit", required = false) final String ramMultiplier,
+			@Multipart(value = "encoding", required = false) final String encoding,
+			@Multipart(value = "createMissingUsage", required = false) final String createUsage,
+			@Multipart(value = "createMissingBudget", required = false) final String createBudget,
+			@Multipart(value = "createMissingOptimizer", required = false) final String createOptimizer,
+			@Multipart(value = "separator", required = false) final String separator) throws IOException {
+		return dryRun(subscription, uploadedFile, StringUtils.trimToEmpty(headers).split(";,"),
+				headersIncluded == null || BooleanUtils.toBoolean(headersIncluded), defaultUsage, defaultBudget,
+				defaultOptimizer, Math.max(1, NumberUtils.toInt(ramMultiplier)), encoding,
+				BooleanUtils.toBoolean(createUsage), BooleanUtils.toBoolean(createBudget),
+				BooleanUtils.toBoolean(createOptimizer), separator);
+	}
+
+	/**
+	 * Price a stream of quote without persisting anything. The stream is spooled to a temporary file, and the headers
+	 * are checked immediately. The returned output writes a JSON object with the priced entries in the file order as
+	 * soon as they are priced, then the aggregated totals: <code>{"entries":[...],"total":{...}}</code>.
+	 *
+	 * @param subscription     The subscription identifier will be used to filter the locations from the associated
+	 *                         provider.
+	 * @param uploadedFile     Instance entries stream. Currently, support only CSV format.
+	 * @param headers          the CSV header names. When <code>null</code> or empty, the default headers are used.
+	 * @param headersIncluded  When <code>true</code>, the first line is the headers and the given <code>headers</code>
+	 *                         parameter is ignored. Otherwise, the <code>headers</code> parameter is used.
+	 * @param defaultUsage     The optional usage name.
+	 * @param defaultBudget    The optional budget name.
+	 * @param defaultOptimizer The optional optimizer name.
+	 * @param ramMultiplier    The multiplier for imported RAM values. Default is 1.
+	 * @param encoding         CSV encoding. Default is UTF-8.
+	 * @param createUsage      When <code>true</code>, missing usage are considered as created.
+	 * @param createBudget     When <code>true</code>, missing budget are considered as created.
+	 * @param createOptimizer  When <code>true</code>, missing optimizer are considered as created.
+	 * @param separator        CSV separator. Default is ";".
+	 * @return The streamed prices.
+	 * @throws IOException When the CSV stream cannot be spooled.
+	 */
+	@Transactional(Transactional.TxType.SUPPORTS)
+	public StreamingOutput dryRun(final int subscription,
+			final InputStream uploadedFile,
+			final String[] headers,
+			final boolean headersIncluded,
+			final String defaultUsage,
+			final String defaultBudget,
+			final String defaultOptimizer,
+			final Integer ramMultiplier,
+			final String encoding,
+			final boolean createUsage,
+			final boolean createBudget,
+			final boolean createOptimizer,
+			final String separator) throws IOException {
+		final var file = ProvQuoteUploadResource.spool(uploadedFile);
+		BufferedReader reader = null;
+		try {
+			reader = ProvQuoteUploadResource.newReader(file, encoding);
+			final var context = uploadResource.newContext(subscription, reader, headers, headersIncluded,
+					defaultUsage, defaultBudget, defaultOptimizer, MergeMode.INSERT, ramMultiplier, true, createUsage,
+					createBudget, createOptimizer, separator);
+			final var taskReader = reader;
+			return output -> {
+				try (taskReader; var generator = objectMapper.getFactory().createGenerator(output)) {
+					generator.writeStartObject();
+					generator.writeArrayFieldStart("entries");
+					final var total = self.dryRun(context, taskReader, p -> {
+						try {
+							objectMapper.writeValue(generator, p);
+						} catch (final IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+					generator.writeEndArray();
+					generator.writeFieldName("total");
+					objectMapper.writeValue(generator, total);
+					generator.writeEndObject();
+				} finally {
+					FileUtils.deleteQuietly(file);
+				}
+			};
+		} catch (final IOException | RuntimeException e) {
+			IOUtils.closeQuietly(reader);
+			FileUtils.deleteQuietly(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Price the entries of a checked upload without persisting anything. Within a transaction marked as rollback only,
+	 * so the missing profiles created along the pricing are discarded too. The storages are priced without the
+	 * constraints of their instance.
+	 *
+	 * @param context  The upload context.
+	 * @param reader   The CSV reader, positioned after the headers.
+	 * @param consumer The consumer of the priced entries, in the file order.
+	 * @return The aggregated totals.
+	 * @throws IOException When the CSV stream cannot be read.
+	 */
+	public UploadTotal dryRun(final UploadContext context, final BufferedReader reader,
+			final Consumer<UploadPrice> consumer) throws IOException {
+		TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+		context.quote = resource.getRepository().findBy("subscription.id", context.subscription);
+		lookupStage.initialize(context.quote);
+		final var total = new UploadTotal();
+		final var chunkSize = Math.max(1, configuration.get(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK,
+				ProvQuoteUploadResource.DEFAULT_UPLOAD_CHUNK));
+		final var chunk = new ArrayList<String>(chunkSize);
+		for (var entry = ProvQuoteUploadResource.nextRecord(reader); entry != null;
+				entry = ProvQuoteUploadResource.nextRecord(reader)) {
+			context.rows++;
+			chunk.add(entry);
+			if (chunk.size() == chunkSize) {
+				price(context, chunk, total, consumer);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			price(context, chunk, total, consumer);
+		}
+		total.setParsed(context.parsed);
+		total.setPriced(context.priced);
+		total.setFailed(context.failed);
+		total.setDistinct(context.shapes.size());
+		log.info("Upload provisioning dry-run : {} entries priced, {} failed", context.priced, context.failed);
+		return total;
+	}
+
+	private void price(final UploadContext context, final List<String> records, final UploadTotal total,
+			final Consumer<UploadPrice> consumer) {
+		final var entries = uploadResource.read(context, records);
+		final var lookups = lookupStage.lookup(context, entries);
+		for (var index = 0; index < entries.size(); index++) {
+			lookupStage.await(lookups.get(index));
+			consumer.accept(price(context, entries.get(index), total));
+		}
+	}
+
+	/**
+	 * Compute the cost of a looked up entry, including the disks and the quantities.
+	 */
+	private UploadPrice price(final UploadContext context, final UploadEntry entry, final UploadTotal total) {
+		final var i = entry.upload;
+		final var result = new UploadPrice();
+		result.setLine(entry.line);
+		result.setName(i.getName());
+		result.setType(entry.type);
+		try {
+			if (entry.error != null) {
+				// Failure of a previous stage
+				throw entry.error;
+			}
+			if (entry.vo == null) {
+				// Ignored entry
+				return result;
+			}
+			final var cost = new Floating();
+			if (entry.lookup != null) {
+				result.setPrice(entry.lookup.getPrice().getCode());
+				cost.add(toCost(entry.lookup, entry.vo));
+			}
+			for (final var svo : ProvQuoteUploadResource.newStorages(i, entry.vo)) {
+				final var storage = lookupStage.lookupStorage(context, svo);
+				result.getStorages().add(storage.getPrice().getType().getCode());
+				cost.add(toCost(storage, entry.vo));
+			}
+			result.setCost(cost);
+			total.getCost().add(cost);
+			context.priced++;
+		} catch (final ValidationJsonException e) {
+			context.failed++;
+			result.setErrors(ProvQuoteUploadResource.handleValidationError(context, i, e).getErrors());
+		} catch (final ConstraintViolationException e) {
+			context.failed++;
+			result.setErrors(ProvQuoteUploadResource
+					.handleValidationError(context, i, new ValidationJsonException(e)).getErrors());
+		} catch (final RuntimeException e) {
+			context.failed++;
+			result.setErrors(ProvQuoteUploadResource.toErrors(entry, e));
+		}
+		return result;
+	}
+
+	/**
+	 * Return the cost of a looked up resource with the quantities of the entry.
+	 */
+	private Floating toCost(final AbstractLookup<?> lookup, final AbstractQuoteVmEditionVo vo) {
+		final var max = ObjectUtils.getIfNull(vo.getMaxQuantity(), vo.getMinQuantity());
+		return new Floating(lookup.getCost() * vo.getMinQuantity(), lookup.getCost() * max, 0, 0,
+				vo.getMaxQuantity() == null, lookup.getCo2() * vo.getMinQuantity(), lookup.getCo2() * max);
+	}
+}
@@ -3,14 +3,19 @@
  */
 package org.ligoj.app.plugin.prov.quote.upload;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.BooleanUtils;
@@ -18,46 +23,106 @@ import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.cxf.jaxrs.ext.multipart.Multipart;
-import org.hibernate.Hibernate;
+import org.ligoj.app.dao.SubscriptionRepository;
 import org.ligoj.app.plugin.prov.*;
 import org.ligoj.app.plugin.prov.dao.*;
 import org.ligoj.app.plugin.prov.model.*;
-import org.ligoj.app.plugin.prov.quote.container.ProvQuoteContainerResource;
 import org.ligoj.app.plugin.prov.quote.container.QuoteContainerEditionVo;
-import org.ligoj.app.plugin.prov.quote.database.ProvQuoteDatabaseResource;
 import org.ligoj.app.plugin.prov.quote.database.QuoteDatabaseEditionVo;
 import org.ligoj.app.plugin.prov.quote.instance.ProvQuoteInstanceResource;
 import org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceEditionVo;
 import org.ligoj.app.plugin.prov.quote.storage.ProvQuoteStorageResource;
 import org.ligoj.app.plugin.prov.quote.storage.QuoteStorageEditionVo;
+import org.ligoj.app.resource.subscription.LongTaskRunnerSubscription;
 import org.ligoj.app.resource.subscription.SubscriptionResource;
 import org.ligoj.bootstrap.core.csv.CsvForBean;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiFunction;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.IntStream;
 
 /**
- * The instance part of the provisioning from upload CSV file.
+ * The instance part of the provisioning from upload CSV file. An upload runs as a long task of the subscription, with
+ * live progress. The dry-run and the bulk import are served by {@link ProvQuoteUploadDryRunResource} and
+ * {@link ProvQuoteUploadBulkResource}, and share the lookup stage, see {@link UploadLookupStage}.
  */
 @Service
 @Path(ProvResource.SERVICE_URL)
 @Produces(MediaType.APPLICATION_JSON)
 @Transactional
 @Slf4j
-public class ProvQuoteUploadResource {
-	private static final String CSV_FILE = "csv-file";
+public class ProvQuoteUploadResource
+		implements LongTaskRunnerSubscription<ProvQuoteUploadStatus, ProvQuoteUploadStatusRepository> {
+	static final String CSV_FILE = "csv-file";
+
+	/**
+	 * Configuration key used for the amount of entries committed at once by an upload.
+	 */
+	public static final String CONF_UPLOAD_CHUNK = ProvResource.SERVICE_KEY + ":upload-chunk";
+
+	/**
+	 * Default amount of entries committed at once by an upload.
+	 */
+	public static final int DEFAULT_UPLOAD_CHUNK = 500;
+
+	/**
+	 * Configuration key used for the amount of threads looking up the prices of the uploaded entries, shared by all
+	 * uploads.
+	 */
+	public static final String CONF_UPLOAD_LOOKUP_CONCURRENCY = ProvResource.SERVICE_KEY + ":upload-lookup-concurrency";
+
+	/**
+	 * Default amount of threads looking up the prices of the uploaded entries.
+	 */
+	public static final int DEFAULT_UPLOAD_LOOKUP_CONCURRENCY = 4;
+
+	/**
+	 * Configuration key used for the maximal amount of uploads running at the same time, all subscriptions included.
+	 */
+	public static final String CONF_UPLOAD_CONCURRENCY = ProvResource.SERVICE_KEY + ":upload-concurrency";
+
+	/**
+	 * Default maximal amount of uploads running at the same time.
+	 */
+	public static final int DEFAULT_UPLOAD_CONCURRENCY = 2;
+
+	/**
+	 * Maximal amount of failed entries detailed per upload. The next failures are only counted.
+	 */
+	public static final int MAX_UPLOAD_ERRORS = 100;
+
+	/**
+	 * Maximal length of the JSON validation errors of a failed entry, see {@link ProvQuoteUploadError#getErrors()}.
+	 */
+	private static final int MAX_ERRORS_LENGTH = 4000;
+
+	/**
+	 * Configuration key used for the additional header aliases, such as <code>cpu:nb[-_ ]?cores;ram:mem</code>. Each
+	 * alias is a regular expression extending the accepted names of an existing header.
+	 */
+	public static final String CONF_UPLOAD_HEADERS = ProvResource.SERVICE_KEY + ":upload-headers";
 
 	/**
 	 * Default CSV separator.
@@ -97,6 +162,24 @@ public class ProvQuoteUploadResource {
 			a -> a[0] + ".*", a -> a[1] + ".*", a -> ".*" + a[0], a -> ".*" + a[1], a -> ".*" + a[0] + ".*",
 			a -> ".*" + a[1] + ".*");
 
+	/**
+	 * A compiled accepted header: the header name and its pattern for each layer of {@link #LAYER_MATCHERS}.
+	 *
+	 * @param name   The header name.
+	 * @param layers The compiled patterns, from the most to the least exact match.
+	 */
+	private record HeaderMatcher(String name, Pattern[] layers) {
+	}
+
+	/**
+	 * The compiled accepted headers, and the configured aliases they are built from.
+	 *
+	 * @param aliases  The configured aliases.
+	 * @param matchers The compiled accepted headers.
+	 */
+	private record HeaderMatchers(String aliases, List<HeaderMatcher> matchers) {
+	}
+
 	@Autowired
 	private CsvForBean csvForBean;
 
@@ -107,22 +190,34 @@ public class ProvQuoteUploadResource {
 	private ProvQuoteStorageResource storageResource;
 
 	@Autowired
+	@Getter
 	private SubscriptionResource subscriptionResource;
+
 	@Autowired
-	private ProvUsageRepository usageRepository;
+	@Getter
+	private SubscriptionRepository subscriptionRepository;
+
 	@Autowired
-	private ProvBudgetRepository budgetRepository;
+	@Getter
+	private ProvQuoteUploadStatusRepository taskRepository;
+
 	@Autowired
-	private ProvOptimizerRepository optimizerRepository;
+	private ProvQuoteUploadErrorRepository errorRepository;
 
 	@Autowired
-	private ProvQuoteInstanceResource qiResource;
+	private SecurityHelper securityHelper;
 
 	@Autowired
-	private ProvQuoteContainerResource qcResource;
+	private ObjectMapper objectMapper;
+	@Autowired
+	private ProvUsageRepository usageRepository;
+	@Autowired
+	private ProvBudgetRepository budgetRepository;
+	@Autowired
+	private ProvOptimizerRepository optimizerRepository;
 
 	@Autowired
-	private ProvQuoteDatabaseResource qbResource;
+	private ProvQuoteInstanceResource qiResource;
 
 	@Autowired
 	private ProvTagResource tagResource;
@@ -136,143 +231,30 @@ public class ProvQuoteUploadResource {
 	@Autowired
 	private ProvQuoteDatabaseRepository qbRepository;
 
-	// Instance merger
-	private final Map<MergeMode, BiFunction<QuoteInstanceEditionVo, UploadContext, Integer>> mergersInstance = Map
-			.of(MergeMode.INSERT, this::modeInsert, MergeMode.KEEP, this::modeKeep, MergeMode.UPDATE, this::modeUpdate);
-
-	// Container merger
-	private final Map<MergeMode, BiFunction<QuoteContainerEditionVo, UploadContext, Integer>> mergersContainer = Map
-			.of(MergeMode.INSERT, this::modeInsert, MergeMode.KEEP, this::modeKeep, MergeMode.UPDATE, this::modeUpdate);
-
-	// Database merger
-	private final Map<MergeMode, BiFunction<QuoteDatabaseEditionVo, UploadContext, Integer>> mergersDatabase = Map
-			.of(MergeMode.INSERT, this::modeInsert, MergeMode.KEEP, this::modeKeep, MergeMode.UPDATE, this::modeUpdate);
-
-
-	private static class UploadContext {
-		private Map<String, ProvQuoteInstance> previousQi;
-		private Map<String, ProvQuoteContainer> previousQc;
-		private Map<String, ProvQuoteDatabase> previousQb;
-		private ProvQuote quote;
-	}
-
-	/**
-	 * Insert mode.
-	 */
-	private Integer modeInsert(final QuoteInstanceEditionVo vo, final UploadContext context) {
-		// Reserve this name
-		var qi = new ProvQuoteInstance();
-		if (context.previousQi.containsKey(vo.getName())) {
-			throw new DataIntegrityViolationException("name");
-		}
-		context.previousQi.put(vo.getName(), qi);
-		qi.setId(qiResource.saveOrUpdate(context.quote, qi, vo).getId());
-		vo.setId(qi.getId());
-		return qi.getId();
-	}
-
-	/**
-	 * Insert mode.
-	 */
-	private Integer modeInsert(final QuoteContainerEditionVo vo, final UploadContext context) {
-		// Reserve this name
-		var qc = new ProvQuoteContainer();
-		if (context.previousQc.containsKey(vo.getName())) {
-			throw new DataIntegrityViolationException("name");
-		}
-		context.previousQc.put(vo.getName(), qc);
-		qc.setId(qcResource.saveOrUpdate(context.quote, qc, vo).getId());
-		vo.setId(qc.getId());
-		return qc.getId();
-	}
-
-	/**
-	 * Insert mode.
-	 */
-	private Integer modeInsert(final QuoteDatabaseEditionVo vo, final UploadContext context) {
-		// Reserve this name
-		var qb = new ProvQuoteDatabase();
-		context.previousQb.put(vo.getName(), qb);
-		qb.setId(qbResource.saveOrUpdate(context.quote, qb, vo).getId());
-		vo.setId(qb.getId());
-		return qb.getId();
-	}
-
-	private <Q extends AbstractQuoteVmEditionVo> void nextName(final Q vo, final Map<String, ?> previous) {
-		var name = vo.getName();
-		var counter = 0;
-		while (previous.containsKey(name)) {
-			name = vo.getName() + " " + ++counter;
-		}
-		// Fix the instance's name in order to be unique during this upload.
-		vo.setName(name);
-	}
+	@Autowired
+	private ProvQuoteStorageRepository qsRepository;
 
-	/**
-	 * Keep mode.
-	 */
-	private Integer modeKeep(final QuoteInstanceEditionVo vo, final UploadContext context) {
-		nextName(vo, context.previousQi);
-		return modeInsert(vo, context);
-	}
+	@Autowired
+	private ConfigurationResource configuration;
 
-	/**
-	 * Keep mode.
-	 */
-	private Integer modeKeep(final QuoteContainerEditionVo vo, final UploadContext context) {
-		nextName(vo, context.previousQc);
-		return modeInsert(vo, context);
-	}
+	@Autowired
+	private UploadLookupStage lookupStage;
 
-	/**
-	 * Keep mode.
-	 */
-	private Integer modeKeep(final QuoteDatabaseEditionVo vo, final UploadContext context) {
-		nextName(vo, context.previousQb);
-		return modeInsert(vo, context);
-	}
+	@Autowired
+	private UploadMerger merger;
 
-	/**
-	 * Update mode.
-	 */
-	private Integer modeUpdate(final QuoteInstanceEditionVo vo, final UploadContext context) {
-		final var qi = context.previousQi.get(vo.getName());
-		if (qi == null) {
-			return modeInsert(vo, context);
-		}
-		// Update the previous entity
-		vo.setId(qi.getId());
-		qiResource.saveOrUpdate(context.quote, qi, vo);
-		return null;
-	}
+	@Autowired
+	protected ProvQuoteUploadResource self;
 
 	/**
-	 * Update mode.
+	 * The shared upload pool, created at the first use.
 	 */
-	private Integer modeUpdate(final QuoteContainerEditionVo vo, final UploadContext context) {
-		final var qc = context.previousQc.get(vo.getName());
-		if (qc == null) {
-			return modeInsert(vo, context);
-		}
-		// Update the previous entity
-		vo.setId(qc.getId());
-		qcResource.saveOrUpdate(context.quote, qc, vo);
-		return null;
-	}
+	private ExecutorService uploadExecutor;
 
 	/**
-	 * Update mode.
+	 * The compiled accepted headers, rebuilt only when the configured aliases change.
 	 */
-	private Integer modeUpdate(final QuoteDatabaseEditionVo vo, final UploadContext context) {
-		final var qi = context.previousQb.get(vo.getName());
-		if (qi == null) {
-			return modeInsert(vo, context);
-		}
-		// Update the previous entity
-		vo.setId(qi.getId());
-		qbResource.saveOrUpdate(context.quote, qi, vo);
-		return null;
-	}
+	private volatile HeaderMatchers headerMatchers;
 
 	private String cleanHeader(final String header) {
 		return StringUtils.unwrap(header, '\"').trim();
@@ -292,18 +274,20 @@ public class ProvQuoteUploadResource {
 
 		// For each pattern, from the most precise match to the least one
 		// Check the compliance of the given header against the accepted values
-		LAYER_MATCHERS.forEach(layer -> {
+		final var matchers = getHeaderMatchers().matchers();
+		IntStream.range(0, LAYER_MATCHERS.size()).forEach(layer -> {
 			// Headers (K) mapped to input ones (V) for this match layer
 			final var layerMapped = new HashMap<String, String>();
 			Arrays.stream(headers)
-					.forEach(h -> ACCEPTED_HEADERS.stream().map(mapping -> mapping.split(":"))
-							.filter(mapping -> !mapped.containsKey(mapping[0]) && !mappedUser.contains(h))
-							.filter(mapping -> match(layer, mapping, cleanHeader(h))).forEach(patterns -> {
-								final var previous = layerMapped.put(patterns[0], h);
+					.forEach(h -> matchers.stream()
+							.filter(matcher -> !mapped.containsKey(matcher.name()) && !mappedUser.contains(h))
+							.filter(matcher -> matcher.layers()[layer].matcher(cleanHeader(h)).matches())
+							.forEach(matcher -> {
+								final var previous = layerMapped.put(matcher.name(), h);
 								if (previous != null) {
 									// Ambiguous header
 									throw new ValidationJsonException(CSV_FILE, "ambiguous-header", "header",
-											patterns[0], "name1", previous, "name2", h);
+											matcher.name(), "name1", previous, "name2", h);
 								}
 							}));
 			// Complete the global set
@@ -323,12 +307,67 @@ public class ProvQuoteUploadResource {
 				.toArray(String[]::new);
 	}
 
-	private boolean match(final Function<String[], String> c, final String[] namePattern, final String value) {
-		return Pattern.compile(c.apply(namePattern), Pattern.CASE_INSENSITIVE).matcher(value.trim()).matches();
+	/**
+	 * Compile the built-in accepted headers at startup.
+	 */
+	@PostConstruct
+	public void compileHeaders() {
+		headerMatchers = new HeaderMatchers("", compileHeaders(""));
+	}
+
+	/**
+	 * Return the compiled accepted headers, including the configured aliases.
+	 */
+	private HeaderMatchers getHeaderMatchers() {
+		final var aliases = StringUtils.trimToEmpty(configuration.get(CONF_UPLOAD_HEADERS));
+		var current = headerMatchers;
+		if (current == null || !current.aliases().equals(aliases)) {
+			current = new HeaderMatchers(aliases, compileHeaders(aliases));
+			headerMatchers = current;
+		}
+		return current;
 	}
 
 	/**
-	 * Upload a file of quote.
+	 * Compile the accepted headers for each match layer. Each alias extends the pattern of its header. The malformed
+	 * aliases and the ones of an unknown header are ignored.
+	 *
+	 * @param aliases The additional aliases: <code>name:pattern</code> entries separated by <code>;</code>.
+	 * @return The compiled accepted headers, in the {@link #ACCEPTED_HEADERS} order.
+	 */
+	private static List<HeaderMatcher> compileHeaders(final String aliases) {
+		final var patterns = new LinkedHashMap<String, String>();
+		ACCEPTED_HEADERS.stream().map(mapping -> mapping.split(":", 2)).forEach(m -> patterns.put(m[0], m[1]));
+		Arrays.stream(StringUtils.split(aliases, ';')).map(StringUtils::trimToNull).filter(Objects::nonNull)
+				.forEach(alias -> {
+					final var mapping = alias.split(":", 2);
+					if (mapping.length < 2 || !patterns.containsKey(mapping[0].trim()) || !isValidPattern(mapping[1])) {
+						log.warn("Ignored upload header alias {}", alias);
+						return;
+					}
+					patterns.computeIfPresent(mapping[0].trim(), (n, p) -> "(?:" + p + "|" + mapping[1].trim() + ")");
+				});
+		return patterns.entrySet().stream()
+				.map(e -> new HeaderMatcher(e.getKey(),
+						LAYER_MATCHERS.stream().map(l -> l.apply(new String[]{e.getKey(), e.getValue()}))
+								.map(p -> Pattern.compile(p, Pattern.CASE_INSENSITIVE)).toArray(Pattern[]::new)))
+				.toList();
+	}
+
+	private static boolean isValidPattern(final String pattern) {
+		try {
+			Pattern.compile(pattern);
+			return true;
+		} catch (final PatternSyntaxException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Start the upload of a file of quote. The file is spooled, checked, then uploaded in background as a long task of
+	 * the subscription, see {@link #getTask(Integer)}. The entries are committed by chunks, see
+	 * {@link #CONF_UPLOAD_CHUNK}. When the upload fails, the entries of the previous chunks are kept, and the upload can
+	 * be resumed with the cursor of the task.
 	 *
 	 * @param subscription     The subscription identifier will be used to filter the locations from the associated
 	 *                         provider.
@@ -350,13 +389,17 @@ public class ProvQuoteUploadResource {
 	 * @param createBudget     When <code>true</code>, missing budget are automatically created.
 	 * @param createOptimizer  When <code>true</code>, missing optimizer are automatically created.
 	 * @param separator        CSV separator. Default is ";".
-	 * @throws IOException When the CSV stream cannot be written.
+	 * @param cursor           The optional amount of entries to skip, as returned by a previous failed upload of the
+	 *                         same file.
+	 * @return The started upload task.
+	 * @throws IOException When the CSV stream cannot be read.
 	 */
 	@POST
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Path("{subscription:\\d+}/upload")
-	public void upload(@PathParam("subscription") final int subscription,
-			@Multipart(value = CSV_FILE) final String uploadedFile,
+	@Transactional(Transactional.TxType.SUPPORTS)
+	public Response upload(@PathParam("subscription") final int subscription,
+			@Multipart(value = CSV_FILE) final InputStream uploadedFile,
 			@Multipart(value = "headers", required = false) final String headers,
 			@Multipart(value = "headers-included", required = false) final String headersIncluded,
 			@Multipart(value = "usage", required = false) final String defaultUsage,
@@ -369,8 +412,9 @@ public class ProvQuoteUploadResource {
 			@Multipart(value = "createMissingUsage", required = false) final String createUsage,
 			@Multipart(value = "createMissingBudget", required = false) final String createBudget,
 			@Multipart(value = "createMissingOptimizer", required = false) final String createOptimizer,
-			@Multipart(value = "separator", required = false) final String separator) throws IOException {
-		upload(subscription,
+			@Multipart(value = "separator", required = false) final String separator,
+			@Multipart(value = "cursor", required = false) final String cursor) throws IOException {
+		return Response.ok(startUpload(subscription,
 				uploadedFile,
 				StringUtils.trimToEmpty(headers).split(";,"),
 				headersIncluded == null || BooleanUtils.toBoolean(headersIncluded),
@@ -384,7 +428,8 @@ public class ProvQuoteUploadResource {
 				BooleanUtils.toBoolean(createUsage),
 				BooleanUtils.toBoolean(createBudget),
 				BooleanUtils.toBoolean(createOptimizer),
-				separator);
+				separator,
+				NumberUtils.toInt(cursor))).build();
 	}
 
 	/**
@@ -410,9 +455,10 @@ public class ProvQuoteUploadResource {
 	 * @param createBudget     When <code>true</code>, missing budget are automatically created.
 	 * @param createOptimizer  When <code>true</code>, missing optimizer are automatically created.
 	 * @param separator        CSV separator. Default is ";".
-	 * @throws IOException When the CSV stream cannot be written.
+	 * @return The upload cursor.
+	 * @throws IOException When the CSV stream cannot be read.
 	 */
-	public void upload(final int subscription,
+	public UploadCursor upload(final int subscription,
 			final String uploadedFile,
 			final String[] headers,
 			final boolean headersIncluded,
@@ -427,82 +473,594 @@ public class ProvQuoteUploadResource {
 			final boolean createBudget,
 			final boolean createOptimizer,
 			final String separator) throws IOException {
+		final var safeEncoding = ObjectUtils.getIfNull(encoding, DEFAULT_ENCODING);
+		return upload(subscription, new ByteArrayInputStream(uploadedFile.getBytes(safeEncoding)), headers,
+				headersIncluded, defaultUsage, defaultBudget, defaultOptimizer, mode, ramMultiplier, errorContinue,
+				safeEncoding, createUsage, createBudget, createOptimizer, separator, 0);
+	}
 
+	/**
+	 * Start the upload of a stream of quote in background. The stream is spooled to a temporary file, and the headers
+	 * are checked before the task starts, so a malformed file fails immediately. Only one upload per subscription can
+	 * run at the same time.
+	 *
+	 * @param subscription     The subscription identifier will be used to filter the locations from the associated
+	 *                         provider.
+	 * @param uploadedFile     Instance entries stream. Currently, support only CSV format.
+	 * @param headers          the CSV header names. When <code>null</code> or empty, the default headers are used.
+	 * @param headersIncluded  When <code>true</code>, the first line is the headers and the given <code>headers</code>
+	 *                         parameter is ignored. Otherwise, the <code>headers</code> parameter is used.
+	 * @param defaultUsage     The optional usage name.
+	 * @param defaultBudget    The optional budget name.
+	 * @param defaultOptimizer The optional optimizer name.
+	 * @param mode             The merge option indicates how the entries are inserted.
+	 * @param ramMultiplier    The multiplier for imported RAM values. Default is 1.
+	 * @param errorContinue    When <code>true</code> errors do not block the upload.
+	 * @param encoding         CSV encoding. Default is UTF-8.
+	 * @param createUsage      When <code>true</code>, missing usage are automatically created.
+	 * @param createBudget     When <code>true</code>, missing budget are automatically created.
+	 * @param createOptimizer  When <code>true</code>, missing optimizer are automatically created.
+	 * @param separator        CSV separator. Default is ";".
+	 * @param skip             The amount of entries to skip, as returned by a previous failed upload.
+	 * @return The started upload task.
+	 * @throws IOException When the CSV stream cannot be spooled.
+	 */
+	@Transactional(Transactional.TxType.SUPPORTS)
+	public ProvQuoteUploadStatus startUpload(final int subscription,
+			final InputStream uploadedFile,
+			final String[] headers,
+			final boolean headersIncluded,
+			final String defaultUsage,
+			final String defaultBudget,
+			final String defaultOptimizer,
+			final MergeMode mode,
+			final Integer ramMultiplier,
+			final boolean errorContinue,
+			final String encoding,
+			final boolean createUsage,
+			final boolean createBudget,
+			final boolean createOptimizer,
+			final String separator,
+			final int skip) throws IOException {
+		final var file = spool(uploadedFile);
+		BufferedReader reader = null;
+		try {
+			reader = newReader(file, encoding);
+			final var context = newContext(subscription, reader, headers, headersIncluded, defaultUsage, defaultBudget,
+					defaultOptimizer, mode, ramMultiplier, errorContinue, createUsage, createBudget, createOptimizer,
+					separator);
+			final var task = startUpload(context, skip);
+			final var user = securityHelper.getLogin();
+			final var taskReader = reader;
+			getUploadExecutor().execute(() -> {
+				securityHelper.setUserName(user);
+				runUpload(context, taskReader, file, skip);
+			});
+			return task;
+		} catch (final IOException | RuntimeException e) {
+			IOUtils.closeQuietly(reader);
+			FileUtils.deleteQuietly(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Check the same tag is not given twice to a resource, so the tags are not rejected at flush time.
+	 *
+	 * @param tags The tags of a resource, as name and optional value.
+	 * @return The given tags.
+	 */
+	static List<String[]> checkUnique(final List<String[]> tags) {
+		final var distinct = new HashSet<List<String>>();
+		tags.stream().filter(t -> !distinct.add(Arrays.asList(t))).findFirst().ifPresent(t -> {
+			throw new ValidationJsonException("tags", "duplicate-tag", t[0]);
+		});
+		return tags;
+	}
+
+	/**
+	 * Make unique the name of a new storage, the previous storages are kept.
+	 *
+	 * @param context The upload context.
+	 * @param vo      The new storage.
+	 */
+	static void nextStorageName(final UploadContext context, final QuoteStorageEditionVo vo) {
+		var counter = 0;
+		final var name = vo.getName();
+		while (context.previousQs.containsKey(vo.getName())) {
+			vo.setName(name + " " + ++counter);
+		}
+	}
+
+	/**
+	 * Spool an uploaded stream to a temporary file.
+	 *
+	 * @param uploadedFile The uploaded stream.
+	 * @return The temporary file, to be deleted by the caller.
+	 * @throws IOException When the stream cannot be spooled.
+	 */
+	static File spool(final InputStream uploadedFile) throws IOException {
+		final var file = File.createTempFile("prov-upload-", ".csv");
+		try {
+			Files.copy(uploadedFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (final IOException e) {
+			FileUtils.deleteQuietly(file);
+			throw e;
+		}
+		return file;
+	}
+
+	static BufferedReader newReader(final File file, final String encoding) throws IOException {
+		return Files.newBufferedReader(file.toPath(), Charset.forName(ObjectUtils.getIfNull(encoding, DEFAULT_ENCODING)));
+	}
+
+	/**
+	 * Start the upload task of a checked upload, and reset its progress.
+	 *
+	 * @param context The upload context.
+	 * @param skip    The amount of entries to skip.
+	 * @return The started upload task.
+	 */
+	ProvQuoteUploadStatus startUpload(final UploadContext context, final int skip) {
+		context.task = true;
+		return self.startTask(context.subscription, t -> {
+			t.setParsed(0);
+			t.setPriced(0);
+			t.setPersisted(0);
+			t.setFailed(0);
+			t.setCursor(skip);
+			errorRepository.deleteAll(context.subscription);
+		});
+	}
+
+	/**
+	 * Run a started upload task, and end it. Synchronous operation.
+	 *
+	 * @param context The upload context.
+	 * @param reader  The CSV reader, positioned after the headers. Closed by this method.
+	 * @param file    The spooled file, deleted by this method.
+	 * @param skip    The amount of entries to skip.
+	 */
+	void runUpload(final UploadContext context, final BufferedReader reader, final File file, final int skip) {
+		var failed = true;
+		try (reader) {
+			upload(context, reader, skip);
+			failed = false;
+		} catch (final IOException | RuntimeException e) {
+			log.error("Upload provisioning of subscription {} failed", context.subscription, e);
+		} finally {
+			FileUtils.deleteQuietly(file);
+			endUpload(context, failed);
+		}
+	}
+
+	private void endUpload(final UploadContext context, final boolean failed) {
+		try {
+			if (!taskRepository.findBy("locked.id", context.subscription).isFinished()) {
+				// Not cancelled
+				self.endTask(context.subscription, failed, t -> t.setCursor(context.committed));
+			}
+		} catch (final RuntimeException e) {
+			log.error("Upload provisioning task of subscription {} cannot be ended", context.subscription, e);
+		}
+	}
+
+	/**
+	 * Upload a stream of quote. The entries are read and committed by chunks, so the memory usage does not depend on
+	 * the file size. When there is no enclosing transaction, each chunk is committed in its own transaction.
+	 *
+	 * @param subscription     The subscription identifier will be used to filter the locations from the associated
+	 *                         provider.
+	 * @param uploadedFile     Instance entries stream. Currently, support only CSV format.
+	 * @param headers          the CSV header names. When <code>null</code> or empty, the default headers are used.
+	 * @param headersIncluded  When <code>true</code>, the first line is the headers and the given <code>headers</code>
+	 *                         parameter is ignored. Otherwise, the <code>headers</code> parameter is used.
+	 * @param defaultUsage     The optional usage name.
+	 * @param defaultBudget    The optional budget name.
+	 * @param defaultOptimizer The optional optimizer name.
+	 * @param mode             The merge option indicates how the entries are inserted.
+	 * @param ramMultiplier    The multiplier for imported RAM values. Default is 1.
+	 * @param errorContinue    When <code>true</code> errors do not block the upload.
+	 * @param encoding         CSV encoding. Default is UTF-8.
+	 * @param createUsage      When <code>true</code>, missing usage are automatically created.
+	 * @param createBudget     When <code>true</code>, missing budget are automatically created.
+	 * @param createOptimizer  When <code>true</code>, missing optimizer are automatically created.
+	 * @param separator        CSV separator. Default is ";".
+	 * @param skip             The amount of entries to skip, as returned by a previous failed upload.
+	 * @return The upload cursor.
+	 * @throws IOException When the CSV stream cannot be read.
+	 */
+	@Transactional(Transactional.TxType.SUPPORTS)
+	public UploadCursor upload(final int subscription,
+			final InputStream uploadedFile,
+			final String[] headers,
+			final boolean headersIncluded,
+			final String defaultUsage,
+			final String defaultBudget,
+			final String defaultOptimizer,
+			final MergeMode mode,
+			final Integer ramMultiplier,
+			final boolean errorContinue,
+			final String encoding,
+			final boolean createUsage,
+			final boolean createBudget,
+			final boolean createOptimizer,
+			final String separator,
+			final int skip) throws IOException {
+		final var reader = new BufferedReader(
+				new InputStreamReader(uploadedFile, ObjectUtils.getIfNull(encoding, DEFAULT_ENCODING)));
+		return upload(newContext(subscription, reader, headers, headersIncluded, defaultUsage, defaultBudget,
+				defaultOptimizer, mode, ramMultiplier, errorContinue, createUsage, createBudget, createOptimizer,
+				separator), reader, skip);
+	}
+
+	/**
+	 * Check the headers and build the upload context.
+	 */
+	@Transactional(Transactional.TxType.SUPPORTS)
+	UploadContext newContext(final int subscription, final BufferedReader reader, final String[] headers,
+			final boolean headersIncluded, final String defaultUsage, final String defaultBudget,
+			final String defaultOptimizer, final MergeMode mode, final Integer ramMultiplier,
+			final boolean errorContinue, final boolean createUsage, final boolean createBudget,
+			final boolean createOptimizer, final String separator) throws IOException {
 		log.info("Upload provisioning requested...");
 		subscriptionResource.checkVisible(subscription);
 		final var quote = resource.getRepository().findBy("subscription.id", subscription);
-		final var safeEncoding = ObjectUtils.getIfNull(encoding, DEFAULT_ENCODING);
+		final var safeSeparator = ObjectUtils.getIfNull(separator, DEFAULT_SEPARATOR);
 
 		// Check headers validity
-		final String[] headersArray;
-		final InputStream fileNoHeader;
-		if (headersIncluded) {
-			// Header at first line
-			final var br = new BufferedReader(new StringReader(uploadedFile));
-			headersArray = Objects.toString(br.readLine()).split(separator);
-			fileNoHeader = new ByteArrayInputStream(IOUtils.toByteArray(br, safeEncoding));
-
-		} else {
-			// Headers are provided separately
-			headersArray = ArrayUtils.isEmpty(headers) ? DEFAULT_HEADERS : headers;
-			fileNoHeader = new ByteArrayInputStream(uploadedFile.getBytes(safeEncoding));
-		}
-
+		final var headersArray = headersIncluded ? Objects.toString(nextRecord(reader)).split(safeSeparator)
+				: ArrayUtils.isEmpty(headers) ? DEFAULT_HEADERS : headers;
 		final var headersArray2 = checkHeaders(headersArray);
 		final var headersString = StringUtils.chop(ArrayUtils.toString(headersArray2)).substring(1).replace(",",
-				separator) + "\n";
-		final var reader = new InputStreamReader(
-				new SequenceInputStream(new ByteArrayInputStream(headersString.getBytes(safeEncoding)), fileNoHeader),
-				safeEncoding);
-
-		// Build entries
+				safeSeparator) + "\n";
 		log.info("Upload provisioning : reading, using header {}", headersString);
-		final var list = csvForBean.toBean(VmUpload.class, reader);
-		log.info("Upload provisioning : importing {} entries", list.size());
-		final var cursor = new AtomicInteger(0);
-		final var previousQi = qiRepository.findAll(quote).stream()
-				.collect(Collectors.toConcurrentMap(ProvQuoteInstance::getName, Function.identity()));
-		final var previousQc = qcRepository.findAll(quote).stream()
-				.collect(Collectors.toConcurrentMap(ProvQuoteContainer::getName, Function.identity()));
-		final var previousQb = qbRepository.findAll(quote).stream()
-				.collect(Collectors.toConcurrentMap(ProvQuoteDatabase::getName, Function.identity()));
-
-
-		// Initialization for parallel processes
-		Hibernate.initialize(quote.getUsages());
-		Hibernate.initialize(quote.getBudgets());
-		Hibernate.initialize(quote.getOptimizers());
+
+		final var context = newContext(quote, mode, errorContinue);
+		context.defaultUsage = defaultUsage;
+		context.defaultBudget = defaultBudget;
+		context.defaultOptimizer = defaultOptimizer;
+		context.ramMultiplier = ObjectUtils.getIfNull(ramMultiplier, 1);
+		context.createUsage = createUsage;
+		context.createBudget = createBudget;
+		context.createOptimizer = createOptimizer;
+		context.headers = headersString;
+		return context;
+	}
+
+	/**
+	 * Build the upload context of a visible quote, with its current resources. The lookups run in the lookup pool
+	 * only when there is no enclosing transaction.
+	 */
+	@Transactional(Transactional.TxType.SUPPORTS)
+	UploadContext newContext(final ProvQuote quote, final MergeMode mode, final boolean errorContinue) {
 		final var context = new UploadContext();
-		context.quote = quote;
-		context.previousQi = previousQi;
-		context.previousQb = previousQb;
-		context.previousQc = previousQc;
-		list.stream().filter(Objects::nonNull).filter(i -> i.getName() != null).forEach(i -> {
+		context.subscription = quote.getSubscription().getId();
+		context.mode = ObjectUtils.getIfNull(mode, MergeMode.KEEP);
+		context.errorContinue = errorContinue;
+		context.parallel = configuration.get(CONF_UPLOAD_LOOKUP_CONCURRENCY, DEFAULT_UPLOAD_LOOKUP_CONCURRENCY) > 1
+				&& !TransactionSynchronizationManager.isActualTransactionActive();
+		context.previousQi = toIds(qiRepository.findAll(quote));
+		context.previousQc = toIds(qcRepository.findAll(quote));
+		context.previousQb = toIds(qbRepository.findAll(quote));
+		context.previousQs = toIds(qsRepository.findAll(quote));
+		return context;
+	}
+
+	/**
+	 * Return the identifiers of the given resources by name.
+	 */
+	private Map<String, Integer> toIds(final List<? extends AbstractQuote<?>> resources) {
+		final var ids = new HashMap<String, Integer>();
+		resources.forEach(r -> ids.put(r.getName(), r.getId()));
+		return ids;
+	}
+
+	/**
+	 * Read the entries and commit them chunk by chunk.
+	 */
+	private UploadCursor upload(final UploadContext context, final BufferedReader reader, final int skip)
+			throws IOException {
+		final var chunkSize = Math.max(1, configuration.get(CONF_UPLOAD_CHUNK, DEFAULT_UPLOAD_CHUNK));
+		final var chunk = new ArrayList<String>(chunkSize);
+		try {
+			for (var entry = nextRecord(reader); entry != null; entry = nextRecord(reader)) {
+				context.rows++;
+				if (context.rows <= skip) {
+					// Already committed by a previous upload
+					context.committed = context.rows;
+					continue;
+				}
+				chunk.add(entry);
+				if (chunk.size() == chunkSize) {
+					commitChunk(context, chunk);
+					chunk.clear();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				commitChunk(context, chunk);
+			}
+		} catch (final RuntimeException e) {
+			log.info("Upload provisioning failed, resume cursor is {}", context.committed);
+			throw e;
+		}
+		return new UploadCursor(context.rows, context.committed, context.shapes.size());
+	}
+
+	/**
+	 * Commit a chunk, then write the progress of the task. The persisted entries of a rolled back chunk are not
+	 * counted. A cancelled task stops the upload at this chunk boundary.
+	 */
+	private void commitChunk(final UploadContext context, final List<String> records) {
+		final var persisted = context.persisted;
+		try {
+			self.uploadChunk(context, records);
+		} catch (final RuntimeException e) {
+			context.persisted = persisted;
 			try {
-				persist(subscription, defaultUsage, defaultBudget, defaultOptimizer, mode, ramMultiplier, list.size(),
-						cursor, context, createUsage, createBudget, createOptimizer, i);
+				progress(context);
+			} catch (final RuntimeException pe) {
+				// The chunk failure is the cause
+				e.addSuppressed(pe);
+			}
+			throw e;
+		}
+		if (progress(context)) {
+			log.info("Upload provisioning of subscription {} is cancelled, resume cursor is {}", context.subscription,
+					context.committed);
+			throw new BusinessException("upload-cancelled", context.committed);
+		}
+	}
+
+	/**
+	 * Write the progress of the task and the pending failed entries.
+	 *
+	 * @return <code>true</code> when the task has been cancelled.
+	 */
+	private boolean progress(final UploadContext context) {
+		if (!context.task) {
+			return false;
+		}
+		final var task = self.nextStep(context.subscription, t -> {
+			t.setParsed(context.parsed);
+			t.setPriced(context.priced);
+			t.setPersisted(context.persisted);
+			t.setFailed(context.failed);
+			t.setCursor(context.committed);
+			t.setDistinct(context.shapes.size());
+			errorRepository.saveAll(context.errors);
+		});
+		context.errors.clear();
+		return task.isFinished();
+	}
+
+	/**
+	 * Persist a chunk of entries. Within a transaction.
+	 *
+	 * @param context The upload context.
+	 * @param records The raw CSV records of this chunk, without the header.
+	 */
+	public void uploadChunk(final UploadContext context, final List<String> records) {
+		// The quote is loaded in the persistence context of this chunk
+		context.quote = resource.getRepository().findBy("subscription.id", context.subscription);
+		lookupStage.initialize(context.quote);
+
+		context.storages.clear();
+		context.tags.clear();
+
+		// Build the edition objects, then lookup the prices, possibly in parallel
+		final var entries = read(context, records);
+		final var lookups = lookupStage.lookup(context, entries);
+
+		// Persist the entries in order, as soon as their price is available
+		for (var index = 0; index < entries.size(); index++) {
+			final var entry = entries.get(index);
+			final var i = entry.upload;
+			try {
+				lookupStage.await(lookups.get(index));
+				if (entry.error == null && entry.type != null) {
+					context.priced++;
+				}
+				persist(context, entry);
+				if (entry.vo != null) {
+					context.persisted++;
+				}
 			} catch (final ValidationJsonException e) {
-				handleUploadError(BooleanUtils.isTrue(errorContinue), handleValidationError(i, e));
+				handleUploadError(context, entry, handleValidationError(context, i, e));
 			} catch (final ConstraintViolationException e) {
-				handleUploadError(BooleanUtils.isTrue(errorContinue), handleValidationError(i, new ValidationJsonException(e)));
+				handleUploadError(context, entry, handleValidationError(context, i, new ValidationJsonException(e)));
 			} catch (final RuntimeException e) {
 				log.error("Unmanaged error during import of {}", i.getName(), e);
-				handleUploadError(BooleanUtils.isTrue(errorContinue), e);
+				handleUploadError(context, entry, e);
 			}
-		});
-		log.info("Upload provisioning : flushing");
+		}
+		flush(context);
+		context.committed = context.rows;
+		log.info("Upload provisioning : {} entries imported", context.committed);
+	}
+
+	/**
+	 * Create the pending storages, then all the pending tags of this chunk. The support cost is refreshed once.
+	 *
+	 * @param context The upload context.
+	 */
+	void flush(final UploadContext context) {
+		storageResource.createAll(context.quote, context.storages.stream().map(PendingStorage::storage).toList());
+		context.storages.forEach(p -> p.tags().forEach(t -> context.tags.add(tagResource.newTag(context.quote,
+				ResourceType.STORAGE, p.storage().getId(), t[0], t[1]))));
+		tagResource.createAll(context.tags);
 	}
 
-	private void handleUploadError(boolean onErrorContinue, RuntimeException e) {
-		if (!onErrorContinue) {
+	/**
+	 * Parse the records of a chunk and build the edition objects of the named entries.
+	 *
+	 * @param context The upload context.
+	 * @param records The raw CSV records of this chunk, without the header.
+	 * @return The prepared entries.
+	 */
+	List<UploadEntry> read(final UploadContext context, final List<String> records) {
+		final var list = csvForBean.toBean(VmUpload.class,
+				new StringReader(context.headers + String.join("\n", records)));
+		final var start = context.rows - records.size();
+		final var entries = IntStream.range(0, list.size()).filter(i -> list.get(i) != null)
+				.filter(i -> list.get(i).getName() != null)
+				.mapToObj(i -> prepare(context, list.get(i), start + i + 1)).toList();
+		context.parsed += entries.size();
+		return entries;
+	}
+
+	private synchronized ExecutorService getUploadExecutor() {
+		if (uploadExecutor == null) {
+			uploadExecutor = Executors.newFixedThreadPool(
+					Math.max(1, configuration.get(CONF_UPLOAD_CONCURRENCY, DEFAULT_UPLOAD_CONCURRENCY)));
+		}
+		return uploadExecutor;
+	}
+
+	/**
+	 * Release the upload pool. The running uploads are interrupted.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (uploadExecutor != null) {
+			uploadExecutor.shutdownNow();
+			uploadExecutor = null;
+		}
+	}
+
+	/**
+	 * Return the upload task of a subscription.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return The upload task, or <code>null</code> when there is no upload for this subscription.
+	 */
+	@Override
+	@GET
+	@Path("{subscription:\\d+}/upload")
+	public ProvQuoteUploadStatus getTask(@PathParam("subscription") final Integer subscription) {
+		subscriptionResource.checkVisible(subscription);
+		return LongTaskRunnerSubscription.super.getTask(subscription);
+	}
+
+	/**
+	 * Cancel the running upload of a subscription. The upload stops at the next chunk boundary, and the entries of
+	 * the committed chunks are kept.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return The cancelled upload task.
+	 */
+	@Override
+	@DELETE
+	@Path("{subscription:\\d+}/upload")
+	public ProvQuoteUploadStatus cancel(@PathParam("subscription") final Integer subscription) {
+		subscriptionResource.checkVisible(subscription);
+		return LongTaskRunnerSubscription.super.cancel(subscription);
+	}
+
+	/**
+	 * Return the failed entries of the last upload of a subscription. Only the first {@value #MAX_UPLOAD_ERRORS}
+	 * failures are detailed.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return The failed entries ordered by line.
+	 */
+	@GET
+	@Path("{subscription:\\d+}/upload/error")
+	public List<ProvQuoteUploadError> findErrors(@PathParam("subscription") final int subscription) {
+		subscriptionResource.checkVisible(subscription);
+		return errorRepository.findAll(subscription);
+	}
+
+	@Override
+	public Supplier<ProvQuoteUploadStatus> newTask() {
+		return ProvQuoteUploadStatus::new;
+	}
+
+	/**
+	 * Read the next CSV record. A quoted value may span several lines.
+	 *
+	 * @param reader The CSV reader.
+	 * @return The next record, or <code>null</code> at the end of the stream.
+	 * @throws IOException When the CSV stream cannot be read.
+	 */
+	static String nextRecord(final BufferedReader reader) throws IOException {
+		var line = reader.readLine();
+		if (line == null) {
+			return null;
+		}
+		final var record = new StringBuilder(line);
+		var quotes = StringUtils.countMatches(line, '"');
+		while (quotes % 2 != 0 && (line = reader.readLine()) != null) {
+			record.append('\n').append(line);
+			quotes += StringUtils.countMatches(line, '"');
+		}
+		return record.toString();
+	}
+
+	/**
+	 * Count a failed entry, and keep its details for the task.
+	 *
+	 * @param context The upload context.
+	 * @param entry   The failed entry.
+	 * @param e       The failure, raised again when the errors do not continue.
+	 */
+	void handleUploadError(final UploadContext context, final UploadEntry entry, final RuntimeException e) {
+		context.failed++;
+		if (context.task && context.failed <= MAX_UPLOAD_ERRORS) {
+			// Keep the details of this failure for the task
+			final var error = new ProvQuoteUploadError();
+			error.setSubscription(context.subscription);
+			error.setLine(entry.line);
+			error.setName(StringUtils.abbreviate(entry.name, 255));
+			error.setErrors(toJson(entry, e));
+			context.errors.add(error);
+		}
+		if (!context.errorContinue) {
 			throw e;
 		}
 	}
 
-	private <V extends AbstractQuoteVmEditionVo> V copy(final int subscription, final UploadContext context,
-			final String defaultUsage, final String defaultBudget, final String defaultOptimizer,
-			final int ramMultiplier, final boolean createUsage, final boolean createBudget,
-			final boolean createOptimizer, final VmUpload u, final V vo) {
+	/**
+	 * Return the validation errors of a failed entry.
+	 *
+	 * @param entry The failed entry.
+	 * @param e     The failure.
+	 * @return The validation errors.
+	 */
+	static Map<String, List<Map<String, Serializable>>> toErrors(final UploadEntry entry, final RuntimeException e) {
+		if (e instanceof ValidationJsonException ve) {
+			return ve.getErrors();
+		}
+		return Map.of(CSV_FILE, List.of(Map.of("rule", "csv-invalid-entry", "parameters",
+				(Serializable) Map.of("name", entry.name, "message", Objects.toString(e.getMessage())))));
+	}
+
+	/**
+	 * Return the JSON validation errors of a failed entry. The last errors are dropped until the JSON fits the column
+	 * size, the JSON itself is never cut.
+	 */
+	private String toJson(final UploadEntry entry, final RuntimeException e) {
+		try {
+			final var errors = new LinkedHashMap<String, List<Map<String, Serializable>>>();
+			toErrors(entry, e).forEach((property, items) -> errors.put(property, new ArrayList<>(items)));
+			var json = objectMapper.writeValueAsString(errors);
+			while (json.length() > MAX_ERRORS_LENGTH) {
+				final var last = errors.lastEntry();
+				last.getValue().removeLast();
+				if (last.getValue().isEmpty()) {
+					errors.remove(last.getKey());
+				}
+				json = objectMapper.writeValueAsString(errors);
+			}
+			return json;
+		} catch (final JsonProcessingException je) {
+			log.warn("Unable to serialize the errors of entry {}", entry.name, je);
+			return null;
+		}
+	}
+
+	private <V extends AbstractQuoteVmEditionVo> V copy(final UploadContext context, final VmUpload u, final V vo) {
+		final var ramMultiplier = context.ramMultiplier;
 		// Validate the upload object
 		vo.setName(u.getName());
 		vo.setDescription(u.getDescription());
@@ -523,26 +1081,36 @@ public class ProvQuoteUploadResource {
 		vo.setWorkload(u.getWorkload());
 		vo.setPhysical(u.getPhysical());
 		vo.setRam(ramMultiplier * ObjectUtils.getIfNull(u.getRam(), 0).intValue());
-		vo.setSubscription(subscription);
+		vo.setSubscription(context.subscription);
 		vo.setType(u.getType());
 		vo.setCpuMax(u.getCpuMax());
 		vo.setGpuMax(u.getGpuMax());
 		vo.setRamMax(
 				u.getRamMax() == null ? null : ramMultiplier * u.getRamMax().intValue());
-		completeUsage(context, defaultUsage, createUsage, u, vo);
-		completeBudget(context, defaultBudget, createBudget, u, vo);
-		completeOptimizer(context, defaultOptimizer, createOptimizer, u, vo);
+		completeUsage(context, context.defaultUsage, context.createUsage, u, vo);
+		completeBudget(context, context.defaultBudget, context.createBudget, u, vo);
+		completeOptimizer(context, context.defaultOptimizer, context.createOptimizer, u, vo);
 		return vo;
 	}
 
-	private ValidationJsonException handleValidationError(final VmUpload i, final ValidationJsonException e) {
+	/**
+	 * Relate the validation errors of a failed entry to the CSV file.
+	 *
+	 * @param context The upload context.
+	 * @param i       The failed entry.
+	 * @param e       The validation failure.
+	 * @return The completed validation failure.
+	 */
+	static ValidationJsonException handleValidationError(final UploadContext context, final VmUpload i,
+			final ValidationJsonException e) {
 		final var failedEntry = ObjectUtils.getIfNull(i.getName(), "<unknown>");
 		log.info("Upload provisioning failed for entry {}", failedEntry, e);
 		final var errors = e.getErrors();
 		new ArrayList<>(errors.keySet()).stream().peek(p -> errors.put("csv-file." + p, errors.get(p)))
 				.forEach(errors::remove);
 		errors.put(CSV_FILE,
-				List.of(Map.of("parameters", (Serializable) Map.of("name", failedEntry), "rule", "csv-invalid-entry")));
+				List.of(Map.of("parameters", (Serializable) Map.of("name", failedEntry, "cursor", context.committed),
+						"rule", "csv-invalid-entry")));
 		return e;
 	}
 
@@ -572,49 +1140,64 @@ public class ProvQuoteUploadResource {
 		return vo;
 	}
 
-	private void persist(final int subscription, final String defaultUsage, final String defaultBudget,
-			final String defaultOptimizer, final MergeMode mode, final int ramMultiplier, final int size,
-			final AtomicInteger cursor, final UploadContext context, final boolean createUsage,
-			final boolean createBudget, final boolean createOptimizer, final VmUpload i) {
-
-		if (StringUtils.isNotEmpty(i.getEngine()) || i.getResourceType() == ResourceType.DATABASE) {
-			// Database case
-			final var merger = mergersDatabase.get(ObjectUtils.getIfNull(mode, MergeMode.KEEP));
-			final var vo = copy(subscription, context, defaultUsage, defaultBudget, defaultOptimizer, ramMultiplier,
-					createUsage, createBudget, createOptimizer, i, newDatabaseVo(i));
-			vo.setPrice(
-					qbResource.validateLookup(ResourceType.DATABASE, qbResource.lookup(context.quote, vo), vo.getName()).getId());
-			persist(i, subscription, merger, context, vo, QuoteStorageEditionVo::setDatabase, ResourceType.DATABASE);
-		} else {
-			// Instance/Container case with optionally disks
-			if (i.getCpu() > 0) {
+	/**
+	 * Build the edition object of an entry. Within the writer thread, since the missing profiles may be created.
+	 */
+	private UploadEntry prepare(final UploadContext context, final VmUpload i, final int line) {
+		final var entry = new UploadEntry(i, line);
+		try {
+			if (StringUtils.isNotEmpty(i.getEngine()) || i.getResourceType() == ResourceType.DATABASE) {
+				// Database case
+				entry.type = ResourceType.DATABASE;
+				entry.vo = copy(context, i, newDatabaseVo(i));
+			} else if (i.getCpu() > 0) {
+				// Instance/Container case with optionally disks
 				if (i.getResourceType() == ResourceType.CONTAINER) {
-					final var vo = copy(subscription, context, defaultUsage, defaultBudget, defaultOptimizer, ramMultiplier,
-							createUsage, createBudget, createOptimizer, i, newContainerVo(i));
-					final var merger = mergersContainer.get(ObjectUtils.getIfNull(mode, MergeMode.KEEP));
-					vo.setPrice(
-							qcResource.validateLookup(ResourceType.CONTAINER, qcResource.lookup(context.quote, vo), vo.getName()).getId());
-					persist(i, subscription, merger, context, vo, QuoteStorageEditionVo::setContainer, ResourceType.CONTAINER);
+					entry.type = ResourceType.CONTAINER;
+					entry.vo = copy(context, i, newContainerVo(i));
 				} else {
-					final var vo = copy(subscription, context, defaultUsage, defaultBudget, defaultOptimizer, ramMultiplier,
-							createUsage, createBudget, createOptimizer, i, newInstanceVo(i));
-					final var merger = mergersInstance.get(ObjectUtils.getIfNull(mode, MergeMode.KEEP));
-					vo.setPrice(
-							qiResource.validateLookup(ResourceType.INSTANCE, qiResource.lookup(context.quote, vo), vo.getName()).getId());
-					persist(i, subscription, merger, context, vo, QuoteStorageEditionVo::setInstance, ResourceType.INSTANCE);
+					entry.type = ResourceType.INSTANCE;
+					entry.vo = copy(context, i, newInstanceVo(i));
 				}
 			} else if (!i.getDisk().isEmpty()) {
 				// Disk only
-				final var vo = copy(subscription, context, defaultUsage, defaultBudget, defaultOptimizer, ramMultiplier,
-						createUsage, createBudget, createOptimizer, i, newInstanceVo(i));
-				persist(i, subscription, null, context, vo, null, null);
+				entry.vo = copy(context, i, newInstanceVo(i));
 			} else {
 				log.warn("Ignored entry {}, unable to guess the type", i.getName());
 			}
+		} catch (final RuntimeException e) {
+			entry.error = e;
 		}
+		return entry;
+	}
 
-		// Update the cursor
-		increment(cursor, size);
+	/**
+	 * Persist a looked up entry. Within the writer thread, in the entry order.
+	 */
+	private void persist(final UploadContext context, final UploadEntry entry) {
+		if (entry.error != null) {
+			// Failure of a previous stage
+			throw entry.error;
+		}
+		if (entry.vo == null) {
+			// Ignored entry
+			return;
+		}
+		final var i = entry.upload;
+		final var subscription = context.subscription;
+		if (entry.type == null) {
+			// Disk only
+			persist(i, subscription, null, context, (QuoteInstanceEditionVo) entry.vo, null, null);
+			return;
+		}
+		switch (entry.type) {
+		case DATABASE -> persist(i, subscription, merger, context, entry.vo, QuoteStorageEditionVo::setDatabase,
+				ResourceType.DATABASE);
+		case CONTAINER -> persist(i, subscription, merger, context, entry.vo, QuoteStorageEditionVo::setContainer,
+				ResourceType.CONTAINER);
+		default -> persist(i, subscription, merger, context, entry.vo, QuoteStorageEditionVo::setInstance,
+				ResourceType.INSTANCE);
+		}
 	}
 
 	private <V extends AbstractQuoteVmEditionVo> void completeUsage(final UploadContext context,
@@ -672,85 +1255,97 @@ public class ProvQuoteUploadResource {
 		return profile.getName();
 	}
 
-	/**
-	 * Handle cursor and progress display.
-	 */
-	private void increment(final AtomicInteger cursor, final int size) {
-		final var percent = ((int) (cursor.incrementAndGet() * 100D / size));
-		if (cursor.get() > 1 && percent / 10 > ((int) ((cursor.get() - 1) * 100D / size)) / 10) {
-			log.info("Upload provisioning : importing {} entries, {}%", size, percent);
-		}
-	}
-
 	/**
 	 * Validate the input object, do a lookup, then create the {@link ProvQuoteInstance} and the
 	 * {@link ProvQuoteStorage} entities.
 	 */
-	private <V extends AbstractQuoteVmEditionVo> void persist(final VmUpload upload, final int subscription,
-			final BiFunction<V, UploadContext, Integer> merger, final UploadContext context, final V vo,
+	private void persist(final VmUpload upload, final int subscription, final UploadMerger merger,
+			final UploadContext context, final AbstractQuoteVmEditionVo vo,
 			final ObjIntConsumer<QuoteStorageEditionVo> diskConsumer, final ResourceType resourceType) {
 
+		// Tags part, as name and optional value, checked before any change
+		final var raw = StringUtils.split(ObjectUtils.getIfNull(upload.getTags(), ""), ",;|");
+		final var tags = checkUnique(Arrays.stream(raw).map(StringUtils::trimToNull).filter(Objects::nonNull).map(t -> {
+			final var parts = StringUtils.splitPreserveAllTokens(t + ":", ':');
+			final var tag = new String[] { parts[0].trim(), StringUtils.trimToNull(parts[1]) };
+			tagResource.checkTag(tag[0], tag[1]);
+			return tag;
+		}).toList());
+
+		// Storage names of a new resource, checked before any change. In keep mode, the new names are made unique.
+		if (context.mode != MergeMode.KEEP && (merger == null || context.mode == MergeMode.INSERT
+				|| getPrevious(context, resourceType).get(vo.getName()) == null)
+				&& newStorages(upload, vo).stream().anyMatch(svo -> context.previousQs.containsKey(svo.getName()))) {
+			throw new DataIntegrityViolationException("name");
+		}
+
 		// Create the quote instance from the validated inputs
-		final var id = merger == null ? null : merger.apply(vo, context);
+		final var id = merger == null ? null : merger.merge(context, resourceType, vo);
 
 		if (merger != null && id == null) {
 			// Do not continue
 			return;
 		}
 
-		// Storage part
-		final var disks = IntStream.range(0, upload.getDisk().size()).filter(index -> upload.getDisk().get(index) > 0)
+		// Storage part, validated there and created with the whole chunk
+		final var disks = newStorages(upload, vo).stream().map(svo -> {
+			if (id != null) {
+				diskConsumer.accept(svo, id);
+			}
+
+			// Find the nicest storage
+			svo.setType(lookupStage.lookupStorage(context, svo).getPrice().getType().getCode());
+
+			// Default the storage name to the instance name
+			svo.setSubscription(subscription);
+			if (context.mode == MergeMode.KEEP) {
+				nextStorageName(context, svo);
+			}
+			return new PendingStorage(storageResource.newStorage(context.quote, svo), tags);
+		}).toList();
+
+		// This entry is valid, the pending resources are kept
+		disks.forEach(d -> context.previousQs.put(d.storage().getName(), null));
+		context.storages.addAll(disks);
+		if (id != null) {
+			tags.forEach(t -> context.tags.add(tagResource.newTag(context.quote, resourceType, id, t[0], t[1])));
+		}
+	}
+
+	/**
+	 * Return the resource identifiers by name of a resource type.
+	 */
+	private Map<String, Integer> getPrevious(final UploadContext context, final ResourceType type) {
+		return switch (type) {
+		case DATABASE -> context.previousQb;
+		case CONTAINER -> context.previousQc;
+		default -> context.previousQi;
+		};
+	}
+
+	/**
+	 * Return the storages of an entry, one per positive disk size. The size is provided, so the upload properties are
+	 * propagated.
+	 *
+	 * @param upload The CSV entry.
+	 * @param vo     The edition object of this entry.
+	 * @return The storage edition objects.
+	 */
+	static List<QuoteStorageEditionVo> newStorages(final VmUpload upload, final AbstractQuoteVmEditionVo vo) {
+		return IntStream.range(0, upload.getDisk().size()).filter(index -> upload.getDisk().get(index) > 0)
 				.mapToObj(index -> {
-					final var size = upload.getDisk().get(index).intValue();
-					final var sizeMax = upload.getDiskMax().size() > index ? upload.getDiskMax().get(index).intValue()
-							: null;
-					// Size is provided, propagate the upload properties
 					final var svo = new QuoteStorageEditionVo();
 					svo.setName(vo.getName() + (index == 0 ? "" : index));
-
-					if (id != null) {
-						diskConsumer.accept(svo, id);
-					}
-					svo.setSize(size);
-					svo.setSizeMax(sizeMax);
+					svo.setSize(upload.getDisk().get(index).intValue());
+					svo.setSizeMax(upload.getDiskMax().size() > index ? upload.getDiskMax().get(index).intValue()
+							: null);
 					svo.setLatency(getItem(upload.getLatency(), index));
 					svo.setOptimized(getItem(upload.getOptimized(), index));
-
-					// Find the nicest storage
-					svo.setType(storageResource.lookup(context.quote, svo).stream().findFirst()
-							.orElseThrow(() -> new ValidationJsonException("storage", "NotNull")).getPrice().getType()
-							.getCode());
-
-					// Default the storage name to the instance name
-					svo.setSubscription(subscription);
-					return storageResource.create(svo).getId();
+					return svo;
 				}).toList();
-
-		// Tags part
-		Arrays.stream(StringUtils.split(ObjectUtils.getIfNull(upload.getTags(), ""), ",;|"))
-				.map(StringUtils::trimToNull).filter(Objects::nonNull).forEach(t -> {
-					// Instance tags
-					final var tag = new TagEditionVo();
-					final var parts = StringUtils.splitPreserveAllTokens(t + ":", ':');
-					tag.setName(parts[0].trim());
-					tag.setValue(StringUtils.trimToNull(parts[1]));
-
-					if (id != null) {
-						tag.setResource(id);
-						tag.setType(resourceType);
-						tagResource.create(subscription, tag);
-					}
-
-					// Storage tags
-					tag.setType(ResourceType.STORAGE);
-					disks.forEach(d -> {
-						tag.setResource(d);
-						tagResource.create(subscription, tag);
-					});
-				});
 	}
 
-	private <T> T getItem(final List<T> items, final int index) {
+	private static <T> T getItem(final List<T> items, final int index) {
 		if (items.isEmpty()) {
 			return null;
 		}
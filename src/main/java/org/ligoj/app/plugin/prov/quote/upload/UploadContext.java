@@ -0,0 +1,109 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.app.plugin.prov.model.ProvQuoteUploadError;
+import org.ligoj.app.plugin.prov.model.ProvTag;
+
+/**
+ * Upload state shared by all the chunks of an upload, a dry-run or a bulk import.
+ */
+class UploadContext {
+	/**
+	 * The resource identifiers by name. A <code>null</code> identifier stands for a name reserved by this upload
+	 * without persisted resource. The entities are loaded only when they are updated.
+	 */
+	Map<String, Integer> previousQi;
+	Map<String, Integer> previousQc;
+	Map<String, Integer> previousQb;
+
+	/**
+	 * The storage identifiers by name. A <code>null</code> identifier stands for a storage validated by this upload
+	 * and not yet created with its chunk.
+	 */
+	Map<String, Integer> previousQs;
+	ProvQuote quote;
+	int subscription;
+	String defaultUsage;
+	String defaultBudget;
+	String defaultOptimizer;
+	MergeMode mode;
+	int ramMultiplier;
+	boolean errorContinue;
+	boolean createUsage;
+	boolean createBudget;
+	boolean createOptimizer;
+
+	/**
+	 * The validated header line, prepended to each chunk.
+	 */
+	String headers;
+
+	/**
+	 * The amount of read rows, including the skipped ones.
+	 */
+	int rows;
+
+	/**
+	 * The amount of committed rows, including the skipped ones.
+	 */
+	int committed;
+
+	/**
+	 * When <code>true</code>, the lookups run in the shared lookup pool.
+	 */
+	boolean parallel;
+
+	/**
+	 * When <code>true</code>, the upload runs as a long task, and the progress is written after each chunk.
+	 */
+	boolean task;
+
+	/**
+	 * The amount of parsed entries.
+	 */
+	int parsed;
+
+	/**
+	 * The amount of entries whose price has been found.
+	 */
+	int priced;
+
+	/**
+	 * The amount of persisted entries.
+	 */
+	int persisted;
+
+	/**
+	 * The amount of failed entries.
+	 */
+	int failed;
+
+	/**
+	 * The failed entries not yet written.
+	 */
+	final List<ProvQuoteUploadError> errors = new ArrayList<>();
+
+	/**
+	 * The pricing fingerprints of the looked up entries. See {@link UploadLookupStage}.
+	 */
+	final Set<String> shapes = new HashSet<>();
+
+	/**
+	 * The validated storages of the current chunk, created at the end of this chunk.
+	 */
+	final List<PendingStorage> storages = new ArrayList<>();
+
+	/**
+	 * The tags of the resources of the current chunk, created at the end of this chunk.
+	 */
+	final List<ProvTag> tags = new ArrayList<>();
+}
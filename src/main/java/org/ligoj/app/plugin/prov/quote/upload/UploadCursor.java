@@ -0,0 +1,35 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Upload progress.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadCursor {
+
+	/**
+	 * The amount of read entries, including the skipped ones.
+	 */
+	private int rows;
+
+	/**
+	 * The amount of committed entries, including the skipped ones. A failed upload of the same file can be resumed
+	 * from this cursor.
+	 */
+	private int cursor;
+
+	/**
+	 * The amount of distinct pricing shapes. The entries sharing the same shape share a single price lookup.
+	 */
+	private int distinct;
+}
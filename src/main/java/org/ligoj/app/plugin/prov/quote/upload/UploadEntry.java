@@ -0,0 +1,67 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import org.ligoj.app.plugin.prov.AbstractLookup;
+import org.ligoj.app.plugin.prov.AbstractQuoteVmEditionVo;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.ligoj.app.plugin.prov.quote.storage.QuoteStorageEditionVo;
+
+/**
+ * An entry through the upload stages: preparation, lookup, then persistence.
+ */
+class UploadEntry {
+
+	/**
+	 * The CSV entry. <code>null</code> for a bulk line.
+	 */
+	final VmUpload upload;
+
+	/**
+	 * The entry name. <code>null</code> for an unreadable bulk line.
+	 */
+	final String name;
+
+	/**
+	 * The resource type. <code>null</code> for a disk only entry.
+	 */
+	ResourceType type;
+
+	/**
+	 * The edition object. <code>null</code> for an ignored entry or a storage.
+	 */
+	AbstractQuoteVmEditionVo vo;
+
+	/**
+	 * The storage edition object of a bulk line.
+	 */
+	QuoteStorageEditionVo storage;
+
+	/**
+	 * The failure of the preparation or the lookup, raised by the persistence stage.
+	 */
+	RuntimeException error;
+
+	/**
+	 * The best price of the entry. <code>null</code> for a disk only entry or before the lookup.
+	 */
+	AbstractLookup<?> lookup;
+
+	/**
+	 * The line of the entry in the file, starting from <code>1</code>, header excluded.
+	 */
+	final int line;
+
+	UploadEntry(final VmUpload upload, final int line) {
+		this.upload = upload;
+		this.name = upload.getName();
+		this.line = line;
+	}
+
+	UploadEntry(final String name, final int line) {
+		this.upload = null;
+		this.name = name;
+		this.line = line;
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import jakarta.annotation.PreDestroy;
+
+import org.hibernate.Hibernate;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Subscription;
+import org.ligoj.app.plugin.prov.AbstractLookup;
+import org.ligoj.app.plugin.prov.AbstractQuoteInstanceOsEditionVo;
+import org.ligoj.app.plugin.prov.model.AbstractMultiScoped;
+import org.ligoj.app.plugin.prov.model.AbstractPrice;
+import org.ligoj.app.plugin.prov.model.ProvBudget;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.ProvOptimizer;
+import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.app.plugin.prov.model.ProvUsage;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.ligoj.app.plugin.prov.quote.container.ProvQuoteContainerResource;
+import org.ligoj.app.plugin.prov.quote.container.QuoteContainerEditionVo;
+import org.ligoj.app.plugin.prov.quote.container.QuoteContainerLookup;
+import org.ligoj.app.plugin.prov.quote.database.ProvQuoteDatabaseResource;
+import org.ligoj.app.plugin.prov.quote.database.QuoteDatabaseEditionVo;
+import org.ligoj.app.plugin.prov.quote.database.QuoteDatabaseLookup;
+import org.ligoj.app.plugin.prov.quote.instance.ProvQuoteInstanceResource;
+import org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceEditionVo;
+import org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceLookup;
+import org.ligoj.app.plugin.prov.quote.storage.ProvQuoteStorageResource;
+import org.ligoj.app.plugin.prov.quote.storage.QuoteStorageEditionVo;
+import org.ligoj.app.plugin.prov.quote.storage.QuoteStorageLookup;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The lookup stage of the uploads, the dry-runs and the bulk imports. The prepared entries sharing the same pricing
+ * fingerprint share a single lookup, run in a pool shared by all the uploads, see
+ * {@link ProvQuoteUploadResource#CONF_UPLOAD_LOOKUP_CONCURRENCY}.
+ */
+@Component
+public class UploadLookupStage {
+
+	@Autowired
+	private ProvQuoteInstanceResource qiResource;
+
+	@Autowired
+	private ProvQuoteContainerResource qcResource;
+
+	@Autowired
+	private ProvQuoteDatabaseResource qbResource;
+
+	@Autowired
+	private ProvQuoteStorageResource storageResource;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	/**
+	 * The shared lookup pool, created at the first use.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Initialize the quote associations read by the lookups, so the quote can be copied for the lookup threads.
+	 *
+	 * @param quote The quote managed by the writer thread.
+	 */
+	void initialize(final ProvQuote quote) {
+		Hibernate.initialize(quote.getUsages());
+		Hibernate.initialize(quote.getBudgets());
+		Hibernate.initialize(quote.getOptimizers());
+		Hibernate.initialize(quote.getUsage());
+		Hibernate.initialize(quote.getBudget());
+		Hibernate.initialize(quote.getOptimizer());
+		Hibernate.initialize(quote.getLocation());
+		Hibernate.initialize(quote.getSubscription());
+		for (var node = quote.getSubscription().getNode(); node != null; node = node.getRefined()) {
+			Hibernate.initialize(node);
+		}
+	}
+
+	/**
+	 * Lookup the prices of the given entries. The entries sharing the same pricing fingerprint share a single lookup.
+	 * The lookups run in the shared lookup pool when the catalog and the quote are committed, so visible from the
+	 * other threads. Otherwise, within an enclosing transaction, they run in the current thread.
+	 *
+	 * @param context The upload context.
+	 * @param entries The prepared entries.
+	 * @return The lookup completions, in the entry order. Never failed, the lookup errors are held by the entries.
+	 */
+	List<Future<?>> lookup(final UploadContext context, final List<UploadEntry> entries) {
+		final var shapes = new LinkedHashMap<String, List<UploadEntry>>();
+		final var groups = entries.stream().map(e -> {
+			if (e.error != null || e.vo == null || e.type == null) {
+				// Failed, ignored, disk only or storage entry, nothing to lookup
+				return List.<UploadEntry>of();
+			}
+			final var group = shapes.computeIfAbsent(fingerprint(e), k -> new ArrayList<>(1));
+			group.add(e);
+			return group;
+		}).toList();
+		context.shapes.addAll(shapes.keySet());
+
+		final Map<List<UploadEntry>, Future<?>> lookups = new IdentityHashMap<>();
+		if (context.parallel) {
+			// The lookup threads read a detached copy, the managed quote belongs to the writer thread
+			final var quote = toLookup(context.quote);
+			final var pool = getExecutor();
+			shapes.values().forEach(g -> lookups.put(g, pool.submit(() -> lookupShape(quote, g))));
+		} else {
+			shapes.values().forEach(g -> {
+				lookupShape(context.quote, g);
+				lookups.put(g, CompletableFuture.completedFuture(null));
+			});
+		}
+		final Future<?> none = CompletableFuture.completedFuture(null);
+		return groups.stream().<Future<?>>map(g -> lookups.getOrDefault(g, none)).toList();
+	}
+
+	/**
+	 * Wait for the lookup of an entry.
+	 *
+	 * @param lookup The lookup completion, as returned by {@link #lookup(UploadContext, List)}.
+	 */
+	void await(final Future<?> lookup) {
+		try {
+			lookup.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Upload lookup interrupted", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("Upload lookup failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Return the best storage of a disk. Within the writer thread, with the managed quote.
+	 *
+	 * @param context The upload context.
+	 * @param svo     The storage requirements.
+	 * @return The best storage.
+	 */
+	QuoteStorageLookup lookupStorage(final UploadContext context, final QuoteStorageEditionVo svo) {
+		return storageResource.lookup(context.quote, svo).stream().findFirst()
+				.orElseThrow(() -> new ValidationJsonException("storage", "NotNull"));
+	}
+
+	/**
+	 * Return a detached copy of the quote, holding only the values read by the lookups: the subscription and its node
+	 * chain, the default location and requirements, and the profiles. No lazy association is left to the lookup
+	 * threads.
+	 */
+	private ProvQuote toLookup(final ProvQuote quote) {
+		final var copy = new ProvQuote();
+		copy.setId(quote.getId());
+		final var subscription = new Subscription();
+		subscription.setId(quote.getSubscription().getId());
+		subscription.setNode(toLookup(quote.getSubscription().getNode()));
+		copy.setSubscription(subscription);
+		final var location = new ProvLocation();
+		location.setId(quote.getLocation().getId());
+		location.setName(quote.getLocation().getName());
+		copy.setLocation(location);
+		copy.setLicense(quote.getLicense());
+		copy.setRamAdjustedRate(quote.getRamAdjustedRate());
+		copy.setReservationMode(quote.getReservationMode());
+		copy.setProcessor(quote.getProcessor());
+		copy.setArchitecture(quote.getArchitecture());
+		copy.setPhysical(quote.getPhysical());
+		copy.setService(quote.getService());
+		final var profiles = new IdentityHashMap<Object, AbstractMultiScoped>();
+		copy.setUsages(toLookup(quote.getUsages(), ProvUsage::new, profiles));
+		copy.setBudgets(toLookup(quote.getBudgets(), ProvBudget::new, profiles));
+		copy.setOptimizers(toLookup(quote.getOptimizers(), ProvOptimizer::new, profiles));
+		copy.setUsage(toLookup(quote.getUsage(), ProvUsage::new, profiles));
+		copy.setBudget(toLookup(quote.getBudget(), ProvBudget::new, profiles));
+		copy.setOptimizer(toLookup(quote.getOptimizer(), ProvOptimizer::new, profiles));
+		return copy;
+	}
+
+	private Node toLookup(final Node node) {
+		if (node == null) {
+			return null;
+		}
+		final var copy = new Node();
+		copy.setId(node.getId());
+		copy.setName(node.getName());
+		copy.setRefined(toLookup(node.getRefined()));
+		return copy;
+	}
+
+	private <P extends AbstractMultiScoped> List<P> toLookup(final List<P> profiles, final Supplier<P> factory,
+			final Map<Object, AbstractMultiScoped> copies) {
+		return new ArrayList<>(profiles.stream().map(p -> toLookup(p, factory, copies)).toList());
+	}
+
+	/**
+	 * Return the detached copy of a profile, without its quote. The same profile is copied once.
+	 */
+	@SuppressWarnings("unchecked")
+	private <P extends AbstractMultiScoped> P toLookup(final P profile, final Supplier<P> factory,
+			final Map<Object, AbstractMultiScoped> copies) {
+		if (profile == null) {
+			return null;
+		}
+		return (P) copies.computeIfAbsent(Hibernate.unproxy(profile), p -> {
+			final var copy = factory.get();
+			BeanUtils.copyProperties(p, copy, "configuration");
+			return copy;
+		});
+	}
+
+	/**
+	 * Return the pricing fingerprint of a prepared entry: all the requirements involved in the price lookup. The name,
+	 * the description, the quantities and the disks are not involved.
+	 */
+	private String fingerprint(final UploadEntry entry) {
+		final var vo = entry.vo;
+		final var values = new ArrayList<Object>(List.of(entry.type));
+		Collections.addAll(values, vo.getCpu(), vo.getCpuMax(), vo.getGpu(), vo.getGpuMax(), vo.getRam(),
+				vo.getRamMax(), vo.getWorkload(), vo.getProcessor(), vo.getArchitecture(), vo.getPhysical(),
+				vo.getEdge(), vo.getLocation(), vo.getUsage(), vo.getBudget(), vo.getOptimizer(), vo.getLicense(),
+				vo.getType(), vo.isEphemeral(), vo.isAutoScale(), vo.getCpuRate(), vo.getGpuRate(),
+				vo.getNetworkRate(), vo.getStorageRate(), vo.getRamRate());
+		if (vo instanceof AbstractQuoteInstanceOsEditionVo os) {
+			Collections.addAll(values, os.getOs(), os.getMaxVariableCost());
+		}
+		if (vo instanceof QuoteInstanceEditionVo instance) {
+			Collections.addAll(values, instance.getSoftware(), instance.getTenancy());
+		}
+		if (vo instanceof QuoteDatabaseEditionVo database) {
+			Collections.addAll(values, database.getEngine(), database.getEdition());
+		}
+		return values.stream().map(String::valueOf).collect(Collectors.joining("|"));
+	}
+
+	/**
+	 * Lookup the best price of entries sharing the same pricing fingerprint. Read only, may be executed in parallel of
+	 * the other entries.
+	 */
+	private void lookupShape(final ProvQuote quote, final List<UploadEntry> entries) {
+		final var first = entries.getFirst();
+		try {
+			final var vo = first.vo;
+			final AbstractLookup<?> lookup = switch (first.type) {
+			case DATABASE -> qbResource.lookup(quote, (QuoteDatabaseEditionVo) vo);
+			case CONTAINER -> qcResource.lookup(quote, (QuoteContainerEditionVo) vo);
+			default -> qiResource.lookup(quote, (QuoteInstanceEditionVo) vo);
+			};
+
+			// The validation error, if any, is specific to each entry
+			entries.forEach(e -> validateLookup(e, lookup));
+		} catch (final RuntimeException e) {
+			// The errors are completed per entry, so are not shared: the other entries have their own lookup
+			first.error = e;
+			entries.stream().skip(1).forEach(entry -> lookupShape(quote, List.of(entry)));
+		}
+	}
+
+	private void validateLookup(final UploadEntry entry, final AbstractLookup<?> lookup) {
+		final var vo = entry.vo;
+		final var name = vo.getName();
+		try {
+			final AbstractPrice<?> price = switch (entry.type) {
+			case DATABASE -> qbResource.validateLookup(ResourceType.DATABASE, (QuoteDatabaseLookup) lookup, name);
+			case CONTAINER -> qcResource.validateLookup(ResourceType.CONTAINER, (QuoteContainerLookup) lookup, name);
+			default -> qiResource.validateLookup(ResourceType.INSTANCE, (QuoteInstanceLookup) lookup, name);
+			};
+			vo.setPrice(price.getId());
+			entry.lookup = lookup;
+		} catch (final RuntimeException e) {
+			entry.error = e;
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.max(1, configuration.get(
+					ProvQuoteUploadResource.CONF_UPLOAD_LOOKUP_CONCURRENCY,
+					ProvQuoteUploadResource.DEFAULT_UPLOAD_LOOKUP_CONCURRENCY)));
+		}
+		return executor;
+	}
+
+	/**
+	 * Release the lookup pool.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.ligoj.app.plugin.prov.AbstractQuoteVmEditionVo;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteContainerRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteDatabaseRepository;
+import org.ligoj.app.plugin.prov.dao.ProvQuoteInstanceRepository;
+import org.ligoj.app.plugin.prov.model.ProvQuoteContainer;
+import org.ligoj.app.plugin.prov.model.ProvQuoteDatabase;
+import org.ligoj.app.plugin.prov.model.ProvQuoteInstance;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.ligoj.app.plugin.prov.quote.container.ProvQuoteContainerResource;
+import org.ligoj.app.plugin.prov.quote.container.QuoteContainerEditionVo;
+import org.ligoj.app.plugin.prov.quote.database.ProvQuoteDatabaseResource;
+import org.ligoj.app.plugin.prov.quote.database.QuoteDatabaseEditionVo;
+import org.ligoj.app.plugin.prov.quote.instance.ProvQuoteInstanceResource;
+import org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceEditionVo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+/**
+ * The persistence of the looked up instances, databases and containers with the merge mode of the upload, see
+ * {@link MergeMode}. Within the transaction of the chunk, a rejected entry does not roll back the chunk by itself.
+ */
+@Component
+public class UploadMerger {
+
+	@Autowired
+	private ProvQuoteInstanceResource qiResource;
+
+	@Autowired
+	private ProvQuoteContainerResource qcResource;
+
+	@Autowired
+	private ProvQuoteDatabaseResource qbResource;
+
+	@Autowired
+	private ProvQuoteInstanceRepository qiRepository;
+
+	@Autowired
+	private ProvQuoteContainerRepository qcRepository;
+
+	@Autowired
+	private ProvQuoteDatabaseRepository qbRepository;
+
+	// Instance merger
+	private final Map<MergeMode, BiFunction<QuoteInstanceEditionVo, UploadContext, Integer>> mergersInstance = Map
+			.of(MergeMode.INSERT, this::modeInsert, MergeMode.KEEP, this::modeKeep, MergeMode.UPDATE, this::modeUpdate);
+
+	// Container merger
+	private final Map<MergeMode, BiFunction<QuoteContainerEditionVo, UploadContext, Integer>> mergersContainer = Map
+			.of(MergeMode.INSERT, this::modeInsert, MergeMode.KEEP, this::modeKeep, MergeMode.UPDATE, this::modeUpdate);
+
+	// Database merger
+	private final Map<MergeMode, BiFunction<QuoteDatabaseEditionVo, UploadContext, Integer>> mergersDatabase = Map
+			.of(MergeMode.INSERT, this::modeInsert, MergeMode.KEEP, this::modeKeep, MergeMode.UPDATE, this::modeUpdate);
+
+	/**
+	 * Persist a looked up resource with the merge mode of the upload.
+	 *
+	 * @param context The upload context.
+	 * @param type    The resource type.
+	 * @param vo      The edition object, its identifier is completed.
+	 * @return The identifier of the created resource, or <code>null</code> when a previous resource is updated.
+	 */
+	Integer merge(final UploadContext context, final ResourceType type, final AbstractQuoteVmEditionVo vo) {
+		return switch (type) {
+		case DATABASE -> mergersDatabase.get(context.mode).apply((QuoteDatabaseEditionVo) vo, context);
+		case CONTAINER -> mergersContainer.get(context.mode).apply((QuoteContainerEditionVo) vo, context);
+		default -> mergersInstance.get(context.mode).apply((QuoteInstanceEditionVo) vo, context);
+		};
+	}
+
+	/**
+	 * Insert mode.
+	 */
+	private Integer modeInsert(final QuoteInstanceEditionVo vo, final UploadContext context) {
+		if (context.previousQi.containsKey(vo.getName())) {
+			throw new DataIntegrityViolationException("name");
+		}
+		// Reserve this name
+		context.previousQi.put(vo.getName(), null);
+		final var id = qiResource.saveOrUpdate(context.quote, new ProvQuoteInstance(), vo).getId();
+		context.previousQi.put(vo.getName(), id);
+		vo.setId(id);
+		return id;
+	}
+
+	/**
+	 * Insert mode.
+	 */
+	private Integer modeInsert(final QuoteContainerEditionVo vo, final UploadContext context) {
+		if (context.previousQc.containsKey(vo.getName())) {
+			throw new DataIntegrityViolationException("name");
+		}
+		// Reserve this name
+		context.previousQc.put(vo.getName(), null);
+		final var id = qcResource.saveOrUpdate(context.quote, new ProvQuoteContainer(), vo).getId();
+		context.previousQc.put(vo.getName(), id);
+		vo.setId(id);
+		return id;
+	}
+
+	/**
+	 * Insert mode.
+	 */
+	private Integer modeInsert(final QuoteDatabaseEditionVo vo, final UploadContext context) {
+		// Reserve this name
+		context.previousQb.put(vo.getName(), null);
+		final var id = qbResource.saveOrUpdate(context.quote, new ProvQuoteDatabase(), vo).getId();
+		context.previousQb.put(vo.getName(), id);
+		vo.setId(id);
+		return id;
+	}
+
+	private <Q extends AbstractQuoteVmEditionVo> void nextName(final Q vo, final Map<String, ?> previous) {
+		var name = vo.getName();
+		var counter = 0;
+		while (previous.containsKey(name)) {
+			name = vo.getName() + " " + ++counter;
+		}
+		// Fix the instance's name in order to be unique during this upload.
+		vo.setName(name);
+	}
+
+	/**
+	 * Keep mode.
+	 */
+	private Integer modeKeep(final QuoteInstanceEditionVo vo, final UploadContext context) {
+		nextName(vo, context.previousQi);
+		return modeInsert(vo, context);
+	}
+
+	/**
+	 * Keep mode.
+	 */
+	private Integer modeKeep(final QuoteContainerEditionVo vo, final UploadContext context) {
+		nextName(vo, context.previousQc);
+		return modeInsert(vo, context);
+	}
+
+	/**
+	 * Keep mode.
+	 */
+	private Integer modeKeep(final QuoteDatabaseEditionVo vo, final UploadContext context) {
+		nextName(vo, context.previousQb);
+		return modeInsert(vo, context);
+	}
+
+	/**
+	 * Update mode.
+	 */
+	private Integer modeUpdate(final QuoteInstanceEditionVo vo, final UploadContext context) {
+		final var id = context.previousQi.get(vo.getName());
+		if (id == null) {
+			// New name, or name reserved by a failed entry
+			context.previousQi.remove(vo.getName());
+			return modeInsert(vo, context);
+		}
+		// Update the previous entity, loaded in the current chunk
+		vo.setId(id);
+		qiResource.saveOrUpdate(context.quote, qiRepository.findOne(id), vo);
+		return null;
+	}
+
+	/**
+	 * Update mode.
+	 */
+	private Integer modeUpdate(final QuoteContainerEditionVo vo, final UploadContext context) {
+		final var id = context.previousQc.get(vo.getName());
+		if (id == null) {
+			// New name, or name reserved by a failed entry
+			context.previousQc.remove(vo.getName());
+			return modeInsert(vo, context);
+		}
+		// Update the previous entity, loaded in the current chunk
+		vo.setId(id);
+		qcResource.saveOrUpdate(context.quote, qcRepository.findOne(id), vo);
+		return null;
+	}
+
+	/**
+	 * Update mode.
+	 */
+	private Integer modeUpdate(final QuoteDatabaseEditionVo vo, final UploadContext context) {
+		final var id = context.previousQb.get(vo.getName());
+		if (id == null) {
+			// New name, or name reserved by a failed entry
+			context.previousQb.remove(vo.getName());
+			return modeInsert(vo, context);
+		}
+		// Update the previous entity, loaded in the current chunk
+		vo.setId(id);
+		qbResource.saveOrUpdate(context.quote, qbRepository.findOne(id), vo);
+		return null;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.ligoj.app.plugin.prov.Floating;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The priced entry of a dry-run upload.
+ */
+@Getter
+@Setter
+public class UploadPrice {
+
+	/**
+	 * The line of the entry in the file, starting from <code>1</code>, header excluded.
+	 */
+	private int line;
+
+	/**
+	 * The entry name.
+	 */
+	private String name;
+
+	/**
+	 * The resource type. <code>null</code> for a disk only entry.
+	 */
+	private ResourceType type;
+
+	/**
+	 * The code of the best price. <code>null</code> for a disk only or a failed entry.
+	 */
+	private String price;
+
+	/**
+	 * The storage type codes of the disks of this entry.
+	 */
+	private List<String> storages = new ArrayList<>();
+
+	/**
+	 * The monthly cost of this entry, including the disks and the quantities. <code>null</code> for a failed entry.
+	 */
+	private Floating cost;
+
+	/**
+	 * The validation errors of a failed entry, with the same structure as the validation errors of the upload.
+	 */
+	private Map<String, List<Map<String, Serializable>>> errors;
+}
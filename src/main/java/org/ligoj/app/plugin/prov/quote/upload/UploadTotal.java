@@ -0,0 +1,42 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import org.ligoj.app.plugin.prov.Floating;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The aggregated totals of a dry-run upload.
+ */
+@Getter
+@Setter
+public class UploadTotal {
+
+	/**
+	 * The amount of parsed entries.
+	 */
+	private int parsed;
+
+	/**
+	 * The amount of priced entries.
+	 */
+	private int priced;
+
+	/**
+	 * The amount of failed entries.
+	 */
+	private int failed;
+
+	/**
+	 * The amount of distinct pricing shapes. The entries sharing the same shape share a single price lookup.
+	 */
+	private int distinct;
+
+	/**
+	 * The monthly cost of all priced entries.
+	 */
+	private Floating cost = new Floating();
+}
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 import jakarta.persistence.EntityNotFoundException;
@@ -304,6 +305,37 @@ class ProvBudgetResourceTest extends AbstractProvResourceTest {
 		Assertions.assertEquals(0, getBudget().getRequiredInitialCost());
 	}
 
+	@Test
+	void simulate() {
+		resource.refresh(subscription);
+		checkCost(subscription, 2982.4, 5139.2, false);
+		assertTermCount("1y", 4);
+
+		final var id = getBudget().getId();
+		final var points = bResource.simulate(subscription, id, List.of(1000000d, 6320d, 3778d, 1230d, 1228d, 0d));
+		Assertions.assertEquals(6, points.size());
+		Assertions.assertEquals(1000000d, points.get(0).getInitialCost());
+		Assertions.assertEquals(6324.48, points.get(0).getRequiredInitialCost(), DELTA);
+		Assertions.assertEquals(6324.48, points.get(0).getCost().getInitial(), DELTA);
+		Assertions.assertEquals(5094.72, points.get(1).getRequiredInitialCost(), DELTA);
+		Assertions.assertEquals(2635.2, points.get(2).getRequiredInitialCost(), DELTA);
+		Assertions.assertEquals(1229.76, points.get(3).getRequiredInitialCost(), DELTA);
+		Assertions.assertEquals(0, points.get(4).getRequiredInitialCost(), DELTA);
+		Assertions.assertEquals(0, points.get(5).getRequiredInitialCost(), DELTA);
+		Assertions.assertEquals(0, points.get(5).getCost().getInitial(), DELTA);
+
+		// Less upfront budget, more monthly cost
+		Assertions.assertTrue(points.get(0).getCost().getMin() < points.get(5).getCost().getMin());
+
+		// Nothing has been persisted
+		em.flush();
+		em.clear();
+		checkCost(subscription, 2982.4, 5139.2, false);
+		assertTermCount("1y", 4);
+		Assertions.assertEquals(1000000, getBudget().getInitialCost());
+		Assertions.assertEquals(6324.48, getBudget().getRequiredInitialCost());
+	}
+
 	@Test
 	void findAll() {
 		final var budgets = bResource.findAll(subscription, newUriInfo());
@@ -10,12 +10,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.ligoj.app.plugin.prov.dao.ProvTagRepository;
 import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.orm.jpa.JpaObjectRetrievalFailureException;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.List;
+
 /**
  * Test class of {@link ProvTagResource}
  */
@@ -109,6 +112,33 @@ class ProvTagResourceTest extends AbstractProvResourceTest {
 		Assertions.assertEquals(id2, tag2.getId());
 	}
 
+	@Test
+	void createAll() {
+		final var quote = getQuote();
+		final var instance = qiRepository.findByName("server1").getId();
+		final var storage = qsRepository.findByName("server1-root").getId();
+		tagResource.checkTag("key", "value");
+		tagResource.checkTag("key", null);
+		tagResource.createAll(List.of(tagResource.newTag(quote, ResourceType.INSTANCE, instance, "key", "value"),
+				tagResource.newTag(quote, ResourceType.STORAGE, storage, "key", null)));
+		tagResource.createAll(List.of());
+
+		final var tags = getConfiguration().getTags();
+		final var tag = tags.get(ResourceType.INSTANCE).get(instance).getFirst();
+		Assertions.assertEquals("key", tag.getName());
+		Assertions.assertEquals("value", tag.getValue());
+		final var tag2 = tags.get(ResourceType.STORAGE).get(storage).getFirst();
+		Assertions.assertEquals("key", tag2.getName());
+		Assertions.assertNull(tag2.getValue());
+	}
+
+	@Test
+	void checkTagInvalid() {
+		Assertions.assertThrows(ValidationJsonException.class, () -> tagResource.checkTag(" ", null));
+		Assertions.assertThrows(ValidationJsonException.class, () -> tagResource.checkTag("key!", null));
+		Assertions.assertThrows(ValidationJsonException.class, () -> tagResource.checkTag("key", "value!"));
+	}
+
 	@Test
 	void createNotExistingSubscription() {
 		final var vo = new TagEditionVo();
@@ -0,0 +1,111 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.dao.NodeRepository;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogChangeRepository;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogStatusRepository;
+import org.ligoj.app.plugin.prov.model.CatalogChangeType;
+import org.ligoj.app.plugin.prov.model.ImportCatalogChange;
+import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Test class of {@link CatalogQuoteRepricer}
+ */
+class CatalogQuoteRepricerTest extends AbstractProvResourceTest {
+
+	private static final String NODE = "service:prov:test";
+
+	private static final long RUN = 10L;
+
+	@Autowired
+	private CatalogQuoteRepricer repricer;
+
+	@Autowired
+	private ImportCatalogChangeRepository changeRepository;
+
+	@Autowired
+	private ImportCatalogStatusRepository taskRepository;
+
+	@Autowired
+	private NodeRepository nodeRepository;
+
+	@BeforeEach
+	void prepareStatus() {
+		final var status = new ImportCatalogStatus();
+		status.setAuthor(DEFAULT_USER);
+		status.setStart(new Date(RUN));
+		status.setEnd(new Date(RUN + 1));
+		status.setLocked(nodeRepository.findOne(NODE));
+		taskRepository.saveAndFlush(status);
+	}
+
+	private void newChange(final CatalogChangeType type, final String code) {
+		final var change = new ImportCatalogChange();
+		change.setNode(nodeRepository.findOne(NODE));
+		change.setRun(RUN);
+		change.setType(type);
+		change.setResource(ResourceType.INSTANCE);
+		change.setCode(code);
+		changeRepository.saveAndFlush(change);
+	}
+
+	@Test
+	void reprice() {
+		final var server1 = qiRepository.findAllBy("name", "server1").getFirst();
+		final var oldCost = server1.getCost();
+		final var price = server1.getPrice();
+		price.setCost(price.getCost() * 2);
+		price.setCostPeriod(price.getCostPeriod() * 2);
+		newChange(CatalogChangeType.REPRICED, price.getCode());
+		newChange(CatalogChangeType.ADDED, "new-code");
+		em.flush();
+		em.clear();
+
+		final var subscriptions = repricer.start(NODE, RUN);
+		Assertions.assertEquals(1, subscriptions.size());
+		Assertions.assertFalse(subscriptions.get(subscription));
+		Assertions.assertEquals(1, taskRepository.findBy("locked.id", NODE).getNbImpactedQuotes());
+		Assertions.assertNull(taskRepository.findBy("locked.id", NODE).getRepricingEnd());
+
+		repricer.reprice(NODE, subscriptions);
+		em.flush();
+		em.clear();
+		final var status = taskRepository.findBy("locked.id", NODE);
+		Assertions.assertEquals(1, status.getNbRepricedQuotes());
+		Assertions.assertEquals(0, status.getNbRepricingFailures());
+		Assertions.assertNotNull(status.getRepricingEnd());
+		Assertions.assertNotEquals(oldCost, qiRepository.findAllBy("name", "server1").getFirst().getCost(), DELTA);
+	}
+
+	@Test
+	void repriceRemoved() {
+		newChange(CatalogChangeType.REMOVED, qiRepository.findAllBy("name", "server1").getFirst().getPrice().getCode());
+		final var subscriptions = repricer.start(NODE, RUN);
+		Assertions.assertTrue(subscriptions.get(subscription));
+	}
+
+	@Test
+	void scheduleNoChange() {
+		// No recorded run
+		Assertions.assertEquals(0, repricer.schedule(NODE, new Date(RUN)));
+
+		// The last recorded run is older than the import
+		newChange(CatalogChangeType.REPRICED, "any");
+		Assertions.assertEquals(0, repricer.schedule(NODE, new Date(RUN + 1)));
+
+		// The import has changed an unused price
+		Assertions.assertEquals(0, repricer.schedule(NODE, new Date(RUN)));
+		Assertions.assertEquals(0, taskRepository.findBy("locked.id", NODE).getNbImpactedQuotes());
+		Assertions.assertNotNull(taskRepository.findBy("locked.id", NODE).getRepricingEnd());
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogStatusRepository;
+import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.ResourceHolderSupport;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Test class of {@link CatalogSnapshotResource} and {@link CatalogSnapshot}
+ */
+class CatalogSnapshotResourceTest extends AbstractProvResourceTest {
+
+	private static final String NODE = "service:prov:test";
+
+	@Autowired
+	private CatalogSnapshotResource resource;
+
+	@Autowired
+	private ImportCatalogStatusRepository taskRepository;
+
+	private ImportCatalogResource importCatalogResource;
+
+	@BeforeEach
+	void prepareTaskRunner() {
+		// Task operations run in the test transaction
+		importCatalogResource = resource.getImportCatalogResource();
+		final var runner = new ImportCatalogResourceTest.TestImportCatalogResource();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(runner);
+		resource.setImportCatalogResource(runner);
+	}
+
+	@AfterEach
+	void restoreTaskRunner() {
+		resource.setImportCatalogResource(importCatalogResource);
+	}
+
+	/**
+	 * A snapshot row.
+	 */
+	private static class Row {
+		private String code;
+		private double cost;
+		private Integer count;
+		private Date date;
+	}
+
+	private List<CatalogSnapshot.Attribute> newAttributes() throws NoSuchFieldException {
+		final var code = Row.class.getDeclaredField("code");
+		final var cost = Row.class.getDeclaredField("cost");
+		final var count = Row.class.getDeclaredField("count");
+		final var date = Row.class.getDeclaredField("date");
+		List.of(code, cost, count, date).forEach(f -> f.setAccessible(true));
+		return List.of(new CatalogSnapshot.Attribute("code", CatalogSnapshot.Kind.STRING, String.class, code),
+				new CatalogSnapshot.Attribute("cost", CatalogSnapshot.Kind.DOUBLE, double.class, cost),
+				new CatalogSnapshot.Attribute("count", CatalogSnapshot.Kind.INTEGER, Integer.class, count),
+				new CatalogSnapshot.Attribute("date", CatalogSnapshot.Kind.DATE, Date.class, date));
+	}
+
+	private byte[] newSnapshot() throws IOException, NoSuchFieldException {
+		final var output = new ByteArrayOutputStream();
+		final var attributes = newAttributes();
+		final var writer = new CatalogSnapshot.Writer(output, NODE, 42L);
+		writer.startSection("Row", attributes);
+		final var row = new Row();
+		row.code = "c1";
+		row.cost = 1.5d;
+		row.date = new Date(1000L);
+		writer.writeRow(row, attributes);
+		writer.endSection();
+		writer.finish();
+		return output.toByteArray();
+	}
+
+	@Test
+	void readWrite() throws IOException, NoSuchFieldException {
+		final var reader = new CatalogSnapshot.Reader(new ByteArrayInputStream(newSnapshot()));
+		Assertions.assertEquals(NODE, reader.getNode());
+		Assertions.assertEquals(42L, reader.getGeneration());
+		Assertions.assertEquals("Row", reader.nextSection());
+		final var columns = reader.readColumns();
+		Assertions.assertEquals(new CatalogSnapshot.Column("count", CatalogSnapshot.Kind.INTEGER), columns.get(2));
+		Assertions.assertTrue(reader.nextRow());
+		final var values = reader.readRow(columns);
+		Assertions.assertEquals("c1", values[0]);
+		Assertions.assertEquals(1.5d, values[1]);
+		Assertions.assertNull(values[2]);
+		Assertions.assertEquals(new Date(1000L), values[3]);
+		Assertions.assertFalse(reader.nextRow());
+		Assertions.assertNull(reader.nextSection());
+		Assertions.assertNotEquals(0L, reader.verify());
+	}
+
+	@Test
+	void readCorrupted() throws IOException, NoSuchFieldException {
+		final var output = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(output)) {
+			final var raw = new GZIPInputStream(new ByteArrayInputStream(newSnapshot())).readAllBytes();
+			// Alter the row code
+			final var index = new String(raw, StandardCharsets.ISO_8859_1).indexOf("c1");
+			raw[index] = 'x';
+			gzip.write(raw);
+		}
+		final var reader = new CatalogSnapshot.Reader(new ByteArrayInputStream(output.toByteArray()));
+		reader.nextSection();
+		final var columns = reader.readColumns();
+		reader.nextRow();
+		Assertions.assertEquals("x1", reader.readRow(columns)[0]);
+		reader.nextRow();
+		reader.nextSection();
+		Assertions.assertEquals("snapshot-checksum",
+				Assertions.assertThrows(BusinessException.class, reader::verify).getMessage());
+	}
+
+	@Test
+	void readInvalidFormat() throws IOException {
+		final var output = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(output)) {
+			gzip.write(new byte[] { 1, 2, 3, 4 });
+		}
+		final var input = new ByteArrayInputStream(output.toByteArray());
+		Assertions.assertEquals("snapshot-format", Assertions
+				.assertThrows(BusinessException.class, () -> new CatalogSnapshot.Reader(input)).getMessage());
+	}
+
+	/**
+	 * Return a snapshot made of a valid header followed by the given raw content.
+	 */
+	private ByteArrayInputStream newRawSnapshot(final DataOutputConsumer content) throws IOException {
+		final var output = new ByteArrayOutputStream();
+		try (var data = new DataOutputStream(new GZIPOutputStream(output))) {
+			data.writeInt(CatalogSnapshot.MAGIC);
+			data.writeInt(CatalogSnapshot.VERSION);
+			data.writeInt(NODE.length());
+			data.write(NODE.getBytes(StandardCharsets.UTF_8));
+			data.writeLong(42L);
+			content.accept(data);
+		}
+		return new ByteArrayInputStream(output.toByteArray());
+	}
+
+	@FunctionalInterface
+	private interface DataOutputConsumer {
+		void accept(DataOutputStream data) throws IOException;
+	}
+
+	private void assertInvalidFormat(final DataOutputConsumer content) throws IOException {
+		final var reader = new CatalogSnapshot.Reader(newRawSnapshot(content));
+		Assertions.assertEquals("snapshot-format", Assertions.assertThrows(BusinessException.class, () -> {
+			reader.nextSection();
+			reader.readColumns();
+		}).getMessage());
+	}
+
+	@Test
+	void readInvalidLength() throws IOException {
+		// Negative and oversized section name length
+		assertInvalidFormat(d -> d.writeInt(-1));
+		assertInvalidFormat(d -> d.writeInt(Integer.MAX_VALUE));
+
+		// Negative and oversized amount of columns
+		assertInvalidFormat(d -> {
+			d.writeInt(3);
+			d.writeBytes("Row");
+			d.writeInt(-1);
+		});
+		assertInvalidFormat(d -> {
+			d.writeInt(3);
+			d.writeBytes("Row");
+			d.writeInt(Integer.MAX_VALUE);
+		});
+	}
+
+	@Test
+	void readInvalidKind() throws IOException {
+		assertInvalidFormat(d -> {
+			d.writeInt(3);
+			d.writeBytes("Row");
+			d.writeInt(1);
+			d.writeInt(4);
+			d.writeBytes("code");
+			d.writeByte(CatalogSnapshot.Kind.values().length);
+		});
+		assertInvalidFormat(d -> {
+			d.writeInt(3);
+			d.writeBytes("Row");
+			d.writeInt(1);
+			d.writeInt(4);
+			d.writeBytes("code");
+			d.writeByte(-1);
+		});
+	}
+
+	@Test
+	void exportLoad() throws IOException {
+		final var nbPrices = ipRepository.findAllBy("type.node.id", NODE).size();
+		final var output = new ByteArrayOutputStream();
+		Assertions.assertNotEquals(0L, resource.write(NODE, output));
+		em.flush();
+		em.clear();
+
+		// Load the exported catalog in the same node: nothing is created nor purged
+		final var result = resource.load(NODE, true, new ByteArrayInputStream(output.toByteArray()));
+		Assertions.assertEquals(NODE, result.getSource());
+		Assertions.assertFalse(result.isUpToDate());
+		Assertions.assertEquals(0, result.getNbCreated());
+		Assertions.assertEquals(0, result.getNbPurgedPrices());
+		Assertions.assertTrue(result.getNbReferences() > 0);
+		Assertions.assertTrue(result.getNbPrices() >= nbPrices);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(nbPrices, ipRepository.findAllBy("type.node.id", NODE).size());
+
+		// The task of the node is held and released
+		final var status = taskRepository.findBy("locked.id", NODE);
+		Assertions.assertFalse(status.isFailed());
+		Assertions.assertNotNull(status.getEnd());
+		Assertions.assertEquals(result.getGeneration(), status.getGeneration());
+	}
+
+	@Test
+	void loadTruncated() throws IOException {
+		final var output = new ByteArrayOutputStream();
+		resource.write(NODE, output);
+		em.flush();
+		em.clear();
+		final var generation = Optional.ofNullable(taskRepository.findBy("locked.id", NODE))
+				.map(ImportCatalogStatus::getGeneration).orElse(null);
+		final var truncated = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(truncated)) {
+			final var raw = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())).readAllBytes();
+			// All sections are there, only the checksum is truncated
+			gzip.write(raw, 0, raw.length - 4);
+		}
+
+		// All sections are loaded before the failure, the whole load is rolled back
+		final var input = new ByteArrayInputStream(truncated.toByteArray());
+		Assertions.assertThrows(EOFException.class, () -> resource.load(NODE, true, input));
+		Assertions.assertTrue(TransactionSynchronizationManager.getResourceMap().values().stream()
+				.filter(ResourceHolderSupport.class::isInstance).map(ResourceHolderSupport.class::cast)
+				.anyMatch(ResourceHolderSupport::isRollbackOnly));
+		final var status = taskRepository.findBy("locked.id", NODE);
+		Assertions.assertTrue(status.isFailed());
+		Assertions.assertEquals(generation, status.getGeneration());
+	}
+
+	@Test
+	void loadOtherNode() throws IOException {
+		final var nbPrices = ipRepository.findAllBy("type.node.id", NODE).size();
+		final var output = new ByteArrayOutputStream();
+		new CatalogSnapshot.Writer(output, "service:prov:other", 42L).finish();
+
+		// The prices of the target node are not purged, and its task is not held
+		final var input = new ByteArrayInputStream(output.toByteArray());
+		Assertions.assertEquals("snapshot-node",
+				Assertions.assertThrows(BusinessException.class, () -> resource.load(NODE, true, input)).getMessage());
+		Assertions.assertTrue(Optional.ofNullable(taskRepository.findBy("locked.id", NODE))
+				.map(ImportCatalogStatus::getPhase).filter(CatalogSnapshotResource.PHASE_SNAPSHOT::equals).isEmpty());
+		Assertions.assertEquals(nbPrices, ipRepository.findAllBy("type.node.id", NODE).size());
+	}
+}
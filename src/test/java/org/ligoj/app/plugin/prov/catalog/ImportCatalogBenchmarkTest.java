@@ -0,0 +1,98 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.ligoj.app.plugin.prov.model.Rate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-row cost of the catalog import resolutions done for each price row: regional CO2 conversion and type rating.
+ * The measured cost is logged. The cost is only measured with the system property <code>benchmark=true</code>, while
+ * the resolutions are always checked.
+ */
+@Slf4j
+class ImportCatalogBenchmarkTest {
+
+	private static final int ROWS = 200_000;
+
+	private static final String[] AREAS = { "eu", "us", "ap", "sa", "ca", "me", "af" };
+
+	private static final String[] ZONES = { "west", "east", "north", "south", "central" };
+
+	private static final String[] TYPES = { "a1.micro", "a1", "b1.large", "c2.large", "c5.xlarge", "x1.metal",
+			"t3a.nano", "m6g.16xlarge", "r.large", "z" };
+
+	private AbstractImportCatalogResource resource;
+
+	private AbstractUpdateContext context;
+
+	private final List<String> locations = new ArrayList<>();
+
+	@BeforeEach
+	void init() throws IOException {
+		resource = new AbstractImportCatalogResource() {
+			// Nothing
+		};
+		resource.objectMapper = new ObjectMapper();
+		resource.initRate("test-resource");
+		context = new AbstractUpdateContext() {
+			// Nothing
+		};
+		for (final var area : AREAS) {
+			for (final var zone : ZONES) {
+				final var data = new Co2RegionData();
+				data.setPue(1.2d);
+				data.setGPerKWH(200d);
+				context.getCo2RegionDataSet().put(area + "-" + zone + "-1", data);
+				for (var i = 1; i < 5; i++) {
+					// Mostly not perfect matches
+					locations.add(area + "-" + zone + "-" + i);
+				}
+			}
+		}
+		locations.add("cn-north-1");
+	}
+
+	private double run(final int rows) {
+		var sum = 0d;
+		for (var i = 0; i < rows; i++) {
+			sum += resource.toConversion(context, locations.get(i % locations.size()));
+			sum += resource.getRate("test-resource", TYPES[i % TYPES.length]).ordinal();
+		}
+		return sum;
+	}
+
+	@Test
+	void resolutions() {
+		Assertions.assertTrue(run(locations.size() * TYPES.length) > 0);
+		Assertions.assertEquals(0.24d, resource.toConversion(context, "eu-west-3"), 0.0001d);
+		Assertions.assertEquals(0d, resource.toConversion(context, "cn-north-1"));
+		Assertions.assertEquals(Rate.GOOD, resource.getRate("test-resource", "c2.large"));
+		Assertions.assertEquals(Rate.BEST, resource.getRate("test-resource", "t3a.nano"));
+	}
+
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void perRowCost() {
+		// Warm-up
+		run(ROWS / 10);
+
+		final var start = System.nanoTime();
+		final var sum = run(ROWS);
+		final var duration = System.nanoTime() - start;
+		log.info("Catalog import resolution: {} rows, {} ns/row", ROWS, duration / ROWS);
+		Assertions.assertTrue(sum > 0);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogChangeRepository;
+import org.ligoj.app.plugin.prov.model.CatalogChangeType;
+import org.ligoj.app.plugin.prov.model.ImportCatalogChange;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.ligoj.bootstrap.core.json.TableItem;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Test class of the catalog changes recorded by an import, see {@link ImportChangeSet}.
+ */
+class ImportCatalogChangeTest extends AbstractProvResourceTest {
+
+	private static final String NODE = "service:prov:test";
+
+	@Autowired
+	private ImportCatalogResource resource;
+
+	@Autowired
+	private ImportCatalogChangeRepository changeRepository;
+
+	private SyntheticCatalogService newService() {
+		final var service = new SyntheticCatalogService();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+		service.setImportCatalogResource(Mockito.mock(ImportCatalogResource.class));
+		service.setLocations(1);
+		service.setTypes(2);
+		service.setTerms(1);
+		return service;
+	}
+
+	private TableItem<ImportCatalogChange> importCatalog(final SyntheticCatalogService service) {
+		service.updateCatalog(NODE, false);
+		em.flush();
+		em.clear();
+		return resource.findChanges(NODE, null, newUriInfo());
+	}
+
+	private List<ImportCatalogChange> findAll(final long run) {
+		return changeRepository.findAll(NODE, run, Pageable.unpaged()).getContent();
+	}
+
+	@Test
+	void findChanges() {
+		final var service = newService();
+
+		// Initial import: all prices are added
+		final var initial = service.getPriceCount();
+		var result = importCatalog(service);
+		Assertions.assertEquals(initial, result.getRecordsTotal());
+		final var firstRun = result.getData().getFirst().getRun();
+		var changes = findAll(firstRun);
+		Assertions.assertTrue(changes.stream().allMatch(c -> c.getType() == CatalogChangeType.ADDED));
+		Assertions.assertTrue(changes.stream().allMatch(c -> c.getResource() == ResourceType.INSTANCE));
+		Assertions.assertTrue(changes.stream().allMatch(c -> c.getOldCost() == null && c.getNewCost() != null));
+
+		// Refresh without change: no recorded change
+		Assertions.assertEquals(firstRun, importCatalog(service).getData().getFirst().getRun());
+
+		// Repricing: all prices are repriced
+		service.setPriceFactor(2d);
+		result = importCatalog(service);
+		Assertions.assertEquals(initial, result.getRecordsTotal());
+		changes = findAll(result.getData().getFirst().getRun());
+		Assertions.assertTrue(changes.stream().allMatch(c -> c.getType() == CatalogChangeType.REPRICED));
+		final var repriced = changes.stream().filter(c -> c.getOldCost() > 0).findFirst().orElseThrow();
+		Assertions.assertTrue(repriced.getNewCost() > repriced.getOldCost());
+		Assertions.assertNotNull(repriced.getOldCo2());
+
+		// Retired type: its prices are removed
+		service.setTypes(1);
+		result = importCatalog(service);
+		Assertions.assertEquals(initial - service.getPriceCount(), result.getRecordsTotal());
+		changes = findAll(result.getData().getFirst().getRun());
+		Assertions.assertTrue(changes.stream().allMatch(c -> c.getType() == CatalogChangeType.REMOVED));
+		Assertions.assertTrue(changes.stream().allMatch(c -> c.getNewCost() == null));
+
+		// Previous runs are still available
+		Assertions.assertEquals(initial, resource.findChanges(NODE, firstRun, newUriInfo()).getRecordsTotal());
+		Assertions.assertEquals(3, changeRepository.findAllRuns(NODE).size());
+	}
+
+	@Test
+	void findChangesLastBatch() {
+		// The task operations run in the test transaction
+		final var runner = new ImportCatalogResourceTest.TestImportCatalogResource();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(runner);
+		runner.startImport(NODE, "test");
+
+		// Less changes than a batch, and no purge
+		final var service = new SyntheticCatalogService() {
+			@Override
+			public void updateCatalog(final String node, final boolean force) {
+				final var context = initContext(new AbstractUpdateContext() {
+					// Nothing to add
+				}, node, force);
+				context.getChanges().add(CatalogChangeType.ADDED, ResourceType.INSTANCE, "new-code", null, 1d, null,
+						null);
+			}
+		};
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+		service.setImportCatalogResource(runner);
+		runner.updateCatalog(service, NODE);
+		em.flush();
+		em.clear();
+
+		// The pending changes are written when the import finishes
+		final var result = resource.findChanges(NODE, null, newUriInfo());
+		Assertions.assertEquals(1, result.getRecordsTotal());
+		Assertions.assertEquals("new-code", result.getData().getFirst().getCode());
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.dao.NodeRepository;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogStatusRepository;
+import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Test class of {@link ImportCatalogOrchestrator}
+ */
+class ImportCatalogOrchestratorTest extends AbstractProvResourceTest {
+
+	private static final String NODE = "service:prov:test";
+
+	@Autowired
+	private ImportCatalogStatusRepository taskRepository;
+
+	@Autowired
+	private NodeRepository nodeRepository;
+
+	private ImportCatalogOrchestrator orchestrator;
+
+	@BeforeEach
+	void prepareOrchestrator() {
+		configuration.put(ImportCatalogOrchestrator.CONF_IMPORT_POOL, "1");
+		orchestrator = new ImportCatalogOrchestrator();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(orchestrator);
+	}
+
+	@AfterEach
+	void shutdownOrchestrator() {
+		orchestrator.shutdown();
+		configuration.delete(ImportCatalogOrchestrator.CONF_IMPORT_POOL);
+		configuration.delete("service:prov:urgent" + ImportCatalogOrchestrator.CONF_IMPORT_PRIORITY);
+		configuration.delete(NODE + ImportCatalogOrchestrator.CONF_IMPORT_CRON);
+	}
+
+	@Test
+	void submit() throws InterruptedException {
+		configuration.put("service:prov:urgent" + ImportCatalogOrchestrator.CONF_IMPORT_PRIORITY, "-1");
+		final var started = new CountDownLatch(1);
+		final var release = new CountDownLatch(1);
+		final var done = new CountDownLatch(3);
+		final var order = Collections.synchronizedList(new ArrayList<String>());
+
+		// The first import holds the single slot of the pool
+		orchestrator.submit("service:prov:first", () -> {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			order.add("first");
+			done.countDown();
+		});
+		Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+		Assertions.assertTrue(orchestrator.isRunning("service:prov:first"));
+		orchestrator.submit("service:prov:second", () -> {
+			order.add("second");
+			done.countDown();
+		});
+		orchestrator.submit("service:prov:third", () -> {
+			order.add("third");
+			done.countDown();
+		});
+		orchestrator.submit("service:prov:urgent", () -> {
+			order.add("urgent");
+			done.countDown();
+		});
+
+		// Priority first, then FIFO
+		Assertions.assertEquals(1, orchestrator.getPosition("service:prov:urgent"));
+		Assertions.assertEquals(2, orchestrator.getPosition("service:prov:second"));
+		Assertions.assertEquals(3, orchestrator.getPosition("service:prov:third"));
+		Assertions.assertNull(orchestrator.getPosition("service:prov:first"));
+		Assertions.assertEquals(-1, orchestrator.getQueue().getFirst().priority());
+
+		// Cancel a queued import
+		Assertions.assertTrue(orchestrator.remove("service:prov:third"));
+		Assertions.assertFalse(orchestrator.remove("service:prov:third"));
+
+		release.countDown();
+		Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+		Assertions.assertEquals(List.of("first", "urgent", "second"), order);
+		Assertions.assertTrue(orchestrator.getQueue().isEmpty());
+	}
+
+	@Test
+	void shutdownQueued() throws InterruptedException {
+		final var started = new CountDownLatch(1);
+		final var interrupted = new CountDownLatch(1);
+		final var aborted = Collections.synchronizedList(new ArrayList<String>());
+
+		// The first import holds the single slot of the pool, the second one waits in the queue
+		orchestrator.submit("service:prov:first", () -> {
+			started.countDown();
+			try {
+				Thread.sleep(5000);
+			} catch (final InterruptedException e) {
+				interrupted.countDown();
+				Thread.currentThread().interrupt();
+			}
+		}, () -> aborted.add("first"));
+		Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+		orchestrator.submit("service:prov:second", () -> aborted.add("second-run"), () -> aborted.add("second"));
+
+		// The running import is interrupted, the queued one is aborted
+		orchestrator.shutdown();
+		Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		Assertions.assertEquals(List.of("second"), aborted);
+		Assertions.assertTrue(orchestrator.getQueue().isEmpty());
+	}
+
+	@Test
+	void checkSchedulesNoCron() {
+		newStatus();
+		Assertions.assertEquals(0, orchestrator.checkSchedules(LocalDateTime.now()));
+	}
+
+	@Test
+	void checkSchedulesInvalidCron() {
+		newStatus();
+		configuration.put(NODE + ImportCatalogOrchestrator.CONF_IMPORT_CRON, "invalid");
+		Assertions.assertEquals(0, orchestrator.checkSchedules(LocalDateTime.now()));
+	}
+
+	@Test
+	void checkSchedulesNotDue() {
+		newStatus();
+		configuration.put(NODE + ImportCatalogOrchestrator.CONF_IMPORT_CRON, "0 0 0 1 1 *");
+		Assertions.assertEquals(0, orchestrator.checkSchedules(LocalDateTime.of(2020, 6, 1, 0, 0)));
+		Assertions.assertEquals(0, orchestrator.checkSchedules(LocalDateTime.of(2020, 6, 1, 0, 1)));
+	}
+
+	private ImportCatalogStatus newStatus() {
+		final var status = new ImportCatalogStatus();
+		status.setAuthor(DEFAULT_USER);
+		status.setStart(new Date());
+		status.setEnd(new Date());
+		status.setLocked(nodeRepository.findOne(NODE));
+		return taskRepository.saveAndFlush(status);
+	}
+}
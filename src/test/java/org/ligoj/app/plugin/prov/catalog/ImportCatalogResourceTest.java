@@ -5,7 +5,9 @@ package org.ligoj.app.plugin.prov.catalog;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import jakarta.transaction.Transactional;
@@ -19,8 +21,11 @@ import org.ligoj.app.dao.NodeRepository;
 import org.ligoj.app.model.Node;
 import org.ligoj.app.model.Project;
 import org.ligoj.app.model.Subscription;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogCheckpointRepository;
 import org.ligoj.app.plugin.prov.dao.ImportCatalogStatusRepository;
+import org.ligoj.app.plugin.prov.dao.NodeCacheKey;
 import org.ligoj.app.plugin.prov.dao.ProvLocationRepository;
+import org.ligoj.app.plugin.prov.model.ImportCatalogCheckpoint;
 import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
 import org.ligoj.app.plugin.prov.model.ProvCurrency;
 import org.ligoj.app.plugin.prov.model.ProvDatabasePrice;
@@ -38,8 +43,10 @@ import org.ligoj.app.plugin.prov.model.ProvStorageType;
 import org.ligoj.app.resource.ServicePluginLocator;
 import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -59,6 +66,12 @@ class ImportCatalogResourceTest extends AbstractAppTest {
 	private NodeRepository nodeRepository;
 	@Autowired
 	private ProvLocationRepository locationRepository;
+	@Autowired
+	private ImportCatalogCheckpointRepository checkpointRepository;
+	@Autowired
+	private CacheManager cacheManager;
+	@Autowired
+	private ConfigurationResource configuration;
 
 	@BeforeEach
 	void prepareData() throws IOException {
@@ -133,6 +146,12 @@ class ImportCatalogResourceTest extends AbstractAppTest {
 		Assertions.assertFalse(resource.getTask("service:prov:test").isFinished());
 		Thread.sleep(100);
 		Mockito.verify(service).updateCatalog("service:prov:test", false);
+
+		// Warmed caches
+		Assertions.assertNotNull(cacheManager.getCache("prov-instance-os")
+				.get(new NodeCacheKey("service:prov:test", "service:prov:test")));
+		Assertions.assertNotNull(cacheManager.getCache("prov-instance-type-has-dyn")
+				.get(new NodeCacheKey("service:prov:test", "service:prov:test")));
 	}
 
 	@Test
@@ -182,7 +201,7 @@ class ImportCatalogResourceTest extends AbstractAppTest {
 		Assertions.assertNotNull(status.getStart());
 		Assertions.assertNull(status.getLocation());
 		Assertions.assertEquals(0, status.getDone());
-		Assertions.assertNull(status.getPhase());
+		Assertions.assertEquals(ImportCatalogResource.PHASE_WARM_UP, status.getPhase());
 		Assertions.assertEquals(0, status.getWorkload());
 		Assertions.assertTrue(status.isFinished());
 		Assertions.assertFalse(status.isFailed());
@@ -216,6 +235,153 @@ class ImportCatalogResourceTest extends AbstractAppTest {
 		assertFailed(service);
 	}
 
+	@Test
+	void updateCatalogSynchronousResume() throws Exception {
+		initSpringSecurityContext(DEFAULT_USER);
+		final var resource = newResource();
+		final var service = Mockito.mock(ImportCatalogService.class);
+		Mockito.doThrow(new IllegalStateException()).when(service).updateCatalog("service:prov:test", false);
+		newCheckpoint();
+
+		// Failed resumed import keeps the checkpoints
+		resource.updateCatalog(service, "service:prov:test", false, true);
+		Assertions.assertEquals(1, checkpointRepository.findAllByNode("service:prov:test").size());
+
+		// Succeed resumed import deletes the checkpoints
+		Mockito.doNothing().when(service).updateCatalog("service:prov:test", false);
+		resource.updateCatalog(service, "service:prov:test", false, true);
+		Assertions.assertEquals(0, checkpointRepository.findAllByNode("service:prov:test").size());
+	}
+
+	@Test
+	void updateCatalogSynchronousNotResumed() throws Exception {
+		initSpringSecurityContext(DEFAULT_USER);
+		final var resource = newResource();
+		final var service = Mockito.mock(ImportCatalogService.class);
+		Mockito.doAnswer(i -> {
+			// Import starts from scratch
+			Assertions.assertEquals(0, checkpointRepository.findAllByNode("service:prov:test").size());
+			throw new IllegalStateException();
+		}).when(service).updateCatalog("service:prov:test", false);
+		newCheckpoint();
+
+		resource.updateCatalog(service, "service:prov:test", false);
+		Mockito.verify(service).updateCatalog("service:prov:test", false);
+	}
+
+	@Test
+	void updateCatalogSynchronousProgress() {
+		initSpringSecurityContext(DEFAULT_USER);
+		final var resource = newResource();
+		final var service = new SyntheticCatalogService();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+		service.setImportCatalogResource(resource);
+		service.setLocations(1);
+		service.setTypes(1);
+		service.setTerms(1);
+
+		// The existing prices are not in the synthetic catalog: the ones used by a quote are retained
+		final var node = "service:prov:test";
+		final var prices = em.createQuery("SELECT COUNT(p) FROM ProvInstancePrice p WHERE p.type.node.id = :node",
+				Long.class).setParameter("node", node).getSingleResult().intValue();
+		final var used = em.createQuery(
+				"SELECT COUNT(DISTINCT qi.price.id) FROM ProvQuoteInstance qi WHERE qi.price.type.node.id = :node",
+				Long.class).setParameter("node", node).getSingleResult().intValue();
+
+		// Only the first step is written during the import, the last progress is written when it finishes
+		configuration.put(AbstractImportCatalogResource.CONF_IMPORT_PROGRESS, "3600");
+		try {
+			resource.updateCatalog(service, node);
+		} finally {
+			configuration.delete(AbstractImportCatalogResource.CONF_IMPORT_PROGRESS);
+		}
+
+		final var status = repository.findBy("locked.id", node);
+		Assertions.assertFalse(status.isFailed());
+		Assertions.assertEquals(prices - used, status.getNbPurgedPrices().intValue());
+		Assertions.assertEquals(used, status.getNbRetainedPrices().intValue());
+		Assertions.assertEquals(3, status.getDone()); // initialize, one location, purge
+	}
+
+	@Test
+	void updateCatalogSynchronousFailedAfterCheckpoint() {
+		initSpringSecurityContext(DEFAULT_USER);
+		final var resource = newResource();
+		final var completed = new ArrayList<String>();
+		final var fail = new AtomicBoolean(true);
+		final var service = new SyntheticCatalogService() {
+			@Override
+			protected void complete(final AbstractUpdateContext context, final String phase, final String location) {
+				super.complete(context, phase, location);
+				completed.add(location);
+				if (fail.get()) {
+					throw new IllegalStateException("after-checkpoint");
+				}
+			}
+		};
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+		service.setImportCatalogResource(resource);
+		service.setTypes(1);
+		service.setTerms(1);
+		final var node = "service:prov:test";
+
+		// The import fails after the first unit: its checkpoint is kept
+		resource.updateCatalog(service, node);
+		Assertions.assertTrue(repository.findBy("locked.id", node).isFailed());
+		final var checkpoints = checkpointRepository.findAllByNode(node);
+		Assertions.assertEquals(1, checkpoints.size());
+		Assertions.assertEquals(SyntheticCatalogService.PHASE_PRICE, checkpoints.getFirst().getPhase());
+		Assertions.assertEquals(completed.getFirst(), checkpoints.getFirst().getLocation());
+
+		// The resumed import skips the completed unit
+		fail.set(false);
+		completed.clear();
+		resource.startTask(node, t -> t.setDone(0));
+		resource.updateCatalog(service, node, false, true);
+		Assertions.assertFalse(repository.findBy("locked.id", node).isFailed());
+		Assertions.assertEquals(1, completed.size());
+		Assertions.assertNotEquals(checkpoints.getFirst().getLocation(), completed.getFirst());
+		Assertions.assertEquals(0, checkpointRepository.findAllByNode(node).size());
+	}
+
+	@Test
+	void getCacheStatistics() {
+		final var statistics = newResource().getCacheStatistics();
+		Assertions.assertEquals(15, statistics.getRegions().size());
+		Assertions.assertEquals("ProvLocation", statistics.getRegions().getFirst().getName());
+		Assertions.assertEquals("query", statistics.getRegions().getLast().getName());
+		Assertions.assertTrue(statistics.getRegions().stream().allMatch(r -> r.getHitRatio() >= 0 && r.getHitRatio() <= 1));
+	}
+
+	@Test
+	void updateCatalogSynchronousEvictNode() throws Exception {
+		initSpringSecurityContext(DEFAULT_USER);
+		final var cache = cacheManager.getCache("prov-location");
+		final var key = new NodeCacheKey("service:prov:test", "service:prov:test", "unknown-region");
+		final var subKey = new NodeCacheKey("service:prov:test:account", "service:prov:test:account", "unknown-region");
+		final var otherKey = new NodeCacheKey("service:prov:testing", "service:prov:testing", "region-1");
+		cache.put(key, 1);
+		cache.put(subKey, 2);
+		cache.put(otherKey, 3);
+
+		newResource().updateCatalog(Mockito.mock(ImportCatalogService.class), "service:prov:test");
+
+		// Only the imported node and its sub nodes are evicted
+		Assertions.assertNull(cache.get(key));
+		Assertions.assertNull(cache.get(subKey));
+		Assertions.assertEquals(3, cache.get(otherKey).get());
+		cache.clear();
+	}
+
+	private void newCheckpoint() {
+		final var checkpoint = new ImportCatalogCheckpoint();
+		checkpoint.setNode(nodeRepository.findOneExpected("service:prov:test"));
+		checkpoint.setPhase("install-vm");
+		checkpoint.setLocation("region-1");
+		checkpoint.setDone(new Date());
+		checkpointRepository.saveAndFlush(checkpoint);
+	}
+
 	private void assertFailed(final ImportCatalogService service) throws Exception {
 		final var status = repository.findBy("locked.id", "service:prov:test");
 		Assertions.assertEquals(DEFAULT_USER, status.getAuthor());
@@ -0,0 +1,84 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link ImportPipeline}
+ */
+class ImportPipelineTest {
+
+	private final List<Integer> units = IntStream.range(0, 20).boxed().toList();
+
+	@Test
+	void runSequential() throws Exception {
+		final var thread = Thread.currentThread();
+		final var written = new ArrayList<String>();
+		new ImportPipeline(0, 0).run(units, u -> {
+			Assertions.assertSame(thread, Thread.currentThread());
+			return "u" + u;
+		}, (u, p) -> written.add(p));
+		Assertions.assertEquals(units.stream().map(u -> "u" + u).toList(), written);
+	}
+
+	@Test
+	void runConcurrent() throws Exception {
+		final var thread = Thread.currentThread();
+		final Set<Thread> parsers = ConcurrentHashMap.newKeySet();
+		final var written = new TreeSet<Integer>();
+		final var parsed = new AtomicInteger();
+		final var pipeline = new ImportPipeline(4, 2);
+		pipeline.run(units, u -> {
+			parsers.add(Thread.currentThread());
+			parsed.incrementAndGet();
+			Thread.sleep(5);
+			return u;
+		}, (u, p) -> {
+			// Persist stage is on the calling thread
+			Assertions.assertSame(thread, Thread.currentThread());
+			Assertions.assertEquals(u, p);
+
+			// Back pressure: at most the queue and the parsing threads are ahead of the persist stage
+			final var ahead = parsed.get() - written.size();
+			Assertions.assertTrue(ahead <= pipeline.getCapacity() + pipeline.getConcurrency() + 1);
+			written.add(p);
+			Thread.sleep(10);
+		});
+		Assertions.assertEquals(new TreeSet<>(units), written);
+		Assertions.assertFalse(parsers.contains(thread));
+		Assertions.assertTrue(parsers.size() <= 4);
+	}
+
+	@Test
+	void runParseFailure() {
+		final var written = new AtomicInteger();
+		final var pipeline = new ImportPipeline(4, 1);
+		Assertions.assertEquals("failed-5", Assertions.assertThrows(IOException.class, () -> pipeline.run(units, u -> {
+			if (u == 5) {
+				throw new IOException("failed-5");
+			}
+			return u;
+		}, (u, p) -> written.incrementAndGet())).getMessage());
+		Assertions.assertTrue(written.get() < units.size());
+	}
+
+	@Test
+	void runWriteFailure() {
+		final var pipeline = new ImportPipeline(2, 2);
+		Assertions.assertThrows(IllegalStateException.class, () -> pipeline.run(units, u -> u, (u, p) -> {
+			throw new IllegalStateException();
+		}));
+	}
+}
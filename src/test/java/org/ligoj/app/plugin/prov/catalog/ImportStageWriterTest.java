@@ -0,0 +1,49 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Test class of {@link ImportStageWriter}
+ */
+class ImportStageWriterTest extends AbstractProvResourceTest {
+
+	@Autowired
+	private ImportStageWriter writer;
+
+	@Test
+	void write() {
+		final var existing = ipRepository.findBy("code", "C1");
+		em.detach(existing);
+		existing.setCost(1.5d);
+		final var managed = ipRepository.findBy("code", "C2");
+		managed.setCost(2.5d);
+		final var created = new ProvInstancePrice();
+		created.setCode("C-new");
+		created.setType(existing.getType());
+		created.setTerm(existing.getTerm());
+		created.setLocation(existing.getLocation());
+		created.setOs(existing.getOs());
+		created.setCost(3.5d);
+
+		writer.write(List.of(existing, created, managed), 10);
+
+		// All the written entities are detached, no managed copy is kept
+		Assertions.assertNotNull(created.getId());
+		Assertions.assertFalse(em.contains(existing));
+		Assertions.assertFalse(em.contains(created));
+		Assertions.assertFalse(em.contains(managed));
+		em.clear();
+		Assertions.assertEquals(1.5d, ipRepository.findBy("code", "C1").getCost());
+		Assertions.assertEquals(2.5d, ipRepository.findBy("code", "C2").getCost());
+		Assertions.assertEquals(3.5d, ipRepository.findBy("code", "C-new").getCost());
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link PrefixTrie}
+ */
+class PrefixTrieTest {
+
+	private PrefixTrie<String> newTrie() {
+		final var trie = new PrefixTrie<String>();
+		trie.put("eu-west-2", "w2");
+		trie.put("eu-west-1", "w1");
+		trie.put("eu", "eu");
+		trie.put("us-east", "us");
+		return trie;
+	}
+
+	@Test
+	void get() {
+		final var trie = newTrie();
+		Assertions.assertEquals(4, trie.getSize());
+		Assertions.assertEquals("w1", trie.get("eu-west-1"));
+		Assertions.assertEquals("eu", trie.get("eu"));
+		Assertions.assertNull(trie.get("eu-west"));
+		Assertions.assertNull(trie.get("cn"));
+
+		// Replace
+		trie.put("eu", "eu2");
+		Assertions.assertEquals("eu2", trie.get("eu"));
+		Assertions.assertEquals(4, trie.getSize());
+	}
+
+	@Test
+	void getFirst() {
+		final var trie = newTrie();
+		Assertions.assertEquals("w1", trie.getFirst("eu-west"));
+		Assertions.assertEquals("eu", trie.getFirst("e"));
+		Assertions.assertEquals("us", trie.getFirst("us"));
+		Assertions.assertEquals("w2", trie.getFirst("eu-west-2"));
+		Assertions.assertNull(trie.getFirst("eu-west-3"));
+		Assertions.assertEquals("eu", trie.getFirst(""));
+	}
+
+	@Test
+	void walk() {
+		final var trie = newTrie();
+		final List<String> visited = new ArrayList<>();
+		trie.walk("eu-west-1.large", (v, l) -> visited.add(v + ":" + l));
+		Assertions.assertEquals(List.of("eu:2", "w1:9"), visited);
+		visited.clear();
+		trie.walk("cn", (v, l) -> visited.add(v + ":" + l));
+		Assertions.assertTrue(visited.isEmpty());
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceQuery;
+import org.mockito.Mockito;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Import, refresh and lookup costs on a synthetic catalog, see {@link SyntheticCatalogService}. The catalog size is
+ * small by default, and can be set with the system properties <code>synthetic.locations</code>,
+ * <code>synthetic.types</code> and <code>synthetic.terms</code>. The measured costs are logged.
+ */
+@Slf4j
+class SyntheticCatalogBenchmarkTest extends AbstractProvResourceTest {
+
+	private static final String NODE = "service:prov:test";
+
+	private static final int LOOKUPS = 200;
+
+	private SyntheticCatalogService newService() {
+		final var service = new SyntheticCatalogService();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+		service.setImportCatalogResource(Mockito.mock(ImportCatalogResource.class));
+		service.setLocations(Integer.getInteger("synthetic.locations", 2));
+		service.setTypes(Integer.getInteger("synthetic.types", 16));
+		service.setTerms(Integer.getInteger("synthetic.terms", 2));
+		return service;
+	}
+
+	private long countPrices() {
+		return ipRepository.findAllBy("type.node.id", NODE).stream()
+				.filter(p -> p.getType().getCode().startsWith("syn")).count();
+	}
+
+	private long measure(final String name, final SyntheticCatalogService service) {
+		final var start = System.nanoTime();
+		service.updateCatalog(NODE, false);
+		em.flush();
+		em.clear();
+		final var duration = System.nanoTime() - start;
+		log.info("Synthetic catalog {}: {} prices, {} ms, {} us/price", name, service.getPriceCount(),
+				duration / 1_000_000, duration / 1000 / service.getPriceCount());
+		return duration;
+	}
+
+	@Test
+	void importRefreshLookup() {
+		final var service = newService();
+
+		// Initial import, then refresh without change, then a full repricing
+		measure("import", service);
+		Assertions.assertEquals(service.getPriceCount(), countPrices());
+		measure("refresh", service);
+		Assertions.assertEquals(service.getPriceCount(), countPrices());
+		service.setPriceFactor(1.1d);
+		measure("reprice", service);
+		Assertions.assertEquals(service.getPriceCount(), countPrices());
+		Assertions.assertTrue(itRepository.hasDynamicalTypes(NODE));
+		Assertions.assertTrue(itRepository.hasCo2Data(NODE));
+
+		// Lookups on the synthetic locations
+		clearAllCache();
+		final var locations = service.getLocationNames();
+		final var start = System.nanoTime();
+		for (var i = 0; i < LOOKUPS; i++) {
+			final var query = QuoteInstanceQuery.builder().cpu(1 + i % 4).ram(1024 * (1 + i % 8))
+					.location(locations.get(i % locations.size())).build();
+			Assertions.assertNotNull(qiResource.lookup(subscription, query));
+		}
+		final var duration = System.nanoTime() - start;
+		log.info("Synthetic catalog lookup: {} lookups, {} us/lookup", LOOKUPS, duration / 1000 / LOOKUPS);
+	}
+}
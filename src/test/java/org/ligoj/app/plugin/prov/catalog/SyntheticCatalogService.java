@@ -0,0 +1,301 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
+import org.ligoj.app.plugin.prov.model.ProvInstanceType;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.VmOs;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Synthetic catalog generator, driven by the {@link AbstractImportCatalogResource} helpers as a provider plug-in
+ * would be. The catalog is made of {@link #locations} &times; {@link #types} &times; {@link #terms} &times;
+ * {@link #variants} instance prices, plus the dynamic types prices, all with CO2 data. The generated catalog is
+ * deterministic: a second import with the same settings changes nothing, and a new {@link #priceFactor} reprices
+ * everything.
+ */
+@Getter
+@Setter
+public class SyntheticCatalogService extends AbstractImportCatalogResource implements ImportCatalogService {
+
+	/**
+	 * The price import phase, one unit per location.
+	 */
+	public static final String PHASE_PRICE = "install-synthetic";
+
+	private static final String[] AREAS = { "eu-west", "us-east", "ap-south", "sa-east", "ca-central" };
+
+	private static final String[] SIZES = { "nano", "micro", "small", "medium", "large", "xlarge", "2xlarge",
+			"4xlarge" };
+
+	/**
+	 * A price variant of a type: OS, license and software.
+	 *
+	 * @param os       The OS.
+	 * @param license  The optional license.
+	 * @param software The optional software.
+	 * @param factor   The cost factor of this variant.
+	 */
+	public record Variant(VmOs os, String license, String software, double factor) {
+	}
+
+	/**
+	 * A generated price, not yet persisted.
+	 */
+	private record Row(String code, ProvInstanceType type, ProvInstancePriceTerm term, Variant variant, double cost) {
+	}
+
+	/**
+	 * Amount of locations.
+	 */
+	private int locations = 2;
+
+	/**
+	 * Amount of fixed size instance types.
+	 */
+	private int types = 16;
+
+	/**
+	 * Amount of dynamic instance types.
+	 */
+	private int dynamicTypes = 1;
+
+	/**
+	 * Amount of terms. The first one is on-demand, the next ones are reserved for one more year each.
+	 */
+	private int terms = 2;
+
+	/**
+	 * The price variants of each type and term.
+	 */
+	private List<Variant> variants = List.of(new Variant(VmOs.LINUX, null, null, 1d),
+			new Variant(VmOs.WINDOWS, null, null, 1.4d), new Variant(VmOs.WINDOWS, "BYOL", null, 1.1d),
+			new Variant(VmOs.WINDOWS, null, "SQL Web", 1.6d), new Variant(VmOs.RHEL, null, null, 1.2d));
+
+	/**
+	 * The cost factor applied to all prices.
+	 */
+	private double priceFactor = 1d;
+
+	/**
+	 * Return the generated location names.
+	 *
+	 * @return The generated location names.
+	 */
+	public List<String> getLocationNames() {
+		return IntStream.range(0, locations).mapToObj(i -> AREAS[i % AREAS.length] + "-" + (1 + i / AREAS.length))
+				.toList();
+	}
+
+	/**
+	 * Return the amount of generated prices.
+	 *
+	 * @return The amount of generated prices.
+	 */
+	public int getPriceCount() {
+		return locations * terms * (types * variants.size() + dynamicTypes);
+	}
+
+	@Override
+	public void updateCatalog(final String node, final boolean force) {
+		final var context = initContext(new UpdateContext(), node, force);
+		nextStep(context, "initialize");
+		locationRepository.findAllBy("node.id", node).forEach(l -> context.getRegions().put(l.getName(), l));
+		context.setInstanceTypes(toMap(itRepository.findAllBy("node.id", node), ProvInstanceType::getCode));
+		context.setPriceTerms(toMap(iptRepository.findAllBy("node.id", node), ProvInstancePriceTerm::getCode));
+		context.setPrevious(toMap(ipRepository.findAllBy("type.node.id", node), ProvInstancePrice::getCode));
+
+		// Referenced data and CO2 data sets
+		final var regions = getLocationNames().stream().map(l -> installLocation(context, l)).toList();
+		final var terms = IntStream.range(0, this.terms).mapToObj(i -> installTerm(context, i)).toList();
+		final var fixedTypes = IntStream.range(0, types).mapToObj(i -> installType(context, i)).toList();
+		final var dynTypes = IntStream.range(0, dynamicTypes).mapToObj(i -> installDynamicType(context, i)).toList();
+
+		// Prices, one unit per location
+		importUnits(context, PHASE_PRICE, regions, ProvLocation::getName,
+				r -> newRows(r, terms, fixedTypes, dynTypes), (r, rows) -> rows.forEach(p -> install(context, r, p)));
+
+		// Retired prices
+		nextStep(context, "purge");
+		purgePrices(context, context.getPrevious(), ipRepository, qiRepository);
+		context.cleanup();
+	}
+
+	private <T> Map<String, T> toMap(final List<T> entities, final Function<T, String> key) {
+		return entities.stream().collect(Collectors.toConcurrentMap(key, Function.identity()));
+	}
+
+	private ProvLocation installLocation(final AbstractUpdateContext context, final String name) {
+		final var data = new Co2RegionData();
+		data.setPue(1.1d + (name.length() % 5) / 10d);
+		data.setGPerKWH(100d + Math.floorMod(name.hashCode(), 300));
+		context.getCo2RegionDataSet().put(name, data);
+		return installRegion(context, name, "Synthetic " + name);
+	}
+
+	private ProvInstancePriceTerm installTerm(final AbstractUpdateContext context, final int index) {
+		final var code = "syn-term-" + index;
+		final var term = context.getPriceTerms().computeIfAbsent(code, c -> {
+			final var t = new ProvInstancePriceTerm();
+			t.setNode(context.getNode());
+			t.setCode(c);
+			return t;
+		});
+		return copyAsNeeded(context, term, t -> {
+			t.setName(index == 0 ? "OnDemand" : "Reserved, " + index + "yr");
+			t.setPeriod(index * 12d);
+			t.setReservation(index > 0);
+			t.setConvertibleFamily(false);
+			t.setConvertibleType(false);
+			t.setConvertibleLocation(false);
+			t.setConvertibleOs(false);
+			t.setConvertibleEngine(false);
+		});
+	}
+
+	private ProvInstanceType installType(final AbstractUpdateContext context, final int index) {
+		final var size = index % SIZES.length;
+		final var family = index / SIZES.length;
+		final var code = "syn" + family + "." + SIZES[size];
+		final var cpu = (double) (1 << Math.max(0, size - 2));
+		final var ram = cpu * 1024 * (family % 3 + 1) * (size < 2 ? 0.5 : 2);
+		newCo2(context, code, cpu * 4);
+		return installType(context, code, t -> {
+			t.setCpu(cpu);
+			t.setRam(ram);
+			t.setBaseline(size < 2 ? 20d : 0d);
+			t.setProcessor(family % 2 == 0 ? "Intel Xeon" : "AMD EPYC");
+			t.setArchitecture(family % 4 == 3 ? "ARM64" : "X86_64");
+		});
+	}
+
+	private ProvInstanceType installDynamicType(final AbstractUpdateContext context, final int index) {
+		final var code = "syn-dynamic-" + index;
+		newCo2(context, code, 8d);
+		return installType(context, code, t -> {
+			t.setCpu(0d);
+			t.setRam(0d);
+			t.setProcessor("Intel Xeon");
+			t.setArchitecture("X86_64");
+		});
+	}
+
+	private ProvInstanceType installType(final AbstractUpdateContext context, final String code,
+			final Consumer<ProvInstanceType> updater) {
+		final var type = context.getInstanceTypes().computeIfAbsent(code, c -> {
+			final var t = new ProvInstanceType();
+			t.setNode(context.getNode());
+			t.setCode(c);
+			return t;
+		});
+		return copyAsNeeded(context, type, t -> {
+			t.setName(code);
+			t.setDescription("Synthetic " + code);
+			updater.accept(t);
+			setWatt(context, t);
+		}, itRepository);
+	}
+
+	private void newCo2(final AbstractUpdateContext context, final String code, final double watt) {
+		final var data = new Co2Data();
+		data.setPkgWatt0(watt / 4);
+		data.setPkgWatt10(watt / 3);
+		data.setPkgWatt20(watt / 2.5);
+		data.setPkgWatt30(watt / 2);
+		data.setPkgWatt40(watt / 1.8);
+		data.setPkgWatt50(watt / 1.6);
+		data.setPkgWatt60(watt / 1.4);
+		data.setPkgWatt70(watt / 1.3);
+		data.setPkgWatt80(watt / 1.2);
+		data.setPkgWatt90(watt / 1.1);
+		data.setPkgWatt100(watt);
+		data.setRamWatt100(watt / 4);
+		data.setScope3(watt / 10);
+		data.compute();
+		context.getCo2DataSet().put(code, data);
+	}
+
+	/**
+	 * Generate the prices of a location. No shared state is updated, so this can run concurrently.
+	 */
+	private List<Row> newRows(final ProvLocation region, final List<ProvInstancePriceTerm> terms,
+			final List<ProvInstanceType> fixedTypes, final List<ProvInstanceType> dynTypes) {
+		final var rows = new ArrayList<Row>(getPriceCount() / Math.max(1, locations));
+		final var regionFactor = 1d + (region.getName().hashCode() & 0xF) / 100d;
+		for (final var term : terms) {
+			final var termFactor = 1d - Math.min(0.6d, term.getPeriod() / 60d);
+			for (final var type : fixedTypes) {
+				final var base = (type.getCpu() * 0.02d + type.getRam() / 1024 * 0.005d) * regionFactor * termFactor;
+				for (final var variant : variants) {
+					rows.add(new Row(toCode(region, term, type, variant), type, term, variant,
+							base * variant.factor() * priceFactor));
+				}
+			}
+			for (final var type : dynTypes) {
+				final var variant = variants.getFirst();
+				rows.add(new Row(toCode(region, term, type, variant), type, term, variant,
+						0.03d * regionFactor * termFactor * priceFactor));
+			}
+		}
+		return rows;
+	}
+
+	private String toCode(final ProvLocation region, final ProvInstancePriceTerm term, final ProvInstanceType type,
+			final Variant variant) {
+		return String.join("/", region.getName(), term.getCode(), type.getCode(), variant.os().name(),
+				String.valueOf(variant.license()), String.valueOf(variant.software()));
+	}
+
+	private void install(final AbstractUpdateContext context, final ProvLocation region, final Row row) {
+		final var price = context.getPrevious().computeIfAbsent(row.code(), c -> {
+			final var p = new ProvInstancePrice();
+			p.setCode(c);
+			p.setLocation(region);
+			p.setType(row.type());
+			p.setTerm(row.term());
+			p.setPeriod(row.term().getPeriod());
+			p.setOs(row.variant().os());
+			p.setLicense(row.variant().license());
+			p.setSoftware(row.variant().software());
+			return p;
+		});
+		if (row.type().getCpu() > 0) {
+			saveAsNeeded(context, price, row.cost(), ipRepository);
+			return;
+		}
+
+		// Dynamic type price: cost per vCPU and per GiB of RAM
+		final var oldCost = price.getCostCpu() == null ? 0d : price.getCostCpu();
+		saveAsNeeded(context, price, oldCost, row.cost(), (cR, c) -> {
+			price.setCostCpu(cR);
+			price.setCostRam(round3Decimals(c / 8));
+			price.setIncrementCpu(1d);
+			price.setMinCpu(1d);
+			price.setMaxCpu(96d);
+			price.setMinRamRatio(0.5d);
+			price.setMaxRamRatio(8d);
+			setCo2Custom(context, price, getCo2(context, row.type().getCode()),
+					toConversion(context, region.getName()));
+		}, p -> persist(context, ipRepository, p));
+	}
+
+	/**
+	 * The synthetic catalog update context.
+	 */
+	private static class UpdateContext extends AbstractUpdateContext {
+		// Nothing to add
+	}
+}
@@ -22,12 +22,14 @@ import org.junit.jupiter.api.Test;
 import org.ligoj.app.dao.NodeRepository;
 import org.ligoj.app.model.Node;
 import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.dao.ImportCatalogCheckpointRepository;
 import org.ligoj.app.plugin.prov.dao.ProvInstancePriceRepository;
 import org.ligoj.app.plugin.prov.dao.ProvInstancePriceTermRepository;
 import org.ligoj.app.plugin.prov.dao.ProvInstanceTypeRepository;
 import org.ligoj.app.plugin.prov.dao.ProvLocationRepository;
 import org.ligoj.app.plugin.prov.dao.ProvQuoteInstanceRepository;
 import org.ligoj.app.plugin.prov.dao.ProvSupportPriceRepository;
+import org.ligoj.app.plugin.prov.model.ImportCatalogCheckpoint;
 import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
 import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
 import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
@@ -260,41 +262,85 @@ class TestAbstractImportCatalogResourceTest extends AbstractImportCatalogResourc
 		final var pRepository = Mockito.mock(ProvInstancePriceRepository.class);
 		final var qRepository = Mockito.mock(ProvQuoteInstanceRepository.class);
 		purgePrices(newContext, previous, pRepository, qRepository);
-		Mockito.verify(pRepository, Mockito.never()).delete(ArgumentMatchers.any());
+		Mockito.verify(qRepository, Mockito.never()).deleteUnusedPrices(ArgumentMatchers.anyInt(),
+				ArgumentMatchers.anyInt(), ArgumentMatchers.any());
+		Mockito.verify(importCatalogResource, Mockito.never()).nextStep(ArgumentMatchers.any(), ArgumentMatchers.any());
 	}
 
+	@SuppressWarnings("unchecked")
 	@Test
 	void purgeSku() {
 		final var newContext = newContext();
 		final var previous = new HashMap<String, ProvInstancePrice>();
 		final var price1 = new ProvInstancePrice();
+		price1.setId(1);
 		price1.setCode("-not-updated-referenced-");
 		final var price2 = new ProvInstancePrice();
+		price2.setId(2);
 		price2.setCode("-updated-");
 		final var price3 = new ProvInstancePrice();
+		price3.setId(3);
 		price3.setCode("-not-updated-unused-");
-		final var price4 = new ProvInstancePrice();
-		price4.setCode("-another-");
 		previous.put(price1.getCode(), price1);
 		previous.put(price2.getCode(), price2);
 		previous.put(price3.getCode(), price3);
 		newContext.getPrices().add("-updated-");
 		final var pRepository = Mockito.mock(ProvInstancePriceRepository.class);
 		final var qRepository = Mockito.mock(ProvQuoteInstanceRepository.class);
+		final var status = new ImportCatalogStatus();
+		Mockito.doAnswer(invocation -> {
+			((Consumer<ImportCatalogStatus>) invocation.getArguments()[1]).accept(status);
+			return null;
+		}).when(importCatalogResource).nextStep(ArgumentMatchers.any(), ArgumentMatchers.any());
 
-		Mockito.doReturn(List.of(price1.getCode(), price4.getCode())).when(qRepository)
-				.findUsedPrices("service:prov:some");
+		// Only the unused price is deleted by the statement, the referenced one remains
+		Mockito.doReturn(1).when(qRepository).deleteUnusedPrices(1, 3, List.of(1, 3));
+		Mockito.doReturn(List.of("-not-updated-referenced-")).when(qRepository).findUsedPrices("service:prov:some");
+		Mockito.doReturn(true).when(em).contains(price3);
 
 		purgePrices(newContext, previous, pRepository, qRepository);
 
-		// Unused price but referenced is not deleted
-		Mockito.verify(pRepository, Mockito.never()).delete(price2);
+		// One set-based statement for the whole retired identifier range, no deletion one by one
+		Mockito.verify(qRepository).deleteUnusedPrices(1, 3, List.of(1, 3));
+		Mockito.verify(pRepository, Mockito.never()).delete(ArgumentMatchers.any());
+		Mockito.verify(pRepository, Mockito.never()).findAllById(ArgumentMatchers.any());
+
+		// Deleted price is forgotten, the updated and the referenced ones are kept
+		Assertions.assertEquals(Set.of("-not-updated-referenced-", "-updated-"), previous.keySet());
+		Mockito.verify(em).detach(price3);
+		Mockito.verify(importCatalogResource, Mockito.never()).nextStep(ArgumentMatchers.any(), ArgumentMatchers.any());
+		flushProgress(newContext);
+		Assertions.assertEquals(1, status.getNbPurgedPrices());
+		Assertions.assertEquals(1, status.getNbRetainedPrices());
+	}
 
-		// Unused and not updated price is deleted
-		Mockito.verify(pRepository, Mockito.never()).delete(price1);
+	@Test
+	void purgeSkuChunks() {
+		final var newContext = newContext();
+		final var previous = new HashMap<String, ProvInstancePrice>();
+		for (var i = PURGE_CHUNK * 2; i > 0; i--) {
+			final var price = new ProvInstancePrice();
+			price.setId(i);
+			price.setCode("code-" + i);
+			previous.put(price.getCode(), price);
+		}
+		final var pRepository = Mockito.mock(ProvInstancePriceRepository.class);
+		final var qRepository = Mockito.mock(ProvQuoteInstanceRepository.class);
+		Mockito.doReturn(PURGE_CHUNK).when(qRepository).deleteUnusedPrices(ArgumentMatchers.anyInt(),
+				ArgumentMatchers.anyInt(), ArgumentMatchers.any());
+
+		purgePrices(newContext, previous, pRepository, qRepository);
 
-		// Unused and not updated price is deleted
-		Mockito.verify(pRepository, Mockito.times(1)).delete(price3);
+		// One statement per identifier range
+		Mockito.verify(qRepository).deleteUnusedPrices(ArgumentMatchers.eq(1), ArgumentMatchers.eq(PURGE_CHUNK),
+				ArgumentMatchers.any());
+		Mockito.verify(qRepository).deleteUnusedPrices(ArgumentMatchers.eq(PURGE_CHUNK + 1),
+				ArgumentMatchers.eq(PURGE_CHUNK * 2), ArgumentMatchers.any());
+		Assertions.assertTrue(previous.isEmpty());
+
+		// No retained price, no more query
+		Mockito.verify(qRepository, Mockito.never()).findUsedPrices(ArgumentMatchers.any());
+		Mockito.verifyNoInteractions(pRepository);
 	}
 
 	@Test
@@ -362,6 +408,8 @@ class TestAbstractImportCatalogResourceTest extends AbstractImportCatalogResourc
 		Assertions.assertNull(resource.getImportCatalogResource());
 		resource.setImportCatalogResource(null);
 		importCatalogResource = Mockito.mock(ImportCatalogResource.class);
+		checkpointRepository = Mockito.mock(ImportCatalogCheckpointRepository.class);
+		stageWriter = Mockito.mock(ImportStageWriter.class);
 		objectMapper = new ObjectMapper();
 	}
 
@@ -380,6 +428,150 @@ class TestAbstractImportCatalogResourceTest extends AbstractImportCatalogResourc
 		Assertions.assertTrue(context.isForce());
 	}
 
+	@Test
+	void initContextStaged() {
+		nodeRepository = Mockito.mock(NodeRepository.class);
+		configuration = Mockito.mock(ConfigurationResource.class);
+		Mockito.when(nodeRepository.findOneExpected("service:prov:test")).thenReturn(new Node());
+		Mockito.when(configuration.get(CONF_IMPORT_BATCH, 0)).thenReturn(100);
+		final AbstractUpdateContext context = new AbstractUpdateContext() {
+			// Nothing
+		};
+		initContext(context, "service:prov:test", false);
+		Assertions.assertEquals(100, context.getStage().getBatchSize());
+		Assertions.assertSame(context.getStage(), new AbstractUpdateContext(context) {
+			// Nothing
+		}.getStage());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void importUnits() throws Exception {
+		configuration = Mockito.mock(ConfigurationResource.class);
+		Mockito.when(configuration.get(CONF_IMPORT_CONCURRENCY, 1)).thenReturn(2);
+		Mockito.when(configuration.get("service:prov:some:import-concurrency", 2)).thenReturn(3);
+		Mockito.when(configuration.get(CONF_IMPORT_QUEUE, 3)).thenReturn(1);
+		final var context = newContext();
+		final var status = new ImportCatalogStatus();
+		Mockito.doAnswer(invocation -> {
+			((Consumer<ImportCatalogStatus>) invocation.getArguments()[1]).accept(status);
+			return null;
+		}).when(importCatalogResource).nextStep(ArgumentMatchers.any(), ArgumentMatchers.any());
+		Assertions.assertEquals(3, newPipeline(context).getConcurrency());
+		Assertions.assertEquals(1, newPipeline(context).getCapacity());
+
+		final var written = new HashSet<String>();
+		importUnits(context, "phase", List.of("r1", "r2", "r3", "r4"), r -> "region-" + r, r -> r + "-parsed",
+				(r, p) -> written.add(p));
+		Assertions.assertEquals(Set.of("r1-parsed", "r2-parsed", "r3-parsed", "r4-parsed"), written);
+		Assertions.assertEquals(4, status.getDone());
+		Assertions.assertEquals("phase", status.getPhase());
+		Assertions.assertTrue(status.getLocation().startsWith("region-r"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void nextStepCoalesced() {
+		final var context = newContext();
+		context.setProgress(new ImportProgress(60000));
+		final var status = new ImportCatalogStatus();
+		status.setNbPrices(10);
+		status.setNbTypes(5);
+		status.setNbLocations(2);
+		Mockito.doAnswer(invocation -> {
+			((Consumer<ImportCatalogStatus>) invocation.getArguments()[1]).accept(status);
+			return null;
+		}).when(importCatalogResource).nextStep(ArgumentMatchers.any(), ArgumentMatchers.any());
+
+		// First step is written with a full count
+		nextStep(context, "phase1", "location1", 1);
+		Assertions.assertEquals(1, status.getDone());
+		Assertions.assertEquals("location1", status.getLocation());
+		Mockito.verify(importCatalogResource).updateStats(status);
+
+		// Next steps are only counted in memory
+		nextStep(context, "phase2", "location2", 1);
+		nextStep(context, "phase2", "location3", 1);
+		Assertions.assertEquals(1, status.getDone());
+		Assertions.assertEquals("phase1", status.getPhase());
+
+		// Counts are maintained incrementally
+		context.getProgress().addPrice(true);
+		context.getProgress().addPrice(false);
+		context.getProgress().addTypes(1);
+		context.getProgress().addLocations(1);
+		context.getProgress().addPurged(3, 1);
+		flushProgress(context);
+		Assertions.assertEquals(3, status.getDone());
+		Assertions.assertEquals("phase2", status.getPhase());
+		Assertions.assertEquals("location3", status.getLocation());
+		Assertions.assertEquals(9, status.getNbPrices());
+		Assertions.assertEquals(1, status.getNbCo2Prices());
+		Assertions.assertEquals(6, status.getNbTypes());
+		Assertions.assertEquals(3, status.getNbLocations());
+		Assertions.assertEquals(3, status.getNbPurgedPrices());
+		Assertions.assertEquals(1, status.getNbRetainedPrices());
+		Mockito.verify(importCatalogResource, Mockito.times(1)).updateStats(ArgumentMatchers.any());
+		Assertions.assertEquals(60000, context.getProgress().getInterval());
+	}
+
+	@Test
+	void importUnitsResume() throws Exception {
+		configuration = Mockito.mock(ConfigurationResource.class);
+		nodeRepository = Mockito.mock(NodeRepository.class);
+		final var node = new Node();
+		node.setId("service:prov:some");
+		Mockito.when(nodeRepository.findOneExpected("service:prov:some")).thenReturn(node);
+		final var checkpoint = new ImportCatalogCheckpoint();
+		checkpoint.setPhase("phase");
+		checkpoint.setLocation("region-r2");
+		Mockito.when(checkpointRepository.findAllByNode("service:prov:some")).thenReturn(List.of(checkpoint));
+		final var context = initContext(new AbstractUpdateContext() {
+			// Nothing
+		}, "service:prov:some", false);
+		Assertions.assertTrue(isCompleted(context, "phase", "region-r2"));
+		Assertions.assertFalse(isCompleted(context, "other", "region-r2"));
+
+		final var written = new HashSet<String>();
+		importUnits(context, "phase", List.of("r1", "r2", "r3"), r -> "region-" + r, r -> r, (r, p) -> written.add(p));
+
+		// Completed unit is skipped, the others are recorded
+		Assertions.assertEquals(Set.of("r1", "r3"), written);
+		Assertions.assertEquals(Set.of("region-r2"), context.getSkippedLocations());
+		Mockito.verify(importCatalogResource).complete("service:prov:some", "phase", "region-r1");
+		Mockito.verify(importCatalogResource).complete("service:prov:some", "phase", "region-r3");
+		Mockito.verify(importCatalogResource, Mockito.never()).complete("service:prov:some", "phase", "region-r2");
+		Assertions.assertTrue(isCompleted(context, "phase", "region-r3"));
+
+		// Prices of the skipped location are not retired
+		final var location = new ProvLocation();
+		location.setName("region-r2");
+		final var price = new ProvInstancePrice();
+		price.setId(1);
+		price.setCode("-skipped-");
+		price.setLocation(location);
+		final var previous = new HashMap<String, ProvInstancePrice>();
+		previous.put(price.getCode(), price);
+		final var qRepository = Mockito.mock(ProvQuoteInstanceRepository.class);
+		purgePrices(context, previous, Mockito.mock(ProvInstancePriceRepository.class), qRepository);
+		Mockito.verify(qRepository, Mockito.never()).deleteUnusedPrices(ArgumentMatchers.anyInt(),
+				ArgumentMatchers.anyInt(), ArgumentMatchers.any());
+
+		// Skipped global unit disables the purge
+		context.getCheckpoints().add(AbstractUpdateContext.toCheckpoint("global", null));
+		Assertions.assertTrue(skipCompleted(context, "global", null));
+		price.setLocation(null);
+		purgePrices(context, previous, Mockito.mock(ProvInstancePriceRepository.class), qRepository);
+		Mockito.verify(qRepository, Mockito.never()).deleteUnusedPrices(ArgumentMatchers.anyInt(),
+				ArgumentMatchers.anyInt(), ArgumentMatchers.any());
+	}
+
+	@Test
+	void getImportConcurrencyDefault() {
+		configuration = Mockito.mock(ConfigurationResource.class);
+		Assertions.assertEquals(1, getImportConcurrency("service:prov:some"));
+	}
+
 	@BeforeEach
 	void setupEm() {
 		this.em = Mockito.mock(EntityManager.class);
@@ -621,6 +813,73 @@ class TestAbstractImportCatalogResourceTest extends AbstractImportCatalogResourc
 		Mockito.verify(repository).save(entity);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	void saveAsNeededStaged() {
+		final var repository = Mockito.mock(ProvSupportPriceRepository.class);
+		final var context = newContext();
+		context.setStage(new ImportStage(2));
+		final var entity1 = new ProvSupportPrice();
+		entity1.setCost(2d);
+		entity1.setCode("code1");
+		final var entity2 = new ProvSupportPrice();
+		entity2.setCost(2d);
+		entity2.setId(1);
+		entity2.setCode("code2");
+		final var entity3 = new ProvSupportPrice();
+		entity3.setCost(3d);
+		entity3.setId(2);
+		entity3.setCode("code3");
+
+		// Staged, not yet written nor accounted
+		saveAsNeeded(context, entity1, 2d, repository);
+		Mockito.verify(repository, Mockito.never()).save(entity1);
+		Mockito.verify(stageWriter, Mockito.never()).write(ArgumentMatchers.any(), ArgumentMatchers.anyInt());
+		Assertions.assertEquals(1, context.getStage().size());
+		Assertions.assertEquals(0, context.getChanges().getSize());
+
+		// Staged again before the write, staged and accounted once
+		saveAsNeeded(context, entity1, 2.5d, repository);
+		Assertions.assertEquals(1, context.getStage().size());
+
+		// Unchanged price is not staged
+		saveAsNeeded(context, entity3, 3d, repository);
+		Assertions.assertEquals(1, context.getStage().size());
+
+		// Batch size is reached
+		saveAsNeeded(context, entity2, 3d, repository);
+		Mockito.verify(stageWriter).write(List.of(entity1, entity2), 2);
+		Assertions.assertEquals(0, context.getStage().size());
+		Assertions.assertEquals(2, context.getStage().getStaged());
+		Assertions.assertEquals(1, context.getStage().getBatches());
+		Assertions.assertEquals(3, context.getPrices().size());
+		Assertions.assertEquals(2, context.getChanges().getSize());
+		Mockito.verify(repository, Mockito.never()).save(ArgumentMatchers.any());
+		Mockito.verify(repository, Mockito.never()).saveAll(ArgumentMatchers.any());
+
+		// The new price is accounted once, with its last cost
+		final var status = new ImportCatalogStatus();
+		Mockito.doAnswer(invocation -> {
+			((Consumer<ImportCatalogStatus>) invocation.getArguments()[1]).accept(status);
+			return null;
+		}).when(importCatalogResource).nextStep(ArgumentMatchers.any(), ArgumentMatchers.any());
+		flushProgress(context);
+		Assertions.assertEquals(1, status.getNbPrices());
+		Assertions.assertEquals(2.5d, entity1.getCost());
+
+		// Remaining staged prices are written before the purge
+		saveAsNeeded(context, entity3, 4d, repository);
+		purgePrices(context, new HashMap<String, ProvInstancePrice>(), Mockito.mock(ProvInstancePriceRepository.class),
+				Mockito.mock(ProvQuoteInstanceRepository.class));
+		Mockito.verify(stageWriter).write(List.of(entity3), 2);
+		Assertions.assertEquals(2, context.getStage().getBatches());
+
+		// Nothing to write
+		flushStage(context);
+		Assertions.assertEquals(2, context.getStage().getBatches());
+		Mockito.verify(stageWriter, Mockito.times(2)).write(ArgumentMatchers.any(), ArgumentMatchers.anyInt());
+	}
+
 	@Test
 	void saveAsNeededSame() {
 		final var entity = newPrice();
@@ -830,6 +1089,50 @@ class TestAbstractImportCatalogResourceTest extends AbstractImportCatalogResourc
 		Assertions.assertEquals(0.268d, toConversion(context, "ap-west"), DELTA);
 		Assertions.assertEquals(0d, toConversion(context, "cn-west-1"));
 
+		// Updated data set, the matcher is built again
+		final var cn = new Co2RegionData();
+		cn.setPue(1d);
+		cn.setGPerKWH(500d);
+		context.getCo2RegionDataSet().put("cn-north", cn);
+		Assertions.assertEquals(0.5d, toConversion(context, "cn-west-1"));
+		Assertions.assertSame(context.getCo2RegionMatcher(), context.getCo2RegionMatcher());
+
+		// Replaced data of a resolved region
+		Assertions.assertEquals(0.24d, toConversion(context, "eu-west-2"));
+		final var eu2 = new Co2RegionData();
+		eu2.setPue(1d);
+		eu2.setGPerKWH(100d);
+		context.getCo2RegionDataSet().put("eu-west-1", eu2);
+		Assertions.assertEquals(0.1d, toConversion(context, "eu-west-2"));
+
+		// Reloaded data set, the matcher is built again
+		final var reloaded = new HashMap<String, Co2RegionData>();
+		reloaded.put("eu-west-1", eu);
+		context.setCo2RegionDataSet(reloaded);
+		Assertions.assertEquals(0.24d, toConversion(context, "eu-west-2"));
+		Assertions.assertEquals(0d, toConversion(context, "cn-west-1"));
+	}
+
+	@Test
+	void toConversionSmallestPrefix() {
+		final var context = newContext();
+		final var w1b = new Co2RegionData();
+		w1b.setPue(1d);
+		w1b.setGPerKWH(100d);
+		final var w1a = new Co2RegionData();
+		w1a.setPue(1d);
+		w1a.setGPerKWH(200d);
+		final var w2 = new Co2RegionData();
+		w2.setPue(1d);
+		w2.setGPerKWH(300d);
+		context.getCo2RegionDataSet().put("eu-west-2", w2);
+		context.getCo2RegionDataSet().put("eu-west-1b", w1b);
+		context.getCo2RegionDataSet().put("eu-west-1a", w1a);
+
+		// Several regions start with "eu-west": the smallest one is used, whatever the order of the data set
+		Assertions.assertEquals(0.2d, toConversion(context, "eu-west-9"));
+		Assertions.assertEquals(0.2d, toConversion(context, "eu.west"));
+		Assertions.assertEquals(0.3d, toConversion(context, "eu-west-2"));
 	}
 
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.instance;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.ligoj.app.plugin.prov.Floating;
+import org.ligoj.app.plugin.prov.model.InternetAccess;
+import org.ligoj.app.plugin.prov.model.VmOs;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rows per second of the export rows written with {@link CsvRowWriter}, compared to the formatted rows. The amount of
+ * rows can be set with the system property <code>export.rows</code>. The measured throughputs are logged. The
+ * throughput is only measured with the system property <code>benchmark=true</code>, while the same output is always
+ * checked.
+ */
+@Slf4j
+class CsvRowWriterBenchmarkTest {
+
+	private static final int ROWS = Integer.getInteger("export.rows", 100_000);
+
+	private static final String[] NAMES = { "server1", "database-primary", "jira", "x" };
+
+	private static final String[] TAGS = { "", "app:jira", "app:jira,env:prod", "key" };
+
+	/**
+	 * The formatted row, as written before {@link CsvRowWriter}.
+	 */
+	private void format(final PrintWriter writer, final int i) {
+		writer.format("\n%s" + ";%s".repeat(28), "INSTANCE", NAMES[i % NAMES.length], toString(0.25d * (1 + i % 8)),
+				toString(i % 3 == 0 ? null : 4d), toString(0d), "", toString(1024d * (1 + i % 16)), "",
+				VmOs.LINUX, "Full Time", "", "", "on-demand1", "eu-west-1", 1 + i % 4, "", toString(10.1d), "100", "",
+				"", "", false, "instance1", "", "", InternetAccess.PUBLIC, "", toString(123.456d + i),
+				TAGS[i % TAGS.length]);
+	}
+
+	private String toString(final Double optional) {
+		return optional == null ? ""
+				: String.valueOf(Floating.round(optional)).replace('.', ',').replaceFirst(",0$", "");
+	}
+
+	/**
+	 * The same row written with {@link CsvRowWriter}.
+	 */
+	private void write(final CsvRowWriter writer, final int i) {
+		writer.newRow().cell("INSTANCE").cell(NAMES[i % NAMES.length]).cell(0.25d * (1 + i % 8))
+				.cell(i % 3 == 0 ? null : 4d).cell(0d).empty(1).cell(1024d * (1 + i % 16)).empty(1).cell(VmOs.LINUX)
+				.cell("Full Time").empty(2).cell("on-demand1").cell("eu-west-1").cell(1 + i % 4).empty(1)
+				.cell(10.1d).cell("100").empty(3).cell(false).cell("instance1").empty(2).cell(InternetAccess.PUBLIC)
+				.empty(1).cell(123.456d + i).cell(TAGS[i % TAGS.length]);
+	}
+
+	private long formatAll(final Writer output, final int rows) {
+		final var start = System.nanoTime();
+		final var writer = new PrintWriter(output);
+		for (var i = 0; i < rows; i++) {
+			format(writer, i);
+		}
+		writer.flush();
+		return System.nanoTime() - start;
+	}
+
+	private long writeAll(final Writer output, final int rows) {
+		final var start = System.nanoTime();
+		final var writer = new CsvRowWriter(new PrintWriter(output), Locale.FRANCE);
+		for (var i = 0; i < rows; i++) {
+			write(writer, i);
+		}
+		writer.flush();
+		return System.nanoTime() - start;
+	}
+
+	@Test
+	void sameOutput() {
+		final var formatted = new StringWriter();
+		formatAll(formatted, 1000);
+		final var written = new StringWriter();
+		writeAll(written, 1000);
+		Assertions.assertEquals(formatted.toString(), written.toString());
+	}
+
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void rowsPerSecond() {
+		// Warm-up
+		formatAll(Writer.nullWriter(), ROWS / 10);
+		writeAll(Writer.nullWriter(), ROWS / 10);
+
+		final var formatDuration = formatAll(Writer.nullWriter(), ROWS);
+		final var writeDuration = writeAll(Writer.nullWriter(), ROWS);
+		log.info("Export rows: {} rows, format {} rows/s, row writer {} rows/s", ROWS,
+				ROWS * 1_000_000_000L / Math.max(1, formatDuration), ROWS * 1_000_000_000L / Math.max(1, writeDuration));
+		Assertions.assertTrue(writeDuration > 0);
+	}
+}
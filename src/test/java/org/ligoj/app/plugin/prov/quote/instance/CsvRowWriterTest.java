@@ -0,0 +1,90 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.instance;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.Rate;
+
+/**
+ * Test class of {@link CsvRowWriter}
+ */
+class CsvRowWriterTest {
+
+	private String write(final Locale locale, final Consumer<CsvRowWriter> consumer) {
+		final var output = new StringWriter();
+		final var writer = new CsvRowWriter(new PrintWriter(output), locale);
+		consumer.accept(writer);
+		writer.flush();
+		return output.toString();
+	}
+
+	private String write(final Consumer<CsvRowWriter> consumer) {
+		return write(Locale.FRANCE, consumer);
+	}
+
+	@Test
+	void decimal() {
+		Assertions.assertEquals("0;1;-1;0,5;2000;10,1;0,128;135,42;0,005;-0,05;1,001;0,002",
+				write(w -> w.cell(0d).cell(1d).cell(-1d).cell(0.5d).cell(2000d).cell(10.1d).cell(0.128d)
+						.cell(135.42d).cell(0.005d).cell(-0.05d).cell(1.0006d).cell(0.0019d)));
+	}
+
+	@Test
+	void decimalLocale() {
+		Assertions.assertEquals("0.5;292.8", write(Locale.ENGLISH, w -> w.cell(0.5d).cell(292.8d)));
+	}
+
+	@Test
+	void decimalPlain() {
+		// Formerly written "1,0E7", now with plain digits below 1e15
+		Assertions.assertEquals("10000000;15000000,5;-20000000;9999999999999,123;999999999999999",
+				write(w -> w.cell(1e7d).cell(1.50000005e7d).cell(-2e7d).cell(9999999999999.123d)
+						.cell(999999999999999d)));
+	}
+
+	@Test
+	void decimalLarge() {
+		Assertions.assertEquals("1,0E16;NaN", write(w -> w.cell(1e16d).cell(Double.NaN)));
+	}
+
+	@Test
+	void nullable() {
+		Assertions.assertEquals(";;;;1;2,5;x",
+				write(w -> w.cell((Double) null).cell((Integer) null).cell((CharSequence) null).cell((Object) null)
+						.cell(Integer.valueOf(1)).cell(Double.valueOf(2.5d)).cell("x")));
+	}
+
+	@Test
+	void object() {
+		final var location = new ProvLocation();
+		location.setName("eu-west-1");
+		Assertions.assertEquals("eu-west-1;GOOD;true;false;42",
+				write(w -> w.cell(location).cell(Rate.GOOD).cell(Boolean.TRUE).cell(false).cell(42)));
+	}
+
+	@Test
+	void rows() {
+		Assertions.assertEquals("a;b\nx;;;y\n;;z\n;",
+				write(w -> w.text("a;b").newRow().cell("x").empty(2).cell("y").newRow().empty(2).cell("z").newRow()
+						.empty(0).empty(2)));
+	}
+
+	@Test
+	void emptyMany() {
+		Assertions.assertEquals("x" + ";".repeat(100), write(w -> w.cell("x").empty(100)));
+	}
+
+	@Test
+	void longRow() {
+		final var value = "v".repeat(2000);
+		Assertions.assertEquals(value + ";" + value + "\n1", write(w -> w.cell(value).cell(value).newRow().cell(1)));
+	}
+}
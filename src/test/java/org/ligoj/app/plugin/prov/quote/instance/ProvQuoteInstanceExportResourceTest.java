@@ -112,13 +112,13 @@ class ProvQuoteInstanceExportResourceTest extends AbstractProvResourceTest {
 						+ ";51;;storage2;MEDIUM;THROUGHPUT;155,6;",
 				lines.get(1));
 
-		// Instance without disk
+		// Instance without disk, the resources are ordered by name
 		Assertions.assertEquals(
 				"INSTANCE;server2;0,25;;0;;1000;;LINUX;;;;on-demand2;;1;1;;;Intel;;true;true;instance1;;;PRIVATE;;128,1;",
-				lines.get(7));
+				lines.get(2));
 		Assertions.assertEquals(
 				"INSTANCE;server4;1;;0;;2000;;DEBIAN;;;;on-demand1;;1;1;;15;;;;false;instance3;;;PUBLIC;;292,8;",
-				lines.get(3));
+				lines.get(4));
 
 		// Container
 		Assertions.assertEquals(
@@ -139,6 +139,22 @@ class ProvQuoteInstanceExportResourceTest extends AbstractProvResourceTest {
 				lines.get(8));
 	}
 
+	@Test
+	void exportInlineStorageTags() throws IOException {
+		final var entity = new ProvTag();
+		entity.setName("disk");
+		entity.setValue("root");
+		entity.setResource(qsRepository.findByName("server1-root").getId());
+		entity.setType(ResourceType.STORAGE);
+		entity.setConfiguration(repository.findBy("subscription.id", subscription));
+		em.persist(entity);
+		em.flush();
+		em.clear();
+
+		Assertions.assertTrue(export().get(1).endsWith(";key:value,key3;20;;storage1;GOOD;IOPS;8,4;disk:root"
+				+ ";10;;storage2;MEDIUM;THROUGHPUT;155,6;;51;;storage2;MEDIUM;THROUGHPUT;155,6;"));
+	}
+
 	/**
 	 * Full round trip: empty, export, import, export, import.
 	 */
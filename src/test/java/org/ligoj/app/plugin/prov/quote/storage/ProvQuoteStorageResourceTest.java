@@ -21,6 +21,7 @@ import org.springframework.orm.jpa.JpaObjectRetrievalFailureException;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * Test class of {@link ProvQuoteStorageResource}
@@ -403,6 +404,52 @@ class ProvQuoteStorageResourceTest extends AbstractProvResourceTest {
 		assertTags(storage);
 	}
 
+	@Test
+	void createAll() {
+		final var quote = getQuote();
+		final var vo = new QuoteStorageEditionVo();
+		vo.setSubscription(subscription);
+		vo.setName("server1-root-ter");
+		vo.setType("storage1");
+		vo.setSize(256);
+		vo.setQuantity(10);
+		final var entity = qsResource.newStorage(quote, vo);
+		vo.setName("server1-root-bis");
+		vo.setInstance(server1());
+		vo.setSize(512);
+		vo.setQuantity(null);
+		final var entity2 = qsResource.newStorage(quote, vo);
+		Assertions.assertNull(entity.getId());
+
+		final var cost = qsResource.createAll(quote, List.of(entity, entity2));
+		Assertions.assertNull(cost.getId());
+		final var related = cost.getRelated().get(ResourceType.STORAGE);
+		Assertions.assertEquals(2, related.size());
+		checkCost(related.get(entity.getId()), 537.6, 537.6, false);
+		checkCost(related.get(entity2.getId()), 215.04, 1075.2, false);
+		final var total = cost.getTotal();
+		em.flush();
+		em.clear();
+
+		// Check the exact new cost
+		checkCost(subscription, total.getMin(), total.getMax(), false);
+		Assertions.assertEquals(server1(), qsRepository.findOneExpected(entity2.getId()).getQuoteInstance().getId());
+		Assertions.assertTrue(qsResource.createAll(quote, List.of()).getRelated().isEmpty());
+	}
+
+	@Test
+	void newStorageIncompatible() {
+		final var vo = new QuoteStorageEditionVo();
+		vo.setSubscription(subscription);
+		vo.setName("storage3-root-bis");
+		vo.setType("storage3");
+		vo.setInstance(server1());
+		vo.setSize(1);
+		MatcherUtil.assertThrows(
+				Assertions.assertThrows(ValidationJsonException.class, () -> qsResource.newStorage(getQuote(), vo)),
+				"type", "type-incompatible-requirements");
+	}
+
 	@Test
 	void refresh() {
 		// Create with constraints
@@ -0,0 +1,105 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test class of {@link ProvQuoteUploadBulkResource}
+ */
+class ProvQuoteUploadBulkResourceTest extends AbstractProvResourceTest {
+
+	@Autowired
+	private ProvQuoteUploadBulkResource bulkResource;
+
+	@Test
+	void bulk() throws IOException {
+		final var content = """
+				{"instance":{"name":"bulk-a","cpu":0.5,"ram":500,"os":"LINUX","tags":[{"name":"app","value":"one"}]}}
+				{"storage":{"name":"bulk-s","size":10}}
+				{"instance":{"name":"bulk-b","unknown":1}}
+				{"instance":{"name":"bulk-c","os":"LINUX"},"storage":{"name":"bulk-c"}}
+
+				{"storage":{"name":"bulk-s","size":5}}
+				""";
+		final var output = new ByteArrayOutputStream();
+		bulkResource.bulk(subscription, MergeMode.INSERT, true, 0,
+				new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))).write(output);
+		final var results = new ObjectMapper().readerFor(BulkResult.class)
+				.<BulkResult>readValues(output.toByteArray()).readAll();
+		Assertions.assertEquals(5, results.size());
+
+		// Created instance and storage
+		final var configuration = getConfiguration();
+		Assertions.assertEquals(8, configuration.getInstances().size());
+		Assertions.assertEquals(5, configuration.getStorages().size());
+		final var instance = results.getFirst();
+		Assertions.assertEquals(1, instance.getLine());
+		Assertions.assertEquals(ResourceType.INSTANCE, instance.getType());
+		Assertions.assertEquals(findByName(configuration.getInstances(), "bulk-a").getId(), instance.getId());
+		Assertions.assertNotNull(instance.getPrice());
+		Assertions.assertNull(instance.getErrors());
+		Assertions.assertEquals("one",
+				configuration.getTags().get(ResourceType.INSTANCE).get(instance.getId()).getFirst().getValue());
+		final var storage = results.get(1);
+		Assertions.assertEquals(ResourceType.STORAGE, storage.getType());
+		Assertions.assertEquals(findByName(configuration.getStorages(), "bulk-s").getId(), storage.getId());
+		Assertions.assertEquals(10, findByName(configuration.getStorages(), "bulk-s").getSize());
+
+		// Failed lines, the blank line is ignored
+		Assertions.assertEquals("bulk-invalid-json",
+				results.get(2).getErrors().get("line").getFirst().get("rule"));
+		Assertions.assertEquals("bulk-one-resource",
+				results.get(3).getErrors().get("line").getFirst().get("rule"));
+		Assertions.assertEquals(6, results.get(4).getLine());
+		Assertions.assertNull(results.get(4).getId());
+		Assertions.assertNotNull(results.get(4).getErrors());
+	}
+
+	@Test
+	void bulkFailed() throws IOException {
+		configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK, "1");
+		try {
+			final var content = """
+					{"instance":{"name":"bulk-a","cpu":0.5,"ram":500,"os":"LINUX"}}
+					{"instance":{"name":"bulk-a","cpu":0.5,"ram":500,"os":"LINUX"}}
+					{"instance":{"name":"bulk-c","cpu":0.5,"ram":500,"os":"LINUX"}}
+					""";
+			final var output = new ByteArrayOutputStream();
+			bulkResource.bulk(subscription, MergeMode.INSERT, false, 0,
+					new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))).write(output);
+			final var results = new ObjectMapper().readerFor(BulkResult.class)
+					.<BulkResult>readValues(output.toByteArray()).readAll();
+
+			// The stream stops at the first failure
+			Assertions.assertEquals(2, results.size());
+			Assertions.assertEquals(2, results.get(1).getLine());
+			Assertions.assertNotNull(results.get(1).getErrors());
+			Assertions.assertEquals(8, getConfiguration().getInstances().size());
+
+			// Resume after the committed line
+			final var output2 = new ByteArrayOutputStream();
+			bulkResource.bulk(subscription, MergeMode.KEEP, false, 1,
+					new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))).write(output2);
+			Assertions.assertEquals(2, new ObjectMapper().readerFor(BulkResult.class).readValues(output2.toByteArray())
+					.readAll().size());
+			final var instances = getConfiguration().getInstances();
+			Assertions.assertEquals(10, instances.size());
+			Assertions.assertNotNull(findByName(instances, "bulk-c"));
+		} finally {
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK);
+		}
+	}
+}
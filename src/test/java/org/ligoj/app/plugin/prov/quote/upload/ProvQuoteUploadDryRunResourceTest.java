@@ -0,0 +1,121 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.quote.upload;
+
+import static org.ligoj.app.plugin.prov.quote.upload.ProvQuoteUploadResource.DEFAULT_ENCODING;
+import static org.ligoj.app.plugin.prov.quote.upload.ProvQuoteUploadResource.DEFAULT_SEPARATOR;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
+import org.ligoj.app.plugin.prov.model.ResourceType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test class of {@link ProvQuoteUploadDryRunResource}
+ */
+class ProvQuoteUploadDryRunResourceTest extends AbstractProvResourceTest {
+
+	@Autowired
+	private ProvQuoteUploadResource qiuResource;
+
+	@Autowired
+	private ProvQuoteUploadDryRunResource dryRunResource;
+
+	@Test
+	void dryRun() throws IOException {
+		final var reader = new BufferedReader(
+				new StringReader("ANY;0.5;500;LINUX;10\nANY;999;6;WINDOWS;0\nANY;1;2000;LINUX;0"));
+		final var context = qiuResource.newContext(subscription, reader,
+				new String[]{"name", "cpu", "ram", "os", "disk"}, false, null, null, null, MergeMode.INSERT, 1, true,
+				false, false, false, DEFAULT_SEPARATOR);
+		final var prices = new ArrayList<UploadPrice>();
+		final var total = dryRunResource.dryRun(context, reader, prices::add);
+		Assertions.assertEquals(3, total.getParsed());
+		Assertions.assertEquals(2, total.getPriced());
+		Assertions.assertEquals(1, total.getFailed());
+		Assertions.assertEquals(3, total.getDistinct());
+		Assertions.assertEquals(3, prices.size());
+
+		// Priced entry with a disk
+		final var first = prices.getFirst();
+		Assertions.assertEquals(1, first.getLine());
+		Assertions.assertEquals(ResourceType.INSTANCE, first.getType());
+		Assertions.assertNotNull(first.getPrice());
+		Assertions.assertEquals(1, first.getStorages().size());
+		Assertions.assertTrue(first.getCost().getMin() > 0);
+
+		// Failed entry
+		final var failed = prices.get(1);
+		Assertions.assertEquals(2, failed.getLine());
+		Assertions.assertNull(failed.getCost());
+		Assertions.assertTrue(failed.getErrors().containsKey("csv-file.instance"));
+		Assertions.assertEquals(first.getCost().getMin() + prices.get(2).getCost().getMin(), total.getCost().getMin(),
+				DELTA);
+
+		// Nothing is persisted
+		Assertions.assertEquals(7, getConfiguration().getInstances().size());
+	}
+
+	@Test
+	void dryRunSharedShapes() throws IOException {
+		final var reader = new BufferedReader(new StringReader(
+				"host-a;0.5;500;LINUX\nhost-x;999;6;WINDOWS\nhost-b;0.5;500;LINUX\nhost-y;999;6;WINDOWS\nhost-c;1;2000;LINUX"));
+		final var context = qiuResource.newContext(subscription, reader, new String[]{"name", "cpu", "ram", "os"},
+				false, null, null, null, MergeMode.INSERT, 1, true, false, false, false, DEFAULT_SEPARATOR);
+		final var prices = new ArrayList<UploadPrice>();
+		final var total = dryRunResource.dryRun(context, reader, prices::add);
+		Assertions.assertEquals(5, total.getParsed());
+		Assertions.assertEquals(3, total.getPriced());
+		Assertions.assertEquals(2, total.getFailed());
+		Assertions.assertEquals(3, total.getDistinct());
+
+		// Same shape, same price
+		Assertions.assertEquals(prices.get(0).getPrice(), prices.get(2).getPrice());
+		Assertions.assertEquals(prices.get(0).getCost().getMin(), prices.get(2).getCost().getMin(), DELTA);
+		Assertions.assertEquals("host-c", prices.get(4).getName());
+		Assertions.assertNotNull(prices.get(4).getPrice());
+
+		// Same failing shape, each error is related to its own entry
+		Assertions.assertTrue(prices.get(1).getErrors().get("csv-file.instance").toString().contains("host-x"));
+		Assertions.assertTrue(prices.get(3).getErrors().get("csv-file.instance").toString().contains("host-y"));
+		Assertions.assertFalse(prices.get(3).getErrors().get("csv-file.instance").toString().contains("host-x"));
+	}
+
+	@Test
+	void dryRunStream() throws IOException {
+		final var output = new ByteArrayOutputStream();
+		dryRunResource.dryRun(subscription,
+				new ByteArrayInputStream("ANY;0.5;500;LINUX\nANY;1;2000;LINUX".getBytes(StandardCharsets.UTF_8)),
+				new String[]{"name", "cpu", "ram", "os"}, false, null, null, null, 1, DEFAULT_ENCODING, false, false,
+				false, DEFAULT_SEPARATOR).write(output);
+		final var json = new ObjectMapper().readTree(output.toByteArray());
+		Assertions.assertEquals(2, json.get("entries").size());
+		Assertions.assertEquals("ANY", json.get("entries").get(1).get("name").asText());
+		Assertions.assertEquals(2, json.get("total").get("priced").asInt());
+		Assertions.assertEquals(7, getConfiguration().getInstances().size());
+	}
+
+	@Test
+	void dryRunMultipart() throws IOException {
+		final var output = new ByteArrayOutputStream();
+		dryRunResource.dryRun(subscription,
+				new ByteArrayInputStream("name;cpu;ram;os\nANY;0.5;500;LINUX".getBytes(StandardCharsets.UTF_8)), null,
+				"true", null, null, null, null, null, null, null, null, null).write(output);
+		final var json = new ObjectMapper().readTree(output.toByteArray());
+		Assertions.assertEquals(1, json.get("entries").size());
+		Assertions.assertEquals(1, json.get("total").get("priced").asInt());
+		Assertions.assertEquals(7, getConfiguration().getInstances().size());
+	}
+}
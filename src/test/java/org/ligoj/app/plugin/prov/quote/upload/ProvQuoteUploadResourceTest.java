@@ -3,10 +3,15 @@
  */
 package org.ligoj.app.plugin.prov.quote.upload;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.EntityNotFoundException;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.model.Subscription;
 import org.ligoj.app.plugin.prov.AbstractProvResourceTest;
 import org.ligoj.app.plugin.prov.Floating;
 import org.ligoj.app.plugin.prov.ProvResource;
@@ -14,15 +19,29 @@ import org.ligoj.app.plugin.prov.QuoteVo;
 import org.ligoj.app.plugin.prov.model.*;
 import org.ligoj.bootstrap.MatcherUtil;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.model.system.SystemAuthorization;
+import org.ligoj.bootstrap.model.system.SystemRole;
+import org.ligoj.bootstrap.model.system.SystemRoleAssignment;
+import org.ligoj.bootstrap.model.system.SystemUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.transaction.TestTransaction;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.ligoj.app.plugin.prov.quote.upload.ProvQuoteUploadResource.DEFAULT_ENCODING;
 import static org.ligoj.app.plugin.prov.quote.upload.ProvQuoteUploadResource.DEFAULT_SEPARATOR;
@@ -448,6 +467,53 @@ class ProvQuoteUploadResourceTest extends AbstractProvResourceTest {
 				null, null, null, MergeMode.UPDATE, 1, true, DEFAULT_ENCODING, false, false, false, DEFAULT_SEPARATOR);
 	}
 
+	@Test
+	void uploadTagsDuplicateContinue() throws IOException {
+		qiuResource.upload(subscription, "ANY;0.5;500;LINUX;app:jira,app:jira;8\nOTHER;0.5;500;LINUX;app:jira;8",
+				new String[]{"name", "cpu", "ram", "os", "tags", "disk"}, false, null, null, null, MergeMode.KEEP, 1,
+				true, DEFAULT_ENCODING, false, false, false, DEFAULT_SEPARATOR);
+
+		// Only the row with the duplicate tag is ignored, the other rows of the chunk are kept
+		final var configuration = getConfiguration();
+		Assertions.assertEquals(8, configuration.getInstances().size());
+		Assertions.assertNull(findByName(configuration.getInstances(), "ANY"));
+		Assertions.assertNull(findByName(configuration.getStorages(), "ANY"));
+		final var id = findByName(configuration.getInstances(), "OTHER").getId();
+		Assertions.assertEquals(1, configuration.getTags().get(ResourceType.INSTANCE).get(id).size());
+		final var sid = findByName(configuration.getStorages(), "OTHER").getId();
+		Assertions.assertEquals(1, configuration.getTags().get(ResourceType.STORAGE).get(sid).size());
+	}
+
+	@Test
+	void uploadStorageNameConflictContinue() throws IOException {
+		// "shared-data" is an existing storage without instance
+		qiuResource.upload(subscription, "shared-data;0.5;500;LINUX;8\nOTHER;0.5;500;LINUX;8",
+				new String[]{"name", "cpu", "ram", "os", "disk"}, false, null, null, null, MergeMode.UPDATE, 1, true,
+				DEFAULT_ENCODING, false, false, false, DEFAULT_SEPARATOR);
+
+		// Only the row with the conflicting disk name is ignored, the other rows of the chunk are kept
+		final var configuration = getConfiguration();
+		Assertions.assertEquals(8, configuration.getInstances().size());
+		Assertions.assertNull(findByName(configuration.getInstances(), "shared-data"));
+		Assertions.assertEquals(5, configuration.getStorages().size());
+		Assertions.assertNull(findByName(configuration.getStorages(), "shared-data").getInstance());
+		Assertions.assertNotNull(findByName(configuration.getStorages(), "OTHER").getInstance());
+	}
+
+	@Test
+	void uploadStorageNameConflictKeep() throws IOException {
+		qiuResource.upload(subscription, "shared-data;0.5;500;LINUX;8",
+				new String[]{"name", "cpu", "ram", "os", "disk"}, false, null, null, null, MergeMode.KEEP, 1, false,
+				DEFAULT_ENCODING, false, false, false, DEFAULT_SEPARATOR);
+
+		// The new disk is renamed, the previous storage is kept
+		final var configuration = getConfiguration();
+		final var id = findByName(configuration.getInstances(), "shared-data").getId();
+		Assertions.assertEquals(5, configuration.getStorages().size());
+		Assertions.assertNull(findByName(configuration.getStorages(), "shared-data").getInstance());
+		Assertions.assertEquals(id, findByName(configuration.getStorages(), "shared-data 1").getInstance());
+	}
+
 	@Test
 	void uploadUpdate() throws IOException {
 		qiuResource.upload(subscription, "ANY;0.5;500;LINUX\nANY 1;1;2000;LINUX\nANY;2;1000;LINUX",
@@ -593,6 +659,264 @@ class ProvQuoteUploadResourceTest extends AbstractProvResourceTest {
 		}
 	}
 
+	@Test
+	void uploadChunks() throws IOException {
+		configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK, "2");
+		try {
+			final var cursor = uploadStream("ANY;0.5;500;LINUX\nANY;1;2000;LINUX\nANY;1;1000;LINUX\nANY;2;1000;LINUX\nANY;1;500;LINUX",
+					0);
+			Assertions.assertEquals(5, cursor.getRows());
+			Assertions.assertEquals(5, cursor.getCursor());
+			Assertions.assertEquals(5, cursor.getDistinct());
+			final var configuration = getConfiguration();
+			Assertions.assertEquals(12, configuration.getInstances().size());
+			Assertions.assertEquals("ANY 4", configuration.getInstances().get(11).getName());
+		} finally {
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK);
+		}
+	}
+
+	@Test
+	void uploadResume() throws IOException {
+		final var cursor = uploadStream("ANY;0.5;500;LINUX\nANY;1;2000;LINUX\nANY;2;1000;LINUX", 2);
+		Assertions.assertEquals(3, cursor.getRows());
+		Assertions.assertEquals(3, cursor.getCursor());
+		final var configuration = getConfiguration();
+		Assertions.assertEquals(8, configuration.getInstances().size());
+		Assertions.assertEquals(2D, configuration.getInstances().get(7).getCpu());
+	}
+
+	@Test
+	void uploadChunksFailure() {
+		configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK, "2");
+		try {
+			final var e = Assertions.assertThrows(ValidationJsonException.class,
+					() -> uploadStream("ANY;0.5;500;LINUX\nANY;1;2000;LINUX\nANY;999;6;WINDOWS", 0));
+			MatcherUtil.assertThrows(e, "csv-file.instance", "no-match-instance");
+			@SuppressWarnings("unchecked")
+			final var parameters = (Map<String, Serializable>) e.getErrors().get("csv-file").getFirst().get("parameters");
+			Assertions.assertEquals(2, parameters.get("cursor"));
+		} finally {
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK);
+		}
+	}
+
+	@Test
+	void uploadChunksStoragesAndTags() throws IOException {
+		configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK, "2");
+		try {
+			// The second entry has an invalid tag, and is fully ignored
+			final var content = "A;0.5;500;LINUX;app:one;8\nB;0.5;500;LINUX;app:!!;8\nC;1;1000;LINUX;env;10";
+			final var cursor = qiuResource.upload(subscription,
+					new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+					new String[]{"name", "cpu", "ram", "os", "tags", "disk"}, false, null, null, null, MergeMode.KEEP,
+					1, true, DEFAULT_ENCODING, false, false, false, DEFAULT_SEPARATOR, 0);
+			Assertions.assertEquals(3, cursor.getCursor());
+			final var configuration = getConfiguration();
+			Assertions.assertEquals(9, configuration.getInstances().size());
+			Assertions.assertNull(findByName(configuration.getInstances(), "B"));
+			Assertions.assertEquals(6, configuration.getStorages().size());
+			Assertions.assertNull(findByName(configuration.getStorages(), "B"));
+
+			final var id = findByName(configuration.getInstances(), "A").getId();
+			final var tag = configuration.getTags().get(ResourceType.INSTANCE).get(id).getFirst();
+			Assertions.assertEquals("app", tag.getName());
+			Assertions.assertEquals("one", tag.getValue());
+			final var storage = findByName(configuration.getStorages(), "A");
+			Assertions.assertEquals(id, storage.getQuoteInstance().getId());
+			Assertions.assertEquals("one",
+					configuration.getTags().get(ResourceType.STORAGE).get(storage.getId()).getFirst().getValue());
+			final var storage2 = findByName(configuration.getStorages(), "C");
+			Assertions.assertEquals(10, storage2.getSize());
+			final var tag2 = configuration.getTags().get(ResourceType.STORAGE).get(storage2.getId()).getFirst();
+			Assertions.assertEquals("env", tag2.getName());
+			Assertions.assertNull(tag2.getValue());
+		} finally {
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK);
+		}
+	}
+
+	private UploadCursor uploadParallel(final String content) throws IOException {
+		return qiuResource.upload(subscription, newStream(content),
+				new String[]{"\"name\"", "cpu", "gpu", "ram", "disk", "latency", "os", "workload", "description"},
+				false, "Full Time 12 month", null, null, MergeMode.KEEP, 1, false, DEFAULT_ENCODING, false, false,
+				false, DEFAULT_SEPARATOR, 0);
+	}
+
+	/**
+	 * Return the sorted prices of the instances and the storages of a quote.
+	 */
+	private List<String> toPrices(final QuoteVo quote) {
+		return Stream.concat(quote.getInstances().stream().map(i -> i.getName() + "=" + i.getPrice().getCode()),
+				quote.getStorages().stream().map(s -> s.getName() + "=" + s.getPrice().getCode())).sorted().toList();
+	}
+
+	/**
+	 * Delete the committed test data, within a committed transaction.
+	 */
+	private void deleteCommitted() {
+		TestTransaction.start();
+		em.createQuery("UPDATE ProvQuote SET usage = NULL, budget = NULL, optimizer = NULL").executeUpdate();
+		Stream.of(ProvQuoteStorage.class, ProvQuoteInstance.class, ProvUsage.class, ProvBudget.class,
+				ProvOptimizer.class, ProvQuote.class, ProvStoragePrice.class, ProvStorageType.class,
+				ProvInstancePrice.class, ProvInstancePriceTerm.class, ProvInstanceType.class, ProvCurrency.class,
+				ProvLocation.class, Subscription.class, Project.class, SystemAuthorization.class,
+				SystemRoleAssignment.class, SystemUser.class, SystemRole.class)
+				.forEach(type -> em.createQuery("DELETE FROM " + type.getSimpleName()).executeUpdate());
+		// The refined nodes first
+		em.createQuery("FROM Node", Node.class).getResultList().stream()
+				.sorted(Comparator.comparing((Node n) -> n.getId().length()).reversed()).forEach(em::remove);
+		TestTransaction.flagForCommit();
+		TestTransaction.end();
+		clearAllCache();
+	}
+
+	@Test
+	void uploadParallel() throws IOException {
+		final var content = IOUtils.toString(new ClassPathResource("csv/upload/upload.csv").getInputStream(),
+				StandardCharsets.UTF_8);
+
+		// Within the test transaction, the lookups run in the current thread
+		uploadParallel(content);
+		final var sequential = toPrices(getConfiguration());
+		Assertions.assertEquals(18 + 15, sequential.size());
+
+		// Without transaction, the lookups run in the lookup pool and read the committed data
+		TestTransaction.end();
+		TestTransaction.start();
+		prepareData();
+		TestTransaction.flagForCommit();
+		TestTransaction.end();
+		try {
+			configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_LOOKUP_CONCURRENCY, "4");
+			configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK, "5");
+			final var cursor = uploadParallel(content);
+			Assertions.assertEquals(11, cursor.getCursor());
+			Assertions.assertEquals(sequential, toPrices(resource.getConfiguration(subscription)));
+		} finally {
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_LOOKUP_CONCURRENCY);
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK);
+			configuration.delete(ProvResource.USE_PARALLEL);
+			deleteCommitted();
+		}
+	}
+
+	private UploadCursor uploadStream(final String content, final int skip) throws IOException {
+		return qiuResource.upload(subscription, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+				new String[]{"name", "cpu", "ram", "os"}, false, null, null, null, MergeMode.KEEP, 1, false,
+				DEFAULT_ENCODING, false, false, false, DEFAULT_SEPARATOR, skip);
+	}
+
+	/**
+	 * A {@link ProvQuoteUploadResource} whose task operations run in the current (test) transaction instead of a new
+	 * one, so the uncommitted test data is visible.
+	 */
+	static class TestProvQuoteUploadResource extends ProvQuoteUploadResource {
+
+		@Override
+		public ProvQuoteUploadStatus startTask(final Integer lockedId,
+				final Consumer<ProvQuoteUploadStatus> initializer) {
+			return startTaskInternal(lockedId, initializer);
+		}
+
+		@Override
+		public ProvQuoteUploadStatus nextStep(final Integer lockedId, final Consumer<ProvQuoteUploadStatus> stepper) {
+			return nextStepInternal(lockedId, stepper);
+		}
+
+		@Override
+		public ProvQuoteUploadStatus endTask(final Integer lockedId, final boolean failed) {
+			return endTaskInternal(lockedId, failed, t -> {
+				// Nothing to do by default
+			});
+		}
+
+		@Override
+		public ProvQuoteUploadStatus endTask(final Integer lockedId, final boolean failed,
+				final Consumer<ProvQuoteUploadStatus> finalizer) {
+			return endTaskInternal(lockedId, failed, finalizer);
+		}
+	}
+
+	private ProvQuoteUploadResource newTaskResource() {
+		final var resource = new TestProvQuoteUploadResource();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(resource);
+		resource.self = resource;
+		return resource;
+	}
+
+	private ProvQuoteUploadStatus uploadTask(final ProvQuoteUploadResource resource, final String content)
+			throws IOException {
+		final var file = File.createTempFile("prov-upload-test", ".csv");
+		final var reader = new BufferedReader(new StringReader(content));
+		final var context = resource.newContext(subscription, reader, new String[]{"name", "cpu", "ram", "os"},
+				false, null, null, null, MergeMode.KEEP, 1, true, false, false, false, DEFAULT_SEPARATOR);
+		Assertions.assertEquals(0, resource.startUpload(context, 0).getParsed());
+		resource.runUpload(context, reader, file, 0);
+		Assertions.assertFalse(file.exists());
+		return resource.getTaskRepository().findBy("locked.id", subscription);
+	}
+
+	@Test
+	void uploadTask() throws IOException {
+		final var resource = newTaskResource();
+		final var task = uploadTask(resource, "ANY;0.5;500;LINUX\nANY;999;6;WINDOWS\nANY;1;2000;LINUX");
+		Assertions.assertTrue(task.isFinished());
+		Assertions.assertFalse(task.isFailed());
+		Assertions.assertEquals(3, task.getParsed());
+		Assertions.assertEquals(2, task.getPriced());
+		Assertions.assertEquals(2, task.getPersisted());
+		Assertions.assertEquals(1, task.getFailed());
+		Assertions.assertEquals(3, task.getCursor());
+		Assertions.assertEquals(3, task.getDistinct());
+		Assertions.assertEquals(9, getConfiguration().getInstances().size());
+
+		// Failure details
+		final var errors = resource.findErrors(subscription);
+		Assertions.assertEquals(1, errors.size());
+		Assertions.assertEquals(2, errors.getFirst().getLine());
+		Assertions.assertEquals("ANY", errors.getFirst().getName());
+		Assertions.assertTrue(errors.getFirst().getErrors().contains("no-match-instance"));
+	}
+
+	@Test
+	void uploadTaskLongErrors() throws IOException {
+		final var resource = newTaskResource();
+		final var name = "ANY" + "-".repeat(5000);
+		final var task = uploadTask(resource, name + ";999;6;WINDOWS\nANY;0.5;500;LINUX");
+		Assertions.assertEquals(1, task.getFailed());
+
+		// The errors are kept as a valid JSON, never cut
+		final var error = resource.findErrors(subscription).getFirst();
+		Assertions.assertEquals(StringUtils.abbreviate(name, 255), error.getName());
+		Assertions.assertTrue(error.getErrors().length() <= 4000);
+		Assertions.assertNotNull(new ObjectMapper().readTree(error.getErrors()));
+	}
+
+	@Test
+	void uploadTaskCancel() throws IOException {
+		configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK, "1");
+		try {
+			final var resource = newTaskResource();
+			final var file = File.createTempFile("prov-upload-test", ".csv");
+			final var reader = new BufferedReader(new StringReader("ANY;0.5;500;LINUX\nANY;1;2000;LINUX"));
+			final var context = resource.newContext(subscription, reader, new String[]{"name", "cpu", "ram", "os"},
+					false, null, null, null, MergeMode.KEEP, 1, false, false, false, false, DEFAULT_SEPARATOR);
+			resource.startUpload(context, 0);
+			Assertions.assertTrue(resource.cancel(subscription).isFailed());
+
+			// The upload stops after the first chunk
+			resource.runUpload(context, reader, file, 0);
+			Assertions.assertFalse(file.exists());
+			final var task = resource.getTaskRepository().findBy("locked.id", subscription);
+			Assertions.assertTrue(task.isFinished());
+			Assertions.assertTrue(task.isFailed());
+			Assertions.assertEquals(8, getConfiguration().getInstances().size());
+		} finally {
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_CHUNK);
+		}
+	}
+
 	@Test
 	void uploadInstanceNotFoundContinue() throws IOException {
 		final var input = "ANY;999;6;WINDOWS";
@@ -648,6 +972,24 @@ class ProvQuoteUploadResourceTest extends AbstractProvResourceTest {
 		checkCost(resource.getConfiguration(subscription).getCost(), 4840.178, 7289.778, false);
 	}
 
+	@Test
+	void uploadAliasHeader() throws IOException {
+		configuration.put(ProvQuoteUploadResource.CONF_UPLOAD_HEADERS, "cpu:threads?; ram:mem[-_ ]?mb;any:any;os:(");
+		try {
+			upload(subscription, "ANY;0.5;500;LINUX", new String[]{"name", "threads", "mem_mb", "os"}, false, null,
+					null, null, 1);
+			checkCost(resource.getConfiguration(subscription).getCost(), 4840.178, 7289.778, false);
+		} finally {
+			configuration.delete(ProvQuoteUploadResource.CONF_UPLOAD_HEADERS);
+		}
+
+		// The aliases are removed
+		MatcherUtil.assertThrows(
+				Assertions.assertThrows(ValidationJsonException.class, () -> upload(subscription, "ANY;0.5;500;LINUX",
+						new String[]{"name", "threads", "mem_mb", "os"}, false, null, null, null, 1)),
+				"csv-file", "missing-header");
+	}
+
 	@Test
 	void uploadPriorizedHeader() throws IOException {
 		upload(